@@ -0,0 +1,139 @@
+package com.ordersystem.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Concurrency limit that adapts to observed latency (gradient algorithm)
+// It compares the latency of recent requests with the long-term average:
+// when requests get slower than usual (the database is struggling) the limit shrinks,
+// when latency is back to normal it grows again by roughly sqrt(limit) per sample.
+// Requests over the limit are rejected immediately instead of queueing on Tomcat threads
+// and the Hikari pool until everything times out at once.
+//
+// Lower priorities may only use part of the limit, so reports are shed first
+// and checkouts keep the remaining capacity.
+//
+// Long-running requests (streamed exports) take a permit like any other, but their latency is
+// not sampled: it grows with the size of the export, not with load, and one export of several
+// seconds would raise the long-term average so far that real slowdowns stop shrinking the limit.
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Priority {
+        CRITICAL,     // checkout, may use the whole limit
+        BEST_EFFORT   // reporting reads, may only use bestEffortShare of it
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double bestEffortShare;
+
+    // How fast the limit follows a new estimate (0..1)
+    private final double smoothing;
+    // Latency may be this much above the long-term average before the limit shrinks
+    private final double tolerance;
+    // Number of samples the long-term average is taken over
+    private final int longWindow;
+
+    private double limit;
+    private double longRttNanos;
+    private int inflight;
+
+    private final Map<Priority, Counter> rejected = new EnumMap<>(Priority.class);
+
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitProperties properties, MeterRegistry registry) {
+        this.minLimit = properties.getMinLimit();
+        this.maxLimit = properties.getMaxLimit();
+        this.limit = properties.getInitialLimit();
+        this.bestEffortShare = properties.getBestEffortShare();
+        this.smoothing = properties.getSmoothing();
+        this.tolerance = properties.getTolerance();
+        this.longWindow = properties.getLongWindow();
+
+        Gauge.builder("concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+            .description("Current adaptive concurrency limit").register(registry);
+        Gauge.builder("concurrency.inflight", this, AdaptiveConcurrencyLimiter::getInflight)
+            .description("Limited requests currently being processed").register(registry);
+        for (Priority priority : Priority.values()) {
+            rejected.put(priority, Counter.builder("concurrency.rejected")
+                .tag("priority", priority.name().toLowerCase())
+                .description("Requests rejected with 503 because the limit was reached")
+                .register(registry));
+        }
+    }
+
+    // Try to start a request; returns a Permit, or null when it must be rejected
+    public Permit tryAcquire(Priority priority) {
+        return tryAcquire(priority, true);
+    }
+
+    // The same, sampled = false for a request whose latency must not feed the limit (see above)
+    public synchronized Permit tryAcquire(Priority priority, boolean sampled) {
+        double allowed = priority == Priority.CRITICAL ? limit : limit * bestEffortShare;
+        if (inflight >= Math.max(1, (int) allowed)) {
+            rejected.get(priority).increment();
+            return null;
+        }
+        inflight++;
+        return new Permit(System.nanoTime(), inflight, sampled);
+    }
+
+    // A request finished; its latency feeds the next limit (unless it isn't sampled)
+    public void release(Permit permit) {
+        long rtt = System.nanoTime() - permit.startNanos;
+        synchronized (this) {
+            inflight--;
+            if (permit.sampled) {
+                onSample(rtt, permit.inflightAtStart);
+            }
+        }
+    }
+
+    private void onSample(long rttNanos, int inflightAtStart) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) / longWindow;
+        }
+        // After a long slow period the average is far above current latency; let it
+        // come down faster so the limit can recover
+        if (longRttNanos > 2.0 * rttNanos) {
+            longRttNanos *= 0.95;
+        }
+
+        // If we weren't anywhere near the limit, latency says nothing about it
+        if (inflightAtStart < limit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double queueSize = Math.sqrt(limit);
+        double newLimit = limit * gradient + queueSize;
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    // Handed out by tryAcquire, must be given back to release exactly once
+    public static class Permit {
+        private final long startNanos;
+        private final int inflightAtStart;
+        private final boolean sampled;
+
+        Permit(long startNanos, int inflightAtStart, boolean sampled) {
+            this.startNanos = startNanos;
+            this.inflightAtStart = inflightAtStart;
+            this.sampled = sampled;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+// Operator-only endpoints under /api/admin (see AdminTokenFilter)
+@Configuration
+public class AdminConfig {
+
+    // Before the concurrency limit, so requests without the token are turned away right away
+    @Bean
+    public FilterRegistrationBean<AdminTokenFilter> adminTokenFilter(@Value("${app.admin.token:}") String token) {
+        FilterRegistrationBean<AdminTokenFilter> registration = new FilterRegistrationBean<>(new AdminTokenFilter(token));
+        registration.addUrlPatterns("/api/admin/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);
+        return registration;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ordersystem.backend.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+// Binary alternatives to JSON for every REST endpoint, chosen by the Accept header
+//   Accept: application/cbor              -> CBOR (RFC 8949)
+//   Accept: application/x-jackson-smile   -> Smile (Jackson's binary JSON, repeated field names
+//                                            and short strings are sent once and referenced after)
+// Same objects, same field names as JSON, just smaller and much cheaper to parse on the terminals.
+// Clients that send no Accept header (or application/json) still get JSON.
+// Request bodies may be sent in these formats as well (Content-Type).
+//
+// Spring MVC would register these converters by itself, but with a plain ObjectMapper. Building
+// them from Spring Boot's Jackson2ObjectMapperBuilder gives them the same settings as the JSON
+// converter (spring.jackson.*, e.g. dates as ISO strings instead of number arrays).
+@Configuration
+public class BinaryFormatsConfig {
+
+    // Boot's builder bean is a prototype, so each converter gets its own fresh builder
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
@@ -0,0 +1,128 @@
+package com.ordersystem.backend.config;
+
+import com.ordersystem.backend.config.AdaptiveConcurrencyLimiter.Permit;
+import com.ordersystem.backend.config.AdaptiveConcurrencyLimiter.Priority;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Puts checkout and the heavy read endpoints behind the adaptive concurrency limiter
+// Everything else (single product/order lookups, admin edits) is not limited.
+// Exports count against the limit (each one keeps a database connection busy while it streams)
+// but their duration doesn't feed the latency estimate, see AdaptiveConcurrencyLimiter.
+// Rejected requests get 503 Service Unavailable with Retry-After right away.
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final int retryAfterSeconds;
+
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimiter limiter, int retryAfterSeconds) {
+        this.limiter = limiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Priority priority = classify(request);
+        if (priority == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        Permit permit = limiter.tryAcquire(priority, !isStreaming(request));
+        if (permit == null) {
+            reject(response);
+            return;
+        }
+
+        // Release exactly once, also for async (streaming) requests that finish later
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(permit);
+            }
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    // Which limit applies to this request, null for unlimited endpoints
+    static Priority classify(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+
+        if ("POST".equals(method) && path.equals("/api/orders")) {
+            return Priority.CRITICAL;
+        }
+        // Stock holds are part of checkout (the cart being scanned)
+        if (("POST".equals(method) && path.equals("/api/holds")) ||
+                ("PUT".equals(method) && path.startsWith("/api/holds/"))) {
+            return Priority.CRITICAL;
+        }
+        if ("GET".equals(method) && (
+                path.equals("/api/orders") ||
+                path.equals("/api/products") ||
+                path.equals("/api/orders/statistics") ||
+                path.equals("/api/products/statistics") ||
+                path.equals("/api/orders/top-products") ||
+                path.equals("/api/orders/analytics") ||
+                path.startsWith("/api/orders/export"))) {
+            return Priority.BEST_EFFORT;
+        }
+        return null;
+    }
+
+    // Requests that run as long as their result is big, not as long as the server is busy
+    static boolean isStreaming(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.startsWith("/api/orders/export");
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Server is busy, please retry shortly\"}");
+    }
+
+    private record ReleaseOnComplete(Runnable release) implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Async restarted, keep the listener for the new cycle
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Settings for the adaptive concurrency limiter (app.concurrency-limit.*)
+@ConfigurationProperties(prefix = "app.concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    // Bounds and starting point of the limit (concurrent limited requests)
+    private int initialLimit = 50;
+    private int minLimit = 5;
+    private int maxLimit = 200;
+
+    // Part of the limit reporting endpoints may use (the rest is kept for checkouts)
+    private double bestEffortShare = 0.5;
+
+    private double smoothing = 0.2;
+    private double tolerance = 1.5;
+    private int longWindow = 600;
+
+    // Value of the Retry-After header on 503 responses
+    private int retryAfterSeconds = 1;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public double getBestEffortShare() {
+        return bestEffortShare;
+    }
+
+    public void setBestEffortShare(double bestEffortShare) {
+        this.bestEffortShare = bestEffortShare;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        this.smoothing = smoothing;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getLongWindow() {
+        return longWindow;
+    }
+
+    public void setLongWindow(int longWindow) {
+        this.longWindow = longWindow;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
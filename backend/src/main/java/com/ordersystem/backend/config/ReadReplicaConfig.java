@@ -0,0 +1,90 @@
+package com.ordersystem.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Read/write splitting between the primary database and read replicas
+// Only active with app.datasource.replicas.enabled=true, otherwise Spring Boot's
+// normal single DataSource is used.
+//
+// How it works: the application DataSource is a LazyConnectionDataSourceProxy.
+// It only fetches a real connection when the first SQL statement runs, and by then
+// the transaction has marked the connection read-only or not. Read-only transactions
+// (@Transactional(readOnly = true)) get a replica connection, everything else the primary.
+// That only holds if every transaction takes its own connection, so spring.jpa.open-in-view
+// has to be off: the request-wide EntityManager would keep the first transaction's connection.
+@Configuration
+@EnableConfigurationProperties(ReplicaProperties.class)
+@ConditionalOnProperty(prefix = "app.datasource.replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    public ReadReplicaConfig(@Value("${spring.jpa.open-in-view:true}") boolean openInView) {
+        if (openInView) {
+            throw new IllegalStateException("app.datasource.replicas.enabled=true needs spring.jpa.open-in-view=false, " +
+                "otherwise a write after a read in the same request runs on the replica connection");
+        }
+    }
+
+    // The primary pool, configured with the usual spring.datasource.* / spring.datasource.hikari.* settings
+    @Bean(defaultCandidate = false)
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // Connections for read-only work, spread over the replicas
+    @Bean(defaultCandidate = false)
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            ReplicaProperties properties,
+            DataSourceProperties primaryProperties,
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource) {
+        List<ReplicaRoutingDataSource.Replica> replicas = new ArrayList<>();
+        int index = 0;
+        for (ReplicaProperties.Node node : properties.getNodes()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName((node.isReporting() ? "reporting-replica-" : "replica-") + index++);
+            dataSource.setJdbcUrl(node.getUrl());
+            // Reuse the primary's credentials unless the replica has its own
+            dataSource.setUsername(node.getUsername() != null ? node.getUsername() : primaryProperties.getUsername());
+            dataSource.setPassword(node.getPassword() != null ? node.getPassword() : primaryProperties.getPassword());
+            dataSource.setDriverClassName(primaryProperties.getDriverClassName());
+            dataSource.setMaximumPoolSize(node.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // A dead replica should fail fast and fall back to the primary instead of holding the request
+            dataSource.setConnectionTimeout(5000);
+            // Don't fail startup if a replica is down, the lag check just keeps it out of rotation
+            dataSource.setInitializationFailTimeout(-1);
+            replicas.add(new ReplicaRoutingDataSource.Replica(dataSource, node.isReporting()));
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas,
+            properties.getMaxLag().toMillis(), properties.getCheckInterval().toMillis());
+    }
+
+    // The DataSource used by JPA, JdbcTemplate and the export service
+    @Bean
+    @Primary
+    public DataSource dataSource(
+            @Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+            @Qualifier("replicaRoutingDataSource") ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        return dataSource;
+    }
+}
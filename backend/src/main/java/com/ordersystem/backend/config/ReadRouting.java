@@ -0,0 +1,35 @@
+package com.ordersystem.backend.config;
+
+import java.util.function.Supplier;
+
+// Lets service code mark heavy queries as "reporting" work
+// Inside reporting(...) a read-only transaction is sent to a reporting replica
+// (if one is configured) instead of the replicas serving normal reads.
+// Without replica routing this is a plain method call.
+public final class ReadRouting {
+
+    private static final ThreadLocal<Boolean> REPORTING = new ThreadLocal<>();
+
+    private ReadRouting() {}
+
+    // Run a query on the reporting replica
+    // The connection is only taken when the first statement runs, so the
+    // query must be inside the supplier, not before it
+    public static <T> T reporting(Supplier<T> query) {
+        Boolean previous = REPORTING.get();
+        REPORTING.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                REPORTING.remove();
+            } else {
+                REPORTING.set(previous);
+            }
+        }
+    }
+
+    static boolean isReporting() {
+        return Boolean.TRUE.equals(REPORTING.get());
+    }
+}
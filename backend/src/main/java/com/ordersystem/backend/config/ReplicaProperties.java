@@ -0,0 +1,108 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Settings for read replicas (app.datasource.replicas.*)
+// See application.properties for an example with a second local PostgreSQL instance
+@ConfigurationProperties(prefix = "app.datasource.replicas")
+public class ReplicaProperties {
+
+    // Routing is off unless explicitly enabled
+    private boolean enabled = false;
+
+    // Replicas further behind the primary than this are skipped
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    // How often every replica's lag is measured
+    private Duration checkInterval = Duration.ofSeconds(2);
+
+    private List<Node> nodes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getMaxLag() {
+        return maxLag;
+    }
+
+    public void setMaxLag(Duration maxLag) {
+        this.maxLag = maxLag;
+    }
+
+    public Duration getCheckInterval() {
+        return checkInterval;
+    }
+
+    public void setCheckInterval(Duration checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    // One replica database
+    public static class Node {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        // Reporting replicas only serve heavy queries (see ReadRouting.reporting)
+        // and are never used for normal reads
+        private boolean reporting = false;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+
+        public boolean isReporting() {
+            return reporting;
+        }
+
+        public void setReporting(boolean reporting) {
+            this.reporting = reporting;
+        }
+    }
+}
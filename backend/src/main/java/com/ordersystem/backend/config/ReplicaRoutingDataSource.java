@@ -0,0 +1,134 @@
+package com.ordersystem.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// DataSource for read-only work: hands out connections from the replica pools
+// Normal reads are spread round-robin over the healthy general-purpose replicas,
+// reporting reads (ReadRouting.reporting) go to a reporting replica first.
+// A replica that is unreachable or lags more than maxLag is skipped until it
+// catches up; with no usable replica the primary is used, so reads never fail
+// just because replicas are down.
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    // Replication delay in milliseconds, 0 when fully caught up
+    // A server that isn't in recovery (not a replica) reports 0 as well, which lets
+    // two independent local PostgreSQL instances stand in for primary + replica
+    private static final String LAG_QUERY =
+        "SELECT CASE " +
+        "  WHEN NOT pg_is_in_recovery() THEN 0 " +
+        "  WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+        "  ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) " +
+        "END";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService lagChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas,
+                                    long maxLagMillis, long checkIntervalMillis) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagMillis = maxLagMillis;
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Replicas join the rotation after their first successful check, until then the primary serves reads
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return choose().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return choose().getConnection(username, password);
+    }
+
+    // Reporting work: a reporting replica, else a general replica, else the primary
+    // Normal reads: a general replica, else the primary (reporting replicas stay reserved)
+    private DataSource choose() {
+        if (ReadRouting.isReporting()) {
+            DataSource reporting = pick(true);
+            if (reporting != null) {
+                return reporting;
+            }
+        }
+        DataSource general = pick(false);
+        return general != null ? general : primary;
+    }
+
+    private DataSource pick(boolean reporting) {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.reporting == reporting && replica.usable) {
+                return replica.dataSource;
+            }
+        }
+        return null;
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            boolean usable;
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                replica.lagMillis = rs.getLong(1);
+                usable = replica.lagMillis <= maxLagMillis;
+            } catch (SQLException e) {
+                usable = false;
+            }
+            if (usable != replica.usable) {
+                System.out.println("Replica " + replica.dataSource.getPoolName() +
+                    (usable ? " is back in rotation" : " removed from rotation") +
+                    " (lag " + replica.lagMillis + " ms)");
+            }
+            replica.usable = usable;
+        }
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+
+    // A replica pool with its last measured state
+    public static class Replica {
+        private final HikariDataSource dataSource;
+        private final boolean reporting;
+        private volatile boolean usable = false;
+        private volatile long lagMillis = -1;
+
+        public Replica(HikariDataSource dataSource, boolean reporting) {
+            this.dataSource = dataSource;
+            this.reporting = reporting;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ordersystem.backend.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+// Hibernate second-level cache regions for products (JCache API, Caffeine in-process caches)
+//
+// A product's catalogue data (name, description, price) rarely changes, its stock changes on every
+// order. Hibernate caches an entity as one row, so the two can't be cached apart; instead the
+// regions are split by how fast what they hold goes stale:
+//   product                   - Product entities by id (what order items and findById load).
+//                               Written through on every change made with JPA, so it can be kept long.
+//   product-natural-id        - store and name -> id for ProductRepository.findByName. Names hardly ever change.
+//   product-stock-queries     - ids returned by the stock queries (low stock, restock, in stock).
+//                               Every stock change invalidates them, the short expiry is a safety net
+//                               for writes Hibernate doesn't see.
+//   default-update-timestamps-region
+//                             - when each table was last changed; how Hibernate knows a cached
+//                               query result is out of date. Must never expire before the results do.
+//   default-query-results-region
+//                             - other cacheable queries (none yet)
+// Checkout reads products with SELECT ... FOR UPDATE, which always goes to the database:
+// stock checks must see the locked row, not a cached copy.
+@Configuration
+public class SecondLevelCacheConfig {
+
+    public static final String PRODUCT_REGION = "product";
+    public static final String PRODUCT_NATURAL_ID_REGION = "product-natural-id";
+    public static final String PRODUCT_STOCK_QUERIES_REGION = "product-stock-queries";
+
+    private static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+    private static final String DEFAULT_QUERY_RESULTS_REGION = "default-query-results-region";
+
+    @Value("${app.cache.product.max-entries:100000}")
+    private long productMaxEntries;
+
+    @Value("${app.cache.product.time-to-live:30m}")
+    private Duration productTimeToLive;
+
+    @Value("${app.cache.stock-queries.max-entries:100}")
+    private long stockQueriesMaxEntries;
+
+    @Value("${app.cache.stock-queries.time-to-live:30s}")
+    private Duration stockQueriesTimeToLive;
+
+    // Created here instead of from a config file, so the sizes can be set in application.properties
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        CacheManager cacheManager = new CaffeineCachingProvider().getCacheManager();
+        cacheManager.createCache(PRODUCT_REGION, region(productMaxEntries, productTimeToLive));
+        cacheManager.createCache(PRODUCT_NATURAL_ID_REGION, region(productMaxEntries, productTimeToLive));
+        cacheManager.createCache(PRODUCT_STOCK_QUERIES_REGION, region(stockQueriesMaxEntries, stockQueriesTimeToLive));
+        cacheManager.createCache(DEFAULT_QUERY_RESULTS_REGION, region(stockQueriesMaxEntries, stockQueriesTimeToLive));
+        // One entry per table, no expiry
+        cacheManager.createCache(TIMESTAMPS_REGION, region(10_000, null));
+        return cacheManager;
+    }
+
+    // Hands the cache manager above to Hibernate; a region that isn't created here is an error
+    // at startup (missing_cache_strategy=fail), so a typo in a region name can't go unnoticed
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        };
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxEntries, Duration timeToLive) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        if (timeToLive != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(timeToLive.toNanos()));
+        }
+        // Hibernate stores its own disassembled copy of the data, no need for JCache to copy it again
+        configuration.setStoreByValue(false);
+        configuration.setStatisticsEnabled(true);
+        return configuration;
+    }
+}
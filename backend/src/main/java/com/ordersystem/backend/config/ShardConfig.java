@@ -0,0 +1,237 @@
+package com.ordersystem.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.connections.spi.AbstractDataSourceBasedMultiTenantConnectionProviderImpl;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Store sharding: each store's products and orders live in the database of its shard
+// Only active with app.datasource.shards.enabled=true, otherwise everything stays in the
+// single spring.datasource.* database (see StoreConfig).
+//
+// How it works:
+//   - StoreContextFilter puts the request's X-Store-Id in StoreContext, ShardDirectory maps it to a shard
+//   - JdbcTemplate and the export service use the DataSource below, which hands out a connection
+//     of the current shard's pool
+//   - Hibernate uses its database-per-tenant multi-tenancy with the shard name as the tenant.
+//     Every session is bound to one shard, and the second-level cache keys include the shard,
+//     so product 42 of one shard is never served from the cache for product 42 of another.
+//   - Hibernate only creates/updates the schema of the default database at startup, the
+//     other shards are brought to the same schema right after (ddl-auto=update)
+// Can't be combined with read replicas yet.
+@Configuration
+@EnableConfigurationProperties(ShardProperties.class)
+@ConditionalOnProperty(prefix = "app.datasource.shards", name = "enabled", havingValue = "true")
+public class ShardConfig {
+
+    public ShardConfig(@Value("${app.datasource.replicas.enabled:false}") boolean replicasEnabled) {
+        if (replicasEnabled) {
+            throw new IllegalStateException(
+                "app.datasource.shards and app.datasource.replicas can't be enabled at the same time");
+        }
+    }
+
+    @Bean(destroyMethod = "close")
+    public ShardDirectory shardDirectory(ShardProperties properties) {
+        ShardDirectory directory = ShardDirectory.fromProperties(properties);
+        System.out.println("Store sharding enabled, shards: " + directory.getShardNames());
+        return directory;
+    }
+
+    // The default shard's pool, configured with the usual spring.datasource.* / spring.datasource.hikari.* settings
+    @Bean(defaultCandidate = false)
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource defaultShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        dataSource.setPoolName("shard-" + ShardDirectory.DEFAULT_SHARD);
+        return dataSource;
+    }
+
+    // One pool per shard, by shard name
+    @Bean(defaultCandidate = false)
+    public ShardDataSources shardDataSources(
+            ShardProperties properties,
+            DataSourceProperties defaultProperties,
+            @Qualifier("defaultShardDataSource") HikariDataSource defaultShardDataSource) {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        dataSources.put(ShardDirectory.DEFAULT_SHARD, defaultShardDataSource);
+        for (ShardProperties.Node node : properties.getNodes()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("shard-" + node.getName());
+            dataSource.setJdbcUrl(node.getUrl());
+            // Reuse the default database's credentials unless the shard has its own
+            dataSource.setUsername(node.getUsername() != null ? node.getUsername() : defaultProperties.getUsername());
+            dataSource.setPassword(node.getPassword() != null ? node.getPassword() : defaultProperties.getPassword());
+            dataSource.setDriverClassName(defaultProperties.getDriverClassName());
+            dataSource.setMaximumPoolSize(node.getMaximumPoolSize());
+            dataSources.put(node.getName(), dataSource);
+        }
+        return new ShardDataSources(dataSources);
+    }
+
+    // The DataSource used by JdbcTemplate and the export service: the current shard's pool
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDirectory shardDirectory,
+                                 @Qualifier("shardDataSources") ShardDataSources shardDataSources) {
+        AbstractRoutingDataSource dataSource = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return shardDirectory.currentShard();
+            }
+        };
+        dataSource.setTargetDataSources(new HashMap<>(shardDataSources.byShard()));
+        dataSource.setLenientFallback(false);
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    // The schema as Hibernate built it from the entities, kept for updating the other shards
+    @Bean
+    public MetadataHolder shardMetadataHolder() {
+        return new MetadataHolder();
+    }
+
+    // Switches Hibernate to one database per tenant, the tenant being the current shard
+    @Bean
+    public HibernatePropertiesCustomizer shardMultiTenancyCustomizer(
+            ShardDirectory shardDirectory,
+            @Qualifier("shardDataSources") ShardDataSources shardDataSources,
+            MetadataHolder shardMetadataHolder,
+            SqlInspector sqlInspector) {
+        return properties -> {
+            properties.put("hibernate.multi_tenant_connection_provider",
+                new ShardConnectionProvider(shardDirectory, shardDataSources, sqlInspector));
+            properties.put("hibernate.tenant_identifier_resolver", new CurrentTenantIdentifierResolver<String>() {
+                @Override
+                public String resolveCurrentTenantIdentifier() {
+                    return shardDirectory.currentShard();
+                }
+
+                @Override
+                public boolean validateExistingCurrentSessions() {
+                    return false;
+                }
+            });
+            properties.put("hibernate.integrator_provider", (IntegratorProvider) () -> List.of(shardMetadataHolder));
+        };
+    }
+
+    // Brings every other shard to the default database's schema once Hibernate has started
+    // Runs the same schema action Hibernate ran (spring.jpa.hibernate.ddl-auto), so nothing
+    // happens with "none" or "validate" (the prod profile); the tables must then exist already.
+    @Bean
+    public InitializingBean shardSchemaUpdater(EntityManagerFactory entityManagerFactory,
+                                               ShardDirectory shardDirectory,
+                                               MetadataHolder shardMetadataHolder) {
+        return () -> {
+            SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactory.class)
+                .unwrap(SessionFactoryImplementor.class);
+            Map<String, Object> settings = new HashMap<>(sessionFactory.getServiceRegistry()
+                .requireService(ConfigurationService.class).getSettings());
+            for (String shard : shardDirectory.getShardNames()) {
+                if (shard.equals(ShardDirectory.DEFAULT_SHARD)) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                // The schema tool connects through ShardConnectionProvider.selectAnyDataSource,
+                // i.e. to the current shard
+                StoreContext.onShard(shard, () -> {
+                    SchemaManagementToolCoordinator.process(shardMetadataHolder.metadata,
+                        sessionFactory.getServiceRegistry(), settings, action -> { });
+                    return null;
+                });
+                System.out.println("Schema of shard " + shard + " checked in " +
+                    (System.currentTimeMillis() - start) + " ms");
+            }
+        };
+    }
+
+    // The shard pools by name, closed on shutdown
+    public record ShardDataSources(Map<String, DataSource> byShard) implements AutoCloseable {
+        DataSource get(String shard) {
+            DataSource dataSource = byShard.get(shard);
+            if (dataSource == null) {
+                throw new IllegalStateException("Unknown shard: " + shard);
+            }
+            return dataSource;
+        }
+
+        @Override
+        public void close() {
+            for (DataSource dataSource : byShard.values()) {
+                ((HikariDataSource) dataSource).close();
+            }
+        }
+    }
+
+    // Hibernate's connections: the pool of the session's tenant (= shard)
+    // "Any" connections are used for schema work and JDBC metadata, they go to the current shard
+    // The pools are wrapped for SQL inspection, like the application DataSource (SqlInspectorConfig)
+    private static class ShardConnectionProvider extends AbstractDataSourceBasedMultiTenantConnectionProviderImpl<String> {
+        private final ShardDirectory shardDirectory;
+        private final ShardDataSources shardDataSources;
+
+        ShardConnectionProvider(ShardDirectory shardDirectory, ShardDataSources shardDataSources,
+                                SqlInspector sqlInspector) {
+            this.shardDirectory = shardDirectory;
+            Map<String, DataSource> inspected = new LinkedHashMap<>();
+            shardDataSources.byShard().forEach((shard, dataSource) -> inspected.put(shard, sqlInspector.wrap(dataSource)));
+            this.shardDataSources = new ShardDataSources(inspected);
+        }
+
+        @Override
+        protected DataSource selectAnyDataSource() {
+            return shardDataSources.get(shardDirectory.currentShard());
+        }
+
+        @Override
+        protected DataSource selectDataSource(String shard) {
+            return shardDataSources.get(shard);
+        }
+    }
+
+    // Hibernate hands its mapping metadata to integrators while it starts, this one keeps it
+    public static class MetadataHolder implements Integrator {
+        private volatile Metadata metadata;
+
+        @Override
+        public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                              SessionFactoryImplementor sessionFactory) {
+            this.metadata = metadata;
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
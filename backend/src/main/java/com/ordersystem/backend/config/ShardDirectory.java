@@ -0,0 +1,141 @@
+package com.ordersystem.backend.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Which shard (database) holds which store, and reads across all shards
+// With sharding off there is a single shard, "default", and onEveryShard is a plain call.
+public class ShardDirectory implements AutoCloseable {
+
+    // The spring.datasource.* database
+    public static final String DEFAULT_SHARD = "default";
+
+    private final boolean sharded;
+    private final List<String> shardNames;
+    private final Map<String, String> shardByStore;
+    private final Duration scatterTimeout;
+
+    // Cross-shard reads mostly wait on the databases, a virtual thread per shard query is enough
+    private final ExecutorService scatterExecutor;
+
+    // Sharding off: everything lives in the default database
+    public static ShardDirectory singleDatabase() {
+        return new ShardDirectory(false, List.of(DEFAULT_SHARD), Map.of(), Duration.ZERO);
+    }
+
+    // Sharding on: the default database plus the configured nodes
+    public static ShardDirectory fromProperties(ShardProperties properties) {
+        List<String> names = new ArrayList<>();
+        names.add(DEFAULT_SHARD);
+        Map<String, String> shardByStore = new HashMap<>();
+        for (ShardProperties.Node node : properties.getNodes()) {
+            String name = node.getName();
+            if (name == null || name.isBlank() || names.contains(name)) {
+                throw new IllegalArgumentException("Every app.datasource.shards node needs a unique name " +
+                    "(other than \"" + DEFAULT_SHARD + "\"), got: " + name);
+            }
+            if (node.getUrl() == null) {
+                throw new IllegalArgumentException("Shard " + name + " has no url");
+            }
+            names.add(name);
+            for (String store : node.getStores()) {
+                String previous = shardByStore.put(store.trim(), name);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Store " + store + " is assigned to shards " +
+                        previous + " and " + name);
+                }
+            }
+        }
+        return new ShardDirectory(true, names, shardByStore, properties.getScatterTimeout());
+    }
+
+    private ShardDirectory(boolean sharded, List<String> shardNames, Map<String, String> shardByStore,
+                           Duration scatterTimeout) {
+        this.sharded = sharded;
+        this.shardNames = Collections.unmodifiableList(shardNames);
+        this.shardByStore = shardByStore;
+        this.scatterTimeout = scatterTimeout;
+        this.scatterExecutor = sharded ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    public boolean isSharded() {
+        return sharded;
+    }
+
+    public List<String> getShardNames() {
+        return shardNames;
+    }
+
+    // Stores that aren't mapped to a shard live in the default database
+    public String shardForStore(String storeId) {
+        return shardByStore.getOrDefault(storeId, DEFAULT_SHARD);
+    }
+
+    // The shard the current thread works on
+    public String currentShard() {
+        String override = StoreContext.shardOverride();
+        return override != null ? override : shardForStore(StoreContext.currentStore());
+    }
+
+    public boolean isDefaultShard() {
+        return DEFAULT_SHARD.equals(currentShard());
+    }
+
+    // Scatter-gather: run the query once per shard, all shards in parallel, and return the
+    // results in shard order for the caller to merge. The query must open its own transaction
+    // (e.g. call a @Transactional service method), each runs on a thread of its own.
+    // Fails if any shard fails or doesn't answer within app.datasource.shards.scatter-timeout:
+    // a total that silently leaves out a shard would look right and be wrong.
+    public <T> Map<String, T> onEveryShard(Supplier<T> query) {
+        Map<String, T> results = new LinkedHashMap<>();
+        if (!sharded) {
+            results.put(DEFAULT_SHARD, StoreContext.onShard(DEFAULT_SHARD, query));
+            return results;
+        }
+
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        for (String shard : shardNames) {
+            futures.put(shard, scatterExecutor.submit(() -> StoreContext.onShard(shard, query)));
+        }
+        long deadline = System.nanoTime() + scatterTimeout.toNanos();
+        try {
+            for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+                String shard = entry.getKey();
+                try {
+                    results.put(shard, entry.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Shard " + shard + " failed: " + e.getCause().getMessage(), e.getCause());
+                } catch (TimeoutException e) {
+                    throw new RuntimeException("Shard " + shard + " did not answer within " +
+                        scatterTimeout.toMillis() + " ms");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the shards", e);
+        } finally {
+            // Nothing left to wait for on success; on failure don't leave the other queries running
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Settings for store sharding (app.datasource.shards.*)
+// The spring.datasource.* database is the shard called "default", it serves every store
+// that isn't listed under one of the nodes. See application.properties for an example.
+@ConfigurationProperties(prefix = "app.datasource.shards")
+public class ShardProperties {
+
+    // Sharding is off unless explicitly enabled
+    private boolean enabled = false;
+
+    // How long a cross-shard read (global statistics) waits for the slowest shard
+    private Duration scatterTimeout = Duration.ofSeconds(10);
+
+    private List<Node> nodes = new ArrayList<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getScatterTimeout() {
+        return scatterTimeout;
+    }
+
+    public void setScatterTimeout(Duration scatterTimeout) {
+        this.scatterTimeout = scatterTimeout;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    // One shard database and the stores it holds
+    public static class Node {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+        private List<String> stores = new ArrayList<>();
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+
+        public List<String> getStores() {
+            return stores;
+        }
+
+        public void setStores(List<String> stores) {
+            this.stores = stores;
+        }
+    }
+}
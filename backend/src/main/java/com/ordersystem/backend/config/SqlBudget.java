@@ -0,0 +1,31 @@
+package com.ordersystem.backend.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// The most SQL statements (and optionally rows) one call of an endpoint may need
+// Put it on a controller method; SqlInspectorFilter compares each request against it.
+// Going over is logged and counted (sql.budget.exceeded); with
+// app.sql-inspector.fail-on-budget-exceeded=true (meant for tests and CI) the request fails
+// with 500 instead, so an N+1 query or a full table load shows up before production.
+//
+// The failing request has still done its work (and committed it), only its response is replaced.
+//
+// Only statements on the request thread count (see SqlStats). A cache hit needs fewer
+// statements than the budget, which is fine: the budget is for the worst case. That includes
+// loading a product with stock buckets, which reads their total with one more statement
+// however many such products the request loads (see BucketQuantityLoader). Endpoints whose
+// statements grow with the request (checkout inserts one order_items row per line, IDENTITY ids
+// can't be batched) have no fixed budget.
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SqlBudget {
+
+    // Maximum number of statements (a JDBC batch counts as one)
+    int statements();
+
+    // Maximum number of rows read, -1 = no limit
+    long rows() default -1;
+}
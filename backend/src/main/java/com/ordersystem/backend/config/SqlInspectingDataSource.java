@@ -0,0 +1,212 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// DataSource wrapper that watches every SQL statement going through it (see SqlInspector)
+// Connections, statements and result sets are wrapped in JDK proxies that:
+//   - count statements and the time they take for the current request (SqlStats)
+//   - count the rows read from result sets
+//   - remember the SQL and bind parameters, so statements slower than the threshold can be logged
+// A JDBC batch (executeBatch) is one statement: it is one round trip to the database.
+public class SqlInspectingDataSource extends DelegatingDataSource implements Closeable {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+        "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final SqlInspector inspector;
+
+    SqlInspectingDataSource(DataSource target, SqlInspector inspector) {
+        super(target);
+        this.inspector = inspector;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    // Spring closes the DataSource bean on shutdown, this passes it on to the pool
+    @Override
+    public void close() throws IOException {
+        if (getTargetDataSource() instanceof Closeable pool) {
+            pool.close();
+        }
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    // Calls the real object, unwrapping the reflection exception so callers see the SQLException
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    // Proxies are only equal to themselves (like Spring's own connection proxies)
+    private static Object identityMethod(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> null;
+        };
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object identity = identityMethod(proxy, method, args);
+            if (identity != null) {
+                return identity;
+            }
+            Object result = invokeTarget(target, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return wrapStatement(result, PreparedStatement.class, (String) args[0]);
+                case "prepareCall":
+                    return wrapStatement(result, CallableStatement.class, (String) args[0]);
+                case "createStatement":
+                    return wrapStatement(result, Statement.class, null);
+                default:
+                    return result;
+            }
+        }
+
+        private Object wrapStatement(Object statement, Class<?> type, String sql) {
+            return Proxy.newProxyInstance(SqlInspectingDataSource.class.getClassLoader(),
+                new Class<?>[] {type}, new StatementHandler((Statement) statement, sql));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private String sql;
+        // Bind parameters by index, for the slow query log
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private int batchSize;
+
+        StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object identity = identityMethod(proxy, method, args);
+            if (identity != null) {
+                return identity;
+            }
+            String name = method.getName();
+            if (EXECUTE_METHODS.contains(name)) {
+                return execute(method, args);
+            }
+            // setInt(1, 42), setString(2, "x"), setNull(3, Types.VARCHAR), ...
+            // (setFetchSize, setMaxRows etc. have a single argument)
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                parameters.put(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+                if (args != null && args.length == 1) {
+                    // Statement.addBatch(sql): keep the first statement of the batch
+                    sql = sql == null ? (String) args[0] : sql;
+                }
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            }
+            Object result = invokeTarget(target, method, args);
+            if (result instanceof ResultSet resultSet && (name.equals("getResultSet") || name.equals("getGeneratedKeys"))) {
+                return wrapResultSet(resultSet);
+            }
+            return result;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String statementSql = args != null && args.length > 0 && args[0] instanceof String text ? text : sql;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeTarget(target, method, args);
+            } finally {
+                long nanos = System.nanoTime() - start;
+                SqlStats stats = SqlStats.current();
+                if (stats != null) {
+                    stats.statementExecuted(nanos);
+                }
+                inspector.statementExecuted(statementSql, parameters, batchSize, nanos, stats);
+                if (method.getName().contains("Batch")) {
+                    batchSize = 0;
+                }
+            }
+            if (result instanceof ResultSet resultSet) {
+                return wrapResultSet(resultSet);
+            }
+            return result;
+        }
+
+        private ResultSet wrapResultSet(ResultSet resultSet) {
+            return (ResultSet) Proxy.newProxyInstance(SqlInspectingDataSource.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, new ResultSetHandler(resultSet));
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+
+        ResultSetHandler(ResultSet target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object identity = identityMethod(proxy, method, args);
+            if (identity != null) {
+                return identity;
+            }
+            if (!method.getName().equals("next")) {
+                return invokeTarget(target, method, args);
+            }
+            SqlStats stats = SqlStats.current();
+            if (stats == null) {
+                return invokeTarget(target, method, args);
+            }
+            long start = System.nanoTime();
+            Object hasRow = invokeTarget(target, method, args);
+            stats.rowsRead(Boolean.TRUE.equals(hasRow) ? 1 : 0, System.nanoTime() - start);
+            return hasRow;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ordersystem.backend.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Watches the application's SQL (see SqlInspectorConfig for where it is plugged in)
+// Every statement is counted for the current request (SqlStats); statements slower than
+// slow-threshold are logged as one JSON line, with the request, the SQL and its bind parameters:
+//   Slow SQL: {"durationMs":812,"request":"GET /api/products/statistics","store":"default",
+//              "sql":"select ... where p1_0.stock_quantity<?","parameters":[0],"batchSize":0}
+public class SqlInspector {
+
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private final long slowThresholdNanos;
+    private final boolean logParameters;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public SqlInspector(Duration slowThreshold, boolean logParameters) {
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.logParameters = logParameters;
+    }
+
+    // Wraps a DataSource so its statements are inspected (wrapping twice is harmless)
+    public DataSource wrap(DataSource dataSource) {
+        if (dataSource instanceof SqlInspectingDataSource) {
+            return dataSource;
+        }
+        return new SqlInspectingDataSource(dataSource, this);
+    }
+
+    void statementExecuted(String sql, Map<Integer, Object> parameters, int batchSize, long nanos, SqlStats stats) {
+        if (nanos < slowThresholdNanos) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("durationMs", nanos / 1_000_000);
+        record.put("request", stats == null ? null : stats.getMethod() + " " + stats.getPath());
+        record.put("store", StoreContext.currentStore());
+        record.put("thread", Thread.currentThread().getName());
+        record.put("sql", sql);
+        if (logParameters) {
+            List<String> values = new ArrayList<>();
+            for (Object value : parameters.values()) {
+                values.add(describe(value));
+            }
+            record.put("parameters", values);
+        }
+        record.put("batchSize", batchSize);
+        try {
+            System.out.println("Slow SQL: " + objectMapper.writeValueAsString(record));
+        } catch (JsonProcessingException e) {
+            System.out.println("Slow SQL (" + nanos / 1_000_000 + " ms): " + sql);
+        }
+    }
+
+    // Bind parameters as short strings: long texts are cut, binary values only show their size
+    private static String describe(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof byte[] bytes) {
+            return "<" + bytes.length + " bytes>";
+        }
+        String text = value.toString();
+        return text.length() > MAX_PARAMETER_LENGTH ? text.substring(0, MAX_PARAMETER_LENGTH) + "..." : text;
+    }
+}
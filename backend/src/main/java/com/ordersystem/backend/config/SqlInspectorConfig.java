@@ -0,0 +1,57 @@
+package com.ordersystem.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// SQL inspection: statements, rows and database time per request, the slow query log and
+// @SqlBudget checks (see SqlInspector, SqlInspectorFilter)
+// The application DataSource is wrapped whichever configuration defined it (the single
+// database, ReadReplicaConfig or ShardConfig); with sharding Hibernate gets its connections
+// from the shard pools directly, ShardConfig wraps those as well.
+@Configuration
+public class SqlInspectorConfig {
+
+    @Bean
+    public SqlInspector sqlInspector(
+            @Value("${app.sql-inspector.slow-threshold:200ms}") Duration slowThreshold,
+            @Value("${app.sql-inspector.log-parameters:false}") boolean logParameters) {
+        return new SqlInspector(slowThreshold, logParameters);
+    }
+
+    // Static, and the inspector is only looked up once the DataSource is created, so this
+    // post processor doesn't pull other beans into existence early
+    @Bean
+    public static BeanPostProcessor sqlInspectingDataSourcePostProcessor(ObjectProvider<SqlInspector> sqlInspector) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && beanName.equals("dataSource")) {
+                    return sqlInspector.getObject().wrap(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    // After the concurrency limit (rejected requests run no SQL)
+    @Bean
+    public FilterRegistrationBean<SqlInspectorFilter> sqlInspectorFilter(
+            @Value("${app.sql-inspector.response-headers:true}") boolean responseHeaders,
+            @Value("${app.sql-inspector.fail-on-budget-exceeded:false}") boolean failOnBudgetExceeded,
+            MeterRegistry registry) {
+        FilterRegistrationBean<SqlInspectorFilter> registration = new FilterRegistrationBean<>(
+            new SqlInspectorFilter(responseHeaders, failOnBudgetExceeded, registry));
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 20);
+        return registration;
+    }
+}
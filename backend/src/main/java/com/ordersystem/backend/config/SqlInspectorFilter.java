@@ -0,0 +1,119 @@
+package com.ordersystem.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Counts the SQL of each request (SqlStats) and checks it against the endpoint's @SqlBudget
+// With response headers on (not in prod) every response says what it cost in the database:
+//   X-SQL-Statements: 3
+//   X-SQL-Rows: 120
+//   X-SQL-Time-Ms: 14
+// The headers can only be set once the whole response is rendered (JSON serialization may
+// still load lazy collections), so the body is buffered until then.
+public class SqlInspectorFilter extends OncePerRequestFilter {
+
+    public static final String STATEMENTS_HEADER = "X-SQL-Statements";
+    public static final String ROWS_HEADER = "X-SQL-Rows";
+    public static final String TIME_HEADER = "X-SQL-Time-Ms";
+    public static final String BUDGET_EXCEEDED_HEADER = "X-SQL-Budget-Exceeded";
+
+    // Streamed responses (exports, JFR downloads) are never buffered, they can be huge
+    private static final List<String> STREAMING_PATHS = List.of("/api/orders/export", "/api/admin/");
+
+    private final boolean responseHeaders;
+    private final boolean failOnBudgetExceeded;
+    private final MeterRegistry registry;
+
+    public SqlInspectorFilter(boolean responseHeaders, boolean failOnBudgetExceeded, MeterRegistry registry) {
+        this.responseHeaders = responseHeaders;
+        this.failOnBudgetExceeded = failOnBudgetExceeded;
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        SqlStats stats = new SqlStats(request.getMethod(), request.getRequestURI());
+        boolean buffer = (responseHeaders || failOnBudgetExceeded) && !isStreaming(request);
+        ContentCachingResponseWrapper bufferedResponse = buffer ? new ContentCachingResponseWrapper(response) : null;
+
+        SqlStats.start(stats);
+        try {
+            chain.doFilter(request, bufferedResponse != null ? bufferedResponse : response);
+        } finally {
+            SqlStats.clear();
+        }
+
+        String budgetViolation = checkBudget(request, stats);
+        if (bufferedResponse == null) {
+            return;
+        }
+        if (budgetViolation != null && failOnBudgetExceeded) {
+            // The buffered body is dropped, the client gets the violation instead
+            response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(("{\"error\":\"" + budgetViolation + "\"}").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (responseHeaders) {
+            response.setHeader(STATEMENTS_HEADER, String.valueOf(stats.getStatements()));
+            response.setHeader(ROWS_HEADER, String.valueOf(stats.getRows()));
+            response.setHeader(TIME_HEADER, String.valueOf(stats.getDatabaseMillis()));
+            if (budgetViolation != null) {
+                response.setHeader(BUDGET_EXCEEDED_HEADER, "true");
+            }
+        }
+        bufferedResponse.copyBodyToResponse();
+    }
+
+    // The violation message if the endpoint has a @SqlBudget and went over it, otherwise null
+    private String checkBudget(HttpServletRequest request, SqlStats stats) {
+        if (!(request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler)) {
+            return null;
+        }
+        SqlBudget budget = handler.getMethodAnnotation(SqlBudget.class);
+        if (budget == null) {
+            return null;
+        }
+        boolean tooManyStatements = stats.getStatements() > budget.statements();
+        boolean tooManyRows = budget.rows() >= 0 && stats.getRows() > budget.rows();
+        if (!tooManyStatements && !tooManyRows) {
+            return null;
+        }
+        String endpoint = handler.getBeanType().getSimpleName() + "." + handler.getMethod().getName();
+        String message = "SQL budget exceeded by " + stats.getMethod() + " " + stats.getPath() + " (" + endpoint + "): " +
+            stats.getStatements() + " statements (budget " + budget.statements() + "), " +
+            stats.getRows() + " rows" + (budget.rows() >= 0 ? " (budget " + budget.rows() + ")" : "");
+        System.out.println(message);
+        Counter.builder("sql.budget.exceeded")
+            .description("Requests that ran more SQL than their endpoint's @SqlBudget")
+            .tag("endpoint", endpoint)
+            .register(registry)
+            .increment();
+        return message;
+    }
+
+    private static boolean isStreaming(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        for (String prefix : STREAMING_PATHS) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+package com.ordersystem.backend.config;
+
+// The SQL work of one HTTP request: statements run, rows read and time spent in the database
+// SqlInspectorFilter starts it for every /api request, SqlInspectingDataSource adds to it.
+// Like StoreContext it lives in a ThreadLocal, so statements that run on other threads
+// (scatter-gather over several shards, analytics chunks, group commits, export streaming)
+// aren't counted for the request.
+public final class SqlStats {
+
+    private static final ThreadLocal<SqlStats> CURRENT = new ThreadLocal<>();
+
+    private final String method;
+    private final String path;
+    private int statements;
+    private long rows;
+    private long databaseNanos;
+
+    SqlStats(String method, String path) {
+        this.method = method;
+        this.path = path;
+    }
+
+    // null outside requests (background threads)
+    public static SqlStats current() {
+        return CURRENT.get();
+    }
+
+    static void start(SqlStats stats) {
+        CURRENT.set(stats);
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    void statementExecuted(long nanos) {
+        statements++;
+        databaseNanos += nanos;
+    }
+
+    // Fetching rows also waits for the database when the driver reads them in batches (fetch size)
+    void rowsRead(long count, long nanos) {
+        rows += count;
+        databaseNanos += nanos;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getDatabaseMillis() {
+        return databaseNanos / 1_000_000;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ordersystem.backend.config;
+
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Warms up a new instance before it takes traffic
+// Sends the most common read requests to itself over HTTP, so the JIT compiles the hot paths
+// and everything that is created on first use (lazy beans, Hibernate query plans, Jackson
+// serializers, database connections) exists before the first real customer arrives.
+// Application runners finish before Spring Boot marks the application ready
+// (/actuator/health/readiness), so a load balancer only sends traffic after the warm-up.
+// Only read-only endpoints are called; the warm-up never changes data.
+//
+// Enabled with app.warmup.enabled=true (on in the prod profile)
+@Component
+@ConditionalOnProperty(prefix = "app.warmup", name = "enabled", havingValue = "true")
+public class StartupWarmup implements ApplicationRunner {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private Environment environment;
+
+    // How many times the request set is repeated, and the time limit for all of it
+    @Value("${app.warmup.rounds:20}")
+    private int rounds;
+
+    @Value("${app.warmup.max-duration:10s}")
+    private Duration maxDuration;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String port = environment.getProperty("local.server.port");
+        if (port == null) {
+            // No web server (e.g. a test context), nothing to warm up
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        List<String> paths = warmupPaths();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        int requests = 0;
+        int failures = 0;
+
+        long deadline = start + maxDuration.toMillis();
+        for (int round = 0; round < rounds && System.currentTimeMillis() < deadline; round++) {
+            for (String path : paths) {
+                // Stop at the time limit even in the middle of a round, slow reports can't delay readiness much
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                try {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .timeout(Duration.ofSeconds(10))
+                        .GET()
+                        .build();
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() >= 500) {
+                        failures++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    failures++;
+                }
+                requests++;
+            }
+        }
+
+        System.out.println("Warm-up finished: " + requests + " requests (" + failures + " failed) in " +
+            (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Lookups of a few real products, a search and the dashboard endpoints
+    private List<String> warmupPaths() {
+        List<String> paths = new ArrayList<>();
+        try {
+            List<Product> products = productRepository.findAll(PageRequest.of(0, 20)).getContent();
+            for (Product product : products) {
+                paths.add("/api/products/" + product.getId());
+            }
+            if (!products.isEmpty()) {
+                String term = products.get(0).getName().split(" ")[0];
+                paths.add("/api/products/search?name=" + URLEncoder.encode(term, StandardCharsets.UTF_8));
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Warm-up could not load products: " + e.getMessage());
+        }
+        paths.add("/api/products/low-stock");
+        paths.add("/api/products/statistics");
+        paths.add("/api/orders/statistics");
+        return paths;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ordersystem.backend.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+// Store awareness that is there with and without sharding
+// The X-Store-Id header is always read (orders are stamped with their store and only read
+// or changed by it); with sharding off every store is served by the single database.
+@Configuration
+public class StoreConfig {
+
+    // First filter of the chain, so everything after it already knows the store
+    @Bean
+    public FilterRegistrationBean<StoreContextFilter> storeContextFilter() {
+        FilterRegistrationBean<StoreContextFilter> registration = new FilterRegistrationBean<>(new StoreContextFilter());
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    // Sharding off: one shard, the spring.datasource.* database (ShardConfig defines it otherwise)
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "app.datasource.shards", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public ShardDirectory shardDirectory() {
+        return ShardDirectory.singleDatabase();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ordersystem.backend.config;
+
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// The store the current request works for, from the X-Store-Id header (see StoreContextFilter)
+// ShardDirectory maps the store to the database shard holding its products and orders, and
+// both the DataSource and Hibernate pick their connections from that shard.
+// Without a header the request belongs to DEFAULT_STORE, so single-store clients keep working.
+//
+// Work that runs on other threads (group commit, export streaming, scatter-gather) doesn't
+// inherit the ThreadLocal and must pass the store or shard on with forStore/onShard.
+public final class StoreContext {
+
+    public static final String HEADER = "X-Store-Id";
+
+    // Store of requests without X-Store-Id (and of every row written before stores existed)
+    public static final String DEFAULT_STORE = "default";
+
+    private static final Pattern VALID_STORE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final ThreadLocal<String> STORE = new ThreadLocal<>();
+
+    // Set when a task addresses a shard directly (scatter-gather, per-shard startup work)
+    private static final ThreadLocal<String> SHARD = new ThreadLocal<>();
+
+    private StoreContext() {}
+
+    public static String currentStore() {
+        String store = STORE.get();
+        return store != null ? store : DEFAULT_STORE;
+    }
+
+    public static boolean isValidStoreId(String storeId) {
+        return storeId != null && VALID_STORE_ID.matcher(storeId).matches();
+    }
+
+    // Run something for the given store (and therefore on its shard)
+    public static <T> T forStore(String storeId, Supplier<T> work) {
+        return with(STORE, storeId, work);
+    }
+
+    // Run something on the given shard, whatever store the caller works for
+    public static <T> T onShard(String shard, Supplier<T> work) {
+        return with(SHARD, shard, work);
+    }
+
+    static String shardOverride() {
+        return SHARD.get();
+    }
+
+    // Used by StoreContextFilter around each request
+    static void setStore(String storeId) {
+        STORE.set(storeId);
+    }
+
+    static void clear() {
+        STORE.remove();
+        SHARD.remove();
+    }
+
+    private static <T> T with(ThreadLocal<String> holder, String value, Supplier<T> work) {
+        String previous = holder.get();
+        holder.set(value);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                holder.remove();
+            } else {
+                holder.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ordersystem.backend.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Reads the X-Store-Id header into StoreContext for the rest of the request
+// Runs before Spring MVC opens the request's EntityManager, so Hibernate already
+// connects to the store's shard (see ShardConfig). Stores that aren't mapped to a shard
+// are served by the default database.
+public class StoreContextFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String storeId = request.getHeader(StoreContext.HEADER);
+        if (storeId != null) {
+            storeId = storeId.trim();
+            if (!StoreContext.isValidStoreId(storeId)) {
+                reject(response, "Invalid " + StoreContext.HEADER + " header, use up to 64 letters, digits, - or _");
+                return;
+            }
+        }
+
+        StoreContext.setStore(storeId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            StoreContext.clear();
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.BAD_REQUEST.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+}
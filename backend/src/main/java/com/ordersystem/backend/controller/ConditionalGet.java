@@ -0,0 +1,111 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.config.StoreContext;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+// Helper for GET endpoints that support conditional requests (ETag + If-None-Match)
+// The ETag comes from DataVersionTracker, so we can answer 304 before touching the database
+// The same data can be sent as JSON, CBOR or Smile (see BinaryFormatsConfig), so the ETag gets
+// the format appended and responses carry "Vary: Accept": a terminal's cached JSON copy is
+// never confirmed as current for a CBOR request or the other way round.
+// The ETags are weak (W/"..."): the bytes also differ with gzip, and Tomcat refuses to
+// compress responses that carry a strong ETag.
+// Product data differs per store (X-Store-Id), so responses also vary by that header.
+final class ConditionalGet {
+
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    // Clients (the POS terminals and the dashboard) may keep a copy,
+    // but must revalidate it with If-None-Match every time they poll
+    static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    private static final String[] VARY = {HttpHeaders.ACCEPT, StoreContext.HEADER};
+
+    private ConditionalGet() {}
+
+    // Returns null when the client's copy is still current
+    // In that case Spring has already written the 304 response with the ETag header
+    // A null etag means ETags are off (see DataVersionTracker): the response is always loaded
+    static <T> ResponseEntity<T> respond(WebRequest request, String etag, Supplier<ResponseEntity<T>> loader) {
+        if (etag == null) {
+            return loader.get();
+        }
+        if (request.checkNotModified(representationETag(etag, request))) {
+            // checkNotModified only sets the ETag, so add Cache-Control and Vary to the 304 as well
+            if (request instanceof ServletWebRequest servletRequest) {
+                HttpServletResponse response = servletRequest.getResponse();
+                if (response != null) {
+                    response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL.getHeaderValue());
+                    response.setHeader(HttpHeaders.VARY, String.join(", ", VARY));
+                }
+            }
+            return null;
+        }
+
+        // checkNotModified has already put the ETag header on the response,
+        // so only Cache-Control needs to be added to successful responses
+        ResponseEntity<T> response = loader.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode())
+            .cacheControl(CACHE_CONTROL)
+            .varyBy(VARY)
+            .body(response.getBody());
+    }
+    
+    // "p-abc-42" -> W/"p-abc-42-cbor" when the client prefers CBOR, W/"p-abc-42" for JSON
+    static String representationETag(String etag, WebRequest request) {
+        return "W/" + etag.substring(0, etag.length() - 1) + formatSuffix(request) + "\"";
+    }
+    
+    // Follows the Accept header's q-values (highest wins, the first one listed on a tie),
+    // like the content negotiation that picks the converter
+    private static String formatSuffix(WebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank()) {
+            return "";
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+        String format = "";
+        double bestQuality = 0;
+        for (MediaType mediaType : mediaTypes) {
+            double quality = mediaType.getQualityValue();
+            if (quality <= bestQuality) {
+                continue;
+            }
+            if (MediaType.APPLICATION_CBOR.includes(mediaType)) {
+                format = "-cbor";
+            } else if (SMILE.includes(mediaType)) {
+                format = "-smile";
+            } else if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                format = "";
+            } else {
+                // Some other type (e.g. text/html), doesn't decide the format
+                continue;
+            }
+            bestQuality = quality;
+        }
+        return format;
+    }
+
+    // Shortcut for endpoints that always return 200 with a body
+    static <T> ResponseEntity<T> ok(WebRequest request, String etag, Supplier<T> loader) {
+        return respond(request, etag, () -> ResponseEntity.ok(loader.get()));
+    }
+}
@@ -1,17 +1,41 @@
 package com.ordersystem.backend.controller;
 
 // Import all necessary classes
+import com.ordersystem.backend.config.SqlBudget;
+import com.ordersystem.backend.config.StoreContext;
 import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.CustomerSummary;
 import com.ordersystem.backend.model.Order;
 import com.ordersystem.backend.model.OrderStatus;
+import com.ordersystem.backend.service.CustomerSummaryService;
+import com.ordersystem.backend.service.DataVersionTracker;
+import com.ordersystem.backend.service.GlobalStatisticsService;
+import com.ordersystem.backend.service.HotReadCoalescer;
+import com.ordersystem.backend.service.OptimisticRetry;
+import com.ordersystem.backend.service.OrderExportService;
+import com.ordersystem.backend.service.OrderExportService.ExportFilter;
+import com.ordersystem.backend.service.OrderExportService.ExportFormat;
+import com.ordersystem.backend.service.OrderGroupCommitter;
 import com.ordersystem.backend.service.OrderService;
+import com.ordersystem.backend.service.SalesAnalyticsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 // @RestController tells Spring this class handles REST API requests
 @RestController
@@ -25,18 +49,70 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
     
+    // Provides the ETag for order data (used by the statistics endpoint)
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+    
+    // Streams order history for reporting (CSV / NDJSON)
+    @Autowired
+    private OrderExportService orderExportService;
+    
+    // Shares one database load between concurrent identical requests
+    @Autowired
+    private HotReadCoalescer hotReadCoalescer;
+    
+    // Saves concurrent checkouts together when group commit is enabled
+    @Autowired
+    private OrderGroupCommitter orderGroupCommitter;
+    
+    // Retries status changes that lost an optimistic locking race
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+    
+    // Statistics merged over all stores / shards
+    @Autowired
+    private GlobalStatisticsService globalStatisticsService;
+    
+    // Time series of sales for the managers' reports
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+    
+    // Pre-aggregated customer order summaries
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+    
     // POST endpoint: http://localhost:8080/api/orders
     // Creates a new order from the request data
     @PostMapping
     public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest) {
+        // The X-Store-Id header has already routed this request to the store's shard,
+        // an order for another store would end up in the wrong database
+        String store = StoreContext.currentStore();
+        if (orderRequest.getStoreId() == null) {
+            orderRequest.setStoreId(store);
+        } else if (!orderRequest.getStoreId().equals(store)) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("Order is for store " +
+                orderRequest.getStoreId() + " but the " + StoreContext.HEADER + " header says " + store));
+        }
         try {
             // The OrderRequest DTO contains customer info and order items
             // The service will validate stock, create the order, and update inventory
-            Order createdOrder = orderService.createOrder(orderRequest);
+            // (possibly batched with other orders arriving at the same time)
+            Order createdOrder = orderGroupCommitter.placeOrder(orderRequest);
             
             // Return the created order with 201 CREATED status
             return ResponseEntity.status(HttpStatus.CREATED).body(createdOrder);
             
+        } catch (OptimisticLockingFailureException e) {
+            // The stock kept changing under us (very busy product), nothing was saved
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                new ErrorResponse("Stock changed while placing the order, please retry")
+            );
+        } catch (OrderGroupCommitter.CommitTimeoutException e) {
+            // Group commit didn't get to the order in time
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                new ErrorResponse(e.getMessage())
+            );
         } catch (RuntimeException e) {
             // If something goes wrong (e.g., insufficient stock), return error message
             // Creating a simple error response object
@@ -56,6 +132,7 @@ public class OrderController {
     // GET endpoint: http://localhost:8080/api/orders/{id}
     // Returns a specific order by its ID
     @GetMapping("/{id}")
+    @SqlBudget(statements = 4)
     public ResponseEntity<Order> getOrderById(@PathVariable Long id) {
         // Try to find the order
         Optional<Order> order = orderService.getOrderById(id);
@@ -87,11 +164,44 @@ public class OrderController {
     
     // GET endpoint: http://localhost:8080/api/orders/customer?email=customer@example.com
     // Find all orders for a specific customer by email
+    // (for regular customers prefer /customer/summary and the paged /customer/history)
     @GetMapping("/customer")
     public List<Order> getOrdersByCustomerEmail(@RequestParam String email) {
         return orderService.getOrdersByCustomerEmail(email);
     }
     
+    // GET endpoint: http://localhost:8080/api/orders/customer/summary?email=customer@example.com
+    // Loyalty lookup at the till: order count, lifetime spend, last order date and the ids
+    // of the most recent orders, read from one pre-aggregated row
+    @GetMapping("/customer/summary")
+    public ResponseEntity<?> getCustomerSummary(@RequestParam String email) {
+        try {
+            Optional<CustomerSummary> summary = customerSummaryService.getSummary(email);
+            if (summary.isPresent()) {
+                return ResponseEntity.ok(summary.get());
+            } else {
+                // No orders with this email yet
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
+    // GET endpoint: http://localhost:8080/api/orders/customer/history?email=customer@example.com&page=0&size=20
+    // The customer's full order history one page at a time, newest first
+    @GetMapping("/customer/history")
+    public ResponseEntity<?> getCustomerHistory(
+            @RequestParam String email,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return ResponseEntity.ok(customerSummaryService.getHistory(email, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
     // GET endpoint: http://localhost:8080/api/orders/today
     // Returns all orders placed today
     @GetMapping("/today")
@@ -112,9 +222,20 @@ public ResponseEntity<?> updateOrderStatus(
         
         // Update the order status
         // This may also restore stock if order is cancelled
-        Order updatedOrder = orderService.updateOrderStatus(id, newStatus);
+        // If another request changed the order at the same time, this is retried on the fresh order
+        // (e.g. a second cancel then sees CANCELLED and is rejected instead of restoring the stock twice)
+        Order updatedOrder = optimisticRetry.execute("order-status",
+            () -> orderService.updateOrderStatus(id, newStatus));
         
         return ResponseEntity.ok(updatedOrder);
+    } catch (OptimisticLockingFailureException e) {
+        // Still conflicting after all retries
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(
+            new ErrorResponse("Order " + id + " is being changed by another request, please retry")
+        );
+    } catch (IllegalStateException e) {
+        // The order's current status doesn't allow this change (OrderStatus.canTransitionTo)
+        return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
     } catch (IllegalArgumentException e) {
         // Invalid status provided - catch this FIRST (more specific exception)
         return ResponseEntity.badRequest().body(
@@ -127,14 +248,44 @@ public ResponseEntity<?> updateOrderStatus(
     }
 }
     
+    // PUT endpoint: http://localhost:8080/api/orders/status
+    // Changes the status of many orders at once, e.g. at the end of a shift
+    // Request body: {"orderIds": [1, 2, 3], "status": "COMPLETED"}
+    // Orders whose current status doesn't allow the change are returned in skippedOrderIds
+    @PutMapping("/status")
+    public ResponseEntity<?> updateOrderStatuses(@RequestBody BulkStatusUpdateRequest bulkRequest) {
+        OrderStatus newStatus;
+        try {
+            newStatus = OrderStatus.valueOf(bulkRequest.getStatus().toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Invalid status: " + bulkRequest.getStatus())
+            );
+        }
+        
+        try {
+            return ResponseEntity.ok(orderService.updateOrderStatuses(bulkRequest.getOrderIds(), newStatus));
+        } catch (IllegalArgumentException e) {
+            // No ids or too many ids
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
     // PUT endpoint: http://localhost:8080/api/orders/{id}/cancel
     // Cancels an order and restores the stock
     @PutMapping("/{id}/cancel")
     public ResponseEntity<?> cancelOrder(@PathVariable Long id) {
         try {
             // Cancel the order (this will restore stock automatically)
-            Order cancelledOrder = orderService.cancelOrder(id);
+            Order cancelledOrder = optimisticRetry.execute("order-status", () -> orderService.cancelOrder(id));
             return ResponseEntity.ok(cancelledOrder);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                new ErrorResponse("Order " + id + " is being changed by another request, please retry")
+            );
+        } catch (IllegalStateException e) {
+            // Already completed or cancelled
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -146,8 +297,15 @@ public ResponseEntity<?> updateOrderStatus(
     public ResponseEntity<?> completeOrder(@PathVariable Long id) {
         try {
             // Mark the order as completed
-            Order completedOrder = orderService.completeOrder(id);
+            Order completedOrder = optimisticRetry.execute("order-status", () -> orderService.completeOrder(id));
             return ResponseEntity.ok(completedOrder);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                new ErrorResponse("Order " + id + " is being changed by another request, please retry")
+            );
+        } catch (IllegalStateException e) {
+            // Already completed or cancelled
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
@@ -156,9 +314,127 @@ public ResponseEntity<?> updateOrderStatus(
     // GET endpoint: http://localhost:8080/api/orders/statistics
     // Returns statistics about all orders
     @GetMapping("/statistics")
-    public OrderService.OrderStatistics getOrderStatistics() {
+    @SqlBudget(statements = 5, rows = 5)
+    public ResponseEntity<OrderService.OrderStatistics> getOrderStatistics(WebRequest request) {
         // Returns counts of orders by status and total revenue
-        return orderService.getOrderStatistics();
+        // Answers 304 Not Modified if no order changed since the client's last poll
+        return ConditionalGet.ok(request, dataVersionTracker.ordersETag(),
+            () -> hotReadCoalescer.getOrderStatistics());
+    }
+    
+    // GET endpoint: http://localhost:8080/api/orders/top-products?limit=10
+    // Best selling products over all stores, merged by product name
+    @GetMapping("/top-products")
+    @SqlBudget(statements = 1)
+    public ResponseEntity<?> getTopProducts(@RequestParam(defaultValue = "10") int limit, WebRequest request) {
+        if (limit < 1 || limit > GlobalStatisticsService.MAX_TOP_PRODUCTS) {
+            return ResponseEntity.badRequest().body(
+                new ErrorResponse("Limit must be between 1 and " + GlobalStatisticsService.MAX_TOP_PRODUCTS)
+            );
+        }
+        // The sold quantities only change with orders
+        return ConditionalGet.ok(request, dataVersionTracker.ordersETag(),
+            () -> globalStatisticsService.getTopProducts(limit));
+    }
+    
+    // GET endpoint: http://localhost:8080/api/orders/analytics?from=2026-01-01&to=2026-12-31&interval=day&groupBy=product
+    // Orders, units and revenue per hour, day or week of the range (both days inclusive), in columns
+    // groupBy: none (default), product or status; status: only orders in that status
+    // (default: all but cancelled ones)
+    @GetMapping("/analytics")
+    public ResponseEntity<?> getSalesAnalytics(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String interval,
+            @RequestParam(defaultValue = "none") String groupBy,
+            @RequestParam(required = false) String status) {
+        try {
+            SalesAnalyticsService.Interval bucketSize = SalesAnalyticsService.Interval.valueOf(interval.toUpperCase());
+            SalesAnalyticsService.GroupBy grouping = SalesAnalyticsService.GroupBy.valueOf(groupBy.toUpperCase());
+            OrderStatus orderStatus = status == null ? null : OrderStatus.valueOf(status.toUpperCase());
+            return ResponseEntity.ok(salesAnalyticsService.getSeries(from, to, bucketSize, grouping, orderStatus));
+        } catch (IllegalArgumentException e) {
+            // Unknown interval/groupBy/status, or a range that is too large
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+    
+    // GET endpoint: http://localhost:8080/api/orders/export?format=csv&from=2026-01-01&to=2026-01-31&status=COMPLETED
+    // Streams one row per order, all filters are optional
+    // format: csv (default), ndjson or cbor (a CBOR sequence), the response is gzipped if the client accepts it
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String status,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return export("orders", format, from, to, status, acceptEncoding, false);
+    }
+    
+    // GET endpoint: http://localhost:8080/api/orders/export/items?format=ndjson&from=2026-01-01
+    // Same as /export but one row per order item (with product name and line total)
+    @GetMapping("/export/items")
+    public ResponseEntity<StreamingResponseBody> exportOrderItems(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String status,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return export("order-items", format, from, to, status, acceptEncoding, true);
+    }
+    
+    private ResponseEntity<StreamingResponseBody> export(String name, String format, LocalDate from, LocalDate to,
+                                                         String status, String acceptEncoding, boolean items) {
+        ExportFormat exportFormat;
+        ExportFilter filter;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+            OrderStatus orderStatus = status == null ? null : OrderStatus.valueOf(status.toUpperCase());
+            filter = new ExportFilter(from, to, orderStatus);
+        } catch (IllegalArgumentException e) {
+            // Unknown format or status
+            return ResponseEntity.badRequest().build();
+        }
+        
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        
+        // The body is written after this method returns, on Spring MVC's async thread,
+        // straight from the database cursor to the client
+        // That thread doesn't know the request's store, so it is passed on (it picks the shard to read)
+        String store = StoreContext.currentStore();
+        StreamingResponseBody body = outputStream -> {
+            try {
+                StoreContext.forStore(store, () -> {
+                    try {
+                        OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream;
+                        if (items) {
+                            orderExportService.exportOrderItems(filter, exportFormat, out);
+                        } else {
+                            orderExportService.exportOrders(filter, exportFormat, out);
+                        }
+                        if (out instanceof GZIPOutputStream gzipOut) {
+                            gzipOut.finish();
+                        }
+                        return null;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"" + name + "." + exportFormat.getFileExtension() + "\"")
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
     }
     
     // Inner class for error responses
@@ -192,4 +468,27 @@ public ResponseEntity<?> updateOrderStatus(
             this.status = status;
         }
     }
+    
+    // Inner class for bulk status update requests
+    // This handles JSON like: {"orderIds": [1, 2, 3], "status": "CANCELLED"}
+    static class BulkStatusUpdateRequest {
+        private List<Long> orderIds;
+        private String status;
+        
+        public List<Long> getOrderIds() {
+            return orderIds;
+        }
+        
+        public void setOrderIds(List<Long> orderIds) {
+            this.orderIds = orderIds;
+        }
+        
+        public String getStatus() {
+            return status;
+        }
+        
+        public void setStatus(String status) {
+            this.status = status;
+        }
+    }
 }
\ No newline at end of file
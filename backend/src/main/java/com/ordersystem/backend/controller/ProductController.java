@@ -1,13 +1,31 @@
 package com.ordersystem.backend.controller;
 
 // All necessary imports for ProductController
+import com.ordersystem.backend.config.SqlBudget;
 import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.AvailabilityService;
+import com.ordersystem.backend.service.DataVersionTracker;
+import com.ordersystem.backend.service.HotReadCoalescer;
+import com.ordersystem.backend.service.OptimisticRetry;
+import com.ordersystem.backend.service.ProductCache;
+import com.ordersystem.backend.service.ProductImportService;
 import com.ordersystem.backend.service.ProductService;
+import com.ordersystem.backend.service.ReorderEngine;
+import com.ordersystem.backend.service.StockBucketRebalancer;
+import com.ordersystem.backend.service.StockBucketService;
+import com.ordersystem.backend.service.StockJournalCompactor;
+import com.ordersystem.backend.service.StockJournalService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,31 +47,80 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    // Provides the ETag for product data, so unchanged responses can return 304
+    // without querying the database (see ConditionalGet)
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+    
+    // Handles bulk CSV imports of the catalogue
+    @Autowired
+    private ProductImportService productImportService;
+    
+    // Shares one database load between concurrent identical requests
+    @Autowired
+    private HotReadCoalescer hotReadCoalescer;
+    
+    // Retries updates that lost an optimistic locking race
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+    
+    // Demand-based reorder suggestions
+    @Autowired
+    private ReorderEngine reorderEngine;
+    
+    // Second-level cache statistics and eviction
+    @Autowired
+    private ProductCache productCache;
+    
+    // Available-to-promise: stock minus open orders and cart holds
+    @Autowired
+    private AvailabilityService availabilityService;
+    
+    // Stock history (movements) and point-in-time stock
+    @Autowired
+    private StockJournalService stockJournalService;
+    
+    @Autowired
+    private StockJournalCompactor stockJournalCompactor;
+    
+    // Stock of best-sellers split over several rows
+    @Autowired
+    private StockBucketService stockBucketService;
+    
+    @Autowired
+    private StockBucketRebalancer stockBucketRebalancer;
+    
     // GET endpoint: http://localhost:8080/api/products
     // @GetMapping handles HTTP GET requests
     // This method returns all products as a JSON array
     @GetMapping
-    public List<Product> getAllProducts() {
+    @SqlBudget(statements = 2)
+    public ResponseEntity<List<Product>> getAllProducts(WebRequest request) {
         // Call the service layer to get all products from the database
-        return productService.getAllProducts();
+        return ConditionalGet.ok(request, dataVersionTracker.productsETag(),
+            () -> productService.getAllProducts());
     }
     
     // GET endpoint: http://localhost:8080/api/products/{id}
     // {id} is a path variable - e.g., /api/products/1 gets product with ID 1
     // @PathVariable extracts the {id} value from the URL
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable Long id) {
-        // Optional is a container that may or may not contain a value
-        // It helps avoid null pointer exceptions
-        Optional<Product> product = productService.getProductById(id);
-        
-        // If product exists, return it with 200 OK status
-        // If not found, return 404 NOT FOUND status
-        if (product.isPresent()) {
-            return ResponseEntity.ok(product.get());
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+    @SqlBudget(statements = 2)
+    public ResponseEntity<Product> getProductById(@PathVariable Long id, WebRequest request) {
+        return ConditionalGet.respond(request, dataVersionTracker.productsETag(), () -> {
+            // Optional is a container that may or may not contain a value
+            // It helps avoid null pointer exceptions
+            // Concurrent requests for the same product share one query
+            Optional<Product> product = hotReadCoalescer.getProductById(id);
+            
+            // If product exists, return it with 200 OK status
+            // If not found, return 404 NOT FOUND status
+            if (product.isPresent()) {
+                return ResponseEntity.ok(product.get());
+            } else {
+                return ResponseEntity.<Product>notFound().build();
+            }
+        });
     }
     
     // POST endpoint: http://localhost:8080/api/products
@@ -76,16 +143,29 @@ public class ProductController {
     
     // PUT endpoint: http://localhost:8080/api/products/{id}
     // @PutMapping handles HTTP PUT requests (used for updating existing resources)
-    // Updates the entire product with the given ID
+    // Updates the catalogue fields (name, description, price, minStockLevel) that are sent;
+    // stockQuantity is ignored, use the restock endpoint for stock.
+    // Send the "version" you loaded to get 409 CONFLICT if someone else changed the product since
     @PutMapping("/{id}")
-    public ResponseEntity<Product> updateProduct(
+    public ResponseEntity<?> updateProduct(
             @PathVariable Long id,  // Get ID from URL
             @RequestBody Product productDetails) {  // Get updated data from request body
         try {
             // Update the product using the service layer
-            Product updatedProduct = productService.updateProduct(id, productDetails);
+            // Without a client version, a conflict with a concurrent change is simply retried;
+            // with one, retrying can't help (the client's copy is out of date)
+            Product updatedProduct = productDetails.getVersion() == null
+                ? optimisticRetry.execute("product-update", () -> productService.updateProduct(id, productDetails))
+                : productService.updateProduct(id, productDetails);
             // Return the updated product with 200 OK status
             return ResponseEntity.ok(updatedProduct);
+        } catch (OptimisticLockingFailureException e) {
+            // The product was changed by someone else, the client should reload it
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("Product " + id + " was changed by another user, please reload it");
+        } catch (IllegalArgumentException e) {
+            // Invalid values (e.g. negative price)
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (RuntimeException e) {
             // If product not found, return 404 NOT FOUND
             return ResponseEntity.notFound().build();
@@ -112,25 +192,176 @@ public class ProductController {
     // Custom endpoint to get products with low stock
     // The path is relative to the base path (/api/products)
     @GetMapping("/low-stock")
-    public List<Product> getLowStockProducts() {
+    @SqlBudget(statements = 2)
+    public ResponseEntity<List<Product>> getLowStockProducts(WebRequest request) {
         // Returns all products where stock is below minimum level
-        return productService.getLowStockProducts();
+        return ConditionalGet.ok(request, dataVersionTracker.productsETag(),
+            () -> productService.getLowStockProducts());
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/{id}/availability
+    // What can still be promised to a new order: on hand, committed to open orders,
+    // held for carts and available to promise (see AvailabilityService)
+    @GetMapping("/{id}/availability")
+    @SqlBudget(statements = 3)
+    public ResponseEntity<AvailabilityService.Availability> getAvailability(@PathVariable Long id) {
+        Optional<AvailabilityService.Availability> availability = availabilityService.getAvailability(id);
+        if (availability.isPresent()) {
+            return ResponseEntity.ok(availability.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/availability?ids=1,2,3
+    // The same for several products at once (at most 500), unknown ids are left out
+    @GetMapping("/availability")
+    @SqlBudget(statements = 3)
+    public ResponseEntity<?> getAvailability(@RequestParam List<Long> ids) {
+        try {
+            return ResponseEntity.ok(availabilityService.getAvailability(ids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/{id}/stock?at=2026-01-31T18:00:00
+    // The product's stock according to the stock journal at that time (now if "at" is left out):
+    // its last snapshot before then plus the movements after it, with today's stock for comparison
+    @GetMapping("/{id}/stock")
+    @SqlBudget(statements = 5)
+    public ResponseEntity<?> getStockAt(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        try {
+            Optional<StockJournalService.JournalStock> stock = stockJournalService.getStockAt(id, at);
+            if (stock.isPresent()) {
+                return ResponseEntity.ok(stock.get());
+            } else {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/{id}/movements?limit=50&beforeId=1234
+    // Why the stock changed (sale, cancellation, restock, ...), newest first
+    // For the next page pass the id of the last movement as beforeId
+    @GetMapping("/{id}/movements")
+    @SqlBudget(statements = 1)
+    public ResponseEntity<?> getStockMovements(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) Long beforeId) {
+        try {
+            return ResponseEntity.ok(stockJournalService.getMovements(id, limit, beforeId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // POST endpoint: http://localhost:8080/api/products/stock-journal/compact
+    // Folds the stock journal into snapshots now instead of waiting for the next scheduled run
+    @PostMapping("/stock-journal/compact")
+    public ResponseEntity<String> compactStockJournal() {
+        long snapshots = stockJournalCompactor.compact();
+        return ResponseEntity.ok(snapshots + " snapshots written");
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/{id}/stock-buckets
+    // Where the product's stock is: on its row and in each of its stock buckets
+    @GetMapping("/{id}/stock-buckets")
+    @SqlBudget(statements = 2)
+    public ResponseEntity<StockBucketService.StockBuckets> getStockBuckets(@PathVariable Long id) {
+        Optional<StockBucketService.StockBuckets> buckets = stockBucketService.getBuckets(id);
+        if (buckets.isPresent()) {
+            return ResponseEntity.ok(buckets.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // PUT endpoint: http://localhost:8080/api/products/{id}/stock-buckets?count=8
+    // Splits a best-seller's stock over count rows, so concurrent checkouts of it don't all wait
+    // for the same row (see StockBucketService); count=0 puts it back on the product row
+    // 400 if stock buckets are turned off (app.stock-buckets.enabled) or count is out of range
+    @PutMapping("/{id}/stock-buckets")
+    public ResponseEntity<?> setStockBuckets(@PathVariable Long id, @RequestParam int count) {
+        try {
+            return ResponseEntity.ok(stockBucketService.setBuckets(id, count));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    // POST endpoint: http://localhost:8080/api/products/stock-buckets/rebalance
+    // Evens out the stock buckets now instead of waiting for the next scheduled run
+    @PostMapping("/stock-buckets/rebalance")
+    public ResponseEntity<String> rebalanceStockBuckets() {
+        int products = stockBucketRebalancer.rebalance();
+        return ResponseEntity.ok(products + " products rebalanced");
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/reorder-suggestions?limit=100
+    // Ranked reorder list from the last reorder engine run: products whose stock won't
+    // last through the supplier lead time at their current sales rate, most urgent first,
+    // with a suggested order quantity (see ReorderEngine)
+    @GetMapping("/reorder-suggestions")
+    public ResponseEntity<?> getReorderSuggestions(@RequestParam(defaultValue = "100") int limit) {
+        try {
+            ReorderEngine.ReorderReport report = reorderEngine.getLatestReport(limit);
+            if (report == null) {
+                // The first run starts when the application is ready and takes a few seconds
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body("Reorder suggestions are not computed yet, try again shortly");
+            }
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // POST endpoint: http://localhost:8080/api/products/reorder-suggestions/refresh?limit=100
+    // Runs the reorder engine now instead of waiting for the next scheduled run
+    @PostMapping("/reorder-suggestions/refresh")
+    public ResponseEntity<?> refreshReorderSuggestions(@RequestParam(defaultValue = "100") int limit) {
+        try {
+            reorderEngine.refresh();
+            return ResponseEntity.ok(reorderEngine.getLatestReport(limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
     
     // GET endpoint: http://localhost:8080/api/products/search?name=productName
     // @RequestParam extracts query parameters from the URL
-    // Example: /api/products/search?name=laptop
+    // Example: /api/products/search?name=laptop&limit=20&offset=0
+    // Matches name and description, best matches first, and works on partial words as you type
     @GetMapping("/search")
-    public List<Product> searchProducts(@RequestParam String name) {
-        // Search for products by name (partial match, case-insensitive)
-        return productService.searchProductsByName(name);
+    public ResponseEntity<List<Product>> searchProducts(
+            @RequestParam String name,
+            @RequestParam(defaultValue = "" + ProductService.DEFAULT_SEARCH_LIMIT) int limit,
+            @RequestParam(defaultValue = "0") int offset,
+            WebRequest request) {
+        try {
+            // The ETag is per data version, the browser keeps one cached copy per search URL
+            return ConditionalGet.ok(request, dataVersionTracker.productsETag(),
+                () -> productService.searchProducts(name, limit, offset));
+        } catch (IllegalArgumentException e) {
+            // Limit or offset out of range
+            return ResponseEntity.badRequest().build();
+        }
     }
     
     // GET endpoint: http://localhost:8080/api/products/in-stock
     // Returns only products that have stock > 0
     @GetMapping("/in-stock")
-    public List<Product> getProductsInStock() {
-        return productService.getProductsInStock();
+    public ResponseEntity<List<Product>> getProductsInStock(WebRequest request) {
+        return ConditionalGet.ok(request, dataVersionTracker.productsETag(),
+            () -> productService.getProductsInStock());
     }
     
     // PUT endpoint: http://localhost:8080/api/products/{id}/restock?quantity=50
@@ -142,18 +373,67 @@ public class ProductController {
             @RequestParam Integer quantity) {  // Quantity to add from query parameter
         try {
             // Add the specified quantity to the product's stock
-            Product restockedProduct = productService.restockProduct(id, quantity);
+            // Safe to retry: a failed attempt is rolled back and the next one adds to the current stock
+            Product restockedProduct = optimisticRetry.execute("product-restock",
+                () -> productService.restockProduct(id, quantity));
             return ResponseEntity.ok(restockedProduct);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (RuntimeException e) {
             return ResponseEntity.notFound().build();
         }
     }
     
+    // POST endpoint: http://localhost:8080/api/products/import
+    // Body: a CSV file (Content-Type: text/csv) with the header
+    // name,description,price,stockQuantity,minStockLevel
+    // Products are matched by name within the caller's store: existing ones are updated, new ones are created
+    // Returns counts, throughput and the rows that were rejected (with their line numbers)
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<?> importProducts(InputStream csv) throws IOException {
+        try {
+            return ResponseEntity.ok(productImportService.importProducts(csv));
+        } catch (IllegalArgumentException e) {
+            // Empty file or missing required columns
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // POST endpoint: http://localhost:8080/api/products/import/prices
+    // Body: a CSV file (Content-Type: text/csv) with the header name,price
+    // Only updates the price of existing products, unknown names are reported as errors
+    @PostMapping(value = "/import/prices", consumes = "text/csv")
+    public ResponseEntity<?> importPrices(InputStream csv) throws IOException {
+        try {
+            return ResponseEntity.ok(productImportService.importPrices(csv));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
     // GET endpoint: http://localhost:8080/api/products/statistics
-    // Returns aggregated statistics about all products
+    // Returns aggregated statistics about all products (of all stores)
     @GetMapping("/statistics")
-    public ProductService.ProductStatistics getProductStatistics() {
+    @SqlBudget(statements = 1, rows = 1)
+    public ResponseEntity<ProductService.ProductStatistics> getProductStatistics(WebRequest request) {
         // Returns total products, low stock count, out of stock count
-        return productService.getProductStatistics();
+        return ConditionalGet.ok(request, dataVersionTracker.allProductsETag(),
+            () -> hotReadCoalescer.getProductStatistics());
+    }
+    
+    // GET endpoint: http://localhost:8080/api/products/cache-statistics
+    // Hits, misses and entries of the product cache regions since startup
+    // (the same numbers are in /actuator/metrics/hibernate.second.level.cache.requests)
+    @GetMapping("/cache-statistics")
+    public ResponseEntity<ProductCache.CacheStatistics> getCacheStatistics() {
+        return ResponseEntity.ok(productCache.getStatistics());
+    }
+    
+    // DELETE endpoint: http://localhost:8080/api/products/cache
+    // Empties the second-level cache, needed after products were changed directly in the database
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> clearCache() {
+        productCache.evictAll();
+        return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.controller.OrderController.ErrorResponse;
+import com.ordersystem.backend.service.ProfilingService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Admin endpoints for on-demand Java Flight Recorder profiling (see ProfilingService)
+// Only reachable with the X-Admin-Token header (AdminTokenFilter)
+@RestController
+@RequestMapping("/api/admin/profiling")
+public class ProfilingController {
+
+    @Autowired
+    private ProfilingService profilingService;
+
+    // POST endpoint: http://localhost:8080/api/admin/profiling/start?preset=cpu&durationSeconds=60
+    // preset: cpu, allocation, locks or jdbc; durationSeconds is optional (default and max: app.profiling.max-duration)
+    // Returns 409 if a recording is already running
+    @PostMapping("/start")
+    public ResponseEntity<?> start(@RequestParam String preset,
+                                   @RequestParam(required = false) Long durationSeconds) {
+        try {
+            Duration duration = durationSeconds == null ? null : Duration.ofSeconds(durationSeconds);
+            return ResponseEntity.ok(profilingService.start(ProfilingService.Preset.fromString(preset), duration));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorResponse(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // POST endpoint: http://localhost:8080/api/admin/profiling/stop
+    // Stops the recording and downloads it as a .jfr file (open it with JDK Mission Control)
+    // Also works after the recording stopped by itself; 404 if there is nothing to download
+    @PostMapping("/stop")
+    public ResponseEntity<StreamingResponseBody> stop() {
+        Path file;
+        try {
+            file = profilingService.stop();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = outputStream -> {
+            try {
+                Files.copy(file, outputStream);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        String name = "ordersystem-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr";
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"")
+            .body(body);
+    }
+
+    // GET endpoint: http://localhost:8080/api/admin/profiling
+    @GetMapping
+    public ProfilingService.ProfilingStatus getStatus() {
+        return profilingService.getStatus();
+    }
+}
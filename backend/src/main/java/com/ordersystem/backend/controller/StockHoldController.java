@@ -0,0 +1,77 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.controller.OrderController.ErrorResponse;
+import com.ordersystem.backend.dto.StockHoldRequest;
+import com.ordersystem.backend.service.StockHoldService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+
+// REST endpoints for stock holds: the POS reserves the stock of a cart while it is being
+// scanned, then checks out with the hold's id in the order request (OrderRequest.holdId)
+// Holds belong to the store of the X-Store-Id header, like orders.
+@RestController
+@RequestMapping("/api/holds")
+@CrossOrigin(origins = "http://localhost:4200")
+public class StockHoldController {
+
+    @Autowired
+    private StockHoldService stockHoldService;
+
+    // POST endpoint: http://localhost:8080/api/holds
+    // Body: {"items": [{"productId": 1, "quantity": 2}], "ttlSeconds": 900}  (ttlSeconds is optional)
+    // Returns 201 with the hold (id, items, expiresAt), or 400 if a product doesn't have enough stock
+    @PostMapping
+    public ResponseEntity<?> createHold(@RequestBody StockHoldRequest request) {
+        try {
+            StockHoldService.StockHold hold = stockHoldService.createHold(request.getItems(), request.getTtlSeconds());
+            return ResponseEntity.status(HttpStatus.CREATED).body(hold);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // PUT endpoint: http://localhost:8080/api/holds/{id}
+    // Replaces the held items (the cart changed) and restarts the TTL
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateHold(@PathVariable String id, @RequestBody StockHoldRequest request) {
+        try {
+            return ResponseEntity.ok(stockHoldService.updateHold(id, request.getItems(), request.getTtlSeconds()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // GET endpoint: http://localhost:8080/api/holds/{id}
+    // 404 once the hold has expired, been released or checked out
+    @GetMapping("/{id}")
+    public ResponseEntity<StockHoldService.StockHold> getHold(@PathVariable String id) {
+        Optional<StockHoldService.StockHold> hold = stockHoldService.getHold(id);
+        if (hold.isPresent()) {
+            return ResponseEntity.ok(hold.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // DELETE endpoint: http://localhost:8080/api/holds/{id}
+    // Gives the stock back right away (cart abandoned)
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> releaseHold(@PathVariable String id) {
+        if (stockHoldService.releaseHold(id)) {
+            return ResponseEntity.noContent().build();
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // GET endpoint: http://localhost:8080/api/holds/statistics
+    // Active holds, held units and how many holds were converted, expired or released
+    @GetMapping("/statistics")
+    public StockHoldService.HoldStatistics getStatistics() {
+        return stockHoldService.getStatistics();
+    }
+}
@@ -4,9 +4,15 @@ import java.util.List;
 
 // DTO (Data Transfer Object) for receiving order creation requests
 public class OrderRequest {
+    // Optional: the store placing the order. The X-Store-Id header decides the store (and shard);
+    // if both are sent they must match. Filled in from the header when missing.
+    private String storeId;
     private String customerName;
     private String customerEmail;
     private List<OrderItemRequest> orderItems;
+    // Optional: the stock hold of this cart (see StockHoldService), its quantities are
+    // available to this order and the hold ends when the order is saved
+    private String holdId;
     
     // Default constructor
     public OrderRequest() {}
@@ -19,6 +25,14 @@ public class OrderRequest {
     }
     
     // Getters and Setters
+    public String getStoreId() {
+        return storeId;
+    }
+    
+    public void setStoreId(String storeId) {
+        this.storeId = storeId;
+    }
+    
     public String getCustomerName() {
         return customerName;
     }
@@ -42,4 +56,12 @@ public class OrderRequest {
     public void setOrderItems(List<OrderItemRequest> orderItems) {
         this.orderItems = orderItems;
     }
+    
+    public String getHoldId() {
+        return holdId;
+    }
+    
+    public void setHoldId(String holdId) {
+        this.holdId = holdId;
+    }
 }
\ No newline at end of file
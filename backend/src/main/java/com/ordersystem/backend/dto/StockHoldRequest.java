@@ -0,0 +1,30 @@
+package com.ordersystem.backend.dto;
+
+import java.util.List;
+
+// DTO for creating or replacing a stock hold (the items of a cart that is still being scanned)
+public class StockHoldRequest {
+    private List<OrderItemRequest> items;
+    // Optional: how long the hold lasts, app.stock-holds.default-ttl when missing
+    private Integer ttlSeconds;
+    
+    // Default constructor
+    public StockHoldRequest() {}
+    
+    // Getters and Setters
+    public List<OrderItemRequest> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<OrderItemRequest> items) {
+        this.items = items;
+    }
+    
+    public Integer getTtlSeconds() {
+        return ttlSeconds;
+    }
+    
+    public void setTtlSeconds(Integer ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+}
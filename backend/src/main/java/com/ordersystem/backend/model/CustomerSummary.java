@@ -0,0 +1,108 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Pre-aggregated order history of one customer, for loyalty lookups at the till
+// One row per customer, keyed by the normalized (trimmed, lower case) email address.
+// The row is kept up to date by OrderService whenever an order is placed or changes status
+// (see CustomerSummaryService), so a lookup is a single primary key read instead of
+// scanning all of the customer's orders.
+@Entity
+@Table(name = "customer_summaries")
+public class CustomerSummary {
+
+    // Normalized email address (see CustomerSummaryService.normalizeEmail)
+    @Id
+    private String email;
+
+    // Name used on the customer's most recent order
+    private String customerName;
+
+    // All orders, whatever their status
+    @Column(nullable = false)
+    private long orderCount;
+
+    // Completed orders and the money they brought in (lifetime spend)
+    @Column(nullable = false)
+    private long completedOrderCount;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal completedSpend = BigDecimal.ZERO;
+
+    private LocalDateTime firstOrderDate;
+
+    private LocalDateTime lastOrderDate;
+
+    // Ids of the most recent orders, newest first (at most CustomerSummaryService.MAX_RECENT_ORDERS)
+    @Column(columnDefinition = "bigint[]")
+    private Long[] recentOrderIds = new Long[0];
+
+    // Default constructor (required by JPA)
+    public CustomerSummary() {}
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public long getCompletedOrderCount() {
+        return completedOrderCount;
+    }
+
+    public void setCompletedOrderCount(long completedOrderCount) {
+        this.completedOrderCount = completedOrderCount;
+    }
+
+    public BigDecimal getCompletedSpend() {
+        return completedSpend;
+    }
+
+    public void setCompletedSpend(BigDecimal completedSpend) {
+        this.completedSpend = completedSpend;
+    }
+
+    public LocalDateTime getFirstOrderDate() {
+        return firstOrderDate;
+    }
+
+    public void setFirstOrderDate(LocalDateTime firstOrderDate) {
+        this.firstOrderDate = firstOrderDate;
+    }
+
+    public LocalDateTime getLastOrderDate() {
+        return lastOrderDate;
+    }
+
+    public void setLastOrderDate(LocalDateTime lastOrderDate) {
+        this.lastOrderDate = lastOrderDate;
+    }
+
+    public Long[] getRecentOrderIds() {
+        return recentOrderIds;
+    }
+
+    public void setRecentOrderIds(Long[] recentOrderIds) {
+        this.recentOrderIds = recentOrderIds;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// How far an incremental background job has got
+// e.g. the reorder engine stores the id of the last order it has rolled up,
+// the next run only reads orders with a higher id
+@Entity
+@Table(name = "job_watermarks")
+public class JobWatermark {
+
+    // Name of the job
+    @Id
+    private String name;
+
+    // Last order id that has been processed
+    @Column(nullable = false)
+    private long lastOrderId;
+
+    private LocalDateTime updatedAt;
+
+    // Default constructor (required by JPA)
+    public JobWatermark() {}
+
+    public JobWatermark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getLastOrderId() {
+        return lastOrderId;
+    }
+
+    public void setLastOrderId(long lastOrderId) {
+        this.lastOrderId = lastOrderId;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -1,13 +1,17 @@
 package com.ordersystem.backend.model;
 
 import jakarta.persistence.*;  // JPA annotations
+import org.hibernate.annotations.BatchSize;
 import java.math.BigDecimal;   // For precise decimal calculations
 import java.time.LocalDateTime; // For date and time handling
 import java.util.ArrayList;    // For dynamic lists
 import java.util.List;         // List interface
 
 @Entity
-@Table(name = "orders")
+// Sales analytics (SalesAnalyticsService) read one store's orders of a time range
+@Table(name = "orders", indexes = {
+    @Index(name = "idx_orders_store_date", columnList = "store_id, order_date")
+})
 public class Order {
     
     @Id
@@ -38,9 +42,22 @@ public class Order {
     // mappedBy = "order" means the OrderItem entity has an "order" field that owns this relationship
     // cascade = CascadeType.ALL means when we save/delete an order, also save/delete its items
     // fetch = FetchType.LAZY means order items are loaded only when needed (better performance)
+    // @BatchSize loads the items of up to 100 orders of a list with one query
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
     private List<OrderItem> orderItems = new ArrayList<>();
     
+    // The store the order was placed in (see StoreContext); the order lives on that store's shard
+    // Orders from before stores existed belong to "default"
+    @Column(name = "store_id", nullable = false, length = 64, columnDefinition = "varchar(64) default 'default'")
+    private String storeId;
+    
+    // Optimistic locking: two requests changing the same order at once (e.g. two cancels)
+    // can't both succeed, the second one fails and is retried on the fresh data
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+    
     // Default constructor
     public Order() {}
     
@@ -62,6 +79,14 @@ public class Order {
         this.id = id;
     }
     
+    public String getStoreId() {
+        return storeId;
+    }
+    
+    public void setStoreId(String storeId) {
+        this.storeId = storeId;
+    }
+    
     public LocalDateTime getOrderDate() {
         return orderDate;
     }
@@ -102,6 +127,14 @@ public class Order {
         this.status = status;
     }
     
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     public List<OrderItem> getOrderItems() {
         return orderItems;
     }
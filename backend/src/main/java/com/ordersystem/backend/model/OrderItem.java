@@ -1,10 +1,19 @@
 package com.ordersystem.backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "order_items")
+// Indexes on both foreign keys: loading an order's items looks them up by order_id,
+// and deleting/locking a product makes PostgreSQL check order_items by product_id
+// (PostgreSQL does not index foreign key columns by itself)
+@Table(name = "order_items", indexes = {
+    @Index(name = "idx_order_items_order_id", columnList = "order_id"),
+    @Index(name = "idx_order_items_product_id", columnList = "product_id")
+})
 public class OrderItem {
     
     @Id
@@ -13,12 +22,18 @@ public class OrderItem {
     
     // @ManyToOne creates a relationship: many order items can belong to one order
     // @JoinColumn specifies the foreign key column name in the database
+    // @JsonIgnore: items are always serialized inside their order, writing the order again
+    // from each item would recurse (order -> items -> order -> ...) until Jackson gives up
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id", nullable = false)
+    @JsonIgnore
     private Order order;
     
     // @ManyToOne: many order items can reference the same product
     @ManyToOne(fetch = FetchType.EAGER) // EAGER because we usually need product info immediately
+    // Loaded with a separate select instead of a join, so the product comes from the
+    // second-level cache when it's there (misses are loaded 100 at a time, see default_batch_fetch_size)
+    @Fetch(FetchMode.SELECT)
     @JoinColumn(name = "product_id", nullable = false)
     private Product product;
     
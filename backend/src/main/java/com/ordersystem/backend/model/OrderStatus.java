@@ -1,10 +1,38 @@
 package com.ordersystem.backend.model;
 
+import java.util.Arrays;
+import java.util.List;
+
 // Enum defines a fixed set of constants
 // This represents the different states an order can be in
 public enum OrderStatus {
     PENDING,    // Order received but not processed
     CONFIRMED,  // Order confirmed and being prepared
     COMPLETED,  // Order finished and delivered
-    CANCELLED   // Order was cancelled
+    CANCELLED;  // Order was cancelled
+    
+    // Allowed status changes (single orders and the bulk transition endpoint):
+    // PENDING -> CONFIRMED, COMPLETED or CANCELLED
+    // CONFIRMED -> COMPLETED or CANCELLED
+    // COMPLETED and CANCELLED are final
+    public boolean canTransitionTo(OrderStatus target) {
+        return switch (this) {
+            case PENDING -> target == CONFIRMED || target == COMPLETED || target == CANCELLED;
+            case CONFIRMED -> target == COMPLETED || target == CANCELLED;
+            case COMPLETED, CANCELLED -> false;
+        };
+    }
+    
+    // Open orders still have to be shipped: their items count as committed stock
+    // (see ProductCommitment)
+    public boolean isOpen() {
+        return this == PENDING || this == CONFIRMED;
+    }
+    
+    // All statuses an order can be moved to the target status from
+    public static List<OrderStatus> sourcesFor(OrderStatus target) {
+        return Arrays.stream(values())
+            .filter(status -> status.canTransitionTo(target))
+            .toList();
+    }
 }
\ No newline at end of file
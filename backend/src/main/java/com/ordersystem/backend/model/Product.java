@@ -1,12 +1,31 @@
 package com.ordersystem.backend.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.ordersystem.backend.config.SecondLevelCacheConfig;
 import jakarta.persistence.*;  // Import JPA annotations for database mapping
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.annotations.OptimisticLock;
 import java.math.BigDecimal;   // For precise decimal calculations (prices)
 
 // @Entity tells Spring this class represents a database table
 @Entity
 // @Table specifies the actual table name in the database
-@Table(name = "products")
+// Product names are unique within a store: findByName relies on it and the bulk import upserts
+// by store and name (stores may use the same names)
+@Table(name = "products", uniqueConstraints = @UniqueConstraint(name = "uk_products_store_name",
+    columnNames = {"store_id", "name"}))
+// Kept in the second-level cache (see SecondLevelCacheConfig), READ_WRITE so a transaction never
+// reads a product another transaction is still changing
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCacheConfig.PRODUCT_REGION)
+// findByName looks up the id in this cache, then the product in the one above
+@NaturalIdCache(region = SecondLevelCacheConfig.PRODUCT_NATURAL_ID_REGION)
+// Updates only write the columns that changed: the stock isn't version checked (see
+// stockQuantity), so an edit must not write back the stock it loaded
+@DynamicUpdate
 public class Product {
     
     // @Id marks this field as the primary key
@@ -16,6 +35,9 @@ public class Product {
     private Long id;
     
     // @Column(nullable = false) means this field cannot be empty in the database
+    // @NaturalId: together with the store the name identifies a product too
+    // (mutable, products can be renamed)
+    @NaturalId(mutable = true)
     @Column(nullable = false)
     private String name;
     
@@ -27,13 +49,54 @@ public class Product {
     private BigDecimal price;
     
     // How many items we currently have in stock
+    // For a product with stock buckets only the part that isn't in a bucket, getStockQuantity adds them
+    // Not covered by the version: every stock change locks the row first (SELECT ... FOR UPDATE),
+    // so sales and restocks don't need it, and they would otherwise fail every catalogue edit
+    // that was loaded before them
+    @OptimisticLock(excluded = true)
     @Column(nullable = false)
     private Integer stockQuantity;
     
+    // Number of rows the stock is split over (see StockBucket), 0 = all stock is on this row
+    // Set with PUT /api/products/{id}/stock-buckets, not part of the product JSON
+    @JsonIgnore
+    @Column(name = "bucket_count", nullable = false, columnDefinition = "integer default 0")
+    private int bucketCount;
+    
+    // Stock in the product's buckets, read from them every time the product is loaded, from the
+    // database or the second-level cache (see BucketQuantityLoader; products without buckets skip it)
+    // Not part of the entity state, so the cached product never holds it and bucket sales don't
+    // have to evict anything. StockJournalService keeps it in step with its own bucket changes
+    // for the rest of the transaction.
+    @JsonIgnore
+    @Transient
+    private int bucketQuantity;
+    
+    // Whether bucketQuantity has been read since the product was loaded
+    @JsonIgnore
+    @Transient
+    private boolean bucketQuantityLoaded;
+    
     // Minimum stock level - when to reorder
     @Column(nullable = false)
     private Integer minStockLevel;
     
+    // The store this product belongs to (see StoreContext), set from X-Store-Id when it's created
+    // The product is stored on that store's shard; rows from before stores existed belong to "default"
+    // Part of the natural id, never changes
+    @NaturalId
+    @Column(name = "store_id", nullable = false, length = 64, columnDefinition = "varchar(64) default 'default'")
+    private String storeId;
+    
+    // @Version enables optimistic locking: Hibernate adds "WHERE version = ?" to every update
+    // and increases the number, so a change based on stale data fails instead of overwriting.
+    // The column default fills existing rows when the column is added.
+    // Only the catalogue fields count, stock changes leave it alone (see stockQuantity).
+    // Bulk SQL that changes them (imports) must increase it too.
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+    
     // Default constructor (required by JPA)
     public Product() {}
     
@@ -80,12 +143,38 @@ public class Product {
         this.price = price;
     }
     
+    // The whole stock: this row plus the buckets
     public Integer getStockQuantity() {
-        return stockQuantity;
+        return stockQuantity == null ? null : stockQuantity + bucketQuantity;
     }
     
+    // Sets the whole stock, the buckets stay as they are and this row gets the rest
     public void setStockQuantity(Integer stockQuantity) {
-        this.stockQuantity = stockQuantity;
+        this.stockQuantity = stockQuantity == null ? null : stockQuantity - bucketQuantity;
+    }
+    
+    public int getBucketCount() {
+        return bucketCount;
+    }
+    
+    public void setBucketCount(int bucketCount) {
+        this.bucketCount = bucketCount;
+    }
+    
+    public int getBucketQuantity() {
+        return bucketQuantity;
+    }
+    
+    public void setBucketQuantity(int bucketQuantity) {
+        this.bucketQuantity = bucketQuantity;
+    }
+    
+    public boolean isBucketQuantityLoaded() {
+        return bucketQuantityLoaded;
+    }
+    
+    public void setBucketQuantityLoaded(boolean bucketQuantityLoaded) {
+        this.bucketQuantityLoaded = bucketQuantityLoaded;
     }
     
     public Integer getMinStockLevel() {
@@ -96,6 +185,22 @@ public class Product {
         this.minStockLevel = minStockLevel;
     }
     
+    public String getStoreId() {
+        return storeId;
+    }
+    
+    public void setStoreId(String storeId) {
+        this.storeId = storeId;
+    }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+    
     // toString method for debugging and logging
     @Override
     public String toString() {
@@ -103,7 +208,7 @@ public class Product {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", price=" + price +
-                ", stockQuantity=" + stockQuantity +
+                ", stockQuantity=" + getStockQuantity() +
                 '}';
     }
 }
\ No newline at end of file
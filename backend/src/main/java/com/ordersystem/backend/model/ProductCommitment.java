@@ -0,0 +1,43 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+
+// Units of one product promised to open orders (PENDING or CONFIRMED) that haven't shipped yet
+// Kept up to date by OrderService whenever an order is placed or changes status (see
+// AvailabilityService), so the committed demand of a product is a single primary key read
+// instead of scanning the items of every pending order.
+//
+// Stock is taken off products.stock_quantity as soon as an order is placed, so:
+//   on hand (still in the store)  = stock_quantity + committed_quantity
+//   available to promise          = on hand - committed - held for carts = stock_quantity - held
+@Entity
+@Table(name = "product_commitments")
+public class ProductCommitment {
+
+    // Plain id instead of a relationship, the table is written with native SQL only
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "committed_quantity", nullable = false)
+    private long committedQuantity;
+
+    // Default constructor (required by JPA)
+    public ProductCommitment() {}
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public long getCommittedQuantity() {
+        return committedQuantity;
+    }
+
+    public void setCommittedQuantity(long committedQuantity) {
+        this.committedQuantity = committedQuantity;
+    }
+}
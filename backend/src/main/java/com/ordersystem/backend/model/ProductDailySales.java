@@ -0,0 +1,65 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+// Units of one product sold on one day (rollup of order_items)
+// Filled incrementally by the reorder engine (see ReorderEngine), so sales velocity
+// can be computed from a few rows per product instead of scanning all order items.
+// Orders that were already cancelled when they were rolled up are not counted.
+@Entity
+@Table(name = "product_daily_sales",
+       uniqueConstraints = @UniqueConstraint(name = "uk_product_daily_sales_product_date",
+                                             columnNames = {"product_id", "sales_date"}))
+public class ProductDailySales {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain id instead of a relationship, the rollup is written with native SQL only
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "sales_date", nullable = false)
+    private LocalDate salesDate;
+
+    // Units sold that day
+    @Column(nullable = false)
+    private long quantity;
+
+    // Default constructor (required by JPA)
+    public ProductDailySales() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public LocalDate getSalesDate() {
+        return salesDate;
+    }
+
+    public void setSalesDate(LocalDate salesDate) {
+        this.salesDate = salesDate;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+}
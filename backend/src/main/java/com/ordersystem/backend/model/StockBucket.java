@@ -0,0 +1,79 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+
+// Part of a best-selling product's stock (see StockBucketService)
+// A product with bucket_count > 0 keeps its stock in that many rows here instead of on its
+// own row, so concurrent checkouts each lock a different bucket rather than all waiting for
+// the one product row:
+//   stock = products.stock_quantity + SUM(quantity of its buckets)
+// products.stock_quantity only holds what isn't in a bucket yet (bulk cancellations, imports),
+// the rebalancer moves it into the buckets.
+@Entity
+@Table(name = "product_stock_buckets",
+       uniqueConstraints = @UniqueConstraint(name = "uk_product_stock_buckets_product_bucket",
+                                             columnNames = {"product_id", "bucket"}))
+public class StockBucket {
+
+    // A product's total stock in SQL, for queries that read the products table as "p"
+    public static final String TOTAL_STOCK_SQL =
+        "(p.stock_quantity + CASE WHEN p.bucket_count > 0 " +
+        "THEN (SELECT COALESCE(SUM(b.quantity), 0) FROM product_stock_buckets b WHERE b.product_id = p.id) " +
+        "ELSE 0 END)";
+
+    // The same in JPQL, for queries that read Product as "p"
+    public static final String TOTAL_STOCK_JPQL =
+        "(p.stockQuantity + CASE WHEN p.bucketCount > 0 " +
+        "THEN (SELECT COALESCE(SUM(b.quantity), 0) FROM StockBucket b WHERE b.productId = p.id) " +
+        "ELSE 0 END)";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain id instead of a relationship, the table is written with native SQL only
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // 0 .. bucket_count - 1
+    @Column(nullable = false)
+    private int bucket;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    // Default constructor (required by JPA)
+    public StockBucket() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(int bucket) {
+        this.bucket = bucket;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+}
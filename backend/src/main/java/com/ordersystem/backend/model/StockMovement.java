@@ -0,0 +1,91 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// One change of a product's stock: the append-only stock journal (see StockJournalService)
+// Rows are only ever inserted, never updated, so writers don't wait for each other here.
+// products.stock_quantity stays the current stock that checkouts lock and validate against;
+// the journal says why it changed and, folded into StockSnapshot rows by the compactor,
+// what the stock was at any point in time.
+@Entity
+@Table(name = "stock_movements",
+       indexes = @Index(name = "idx_stock_movements_product_id", columnList = "product_id, id"))
+public class StockMovement {
+
+    // Ids grow with every movement, the compactor folds the journal up to an id
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain id instead of a relationship, the journal is written with native SQL only
+    // (and outlives deleted products)
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // Units added (positive) or taken (negative)
+    @Column(name = "quantity_change", nullable = false)
+    private int quantityChange;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private StockMovementReason reason;
+
+    // The order behind a sale or cancellation, null for the other reasons
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Default constructor (required by JPA)
+    public StockMovement() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantityChange() {
+        return quantityChange;
+    }
+
+    public void setQuantityChange(int quantityChange) {
+        this.quantityChange = quantityChange;
+    }
+
+    public StockMovementReason getReason() {
+        return reason;
+    }
+
+    public void setReason(StockMovementReason reason) {
+        this.reason = reason;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,11 @@
+package com.ordersystem.backend.model;
+
+// Why a product's stock changed (see StockMovement)
+public enum StockMovementReason {
+    INITIAL,       // Stock a new product was created with
+    SALE,          // Taken by an order (negative)
+    CANCELLATION,  // Put back when an order was cancelled
+    RESTOCK,       // A delivery came in
+    ADJUSTMENT,    // Corrected by hand (stock count, damage, ...)
+    IMPORT         // Set by a product CSV import
+}
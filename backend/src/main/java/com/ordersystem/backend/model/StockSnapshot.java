@@ -0,0 +1,99 @@
+package com.ordersystem.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// A product's stock after every journal movement up to lastMovementId (see StockMovement)
+// Written by the compactor (StockJournalCompactor) for each product that had movements since
+// its previous run, so the stock at any time is the last snapshot before it plus the few
+// movements after it, instead of the sum of the product's whole history.
+@Entity
+@Table(name = "stock_snapshots",
+       indexes = @Index(name = "idx_stock_snapshots_product_covers", columnList = "product_id, covers_until"))
+public class StockSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    // Stock after all movements of this product up to lastMovementId
+    @Column(nullable = false)
+    private int quantity;
+
+    @Column(name = "last_movement_id", nullable = false)
+    private long lastMovementId;
+
+    // Time of the newest movement included, so the snapshot is valid for any time from here
+    // up to the next movement
+    @Column(name = "covers_until", nullable = false)
+    private LocalDateTime coversUntil;
+
+    @Column(name = "taken_at", nullable = false)
+    private LocalDateTime takenAt;
+
+    // Opening balance taken when the journal was started: there is no history before it
+    @Column(nullable = false)
+    private boolean opening;
+
+    // Default constructor (required by JPA)
+    public StockSnapshot() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getLastMovementId() {
+        return lastMovementId;
+    }
+
+    public void setLastMovementId(long lastMovementId) {
+        this.lastMovementId = lastMovementId;
+    }
+
+    public LocalDateTime getCoversUntil() {
+        return coversUntil;
+    }
+
+    public void setCoversUntil(LocalDateTime coversUntil) {
+        this.coversUntil = coversUntil;
+    }
+
+    public LocalDateTime getTakenAt() {
+        return takenAt;
+    }
+
+    public void setTakenAt(LocalDateTime takenAt) {
+        this.takenAt = takenAt;
+    }
+
+    public boolean isOpening() {
+        return opening;
+    }
+
+    public void setOpening(boolean opening) {
+        this.opening = opening;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.CustomerSummary;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// All changes are single atomic SQL statements (no read-modify-write in Java),
+// so concurrent orders of the same customer can't lose each other's updates
+// The native statements name the table they change (HINT_NATIVE_SPACES), otherwise Hibernate
+// would clear the whole second-level cache (products included) after each of them
+@Repository
+public interface CustomerSummaryRepository extends JpaRepository<CustomerSummary, String> {
+
+    // Count a new order: creates the summary row for a first-time customer, otherwise
+    // increments it and puts the order id in front of the recent list, dropping the oldest
+    // ids beyond maxRecent (trim_array needs PostgreSQL 14 or newer)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "customer_summaries"))
+    @Query(value = "INSERT INTO customer_summaries (email, customer_name, order_count, completed_order_count, " +
+                   "  completed_spend, first_order_date, last_order_date, recent_order_ids) " +
+                   "VALUES (:email, :name, 1, 0, 0, :orderDate, :orderDate, ARRAY[CAST(:orderId AS bigint)]) " +
+                   "ON CONFLICT (email) DO UPDATE SET " +
+                   "  customer_name = EXCLUDED.customer_name, " +
+                   "  order_count = customer_summaries.order_count + 1, " +
+                   "  first_order_date = LEAST(customer_summaries.first_order_date, EXCLUDED.first_order_date), " +
+                   "  last_order_date = GREATEST(customer_summaries.last_order_date, EXCLUDED.last_order_date), " +
+                   "  recent_order_ids = trim_array(EXCLUDED.recent_order_ids || customer_summaries.recent_order_ids, " +
+                   "    GREATEST(cardinality(customer_summaries.recent_order_ids) + 1 - :maxRecent, 0))",
+           nativeQuery = true)
+    void recordOrder(@Param("email") String email,
+                     @Param("name") String name,
+                     @Param("orderId") Long orderId,
+                     @Param("orderDate") LocalDateTime orderDate,
+                     @Param("maxRecent") int maxRecent);
+
+    // An order of this customer was completed (+1, +amount) or left the completed status (-1, -amount)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "customer_summaries"))
+    @Query(value = "UPDATE customer_summaries SET " +
+                   "  completed_order_count = completed_order_count + :countDelta, " +
+                   "  completed_spend = completed_spend + :spendDelta " +
+                   "WHERE email = :email",
+           nativeQuery = true)
+    void addCompleted(@Param("email") String email,
+                      @Param("countDelta") int countDelta,
+                      @Param("spendDelta") BigDecimal spendDelta);
+
+    // Count many orders as completed at once (bulk status update), grouped per customer
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "customer_summaries"))
+    @Query(value = "UPDATE customer_summaries s SET " +
+                   "  completed_order_count = s.completed_order_count + d.orders, " +
+                   "  completed_spend = s.completed_spend + d.spend " +
+                   "FROM (SELECT LOWER(TRIM(customer_email)) AS email, COUNT(*) AS orders, SUM(total_amount) AS spend " +
+                   "      FROM orders WHERE id IN (:orderIds) GROUP BY LOWER(TRIM(customer_email))) d " +
+                   "WHERE s.email = d.email",
+           nativeQuery = true)
+    void addCompletedForOrders(@Param("orderIds") List<Long> orderIds);
+
+    // Build all summaries from the orders table in one statement (used when the table is empty)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "customer_summaries"))
+    @Query(value = "INSERT INTO customer_summaries (email, customer_name, order_count, completed_order_count, " +
+                   "  completed_spend, first_order_date, last_order_date, recent_order_ids) " +
+                   "SELECT email, " +
+                   "  MAX(customer_name) FILTER (WHERE position = 1), " +
+                   "  COUNT(*), " +
+                   "  COUNT(*) FILTER (WHERE status = 'COMPLETED'), " +
+                   "  COALESCE(SUM(total_amount) FILTER (WHERE status = 'COMPLETED'), 0), " +
+                   "  MIN(order_date), MAX(order_date), " +
+                   "  ARRAY_AGG(id ORDER BY position) FILTER (WHERE position <= :maxRecent) " +
+                   "FROM (SELECT LOWER(TRIM(customer_email)) AS email, customer_name, status, total_amount, order_date, id, " +
+                   "        ROW_NUMBER() OVER (PARTITION BY LOWER(TRIM(customer_email)) " +
+                   "                           ORDER BY order_date DESC, id DESC) AS position " +
+                   "      FROM orders " +
+                   "      WHERE customer_email IS NOT NULL AND TRIM(customer_email) <> '') o " +
+                   "GROUP BY email",
+           nativeQuery = true)
+    int backfill(@Param("maxRecent") int maxRecent);
+}
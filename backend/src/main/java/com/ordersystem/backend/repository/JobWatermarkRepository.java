@@ -0,0 +1,9 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.JobWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+}
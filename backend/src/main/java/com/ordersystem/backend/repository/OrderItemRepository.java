@@ -23,9 +23,11 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     
     // Custom query to find the most popular products
     // This groups order items by product and sums the quantities
-    @Query("SELECT oi.product, SUM(oi.quantity) as totalSold " +
-           "FROM OrderItem oi " +
-           "GROUP BY oi.product " +
+    // Only the product's name is selected: loading every sold product as an entity would read
+    // the whole catalogue (and the stock buckets of the bucketed ones) for a list of names
+    @Query("SELECT p.name, SUM(oi.quantity) as totalSold " +
+           "FROM OrderItem oi JOIN oi.product p " +
+           "GROUP BY p.id, p.name " +
            "ORDER BY totalSold DESC")
     List<Object[]> findMostPopularProducts();
     
@@ -37,6 +39,7 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     java.math.BigDecimal getTotalRevenueForProduct(@Param("productId") Long productId);
     
     // Custom query to find all items in pending orders
+    // Loads every item entity; for the committed quantity per product use ProductCommitmentRepository
     @Query("SELECT oi FROM OrderItem oi WHERE oi.order.status = 'PENDING'")
     List<OrderItem> findItemsInPendingOrders();
 }
\ No newline at end of file
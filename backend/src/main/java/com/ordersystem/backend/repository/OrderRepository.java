@@ -2,10 +2,14 @@ package com.ordersystem.backend.repository;
 
 import com.ordersystem.backend.model.Order;
 import com.ordersystem.backend.model.OrderStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -18,9 +22,21 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // Find all orders for a specific customer (case-insensitive)
     List<Order> findByCustomerEmailIgnoreCase(String email);
     
+    // One page of a customer's orders, newest first, by normalized email
+    // Uses the idx_orders_customer_email_date expression index (see CustomerSummaryService);
+    // a Slice skips the COUNT query, the total is in the customer summary
+    @Query("SELECT o FROM Order o WHERE LOWER(TRIM(o.customerEmail)) = :email ORDER BY o.orderDate DESC, o.id DESC")
+    Slice<Order> findHistoryByNormalizedEmail(@Param("email") String normalizedEmail, Pageable pageable);
+    
     // Find orders by status
     List<Order> findByStatus(OrderStatus status);
     
+    // A store's orders (stores can share a shard, see StoreContext)
+    List<Order> findByStoreId(String storeId);
+    
+    // A store's orders with a status
+    List<Order> findByStatusAndStoreId(OrderStatus status, String storeId);
+    
     // Find orders by customer name (partial match, case-insensitive)
     List<Order> findByCustomerNameContainingIgnoreCase(String name);
     
@@ -28,6 +44,11 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query(value = "SELECT * FROM orders WHERE DATE(order_date) = CURRENT_DATE ORDER BY order_date DESC", nativeQuery = true)
     List<Order> findTodaysOrders();
     
+    // A store's orders of today, newest first (uses idx_orders_store_date)
+    @Query(value = "SELECT * FROM orders WHERE store_id = :storeId AND order_date >= CURRENT_DATE " +
+                   "AND order_date < CURRENT_DATE + 1 ORDER BY order_date DESC", nativeQuery = true)
+    List<Order> findTodaysOrdersOfStore(@Param("storeId") String storeId);
+    
     // Find orders with total amount greater than specified value
     List<Order> findByTotalAmountGreaterThan(java.math.BigDecimal amount);
     
@@ -35,10 +56,33 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT COUNT(o) FROM Order o WHERE o.status = :status")
     Long countOrdersByStatus(@Param("status") OrderStatus status);
     
+    // Revenue of the orders with a status, summed by the database (0 when there are none)
+    @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.status = :status")
+    BigDecimal sumTotalAmountByStatus(@Param("status") OrderStatus status);
+    
     // Find recent orders (last N orders)
     @Query("SELECT o FROM Order o ORDER BY o.orderDate DESC")
     List<Order> findRecentOrders();
     
     // Find orders by date range and status
     List<Order> findByOrderDateBetweenAndStatus(LocalDateTime startDate, LocalDateTime endDate, OrderStatus status);
+    
+    // Lock the given orders that are currently in one of the given statuses and return their ids
+    // FOR UPDATE makes concurrent bulk updates/cancels wait, so stock is never restored twice;
+    // ORDER BY id takes the locks in a fixed order to avoid deadlocks
+    // Orders of other stores are left alone like unknown ids
+    @Query(value = "SELECT id FROM orders WHERE id IN (:ids) AND status IN (:statuses) AND store_id = :storeId " +
+                   "ORDER BY id FOR UPDATE",
+           nativeQuery = true)
+    List<Long> lockIdsInStatus(@Param("ids") List<Long> ids, @Param("statuses") List<String> statuses,
+                               @Param("storeId") String storeId);
+    
+    // Store and date of the given orders, for dropping their cached analytics (see SalesAnalyticsService)
+    @Query("SELECT o.storeId, o.orderDate FROM Order o WHERE o.id IN :ids")
+    List<Object[]> findStoreAndDateByIds(@Param("ids") List<Long> ids);
+    
+    // Set the status of many orders with one UPDATE (and bump their optimistic lock version)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :status, o.version = o.version + 1 WHERE o.id IN :ids")
+    int updateStatusForIds(@Param("ids") List<Long> ids, @Param("status") OrderStatus status);
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.ProductCommitment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+// Committed (promised but not shipped) quantities per product, see ProductCommitment
+// All changes are single statements that sum the orders' items per product in the database,
+// like ProductRepository.restoreStockForOrders. They flush first, so the items of an order
+// saved in the same transaction are included.
+@Repository
+public interface ProductCommitmentRepository extends JpaRepository<ProductCommitment, Long> {
+
+    List<ProductCommitment> findByProductIdIn(Collection<Long> productIds);
+
+    // Add the items of newly placed (or reopened) orders
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_commitments"))
+    @Query(value = "INSERT INTO product_commitments (product_id, committed_quantity) " +
+                   "SELECT product_id, SUM(quantity) FROM order_items " +
+                   "WHERE order_id IN (:orderIds) GROUP BY product_id ORDER BY product_id " +
+                   "ON CONFLICT (product_id) DO UPDATE SET " +
+                   "  committed_quantity = product_commitments.committed_quantity + EXCLUDED.committed_quantity",
+           nativeQuery = true)
+    int commitForOrders(@Param("orderIds") List<Long> orderIds);
+
+    // Lock the commitments of the orders' products in product id order, the order commitForOrders
+    // inserts them in (an UPDATE ... FROM locks them in whatever order its plan reads them)
+    @Query(value = "SELECT c.product_id FROM product_commitments c " +
+                   "WHERE c.product_id IN (SELECT product_id FROM order_items WHERE order_id IN (:orderIds)) " +
+                   "ORDER BY c.product_id FOR UPDATE",
+           nativeQuery = true)
+    List<Long> lockForOrders(@Param("orderIds") List<Long> orderIds);
+
+    // Take off the items of orders that were completed (shipped) or cancelled
+    // Call lockForOrders first
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_commitments"))
+    @Query(value = "UPDATE product_commitments c SET committed_quantity = c.committed_quantity - r.quantity " +
+                   "FROM (SELECT product_id, SUM(quantity) AS quantity FROM order_items " +
+                   "      WHERE order_id IN (:orderIds) GROUP BY product_id) r " +
+                   "WHERE c.product_id = r.product_id",
+           nativeQuery = true)
+    int releaseForOrders(@Param("orderIds") List<Long> orderIds);
+
+    // Build all commitments from the open orders in one statement (used when the table is empty)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_commitments"))
+    @Query(value = "INSERT INTO product_commitments (product_id, committed_quantity) " +
+                   "SELECT oi.product_id, SUM(oi.quantity) FROM order_items oi " +
+                   "JOIN orders o ON o.id = oi.order_id " +
+                   "WHERE o.status IN ('PENDING', 'CONFIRMED') " +
+                   "GROUP BY oi.product_id",
+           nativeQuery = true)
+    int backfill();
+}
@@ -0,0 +1,49 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.ProductDailySales;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Repository
+public interface ProductDailySalesRepository extends JpaRepository<ProductDailySales, Long> {
+
+    // Add the items of orders fromId < id <= toId to the daily totals (one statement, summed
+    // per product and day first, then added to existing rows)
+    // Orders older than "since" are skipped, they are outside the sales history anyway
+    // Names the table it changes, so Hibernate doesn't clear the whole second-level cache after it
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "product_daily_sales"))
+    @Query(value = "INSERT INTO product_daily_sales (product_id, sales_date, quantity) " +
+                   "SELECT oi.product_id, CAST(o.order_date AS date), SUM(oi.quantity) " +
+                   "FROM orders o JOIN order_items oi ON oi.order_id = o.id " +
+                   "WHERE o.id > :fromId AND o.id <= :toId " +
+                   "  AND o.order_date >= :since AND o.status <> 'CANCELLED' " +
+                   "GROUP BY oi.product_id, CAST(o.order_date AS date) " +
+                   "ON CONFLICT (product_id, sales_date) DO UPDATE SET " +
+                   "  quantity = product_daily_sales.quantity + EXCLUDED.quantity",
+           nativeQuery = true)
+    int addOrders(@Param("fromId") long fromId,
+                  @Param("toId") long toId,
+                  @Param("since") LocalDateTime since);
+
+    // Newest order placed before the given time (0 if there is none)
+    // Walks the primary key backwards, so it only touches the last few orders
+    @Query(value = "SELECT COALESCE((SELECT id FROM orders WHERE order_date < :before " +
+                   "ORDER BY id DESC LIMIT 1), 0)",
+           nativeQuery = true)
+    long findLastOrderIdBefore(@Param("before") LocalDateTime before);
+
+    // Drop days that are no longer part of the sales history
+    @Modifying
+    @Query("DELETE FROM ProductDailySales s WHERE s.salesDate < :cutoff")
+    int deleteOlderThan(@Param("cutoff") LocalDate cutoff);
+}
@@ -1,10 +1,20 @@
 package com.ordersystem.backend.repository;
 
 // Import necessary JPA and Spring Data classes
+import com.ordersystem.backend.config.SecondLevelCacheConfig;
 import com.ordersystem.backend.model.Product;  // Our Product entity
+import com.ordersystem.backend.model.StockBucket;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;  // Spring Data JPA interface
+import org.springframework.data.jpa.repository.Lock;  // For SELECT ... FOR UPDATE
+import org.springframework.data.jpa.repository.Modifying;  // For UPDATE/DELETE queries
 import org.springframework.data.jpa.repository.Query;  // For custom queries
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;  // Spring annotation
+import java.util.Collection;
 import java.util.List;
 
 // @Repository tells Spring this is a data access component
@@ -13,33 +23,96 @@ import java.util.List;
 // - We're working with Product entities
 // - The primary key type is Long
 // This interface provides basic CRUD operations automatically
-public interface ProductRepository extends JpaRepository<Product, Long> {
+// findByName comes from ProductRepositoryCustom (a natural id lookup)
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
     
-    // Custom query method: Spring automatically generates the SQL
-    // Method name follows Spring Data naming convention:
-    // findBy + FieldName + ComparisonOperation
-    List<Product> findByStockQuantityLessThan(Integer threshold);
+    // Products with less stock than the threshold
+    // The stock queries compare the row's stock plus the buckets': a product with stock buckets
+    // keeps most of its stock there (see StockBucket)
+    @Query("SELECT p FROM Product p WHERE " + StockBucket.TOTAL_STOCK_JPQL + " < :threshold")
+    List<Product> findByStockQuantityLessThan(@Param("threshold") Integer threshold);
     
     // Another way to write the low stock query using a custom query
     // @Query annotation allows us to write our own SQL/JPQL
-    @Query("SELECT p FROM Product p WHERE p.stockQuantity < p.minStockLevel")
-    List<Product> findLowStockProducts();
+    // The stock queries are cached (only the ids, the products come from the entity cache);
+    // Hibernate drops the cached results whenever the products table changes. Sales of bucketed
+    // products only change product_stock_buckets, with SQL Hibernate doesn't see: such a product
+    // can join or leave a cached result up to app.cache.stock-queries.time-to-live late (the
+    // products in it always have their current stock)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.PRODUCT_STOCK_QUERIES_REGION)
+    })
+    // The queries the product endpoints use only return the given store's products
+    @Query("SELECT p FROM Product p WHERE p.storeId = :storeId AND " + StockBucket.TOTAL_STOCK_JPQL +
+           " < p.minStockLevel")
+    List<Product> findLowStockProducts(@Param("storeId") String storeId);
     
-    // Find products by name (case-insensitive search)
+    // All products of a store
+    List<Product> findByStoreId(String storeId);
+    
+    // Find a store's products by name (case-insensitive search)
     // "Containing" means it will search for partial matches
     // "IgnoreCase" makes it case-insensitive
-    List<Product> findByNameContainingIgnoreCase(String name);
+    List<Product> findByStoreIdAndNameContainingIgnoreCase(String storeId, String name);
     
-    // Find products by exact name
-    Product findByName(String name);
+    // Only the columns the in-memory search index needs (id, store, name, description)
+    // Avoids loading full entities when the index is (re)built
+    @Query("SELECT p.id, p.storeId, p.name, p.description FROM Product p")
+    List<Object[]> findSearchableFields();
     
     // Find products within a price range
     List<Product> findByPriceBetween(java.math.BigDecimal minPrice, java.math.BigDecimal maxPrice);
     
     // Find products that are in stock (quantity > 0)
-    List<Product> findByStockQuantityGreaterThan(Integer quantity);
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.PRODUCT_STOCK_QUERIES_REGION)
+    })
+    @Query("SELECT p FROM Product p WHERE p.storeId = :storeId AND " + StockBucket.TOTAL_STOCK_JPQL + " > :quantity")
+    List<Product> findByStockQuantityGreaterThan(@Param("storeId") String storeId, @Param("quantity") Integer quantity);
     
     // Custom query to find products that need restocking
-    @Query("SELECT p FROM Product p WHERE p.stockQuantity <= p.minStockLevel ORDER BY p.stockQuantity ASC")
-    List<Product> findProductsNeedingRestock();
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCacheConfig.PRODUCT_STOCK_QUERIES_REGION)
+    })
+    @Query("SELECT p FROM Product p WHERE p.storeId = :storeId AND " + StockBucket.TOTAL_STOCK_JPQL +
+           " <= p.minStockLevel ORDER BY " + StockBucket.TOTAL_STOCK_JPQL + " ASC")
+    List<Product> findProductsNeedingRestock(@Param("storeId") String storeId);
+    
+    // Product statistics counted by the database in one query: total, low stock and out of stock
+    // (one row with three numbers, instead of loading every product to count them)
+    @Query("SELECT COUNT(p), " +
+           "SUM(CASE WHEN " + StockBucket.TOTAL_STOCK_JPQL + " < p.minStockLevel THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN " + StockBucket.TOTAL_STOCK_JPQL + " = 0 THEN 1 ELSE 0 END) " +
+           "FROM Product p")
+    List<Object[]> countStockLevels();
+    
+    // Put back the stock of all items in the given orders with a single UPDATE
+    // Quantities are summed per product first, so a product in 100 cancelled orders is updated once
+    // The version stays as it is, stock isn't version checked (see Product.stockQuantity)
+    // The query space tells Hibernate which table this SQL changes: it then drops only the cached
+    // products and stock query results (without it, it would clear every cache region)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "products"))
+    @Query(value = "UPDATE products p SET stock_quantity = p.stock_quantity + r.quantity " +
+                   "FROM (SELECT product_id, SUM(quantity) AS quantity FROM order_items " +
+                   "      WHERE order_id IN (:orderIds) GROUP BY product_id) r " +
+                   "WHERE p.id = r.product_id",
+           nativeQuery = true)
+    int restoreStockForOrders(@Param("orderIds") List<Long> orderIds);
+    
+    // Load and lock (SELECT ... FOR UPDATE) several products at once
+    // Locks are taken in id order, so two transactions locking overlapping products can't deadlock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id IN :ids ORDER BY p.id")
+    List<Product> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+    
+    // Lock the products of the given orders in id order (before restoreStockForOrders)
+    @Query(value = "SELECT p.id FROM products p " +
+                   "WHERE p.id IN (SELECT product_id FROM order_items WHERE order_id IN (:orderIds)) " +
+                   "ORDER BY p.id FOR UPDATE",
+           nativeQuery = true)
+    List<Long> lockProductsOfOrders(@Param("orderIds") List<Long> orderIds);
 }
\ No newline at end of file
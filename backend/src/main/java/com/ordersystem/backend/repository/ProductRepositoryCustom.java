@@ -0,0 +1,16 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.Product;
+
+// Product lookups that Spring Data can't generate from the method name
+// Implemented in ProductRepositoryImpl, available on ProductRepository
+public interface ProductRepositoryCustom {
+
+    // Find a store's product by its exact name (null if there is none)
+    // Goes through the natural id cache, so repeated lookups of the same name don't query the database
+    Product findByName(String storeId, String name);
+
+    // Lock a product that is already loaded (SELECT ... FOR UPDATE) and re-read its current state
+    // A locking query would lock the row but keep the loaded, possibly outdated state
+    void refreshForUpdate(Product product);
+}
@@ -0,0 +1,31 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+
+// Spring Data finds this class by its name (repository name + "Impl") and uses it for
+// the methods of ProductRepositoryCustom
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // A derived query (WHERE name = ?) would always hit the database; a natural id lookup
+    // resolves (store, name) -> id from the natural id cache and the product from the entity cache
+    @Override
+    public Product findByName(String storeId, String name) {
+        return entityManager.unwrap(Session.class)
+            .byNaturalId(Product.class)
+            .using("storeId", storeId)
+            .using("name", name)
+            .load();
+    }
+
+    @Override
+    public void refreshForUpdate(Product product) {
+        entityManager.refresh(product, LockModeType.PESSIMISTIC_WRITE);
+    }
+}
@@ -0,0 +1,70 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.StockMovement;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// The stock journal, see StockMovement
+// Movements are only inserted (single statements, like ProductCommitmentRepository), never updated
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    // One movement per product and order for the items of the given orders
+    // sign is -1 for sales and 1 for cancellations. Flushes first, so the items of an order
+    // saved in the same transaction are included.
+    @Modifying(flushAutomatically = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_movements"))
+    @Query(value = "INSERT INTO stock_movements (product_id, quantity_change, reason, order_id, created_at) " +
+                   "SELECT product_id, :sign * SUM(quantity), :reason, order_id, :createdAt FROM order_items " +
+                   "WHERE order_id IN (:orderIds) GROUP BY order_id, product_id ORDER BY order_id, product_id",
+           nativeQuery = true)
+    int recordForOrders(@Param("orderIds") List<Long> orderIds, @Param("sign") int sign,
+                        @Param("reason") String reason, @Param("createdAt") LocalDateTime createdAt);
+
+    // One movement without an order (restock, adjustment, new product)
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_movements"))
+    @Query(value = "INSERT INTO stock_movements (product_id, quantity_change, reason, created_at) " +
+                   "VALUES (:productId, :quantityChange, :reason, :createdAt)",
+           nativeQuery = true)
+    int record(@Param("productId") Long productId, @Param("quantityChange") int quantityChange,
+               @Param("reason") String reason, @Param("createdAt") LocalDateTime createdAt);
+
+    // A product's movements, newest first (page through with beforeId)
+    List<StockMovement> findByProductIdAndIdLessThanOrderByIdDesc(Long productId, Long beforeId, Pageable pageable);
+
+    // Sum of a product's movements after a snapshot (afterId) up to a point in time
+    @Query(value = "SELECT COALESCE(SUM(quantity_change), 0) FROM stock_movements " +
+                   "WHERE product_id = :productId AND id > :afterId AND created_at <= :at",
+           nativeQuery = true)
+    long sumAfter(@Param("productId") Long productId, @Param("afterId") long afterId, @Param("at") LocalDateTime at);
+
+    // Highest movement id, 0 for an empty journal
+    @Query(value = "SELECT COALESCE(MAX(id), 0) FROM stock_movements", nativeQuery = true)
+    long findLastId();
+
+    // Newest movement after afterId that is older than "before" (0 if there is none)
+    // Only reads the not yet compacted end of the journal
+    @Query(value = "SELECT COALESCE(MAX(id), 0) FROM stock_movements WHERE id > :afterId AND created_at < :before",
+           nativeQuery = true)
+    long findLastIdBefore(@Param("afterId") long afterId, @Param("before") LocalDateTime before);
+
+    // Id of the count-th movement after afterId (null if there are fewer), to compact in batches
+    @Query(value = "SELECT id FROM stock_movements WHERE id > :afterId ORDER BY id OFFSET :count - 1 LIMIT 1",
+           nativeQuery = true)
+    Long findIdAfter(@Param("afterId") long afterId, @Param("count") long count);
+
+    // Movements not folded into a snapshot yet
+    @Query(value = "SELECT COUNT(*) FROM stock_movements WHERE id > :afterId", nativeQuery = true)
+    long countAfter(@Param("afterId") long afterId);
+}
@@ -0,0 +1,78 @@
+package com.ordersystem.backend.repository;
+
+import com.ordersystem.backend.model.StockBucket;
+import com.ordersystem.backend.model.StockSnapshot;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// Compacted stock journal, see StockSnapshot
+// A product's snapshots form a chain: each one adds the movements since the previous one.
+// Its latest snapshot is the one with the newest covers_until (ties: the newest row).
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+
+    // The last snapshot written, its lastMovementId is how far the journal has been compacted
+    // (snapshots are written in movement id order, by one compactor at a time)
+    Optional<StockSnapshot> findFirstByOrderByIdDesc();
+
+    // A product's latest snapshot at a point in time
+    Optional<StockSnapshot> findFirstByProductIdAndCoversUntilLessThanEqualOrderByCoversUntilDescIdDesc(
+        Long productId, LocalDateTime at);
+
+    boolean existsByProductIdAndOpeningTrue(Long productId);
+
+    // Opening balance of every product: today's stock, with no history before it
+    // Used once, when the journal is started on a database that already has products
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_snapshots"))
+    @Query(value = "INSERT INTO stock_snapshots (product_id, quantity, last_movement_id, covers_until, taken_at, opening) " +
+                   "SELECT p.id, " + StockBucket.TOTAL_STOCK_SQL + ", :lastMovementId, :now, :now, true FROM products p",
+           nativeQuery = true)
+    int createOpening(@Param("lastMovementId") long lastMovementId, @Param("now") LocalDateTime now);
+
+    // Fold the movements with ids in (fromId, toId] into one new snapshot per product that moved:
+    // its previous snapshot (none = 0) plus the sum of its movements
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "stock_snapshots"))
+    @Query(value = "INSERT INTO stock_snapshots (product_id, quantity, last_movement_id, covers_until, taken_at, opening) " +
+                   "SELECT m.product_id, COALESCE(prev.quantity, 0) + m.change, :toId, " +
+                   "       GREATEST(prev.covers_until, m.covers_until), :now, false " +
+                   "FROM (SELECT product_id, SUM(quantity_change) AS change, MAX(created_at) AS covers_until " +
+                   "      FROM stock_movements WHERE id > :fromId AND id <= :toId GROUP BY product_id) m " +
+                   "LEFT JOIN LATERAL (SELECT s.quantity, s.covers_until FROM stock_snapshots s " +
+                   "                   WHERE s.product_id = m.product_id " +
+                   "                   ORDER BY s.covers_until DESC, s.id DESC LIMIT 1) prev ON true " +
+                   "ORDER BY m.product_id",
+           nativeQuery = true)
+    int compact(@Param("fromId") long fromId, @Param("toId") long toId, @Param("now") LocalDateTime now);
+
+    // Only one compactor at a time (several instances may run): readers are not blocked,
+    // the lock is released at commit
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(hashtext('stock_snapshots'))) l", nativeQuery = true)
+    int lockForCompaction();
+
+    // Products whose stock (row plus buckets) differs from their journal stock (latest snapshot plus the
+    // movements after the compacted part, afterId), with both values: stock changes that
+    // bypassed the journal show up here
+    @Query(value = "SELECT p.id, " + StockBucket.TOTAL_STOCK_SQL + ", COALESCE(s.quantity, 0) + COALESCE(t.change, 0) " +
+                   "FROM products p " +
+                   "LEFT JOIN LATERAL (SELECT quantity FROM stock_snapshots " +
+                   "                   WHERE product_id = p.id " +
+                   "                   ORDER BY covers_until DESC, id DESC LIMIT 1) s ON true " +
+                   "LEFT JOIN (SELECT product_id, SUM(quantity_change) AS change FROM stock_movements " +
+                   "           WHERE id > :afterId GROUP BY product_id) t ON t.product_id = p.id " +
+                   "WHERE " + StockBucket.TOTAL_STOCK_SQL + " <> COALESCE(s.quantity, 0) + COALESCE(t.change, 0) " +
+                   "ORDER BY p.id",
+           nativeQuery = true)
+    List<Object[]> findDrift(@Param("afterId") long afterId);
+}
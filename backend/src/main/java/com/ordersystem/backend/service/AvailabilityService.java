@@ -0,0 +1,223 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.OrderStatus;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.model.ProductCommitment;
+import com.ordersystem.backend.repository.ProductCommitmentRepository;
+import com.ordersystem.backend.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Available-to-promise (ATP): how much of a product can still be sold, and why the rest can't
+// Combines the product's stock, the quantities committed to open orders (product_commitments,
+// maintained here incrementally as orders are placed and change status) and the stock held
+// for carts (StockHoldService). Every number is a primary key read or an in-memory lookup,
+// nothing scans order items.
+//
+// OrderService calls the order hooks inside its own transactions, so the commitments always
+// change together with the orders.
+@Service
+@Transactional
+public class AvailabilityService {
+
+    // Upper limit for one availability lookup
+    public static final int MAX_PRODUCTS = 500;
+
+    @Autowired
+    private ProductCommitmentRepository productCommitmentRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockHoldService stockHoldService;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Units that can still be promised: stock_quantity is already net of open orders, so only the
+    // stock held for other carts is left to subtract (the given hold, if any, is not)
+    public int availableToPromise(Product product, String holdId) {
+        return product.getStockQuantity() - stockHoldService.heldByOthers(product.getId(), holdId);
+    }
+
+    // Units a new order may take, while the product row is locked (see OrderService)
+    // For a product with stock buckets only what the order already got from its buckets
+    // (takenFromBuckets) and the locked row count: the other buckets are being used by other checkouts.
+    // Held stock is always on the row (see StockBucketService), so it is subtracted there
+    public int availableForOrder(Product product, String holdId, int takenFromBuckets) {
+        int onRow = product.getStockQuantity() - product.getBucketQuantity()
+            - stockHoldService.heldByOthers(product.getId(), holdId);
+        return product.getBucketCount() > 0 ? takenFromBuckets + Math.max(onRow, 0) : onRow;
+    }
+
+    // New orders were saved (their items must be in the persistence context or the database)
+    public void ordersPlaced(List<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            productCommitmentRepository.commitForOrders(orderIds);
+        }
+    }
+
+    // Open orders were completed or cancelled at once (bulk status update)
+    public void ordersClosed(List<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            productCommitmentRepository.lockForOrders(orderIds);
+            productCommitmentRepository.releaseForOrders(orderIds);
+        }
+    }
+
+    // One order changed status; only moving between open and closed changes the commitments
+    // (confirming a pending order keeps its items committed)
+    public void statusChanged(Long orderId, OrderStatus oldStatus, OrderStatus newStatus) {
+        if (oldStatus.isOpen() && !newStatus.isOpen()) {
+            productCommitmentRepository.lockForOrders(List.of(orderId));
+            productCommitmentRepository.releaseForOrders(List.of(orderId));
+        } else if (!oldStatus.isOpen() && newStatus.isOpen()) {
+            productCommitmentRepository.commitForOrders(List.of(orderId));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Availability> getAvailability(Long productId) {
+        List<Availability> result = getAvailability(List.of(productId));
+        return result.isEmpty() ? Optional.empty() : Optional.of(result.get(0));
+    }
+
+    // Availability of several products (unknown ids are left out), in the order asked for
+    @Transactional(readOnly = true)
+    public List<Availability> getAvailability(List<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            throw new IllegalArgumentException("No product ids given");
+        }
+        List<Long> ids = productIds.stream().distinct().toList();
+        if (ids.size() > MAX_PRODUCTS) {
+            throw new IllegalArgumentException("At most " + MAX_PRODUCTS + " products can be looked up at once");
+        }
+
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(ids)) {
+            products.put(product.getId(), product);
+        }
+        Map<Long, Long> committed = new HashMap<>();
+        for (ProductCommitment commitment : productCommitmentRepository.findByProductIdIn(products.keySet())) {
+            committed.put(commitment.getProductId(), commitment.getCommittedQuantity());
+        }
+
+        List<Availability> result = new ArrayList<>();
+        for (Long id : ids) {
+            Product product = products.get(id);
+            if (product == null) {
+                continue;
+            }
+            Availability availability = new Availability();
+            availability.setProductId(id);
+            availability.setProductName(product.getName());
+            availability.setCommitted(committed.getOrDefault(id, 0L));
+            availability.setOnHand(product.getStockQuantity() + availability.getCommitted());
+            availability.setHeldForCarts(stockHoldService.heldByOthers(id, null));
+            availability.setAvailableToPromise(Math.max(availableToPromise(product, null), 0));
+            result.add(availability);
+        }
+        return result;
+    }
+
+    // At startup: fill the commitments from the open orders when the table is empty
+    // (first start with this table, or after the load test seeder cleared it)
+    // Done on every shard, in one transaction per shard (a transaction is bound to one shard)
+    @EventListener(ApplicationStartedEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void initialize() {
+        for (String shard : shardDirectory.getShardNames()) {
+            StoreContext.onShard(shard, () -> transactionTemplate.execute(status -> {
+                if (productCommitmentRepository.count() == 0) {
+                    long start = System.currentTimeMillis();
+                    int products = productCommitmentRepository.backfill();
+                    if (products > 0) {
+                        System.out.println("Committed quantities created for " + products + " products" +
+                            (shardDirectory.isSharded() ? " on shard " + shard : "") + " in " +
+                            (System.currentTimeMillis() - start) + " ms");
+                    }
+                }
+                return null;
+            }));
+        }
+    }
+
+    // Inner class for the availability of one product
+    public static class Availability {
+        private Long productId;
+        private String productName;
+        // Units in the store: not yet sold plus sold to open orders that haven't shipped
+        private long onHand;
+        // Units promised to open (pending or confirmed) orders
+        private long committed;
+        // Units reserved for carts that haven't checked out (stock holds)
+        private long heldForCarts;
+        // Units a new order can still get: on hand - committed - held for carts
+        private long availableToPromise;
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public long getOnHand() {
+            return onHand;
+        }
+
+        public void setOnHand(long onHand) {
+            this.onHand = onHand;
+        }
+
+        public long getCommitted() {
+            return committed;
+        }
+
+        public void setCommitted(long committed) {
+            this.committed = committed;
+        }
+
+        public long getHeldForCarts() {
+            return heldForCarts;
+        }
+
+        public void setHeldForCarts(long heldForCarts) {
+            this.heldForCarts = heldForCarts;
+        }
+
+        public long getAvailableToPromise() {
+            return availableToPromise;
+        }
+
+        public void setAvailableToPromise(long availableToPromise) {
+            this.availableToPromise = availableToPromise;
+        }
+    }
+}
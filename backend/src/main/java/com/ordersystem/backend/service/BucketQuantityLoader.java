@@ -0,0 +1,88 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.model.Product;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Fills in Product.bucketQuantity whenever Hibernate loads a product, from the database or from
+// the second-level cache
+// The bucket total changes with every sale of a bucketed best-seller, through SQL that Hibernate
+// doesn't see (StockBucketService). Keeping it out of the cached product and reading it here means
+// those sales never have to evict the product. Products without buckets (bucket_count = 0, the
+// vast majority) need no query.
+// Hibernate sends the post-load events once every product of a result is loaded, so the first
+// bucketed product reads the totals of all of them: a product list costs one more statement,
+// not one per bucketed product.
+// The query runs in the loading session's transaction, so it sees the transaction's own bucket
+// changes and, after a locking refresh, the latest committed ones.
+@Component
+public class BucketQuantityLoader implements PostLoadEventListener {
+
+    private static final String BUCKET_QUANTITIES_SQL =
+        "SELECT product_id, SUM(quantity) FROM product_stock_buckets WHERE product_id IN (:productIds) " +
+        "GROUP BY product_id";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void register() {
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getServiceRegistry()
+            .requireService(EventListenerRegistry.class)
+            .appendListeners(EventType.POST_LOAD, this);
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        if (!(event.getEntity() instanceof Product product)) {
+            return;
+        }
+        if (product.getBucketCount() == 0) {
+            // A refresh may find the buckets gone since the product was first loaded
+            product.setBucketQuantity(0);
+            product.setBucketQuantityLoaded(true);
+            return;
+        }
+
+        // This product (it may be refreshed) and the session's other bucketed products still
+        // waiting for their total
+        Map<Long, Product> waiting = new HashMap<>();
+        waiting.put(product.getId(), product);
+        for (Map.Entry<Object, EntityEntry> entry : event.getSession().getPersistenceContextInternal()
+                .reentrantSafeEntityEntries()) {
+            if (entry.getKey() instanceof Product other && other.getBucketCount() > 0 && !other.isBucketQuantityLoaded()) {
+                waiting.put(other.getId(), other);
+            }
+        }
+
+        // Only reads the buckets, the session's pending changes don't need to be flushed for it
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = event.getSession()
+            .createNativeQuery(BUCKET_QUANTITIES_SQL)
+            .setParameter("productIds", waiting.keySet())
+            .setHibernateFlushMode(FlushMode.MANUAL)
+            .getResultList();
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (Object[] row : rows) {
+            quantities.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        }
+        for (Product loaded : waiting.values()) {
+            loaded.setBucketQuantity(quantities.getOrDefault(loaded.getId(), 0));
+            loaded.setBucketQuantityLoaded(true);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.ordersystem.backend.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Java Flight Recorder event for one checkout (OrderGroupCommitter.placeOrder), from the
+// request reaching the service until its order is committed or rejected, so it includes the
+// wait for a group commit. Only recorded while a recording or event stream enables it
+// (ProfilingService recordings, JfrEventMetrics), otherwise it costs next to nothing.
+@Name(CheckoutEvent.NAME)
+@Label("Checkout")
+@Category("Order System")
+@Description("Placing one order, including stock validation, the group commit wait and the commit")
+@StackTrace(false)
+public class CheckoutEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "ordersystem.Checkout";
+
+    @Label("Store")
+    String storeId;
+
+    @Label("Order Lines")
+    int orderLines;
+
+    @Label("With Stock Hold")
+    boolean withHold;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
@@ -0,0 +1,216 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.CustomerSummary;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.OrderStatus;
+import com.ordersystem.backend.repository.CustomerSummaryRepository;
+import com.ordersystem.backend.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+// Maintains the per-customer order summaries (customer_summaries table)
+// OrderService calls it inside its own transactions, so a summary always changes
+// together with the orders it counts. Customers are identified by their email address,
+// trimmed and lower-cased, so "Anna@Shop.com " and "anna@shop.com" are the same customer.
+@Service
+@Transactional
+public class CustomerSummaryService {
+
+    // Length of the recent order id list kept in each summary
+    public static final int MAX_RECENT_ORDERS = 10;
+
+    // Upper limit for one page of order history
+    public static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    @Autowired
+    private CustomerSummaryRepository customerSummaryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // The key customers are stored under, null if there is no usable email
+    public static String normalizeEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // A new order was saved (must already have its id)
+    public void recordNewOrder(Order order) {
+        String email = normalizeEmail(order.getCustomerEmail());
+        if (email == null) {
+            return;
+        }
+        customerSummaryRepository.recordOrder(email, order.getCustomerName(), order.getId(),
+            order.getOrderDate(), MAX_RECENT_ORDERS);
+        // Orders are normally created as PENDING, but count them if they start out completed
+        if (order.getStatus() == OrderStatus.COMPLETED) {
+            customerSummaryRepository.addCompleted(email, 1, order.getTotalAmount());
+        }
+    }
+
+    // An order changed status; only moving into or out of COMPLETED changes the summary
+    public void recordStatusChange(Order order, OrderStatus oldStatus, OrderStatus newStatus) {
+        String email = normalizeEmail(order.getCustomerEmail());
+        if (email == null || oldStatus == newStatus) {
+            return;
+        }
+        if (newStatus == OrderStatus.COMPLETED) {
+            customerSummaryRepository.addCompleted(email, 1, order.getTotalAmount());
+        } else if (oldStatus == OrderStatus.COMPLETED) {
+            customerSummaryRepository.addCompleted(email, -1, order.getTotalAmount().negate());
+        }
+    }
+
+    // Many orders were completed at once (they must not have been completed before)
+    public void recordCompleted(List<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            customerSummaryRepository.addCompletedForOrders(orderIds);
+        }
+    }
+
+    // The summary of one customer: a single primary key read
+    @Transactional(readOnly = true)
+    public Optional<CustomerSummary> getSummary(String email) {
+        String normalized = normalizeEmail(email);
+        if (normalized == null) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        return customerSummaryRepository.findById(normalized);
+    }
+
+    // One page of the customer's full order history, newest first
+    @Transactional(readOnly = true)
+    public CustomerHistoryPage getHistory(String email, int page, int size) {
+        String normalized = normalizeEmail(email);
+        if (normalized == null) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+        if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+            throw new IllegalArgumentException("Size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+        }
+
+        Slice<Order> orders = orderRepository.findHistoryByNormalizedEmail(normalized, PageRequest.of(page, size));
+        CustomerHistoryPage result = new CustomerHistoryPage();
+        result.setEmail(normalized);
+        result.setPage(page);
+        result.setSize(size);
+        result.setOrders(OrderService.withItems(orders.getContent()));
+        result.setHasMore(orders.hasNext());
+        result.setTotalOrders(customerSummaryRepository.findById(normalized)
+            .map(CustomerSummary::getOrderCount)
+            .orElse(0L));
+        return result;
+    }
+
+    // At startup: make sure the history index exists, and fill the summaries when the table
+    // is empty but there are orders (first start, or after the load test seeder cleared it)
+    // Done on every shard, in one transaction per shard (a transaction is bound to one shard)
+    @EventListener(ApplicationStartedEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void initialize() {
+        for (String shard : shardDirectory.getShardNames()) {
+            StoreContext.onShard(shard, () -> transactionTemplate.execute(status -> {
+                initializeShard(shard);
+                return null;
+            }));
+        }
+    }
+
+    private void initializeShard(String shard) {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_orders_customer_email_date " +
+            "ON orders (LOWER(TRIM(customer_email)), order_date DESC, id DESC)");
+        if (customerSummaryRepository.count() == 0 && orderRepository.count() > 0) {
+            long start = System.currentTimeMillis();
+            int customers = customerSummaryRepository.backfill(MAX_RECENT_ORDERS);
+            System.out.println("Customer summaries created for " + customers + " customers" +
+                (shardDirectory.isSharded() ? " on shard " + shard : "") + " in " +
+                (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    // Inner class for one page of order history
+    public static class CustomerHistoryPage {
+        private String email;
+        private int page;
+        private int size;
+        private boolean hasMore;
+        private long totalOrders;
+        private List<Order> orders;
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(String email) {
+            this.email = email;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public void setPage(int page) {
+            this.page = page;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public boolean isHasMore() {
+            return hasMore;
+        }
+
+        public void setHasMore(boolean hasMore) {
+            this.hasMore = hasMore;
+        }
+
+        public long getTotalOrders() {
+            return totalOrders;
+        }
+
+        public void setTotalOrders(long totalOrders) {
+            this.totalOrders = totalOrders;
+        }
+
+        public List<Order> getOrders() {
+            return orders;
+        }
+
+        public void setOrders(List<Order> orders) {
+            this.orders = orders;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.StoreContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps a cheap "data version" for products and orders
+// Every mutation bumps the matching counter, so the controllers can build an ETag
+// from the counter instead of loading and hashing the whole response body
+// The counters live in this instance's memory and only move for its own writes. With several
+// instances (app.single-instance=false) an ETag could confirm a copy another instance has
+// changed since, so there are no ETags then; the counters still key HotReadCoalescer's loads,
+// which only share a query between requests of this instance.
+@Component
+public class DataVersionTracker {
+
+    @Value("${app.single-instance:true}")
+    private boolean singleInstance;
+
+    // Random per-instance prefix so a restarted backend never hands out an ETag
+    // that a client already cached from the previous run
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+    private final AtomicLong productsVersion = new AtomicLong();
+    private final AtomicLong ordersVersion = new AtomicLong();
+
+    // Called whenever product data (including stock) changes
+    public void productsChanged() {
+        bumpAfterCommit(productsVersion);
+    }
+
+    // Called whenever order data changes
+    public void ordersChanged() {
+        bumpAfterCommit(ordersVersion);
+    }
+
+    // ETag covering every product endpoint, null when ETags are off
+    public String productsETag() {
+        return singleInstance ? productsVersion() : null;
+    }
+
+    // ETag for product data merged from every shard (product statistics)
+    public String allProductsETag() {
+        return singleInstance ? allProductsVersion() : null;
+    }
+
+    // ETag covering the order statistics endpoints (merged from every shard)
+    public String ordersETag() {
+        return singleInstance ? ordersVersion() : null;
+    }
+
+    // This instance's product data version
+    // The counter is shared by all stores, but every store sees only its own products: the store
+    // is part of it, so a copy of one store's list is never confirmed for another store
+    public String productsVersion() {
+        return "\"p-" + epoch + "-" + productsVersion.get() + "-" + StoreContext.currentStore() + "\"";
+    }
+
+    public String allProductsVersion() {
+        return "\"p-" + epoch + "-" + productsVersion.get() + "\"";
+    }
+
+    public String ordersVersion() {
+        return "\"o-" + epoch + "-" + ordersVersion.get() + "\"";
+    }
+
+    // The counter must only move once the new data is visible to other transactions
+    // If we bumped it before commit, a concurrent reader could tag the old data with the new version
+    private void bumpAfterCommit(AtomicLong version) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Statistics over all stores: the per-shard numbers are queried on every shard at once
+// (scatter-gather, see ShardDirectory.onEveryShard) and merged here
+// Not transactional on purpose: each shard query runs in its own transaction on its own shard.
+// With sharding off there is one shard and this is a plain call.
+@Service
+public class GlobalStatisticsService {
+
+    public static final int MAX_TOP_PRODUCTS = 100;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderService orderService;
+
+    public ProductService.ProductStatistics getProductStatistics() {
+        ProductService.ProductStatistics total = new ProductService.ProductStatistics();
+        for (ProductService.ProductStatistics shard : shardDirectory.onEveryShard(
+                () -> productService.getProductStatistics()).values()) {
+            total.setTotalProducts(total.getTotalProducts() + shard.getTotalProducts());
+            total.setLowStockCount(total.getLowStockCount() + shard.getLowStockCount());
+            total.setOutOfStockCount(total.getOutOfStockCount() + shard.getOutOfStockCount());
+        }
+        return total;
+    }
+
+    public OrderService.OrderStatistics getOrderStatistics() {
+        OrderService.OrderStatistics total = new OrderService.OrderStatistics();
+        total.setTotalOrders(0L);
+        total.setPendingOrders(0L);
+        total.setCompletedOrders(0L);
+        total.setCancelledOrders(0L);
+        total.setTotalRevenue(BigDecimal.ZERO);
+        for (OrderService.OrderStatistics shard : shardDirectory.onEveryShard(
+                () -> orderService.getOrderStatistics()).values()) {
+            total.setTotalOrders(total.getTotalOrders() + shard.getTotalOrders());
+            total.setPendingOrders(total.getPendingOrders() + shard.getPendingOrders());
+            total.setCompletedOrders(total.getCompletedOrders() + shard.getCompletedOrders());
+            total.setCancelledOrders(total.getCancelledOrders() + shard.getCancelledOrders());
+            total.setTotalRevenue(total.getTotalRevenue().add(shard.getTotalRevenue()));
+        }
+        return total;
+    }
+
+    // Best selling products over all stores
+    // Product ids are only unique within a shard, so the shards' numbers are merged by product name
+    public List<TopProduct> getTopProducts(int limit) {
+        if (limit < 1 || limit > MAX_TOP_PRODUCTS) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_TOP_PRODUCTS);
+        }
+        Map<String, TopProduct> byName = new HashMap<>();
+        for (List<Object[]> shard : shardDirectory.onEveryShard(() -> orderService.getMostPopularProducts()).values()) {
+            for (Object[] row : shard) {
+                String name = (String) row[0];
+                long sold = ((Number) row[1]).longValue();
+                byName.computeIfAbsent(name, TopProduct::new).totalSold += sold;
+            }
+        }
+        List<TopProduct> ranked = new ArrayList<>(byName.values());
+        ranked.sort(Comparator.comparingLong(TopProduct::getTotalSold).reversed()
+            .thenComparing(TopProduct::getProductName));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    // Inner class for one entry of the top products list
+    public static class TopProduct {
+        private String productName;
+        private long totalSold;
+
+        public TopProduct(String productName) {
+            this.productName = productName;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public long getTotalSold() {
+            return totalSold;
+        }
+
+        public void setTotalSold(long totalSold) {
+            this.totalSold = totalSold;
+        }
+    }
+}
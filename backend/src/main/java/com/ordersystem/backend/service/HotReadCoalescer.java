@@ -0,0 +1,60 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Coalesces the hottest read endpoints, so that e.g. 300 terminals asking for the same
+// product at the start of a promotion cause one database query instead of 300
+// Sits in front of the services (and outside their transactions), so waiting callers
+// don't hold a database connection while the leader's query runs.
+@Component
+public class HotReadCoalescer {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private GlobalStatisticsService globalStatisticsService;
+
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+
+    private final SingleFlight<String, Optional<Product>> productById;
+    private final SingleFlight<String, ProductService.ProductStatistics> productStatistics;
+    private final SingleFlight<String, OrderService.OrderStatistics> orderStatistics;
+
+    public HotReadCoalescer(
+            MeterRegistry registry,
+            @Value("${app.coalescing.product-timeout:1s}") Duration productTimeout,
+            @Value("${app.coalescing.statistics-timeout:5s}") Duration statisticsTimeout) {
+        this.productById = new SingleFlight<>("product", productTimeout, registry);
+        this.productStatistics = new SingleFlight<>("product-statistics", statisticsTimeout, registry);
+        this.orderStatistics = new SingleFlight<>("order-statistics", statisticsTimeout, registry);
+    }
+
+    // The data version is part of every key: a request that arrives after a change
+    // never joins a load that started before it, so it can't get the old data
+
+    public Optional<Product> getProductById(Long id) {
+        return productById.execute(dataVersionTracker.productsVersion() + id,
+            () -> productService.getProductById(id));
+    }
+
+    // The statistics cover all stores (and all shards), so they use the global product version
+
+    public ProductService.ProductStatistics getProductStatistics() {
+        return productStatistics.execute(dataVersionTracker.allProductsVersion(),
+            () -> globalStatisticsService.getProductStatistics());
+    }
+
+    public OrderService.OrderStatistics getOrderStatistics() {
+        return orderStatistics.execute(dataVersionTracker.ordersVersion(),
+            () -> globalStatisticsService.getOrderStatistics());
+    }
+}
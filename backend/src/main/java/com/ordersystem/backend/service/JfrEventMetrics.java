@@ -0,0 +1,118 @@
+package com.ordersystem.backend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Always-on Java Flight Recorder event stream that turns a few JFR events into metrics
+// JFR only records events above their threshold, so normal traffic costs next to nothing and
+// only the slow cases end up here:
+//
+//   jfr.checkout.slow{outcome=succeeded|failed}  - checkouts slower than slow-checkout-threshold
+//   jfr.lock.wait{kind=monitor|lock, class}      - waits longer than lock-wait-threshold for a
+//                                                  synchronized block or a ReentrantLock
+//   jfr.virtual-thread.pinned                    - virtual threads stuck on their carrier thread
+//                                                  longer than lock-wait-threshold
+//
+// For the full picture (stack traces, what the CPU does meanwhile) take a recording through
+// the profiling endpoints (ProfilingService).
+@Component
+public class JfrEventMetrics {
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final Duration slowCheckoutThreshold;
+    private final Duration lockWaitThreshold;
+
+    private RecordingStream stream;
+
+    public JfrEventMetrics(
+            MeterRegistry registry,
+            @Value("${app.profiling.event-stream.enabled:true}") boolean enabled,
+            @Value("${app.profiling.event-stream.slow-checkout-threshold:500ms}") Duration slowCheckoutThreshold,
+            @Value("${app.profiling.event-stream.lock-wait-threshold:20ms}") Duration lockWaitThreshold) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.slowCheckoutThreshold = slowCheckoutThreshold;
+        this.lockWaitThreshold = lockWaitThreshold;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || stream != null) {
+            return;
+        }
+        stream = new RecordingStream();
+        // Stack traces aren't needed for metrics and are the expensive part of an event
+        stream.enable(CheckoutEvent.NAME).withThreshold(slowCheckoutThreshold).withoutStackTrace();
+        stream.enable("jdk.JavaMonitorEnter").withThreshold(lockWaitThreshold).withoutStackTrace();
+        stream.enable("jdk.ThreadPark").withThreshold(lockWaitThreshold).withoutStackTrace();
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(lockWaitThreshold).withoutStackTrace();
+        // The events are only kept on disk until they have been handed to us
+        stream.setMaxAge(Duration.ofMinutes(1));
+
+        stream.onEvent(CheckoutEvent.NAME, this::onCheckout);
+        stream.onEvent("jdk.JavaMonitorEnter", event -> onLockWait("monitor", event.getClass("monitorClass"), event));
+        stream.onEvent("jdk.ThreadPark", event -> {
+            // Threads also park when they are idle (pool threads waiting for work, sleeps),
+            // only waits for a lock count as contention
+            RecordedClass parkedClass = event.getClass("parkedClass");
+            if (parkedClass != null && parkedClass.getName().startsWith("java.util.concurrent.locks.Reentrant")) {
+                onLockWait("lock", parkedClass, event);
+            }
+        });
+        stream.onEvent("jdk.VirtualThreadPinned", event -> {
+            if (event.getDuration().compareTo(lockWaitThreshold) >= 0) {
+                Timer.builder("jfr.virtual-thread.pinned")
+                    .description("Virtual threads pinned to their carrier thread for longer than the lock wait threshold")
+                    .register(registry)
+                    .record(event.getDuration());
+            }
+        });
+        stream.startAsync();
+        System.out.println("JFR event stream started (slow checkout > " + slowCheckoutThreshold.toMillis() +
+            "ms, lock wait > " + lockWaitThreshold.toMillis() + "ms)");
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    // JFR applies the lowest threshold of all recordings, so while a profiling recording
+    // runs shorter events come through as well and are skipped here
+    private void onCheckout(RecordedEvent event) {
+        if (event.getDuration().compareTo(slowCheckoutThreshold) < 0) {
+            return;
+        }
+        Timer.builder("jfr.checkout.slow")
+            .description("Checkouts slower than the slow checkout threshold")
+            .tag("outcome", event.getBoolean("succeeded") ? "succeeded" : "failed")
+            .register(registry)
+            .record(event.getDuration());
+    }
+
+    private void onLockWait(String kind, RecordedClass lockClass, RecordedEvent event) {
+        if (event.getDuration().compareTo(lockWaitThreshold) < 0) {
+            return;
+        }
+        Timer.builder("jfr.lock.wait")
+            .description("Waits for a lock longer than the lock wait threshold")
+            .tag("kind", kind)
+            .tag("class", lockClass == null ? "unknown" : lockClass.getName())
+            .register(registry)
+            .record(event.getDuration());
+    }
+}
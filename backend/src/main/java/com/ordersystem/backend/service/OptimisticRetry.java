@@ -0,0 +1,95 @@
+package com.ordersystem.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// Retries an operation that failed because of an optimistic locking conflict
+// (another request changed the same product/order in the meantime, see @Version).
+// Only use it for operations that are safe to run again from scratch: the failed attempt
+// was rolled back completely, and the next attempt re-reads the current data.
+// Must be called OUTSIDE the service transaction (from a controller or similar),
+// otherwise the retry would run inside the transaction that already failed.
+//
+// Waits a random time between attempts ("full jitter"), growing exponentially up to maxBackoff,
+// so requests that collided don't collide again on their retry.
+//
+// Metric: optimistic_lock.conflicts{operation, outcome=retried|exhausted}
+@Component
+public class OptimisticRetry {
+
+    private static final String CONFLICTS_DESCRIPTION = "Optimistic locking conflicts by outcome";
+
+    private final MeterRegistry registry;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public OptimisticRetry(
+            MeterRegistry registry,
+            @Value("${app.retry.max-attempts:4}") int maxAttempts,
+            @Value("${app.retry.initial-backoff:10ms}") Duration initialBackoff,
+            @Value("${app.retry.max-backoff:200ms}") Duration maxBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("app.retry.max-attempts must be at least 1");
+        }
+        this.registry = registry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    // Run the action, retrying on OptimisticLockingFailureException
+    // After the last attempt the conflict is thrown to the caller (usually answered with 409)
+    public <T> T execute(String operation, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // Inside a transaction a retry can't help, leave it to the outer caller
+            return action.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    conflicts(operation, "exhausted").increment();
+                    System.out.println("Optimistic locking conflict in " + operation +
+                        ", giving up after " + attempt + " attempts");
+                    throw e;
+                }
+                conflicts(operation, "retried").increment();
+                sleep(backoff(attempt));
+            }
+        }
+    }
+
+    // Random wait between 0 and initialBackoff * 2^(attempt-1), capped at maxBackoff
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private Counter conflicts(String operation, String outcome) {
+        return Counter.builder("optimistic_lock.conflicts")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .description(CONFLICTS_DESCRIPTION)
+            .register(registry);
+    }
+}
@@ -0,0 +1,316 @@
+package com.ordersystem.backend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.ordersystem.backend.config.ReadRouting;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.OrderStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams order history straight from the database to the HTTP response
+// Rows are read with a forward-only JDBC cursor and written one by one,
+// so no Order entities (and no persistence context) are ever created.
+// Memory use is the same for a thousand rows or fifty million.
+// An export reads every order of a store, so it runs as reporting work in a read-only
+// transaction: on the reporting replica when one is configured (see ReadRouting), never
+// on the primary while a replica is usable.
+@Service
+public class OrderExportService {
+
+    // How many rows PostgreSQL sends per round trip while the cursor is open
+    private static final int FETCH_SIZE = 1000;
+
+    // Flush the response every N rows so the client sees progress
+    private static final int FLUSH_EVERY = 5000;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    // Creates the binary generators for CBOR exports (thread-safe, like the ObjectMapper)
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    public OrderExportService(DataSource dataSource, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    // Supported output formats
+    public enum ExportFormat {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson"),
+        // CBOR sequence (RFC 8742): one binary CBOR map per row, back to back
+        CBOR("application/cbor-seq", "cbor");
+
+        private final String contentType;
+        private final String fileExtension;
+
+        ExportFormat(String contentType, String fileExtension) {
+            this.contentType = contentType;
+            this.fileExtension = fileExtension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+    }
+
+    // Filters for an export: all of them are optional
+    // Dates are inclusive: from=2026-01-01&to=2026-01-31 exports the whole of January
+    public record ExportFilter(LocalDate from, LocalDate to, OrderStatus status) {}
+
+    // One row per order
+    public void exportOrders(ExportFilter filter, ExportFormat format, OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder(
+            "SELECT o.id, o.order_date, o.customer_name, o.customer_email, o.status, o.total_amount " +
+            "FROM orders o WHERE 1 = 1");
+        List<Object> params = appendFilter(sql, filter);
+        sql.append(" ORDER BY o.id");
+
+        String[] columns = {"order_id", "order_date", "customer_name", "customer_email", "status", "total_amount"};
+        stream(sql.toString(), params, columns, format, out);
+    }
+
+    // One row per order item, with the order's date/status and the product name
+    public void exportOrderItems(ExportFilter filter, ExportFormat format, OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder(
+            "SELECT oi.order_id, o.order_date, o.status, o.customer_email, oi.id, oi.product_id, p.name, " +
+            "oi.quantity, oi.unit_price, oi.unit_price * oi.quantity " +
+            "FROM order_items oi " +
+            "JOIN orders o ON o.id = oi.order_id " +
+            "JOIN products p ON p.id = oi.product_id WHERE 1 = 1");
+        List<Object> params = appendFilter(sql, filter);
+        sql.append(" ORDER BY oi.order_id, oi.id");
+
+        String[] columns = {"order_id", "order_date", "status", "customer_email", "item_id", "product_id",
+            "product_name", "quantity", "unit_price", "line_total"};
+        stream(sql.toString(), params, columns, format, out);
+    }
+
+    private List<Object> appendFilter(StringBuilder sql, ExportFilter filter) {
+        List<Object> params = new ArrayList<>();
+        // Only the caller's store's orders (the streaming thread runs with StoreContext.forStore)
+        sql.append(" AND o.store_id = ?");
+        params.add(StoreContext.currentStore());
+        if (filter.from() != null) {
+            sql.append(" AND o.order_date >= ?");
+            params.add(Timestamp.valueOf(filter.from().atStartOfDay()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND o.order_date < ?");
+            params.add(Timestamp.valueOf(filter.to().plusDays(1).atStartOfDay()));
+        }
+        if (filter.status() != null) {
+            sql.append(" AND o.status = ?");
+            params.add(filter.status().name());
+        }
+        return params;
+    }
+
+    private void stream(String sql, List<Object> params, String[] columns, ExportFormat format,
+                        OutputStream out) throws IOException {
+        // The read-only transaction picks the replica (the connection is only taken when the query
+        // runs, inside it) and turns autocommit off: PostgreSQL only uses a cursor (instead of
+        // loading the whole result) when autocommit is off and a fetch size is set
+        try {
+            ReadRouting.reporting(() -> readOnlyTransaction.execute(tx ->
+                jdbcTemplate.query(sql, rs -> {
+                    try {
+                        RowWriter writer = switch (format) {
+                            case CSV -> new CsvRowWriter(out, columns);
+                            case NDJSON -> new NdjsonRowWriter(out, columns);
+                            case CBOR -> new CborRowWriter(out, columns);
+                        };
+                        writer.writeHeader();
+                        long rows = 0;
+                        while (rs.next()) {
+                            writer.writeRow(rs);
+                            if (++rows % FLUSH_EVERY == 0) {
+                                writer.flush();
+                            }
+                        }
+                        writer.flush();
+                        return rows;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, params.toArray())));
+        } catch (UncheckedIOException e) {
+            // The client went away, or the response couldn't be written
+            throw e.getCause();
+        } catch (DataAccessException e) {
+            throw new RuntimeException("Order export failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Writes result set rows in one output format
+    private interface RowWriter {
+        void writeHeader() throws IOException;
+
+        void writeRow(ResultSet rs) throws IOException, SQLException;
+
+        void flush() throws IOException;
+    }
+
+    // RFC 4180 style CSV: values with commas, quotes or line breaks are quoted
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+        private final String[] columns;
+
+        CsvRowWriter(OutputStream out, String[] columns) {
+            this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            this.columns = columns;
+        }
+
+        @Override
+        public void writeHeader() throws IOException {
+            writer.write(String.join(",", columns));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void writeRow(ResultSet rs) throws IOException, SQLException {
+            for (int i = 1; i <= columns.length; i++) {
+                if (i > 1) {
+                    writer.write(',');
+                }
+                writer.write(escape(rs.getString(i)));
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 &&
+                value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    // One JSON object per line, written with Jackson's streaming generator
+    private class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+        private final String[] columns;
+
+        NdjsonRowWriter(OutputStream out, String[] columns) throws IOException {
+            this.generator = objectMapper.getFactory().createGenerator(out);
+            // Don't let Jackson close the response stream, the servlet container owns it
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // We end every line with '\n' ourselves, so no extra separator between objects
+            this.generator.setRootValueSeparator(null);
+            this.columns = columns;
+        }
+
+        @Override
+        public void writeHeader() {
+            // NDJSON has no header line, every object carries its own field names
+        }
+
+        @Override
+        public void writeRow(ResultSet rs) throws IOException, SQLException {
+            generator.writeStartObject();
+            for (int i = 1; i <= columns.length; i++) {
+                Object value = rs.getObject(i);
+                generator.writeFieldName(columns[i - 1]);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Number number) {
+                    // BigDecimal/Long/Integer keep their exact value
+                    generator.writeNumber(number.toString());
+                } else if (value instanceof Timestamp timestamp) {
+                    generator.writeString(timestamp.toLocalDateTime().toString());
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+
+    // One CBOR map per row, numbers as real CBOR numbers (integers, decimal fractions)
+    private class CborRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+        private final String[] columns;
+
+        CborRowWriter(OutputStream out, String[] columns) throws IOException {
+            this.generator = cborFactory.createGenerator(out);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.columns = columns;
+        }
+
+        @Override
+        public void writeHeader() {
+            // A CBOR sequence has no header, every map carries its own field names
+        }
+
+        @Override
+        public void writeRow(ResultSet rs) throws IOException, SQLException {
+            generator.writeStartObject();
+            for (int i = 1; i <= columns.length; i++) {
+                Object value = rs.getObject(i);
+                generator.writeFieldName(columns[i - 1]);
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof BigDecimal decimal) {
+                    generator.writeNumber(decimal);
+                } else if (value instanceof Number number) {
+                    generator.writeNumber(number.longValue());
+                } else if (value instanceof Timestamp timestamp) {
+                    generator.writeString(timestamp.toLocalDateTime().toString());
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+}
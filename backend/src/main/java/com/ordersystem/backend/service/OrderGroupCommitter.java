@@ -0,0 +1,276 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Group commit for order placement
+// When many terminals check out at the same time, each order normally gets its own
+// transaction: its own product locks, stock updates and commit (fsync). With group commit
+// enabled, orders arriving within a short window are collected by one worker thread and
+// saved together in a single transaction, so the database does one commit for the whole batch.
+// Every order is still validated on its own (see OrderService.createOrdersInBatch), and
+// each caller only gets its response after the batch has committed.
+//
+// Off by default (app.orders.group-commit.enabled), then placeOrder just calls createOrder.
+// A caller waits at most app.orders.group-commit.timeout for its batch; on shutdown the
+// worker commits what is already queued and later orders are saved by their own callers.
+// Metric: orders.group_commit.batch.size - number of orders per committed batch
+@Component
+public class OrderGroupCommitter {
+
+    // Queued by shutdown(): the worker commits everything queued before it, then stops
+    private static final PendingOrder STOP = new PendingOrder(null);
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Duration timeout;
+
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSizes;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    public OrderGroupCommitter(
+            MeterRegistry registry,
+            @Value("${app.orders.group-commit.enabled:false}") boolean enabled,
+            @Value("${app.orders.group-commit.window:5ms}") Duration window,
+            @Value("${app.orders.group-commit.max-batch-size:64}") int maxBatchSize,
+            @Value("${app.orders.group-commit.timeout:30s}") Duration timeout) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("app.orders.group-commit.max-batch-size must be at least 1");
+        }
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.timeout = timeout;
+        this.batchSizes = DistributionSummary.builder("orders.group_commit.batch.size")
+            .description("Orders saved per group commit transaction")
+            .register(registry);
+
+        if (enabled) {
+            worker = new Thread(this::runWorker, "order-group-commit");
+            worker.setDaemon(true);
+            worker.start();
+            System.out.println("Order group commit enabled: window " + window.toMillis() +
+                "ms, max batch size " + maxBatchSize);
+        } else {
+            worker = null;
+        }
+    }
+
+    // Place an order, waiting until it has been committed (or rejected)
+    // Throws RuntimeException with the validation message, just like OrderService.createOrder
+    // Each call is a CheckoutEvent for Java Flight Recorder (see JfrEventMetrics)
+    public Order placeOrder(OrderRequest orderRequest) {
+        CheckoutEvent event = new CheckoutEvent();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            Order order = submit(orderRequest);
+            succeeded = true;
+            return order;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.storeId = orderRequest.getStoreId();
+                event.orderLines = orderRequest.getOrderItems() == null ? 0 : orderRequest.getOrderItems().size();
+                event.withHold = orderRequest.getHoldId() != null;
+                event.succeeded = succeeded;
+                event.commit();
+            }
+        }
+    }
+
+    private Order submit(OrderRequest orderRequest) {
+        if (!enabled || !running) {
+            return createSingle(orderRequest);
+        }
+
+        PendingOrder pending = new PendingOrder(orderRequest);
+        queue.add(pending);
+        // shutdown() may have stopped the worker between the check above and the add: then
+        // nobody will take the order from the queue, so save it here. If the worker already
+        // took it, it commits it before stopping.
+        if (!running && queue.remove(pending)) {
+            return createSingle(orderRequest);
+        }
+        try {
+            return pending.result.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new CommitTimeoutException("Order not saved, checkout is too busy, please retry");
+            }
+            // The worker is saving it right now, it may or may not go through
+            throw new CommitTimeoutException("Timed out waiting for the order to be saved, check the orders before retrying");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the order to be saved", e);
+        }
+    }
+
+    private void runWorker() {
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                // Wait for the first order, then give others "window" to join the batch
+                PendingOrder first = queue.take();
+                if (first == STOP) {
+                    break;
+                }
+                List<PendingOrder> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.nanoTime() + window.toNanos();
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // drainTo may have picked up the stop marker as well
+                stopping = batch.remove(STOP);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Orders queued after the marker are saved by their callers (see submit), this only
+        // catches those still here if the worker was interrupted
+        List<PendingOrder> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        leftovers.remove(STOP);
+        leftovers.forEach(this::commitSingle);
+    }
+
+    // Orders of different stores may be on different shards, so each store's orders
+    // are committed in their own transaction, on that store's shard
+    private void commit(List<PendingOrder> batch) {
+        Map<String, List<PendingOrder>> byStore = new LinkedHashMap<>();
+        for (PendingOrder pending : batch) {
+            byStore.computeIfAbsent(pending.request.getStoreId(), store -> new ArrayList<>()).add(pending);
+        }
+        for (Map.Entry<String, List<PendingOrder>> entry : byStore.entrySet()) {
+            StoreContext.forStore(entry.getKey(), () -> {
+                commitStore(entry.getValue());
+                return null;
+            });
+        }
+    }
+
+    private void commitStore(List<PendingOrder> batch) {
+        List<OrderRequest> requests = new ArrayList<>();
+        for (PendingOrder pending : batch) {
+            requests.add(pending.request);
+        }
+
+        List<OrderService.BatchOrderOutcome> outcomes;
+        try {
+            outcomes = orderService.createOrdersInBatch(requests);
+        } catch (RuntimeException e) {
+            // The whole transaction failed (e.g. a database error), so nothing was saved.
+            // Retry each order in its own transaction, so one bad order can't fail the others.
+            System.out.println("Group commit of " + batch.size() + " orders failed (" + e.getMessage() +
+                "), saving them one by one");
+            batch.forEach(this::commitSingle);
+            return;
+        }
+
+        int saved = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            OrderService.BatchOrderOutcome outcome = outcomes.get(i);
+            if (outcome.isSuccess()) {
+                saved++;
+                batch.get(i).result.complete(outcome.getOrder());
+            } else {
+                batch.get(i).result.completeExceptionally(new RuntimeException(outcome.getError()));
+            }
+        }
+        batchSizes.record(saved);
+    }
+
+    private void commitSingle(PendingOrder pending) {
+        try {
+            pending.result.complete(StoreContext.forStore(pending.request.getStoreId(),
+                () -> createSingle(pending.request)));
+            batchSizes.record(1);
+        } catch (RuntimeException e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    // One order in its own transaction; if it still hits a version conflict (e.g. a product was
+    // switched to or from stock buckets meanwhile) it is simply run again
+    private Order createSingle(OrderRequest orderRequest) {
+        return optimisticRetry.execute("order-create", () -> orderService.createOrder(orderRequest));
+    }
+
+    // Let the worker commit what is queued, then stop it; new orders are saved by their callers
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker == null) {
+            return;
+        }
+        queue.add(STOP);
+        try {
+            worker.join(timeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The order wasn't committed within app.orders.group-commit.timeout (503 for the caller)
+    public static class CommitTimeoutException extends RuntimeException {
+        public CommitTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    // An order waiting in the queue, together with the future its caller is blocked on
+    private static class PendingOrder {
+        private final OrderRequest request;
+        private final CompletableFuture<Order> result = new CompletableFuture<>();
+
+        PendingOrder(OrderRequest request) {
+            this.request = request;
+        }
+    }
+}
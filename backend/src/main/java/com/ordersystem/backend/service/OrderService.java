@@ -1,25 +1,39 @@
 package com.ordersystem.backend.service;
 
+import com.ordersystem.backend.config.ReadRouting;
+import com.ordersystem.backend.config.StoreContext;
 import com.ordersystem.backend.dto.OrderRequest;
 import com.ordersystem.backend.dto.OrderItemRequest;
 import com.ordersystem.backend.model.*;
 import com.ordersystem.backend.repository.OrderRepository;
 import com.ordersystem.backend.repository.OrderItemRepository;
 import com.ordersystem.backend.repository.ProductRepository;
+import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
+// Every method runs in a read-write transaction unless it is marked readOnly below
+// Read-only transactions skip Hibernate's dirty checking and can be served by a read replica
 @Transactional
 public class OrderService {
     
+    // Upper limit for one bulk status update request
+    public static final int MAX_BULK_ORDERS = 1000;
+    
     @Autowired
     private OrderRepository orderRepository;
     
@@ -29,10 +43,57 @@ public class OrderService {
     @Autowired
     private OrderItemRepository orderItemRepository;
     
+    // Tracks the order/product data versions used for ETags
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+    
+    // Keeps the per-customer order summaries in step with the orders
+    @Autowired
+    private CustomerSummaryService customerSummaryService;
+    
+    // Cached sales analytics of past periods, dropped when an old order changes status
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+    
+    // Stock reserved for carts that haven't checked out yet
+    @Autowired
+    private StockHoldService stockHoldService;
+    
+    // Quantities committed to open orders and the available-to-promise check
+    @Autowired
+    private AvailabilityService availabilityService;
+    
+    // Changes the stock and records why in the stock journal
+    @Autowired
+    private StockJournalService stockJournalService;
+    
+    // Where best-sellers keep their stock (the group commit locks their buckets up front)
+    @Autowired
+    private StockBucketService stockBucketService;
+    
     // Create a new order
     public Order createOrder(OrderRequest orderRequest) {
-        // First, validate that all products have sufficient stock
-        validateStockAvailability(orderRequest.getOrderItems());
+        if (orderRequest.getOrderItems() == null) {
+            throw new RuntimeException("Order must contain at least one item");
+        }
+        String holdId = orderRequest.getHoldId();
+        if (holdId != null) {
+            stockHoldService.requireHold(holdId);
+        }
+        
+        // Lock the stock first, in the same order as every other stock change (see StockBucketService):
+        // the buckets of products that have them, then the product rows in id order. Concurrent
+        // orders for the same product wait for each other instead of overwriting each other's
+        // stock, and a best-seller with buckets usually doesn't need its row at all
+        Map<Long, Integer> requested = requestedByProduct(orderRequest.getOrderItems());
+        Map<Long, Integer> takenFromBuckets = stockJournalService.takeFromBuckets(requested);
+        Map<Long, Product> products = stockJournalService.loadForStockChange(requested, takenFromBuckets.keySet(),
+            takenFromBuckets);
+        
+        // Then validate that all products belong to the order's store and have sufficient stock
+        // (not counting other carts' holds)
+        String storeId = storeOf(orderRequest);
+        validateStockAvailability(requested, products, storeId, takenFromBuckets, holdId);
         
         // Create new order
         Order order = new Order();
@@ -40,14 +101,14 @@ public class OrderService {
         order.setCustomerEmail(orderRequest.getCustomerEmail());
         order.setOrderDate(LocalDateTime.now());
         order.setStatus(OrderStatus.PENDING);
+        order.setStoreId(storeId);
         
         List<OrderItem> orderItems = new ArrayList<>();
         BigDecimal totalAmount = BigDecimal.ZERO;
         
         // Process each order item
         for (OrderItemRequest itemRequest : orderRequest.getOrderItems()) {
-            Product product = productRepository.findById(itemRequest.getProductId())
-                .orElseThrow(() -> new RuntimeException("Product not found with id: " + itemRequest.getProductId()));
+            Product product = products.get(itemRequest.getProductId());
             
             // Create order item
             OrderItem orderItem = new OrderItem();
@@ -61,10 +122,12 @@ public class OrderService {
             // Calculate total amount
             BigDecimal itemTotal = product.getPrice().multiply(BigDecimal.valueOf(itemRequest.getQuantity()));
             totalAmount = totalAmount.add(itemTotal);
-            
-            // Update product stock
-            product.setStockQuantity(product.getStockQuantity() - itemRequest.getQuantity());
-            productRepository.save(product);
+        }
+        
+        // Update product stock (once per product, whatever the buckets didn't give comes off the row)
+        for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+            Product product = products.get(entry.getKey());
+            stockJournalService.deduct(product, entry.getValue(), takenFromBuckets.getOrDefault(entry.getKey(), 0));
             
             // Check if product needs restocking
             if (product.getStockQuantity() <= product.getMinStockLevel()) {
@@ -76,85 +139,327 @@ public class OrderService {
         order.setOrderItems(orderItems);
         order.setTotalAmount(totalAmount);
         
+        // The order takes over the cart's held stock, the hold ends when the order is committed
+        if (holdId != null) {
+            stockHoldService.claimForOrder(holdId);
+        }
+        
+        // New order changes both order statistics and product stock
+        dataVersionTracker.ordersChanged();
+        dataVersionTracker.productsChanged();
+        
         // Save the order (cascade will save order items)
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        customerSummaryService.recordNewOrder(savedOrder);
+        availabilityService.ordersPlaced(List.of(savedOrder.getId()));
+        stockJournalService.recordSales(List.of(savedOrder.getId()));
+        return savedOrder;
+    }
+    
+    // Create several orders in one transaction (used by OrderGroupCommitter)
+    // Each order is validated on its own: an invalid order gets an error outcome
+    // and the others in the batch are still saved. The result list matches the request list.
+    public List<BatchOrderOutcome> createOrdersInBatch(List<OrderRequest> orderRequests) {
+        // Lock all the stock the batch touches up front, in the usual order (see StockBucketService):
+        // every bucket of its bucketed products, then every product row in id order. The orders
+        // below then take from them many times without ever waiting.
+        Set<Long> productIds = new HashSet<>();
+        for (OrderRequest request : orderRequests) {
+            if (request.getOrderItems() != null) {
+                for (OrderItemRequest item : request.getOrderItems()) {
+                    productIds.add(item.getProductId());
+                }
+            }
+        }
+        Set<Long> bucketed = stockBucketService.findBucketed(productIds);
+        stockBucketService.lockBuckets(bucketed);
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllByIdForUpdate(productIds)) {
+            if ((product.getBucketCount() > 0) != bucketed.contains(product.getId())) {
+                // Switched to or from buckets in the meantime: the group committer saves the orders one by one
+                throw new ObjectOptimisticLockingFailureException(Product.class, product.getId());
+            }
+            productsById.put(product.getId(), product);
+        }
+        
+        List<BatchOrderOutcome> outcomes = new ArrayList<>();
+        List<Order> ordersToSave = new ArrayList<>();
+        for (OrderRequest request : orderRequests) {
+            try {
+                Order order = buildOrder(request, productsById);
+                ordersToSave.add(order);
+                outcomes.add(BatchOrderOutcome.success(order));
+            } catch (RuntimeException e) {
+                outcomes.add(BatchOrderOutcome.failure(e.getMessage()));
+            }
+        }
+        
+        if (!ordersToSave.isEmpty()) {
+            // Stock changes are flushed together at commit (JDBC batching, see hibernate.jdbc.batch_size)
+            orderRepository.saveAll(ordersToSave);
+            for (Order order : ordersToSave) {
+                customerSummaryService.recordNewOrder(order);
+            }
+            List<Long> savedIds = ordersToSave.stream().map(Order::getId).toList();
+            availabilityService.ordersPlaced(savedIds);
+            stockJournalService.recordSales(savedIds);
+            dataVersionTracker.ordersChanged();
+            dataVersionTracker.productsChanged();
+        }
+        return outcomes;
+    }
+    
+    // Validate one order against the (already locked) products and apply its stock changes
+    // Nothing is changed if any item fails, so a bad order can't leave partial deductions behind
+    private Order buildOrder(OrderRequest orderRequest, Map<Long, Product> productsById) {
+        if (orderRequest.getOrderItems() == null || orderRequest.getOrderItems().isEmpty()) {
+            throw new RuntimeException("Order must contain at least one item");
+        }
+        
+        String holdId = orderRequest.getHoldId();
+        if (holdId != null) {
+            stockHoldService.requireHold(holdId);
+        }
+        
+        // Per product (the same product may appear on several lines), in id order like the locks
+        // Another store's product counts as not found, before any of its stock is taken
+        Map<Long, Integer> requestedByProduct = requestedByProduct(orderRequest.getOrderItems());
+        String storeId = storeOf(orderRequest);
+        for (Long productId : requestedByProduct.keySet()) {
+            Product product = productsById.get(productId);
+            if (product == null || !storeId.equals(product.getStoreId())) {
+                throw new RuntimeException("Product not found with id: " + productId);
+            }
+        }
+        
+        // The buckets are locked by this transaction already, so taking from them never waits;
+        // if the order can't be served, the batch transaction goes on, so give back what it took
+        Map<Long, Integer> takenFromBuckets = new HashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> entry : requestedByProduct.entrySet()) {
+                Product product = productsById.get(entry.getKey());
+                takenFromBuckets.put(entry.getKey(), stockJournalService.takeFromBuckets(product, entry.getValue()));
+            }
+            validateStockAvailability(requestedByProduct, productsById, storeId, takenFromBuckets, holdId);
+        } catch (RuntimeException e) {
+            for (Map.Entry<Long, Integer> entry : takenFromBuckets.entrySet()) {
+                stockJournalService.putBack(productsById.get(entry.getKey()), entry.getValue(), entry.getValue());
+            }
+            throw e;
+        }
+        
+        Order order = new Order();
+        order.setCustomerName(orderRequest.getCustomerName());
+        order.setCustomerEmail(orderRequest.getCustomerEmail());
+        order.setOrderDate(LocalDateTime.now());
+        order.setStatus(OrderStatus.PENDING);
+        order.setStoreId(storeId);
+        for (OrderItemRequest itemRequest : orderRequest.getOrderItems()) {
+            Product product = productsById.get(itemRequest.getProductId());
+            order.addOrderItem(new OrderItem(order, product, itemRequest.getQuantity(), product.getPrice()));
+        }
+        
+        // Later orders in the same batch see these deductions
+        for (Map.Entry<Long, Integer> entry : requestedByProduct.entrySet()) {
+            Product product = productsById.get(entry.getKey());
+            stockJournalService.deduct(product, entry.getValue(), takenFromBuckets.get(entry.getKey()));
+            if (product.getStockQuantity() <= product.getMinStockLevel()) {
+                System.out.println("WARNING: Product " + product.getName() + 
+                    " has reached minimum stock level. Current stock: " + product.getStockQuantity());
+            }
+        }
+        order.calculateTotal();
+        
+        // Validation passed, so the order takes over the cart's held stock
+        if (holdId != null) {
+            stockHoldService.claimForOrder(holdId);
+        }
+        return order;
     }
     
     // Add this method to OrderService if you want to use the OrderItemRepository
+    @Transactional(readOnly = true)
     public List<OrderItem> getOrderItems(Long orderId) {
         return orderItemRepository.findByOrderId(orderId);
     }
 
-    // Or this method to get popular products
+    // Or this method to get popular products (product name and units sold, best sellers first)
+    // Scans every order item, so it runs on the reporting replica when one is configured
+    @Transactional(readOnly = true)
     public List<Object[]> getMostPopularProducts() {
-        return orderItemRepository.findMostPopularProducts();
+        return ReadRouting.reporting(() -> orderItemRepository.findMostPopularProducts());
 }
-    // Validate that all products have sufficient stock
-    private void validateStockAvailability(List<OrderItemRequest> orderItems) {
+    // The store an order belongs to: the one in the request, else the caller's (X-Store-Id)
+    private String storeOf(OrderRequest orderRequest) {
+        return orderRequest.getStoreId() != null ? orderRequest.getStoreId() : StoreContext.currentStore();
+    }
+    
+    // Quantities per product, in product id order (the order the stock is locked in)
+    private static Map<Long, Integer> requestedByProduct(List<OrderItemRequest> orderItems) {
+        Map<Long, Integer> requested = new TreeMap<>();
         for (OrderItemRequest item : orderItems) {
-            Product product = productRepository.findById(item.getProductId())
-                .orElseThrow(() -> new RuntimeException("Product not found with id: " + item.getProductId()));
+            requested.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return requested;
+    }
+    
+    // Validate that all products exist and have sufficient stock (see AvailabilityService.availableForOrder)
+    // Stock held for other carts is not available, the order's own hold (if any) is
+    // A product of another store than the order's counts as not found (stores can share a shard)
+    private void validateStockAvailability(Map<Long, Integer> requested, Map<Long, Product> products, String storeId,
+                                           Map<Long, Integer> takenFromBuckets, String holdId) {
+        for (Map.Entry<Long, Integer> entry : requested.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null || !storeId.equals(product.getStoreId())) {
+                throw new RuntimeException("Product not found with id: " + entry.getKey());
+            }
             
-            if (product.getStockQuantity() < item.getQuantity()) {
+            int available = availabilityService.availableForOrder(product, holdId,
+                takenFromBuckets.getOrDefault(entry.getKey(), 0));
+            if (available < entry.getValue()) {
                 throw new RuntimeException(
                     "Insufficient stock for product: " + product.getName() + 
-                    ". Available: " + product.getStockQuantity() + 
-                    ", Requested: " + item.getQuantity()
+                    ". Available: " + Math.max(available, 0) + 
+                    ", Requested: " + entry.getValue()
                 );
             }
         }
     }
     
-    // Get all orders
+    // Get all orders of the caller's store
+    // Several stores can share a shard (and they all share it while sharding is off),
+    // so order reads and status changes only see the orders of StoreContext.currentStore()
+    @Transactional(readOnly = true)
     public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+        return withItems(orderRepository.findByStoreId(StoreContext.currentStore()));
     }
     
-    // Get order by ID
+    // Get order by ID (empty for another store's order)
+    @Transactional(readOnly = true)
     public Optional<Order> getOrderById(Long id) {
-        return orderRepository.findById(id);
+        return findOrderOfStore(id).map(OrderService::withItems);
     }
     
-    // Get orders by status
+    // Get the store's orders by status
+    @Transactional(readOnly = true)
     public List<Order> getOrdersByStatus(OrderStatus status) {
-        return orderRepository.findByStatus(status);
+        return withItems(orderRepository.findByStatusAndStoreId(status, StoreContext.currentStore()));
     }
     
     // Get orders by customer email
+    // A customer's orders from every store on the shard, like the customer summary and history
+    @Transactional(readOnly = true)
     public List<Order> getOrdersByCustomerEmail(String email) {
-        return orderRepository.findByCustomerEmailIgnoreCase(email);
+        return withItems(orderRepository.findByCustomerEmailIgnoreCase(email));
     }
     
-    // Get today's orders
+    // Get the store's orders of today
+    @Transactional(readOnly = true)
     public List<Order> getTodaysOrders() {
-        return orderRepository.findTodaysOrders();
+        return withItems(orderRepository.findTodaysOrdersOfStore(StoreContext.currentStore()));
+    }
+
+    // Load the items of orders that are returned to the controller
+    // Responses are written after the transaction has ended (spring.jpa.open-in-view is off),
+    // so the lazy items must be read before; Order.orderItems is batch fetched
+    static Order withItems(Order order) {
+        Hibernate.initialize(order.getOrderItems());
+        return order;
+    }
+
+    static List<Order> withItems(List<Order> orders) {
+        orders.forEach(OrderService::withItems);
+        return orders;
+    }
+    
+    // The order, if it belongs to the caller's store
+    // Loaded by id and checked afterwards, so the lookup stays a primary key read
+    private Optional<Order> findOrderOfStore(Long id) {
+        String storeId = StoreContext.currentStore();
+        return orderRepository.findById(id).filter(order -> storeId.equals(order.getStoreId()));
     }
     
-    // Update order status
+    // Update order status (another store's order is not found)
     public Order updateOrderStatus(Long orderId, OrderStatus newStatus) {
-        Order order = orderRepository.findById(orderId)
+        Order order = findOrderOfStore(orderId)
             .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
         
         OrderStatus oldStatus = order.getStatus();
+        // Same rules as the bulk update: completed and cancelled orders are final, so a cancelled
+        // order's stock is never restored twice and a completed order can't be reopened
+        if (!oldStatus.canTransitionTo(newStatus)) {
+            throw new IllegalStateException("Order " + orderId + " can't change from " + oldStatus +
+                " to " + newStatus);
+        }
         order.setStatus(newStatus);
         
         // If order is cancelled, restore the stock
-        if (newStatus == OrderStatus.CANCELLED && oldStatus != OrderStatus.CANCELLED) {
-            restoreStock(order);
+        if (newStatus == OrderStatus.CANCELLED) {
+            stockJournalService.restoreForOrder(order);
+            dataVersionTracker.productsChanged();
         }
         
-        return orderRepository.save(order);
+        customerSummaryService.recordStatusChange(order, oldStatus, newStatus);
+        availabilityService.statusChanged(order.getId(), oldStatus, newStatus);
+        salesAnalyticsService.ordersChanged(order.getStoreId(), List.of(order.getOrderDate()));
+        dataVersionTracker.ordersChanged();
+        return withItems(orderRepository.save(order));
     }
     
-    // Restore stock when order is cancelled
-    private void restoreStock(Order order) {
-        for (OrderItem item : order.getOrderItems()) {
-            Product product = item.getProduct();
-            product.setStockQuantity(product.getStockQuantity() + item.getQuantity());
-            productRepository.save(product);
-            System.out.println("Stock restored for product: " + product.getName() + 
-                ", Quantity: " + item.getQuantity());
+    // Move many orders to a new status at once (e.g. completing or cancelling a whole shift)
+    // Only orders whose current status allows the change are updated, the rest are reported as skipped
+    // Uses one UPDATE for the statuses and, for cancellations, one aggregated UPDATE for the stock
+    public BulkStatusUpdateResult updateOrderStatuses(List<Long> orderIds, OrderStatus newStatus) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            throw new IllegalArgumentException("No order ids given");
         }
+        if (orderIds.size() > MAX_BULK_ORDERS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_ORDERS + " orders can be updated at once");
+        }
+        
+        List<Long> requestedIds = orderIds.stream().distinct().toList();
+        List<String> allowedSources = OrderStatus.sourcesFor(newStatus).stream()
+            .map(OrderStatus::name)
+            .toList();
+        
+        // Lock the caller's store's orders that can make this transition; anything else
+        // (unknown id, another store's order, final status, same status) is left alone
+        List<Long> updatedIds = allowedSources.isEmpty()
+            ? List.of()
+            : orderRepository.lockIdsInStatus(requestedIds, allowedSources, StoreContext.currentStore());
+        
+        if (!updatedIds.isEmpty()) {
+            // Restore stock before changing the status, while the order rows are locked
+            if (newStatus == OrderStatus.CANCELLED) {
+                stockJournalService.restoreForOrders(updatedIds);
+                dataVersionTracker.productsChanged();
+            }
+            // COMPLETED is final, so none of these orders was completed before
+            if (newStatus == OrderStatus.COMPLETED) {
+                customerSummaryService.recordCompleted(updatedIds);
+            }
+            // Only open orders can be completed or cancelled, so all of them were committed
+            if (!newStatus.isOpen()) {
+                availabilityService.ordersClosed(updatedIds);
+            }
+            orderRepository.updateStatusForIds(updatedIds, newStatus);
+            Map<String, Set<LocalDateTime>> datesByStore = new HashMap<>();
+            for (Object[] row : orderRepository.findStoreAndDateByIds(updatedIds)) {
+                datesByStore.computeIfAbsent((String) row[0], store -> new HashSet<>()).add((LocalDateTime) row[1]);
+            }
+            salesAnalyticsService.ordersChanged(datesByStore);
+            dataVersionTracker.ordersChanged();
+        }
+        
+        List<Long> skippedIds = new ArrayList<>(requestedIds);
+        skippedIds.removeAll(updatedIds);
+        
+        BulkStatusUpdateResult result = new BulkStatusUpdateResult();
+        result.setStatus(newStatus);
+        result.setRequested(requestedIds.size());
+        result.setUpdatedOrderIds(updatedIds);
+        result.setSkippedOrderIds(skippedIds);
+        return result;
     }
     
     // Cancel an order
@@ -168,6 +473,7 @@ public class OrderService {
     }
     
     // Get order statistics
+    @Transactional(readOnly = true)
     public OrderStatistics getOrderStatistics() {
         OrderStatistics stats = new OrderStatistics();
         stats.setTotalOrders(orderRepository.count());
@@ -175,12 +481,8 @@ public class OrderService {
         stats.setCompletedOrders(orderRepository.countOrdersByStatus(OrderStatus.COMPLETED));
         stats.setCancelledOrders(orderRepository.countOrdersByStatus(OrderStatus.CANCELLED));
         
-        // Calculate total revenue from completed orders
-        List<Order> completedOrders = orderRepository.findByStatus(OrderStatus.COMPLETED);
-        BigDecimal totalRevenue = completedOrders.stream()
-            .map(Order::getTotalAmount)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        stats.setTotalRevenue(totalRevenue);
+        // Total revenue from completed orders (summed by the database, no orders are loaded)
+        stats.setTotalRevenue(orderRepository.sumTotalAmountByStatus(OrderStatus.COMPLETED));
         
         return stats;
     }
@@ -234,4 +536,81 @@ public class OrderService {
             this.totalRevenue = totalRevenue;
         }
     }
+    
+    // Inner class for the result of a bulk status update
+    public static class BulkStatusUpdateResult {
+        private OrderStatus status;
+        private int requested;
+        private List<Long> updatedOrderIds;
+        private List<Long> skippedOrderIds;
+        
+        // Getters and setters
+        public OrderStatus getStatus() {
+            return status;
+        }
+        
+        public void setStatus(OrderStatus status) {
+            this.status = status;
+        }
+        
+        public int getRequested() {
+            return requested;
+        }
+        
+        public void setRequested(int requested) {
+            this.requested = requested;
+        }
+        
+        public int getUpdated() {
+            return updatedOrderIds.size();
+        }
+        
+        public List<Long> getUpdatedOrderIds() {
+            return updatedOrderIds;
+        }
+        
+        public void setUpdatedOrderIds(List<Long> updatedOrderIds) {
+            this.updatedOrderIds = updatedOrderIds;
+        }
+        
+        // Orders that don't exist or whose status doesn't allow the change
+        public List<Long> getSkippedOrderIds() {
+            return skippedOrderIds;
+        }
+        
+        public void setSkippedOrderIds(List<Long> skippedOrderIds) {
+            this.skippedOrderIds = skippedOrderIds;
+        }
+    }
+    
+    // Inner class for the result of one order in a batch: either the saved order or the error message
+    public static class BatchOrderOutcome {
+        private final Order order;
+        private final String error;
+        
+        private BatchOrderOutcome(Order order, String error) {
+            this.order = order;
+            this.error = error;
+        }
+        
+        static BatchOrderOutcome success(Order order) {
+            return new BatchOrderOutcome(order, null);
+        }
+        
+        static BatchOrderOutcome failure(String error) {
+            return new BatchOrderOutcome(null, error);
+        }
+        
+        public boolean isSuccess() {
+            return order != null;
+        }
+        
+        public Order getOrder() {
+            return order;
+        }
+        
+        public String getError() {
+            return error;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.SecondLevelCacheConfig;
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.model.Product;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.cache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// Access to the Hibernate second-level cache for products (see SecondLevelCacheConfig)
+// Changes made through JPA, and native queries that name their table, keep the cache up to date
+// by themselves. SQL sent with JdbcTemplate (the CSV import) bypasses Hibernate, so whoever runs it
+// must evict the products it changed here, after the transaction has committed.
+@Component
+public class ProductCache {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    // The JCache manager holding the regions, for the entry counts Hibernate can't report
+    @Autowired
+    private CacheManager hibernateCacheManager;
+
+    // Drop the given products of the current shard
+    // Names don't change in these paths, so the name -> id cache stays valid
+    public void evictProducts(Collection<Long> productIds) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(Product.class);
+        EntityDataAccess access = persister.getCacheAccessStrategy();
+        // With sharding the cache keys include the shard (Hibernate's tenant), without it there is none
+        String tenant = shardDirectory.isSharded() ? shardDirectory.currentShard() : null;
+        for (Long id : productIds) {
+            access.evict(access.generateCacheKey(id, persister, sessionFactory, tenant));
+        }
+    }
+
+    // Drop the cached stock query results, after stock changes Hibernate didn't see
+    // (bucket sales aren't, see ProductRepository.findLowStockProducts)
+    public void evictStockQueries() {
+        sessionFactory().getCache().evictQueryRegion(SecondLevelCacheConfig.PRODUCT_STOCK_QUERIES_REGION);
+    }
+
+    // Empty every region, e.g. after the database was changed behind the backend's back
+    // (the load test seeder, manual SQL)
+    public void evictAll() {
+        sessionFactory().getCache().evictAllRegions();
+        System.out.println("Second-level cache cleared");
+    }
+
+    // Hit/miss/put counts since startup for each product region, plus the overall query cache numbers
+    public CacheStatistics getStatistics() {
+        Statistics statistics = sessionFactory().getStatistics();
+        CacheStatistics result = new CacheStatistics();
+        result.setStatisticsEnabled(statistics.isStatisticsEnabled());
+
+        List<RegionStatistics> regions = new ArrayList<>();
+        for (String regionName : List.of(SecondLevelCacheConfig.PRODUCT_REGION,
+                SecondLevelCacheConfig.PRODUCT_NATURAL_ID_REGION,
+                SecondLevelCacheConfig.PRODUCT_STOCK_QUERIES_REGION)) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(regionName);
+            if (regionStatistics != null) {
+                RegionStatistics region = new RegionStatistics(regionName, regionStatistics);
+                region.setEntries(hibernateCacheManager.getCache(regionName)
+                    .unwrap(com.github.benmanes.caffeine.cache.Cache.class)
+                    .estimatedSize());
+                regions.add(region);
+            }
+        }
+        result.setRegions(regions);
+
+        result.setQueryCacheHits(statistics.getQueryCacheHitCount());
+        result.setQueryCacheMisses(statistics.getQueryCacheMissCount());
+        result.setQueryCachePuts(statistics.getQueryCachePutCount());
+        // Products loaded from the database (cache misses and locked reads)
+        result.setProductLoadsFromDatabase(statistics.getEntityStatistics(Product.class.getName()).getLoadCount());
+        return result;
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    // Response of GET /api/products/cache-statistics
+    public static class CacheStatistics {
+        private boolean statisticsEnabled;
+        private List<RegionStatistics> regions;
+        private long queryCacheHits;
+        private long queryCacheMisses;
+        private long queryCachePuts;
+        private long productLoadsFromDatabase;
+
+        public boolean isStatisticsEnabled() {
+            return statisticsEnabled;
+        }
+
+        public void setStatisticsEnabled(boolean statisticsEnabled) {
+            this.statisticsEnabled = statisticsEnabled;
+        }
+
+        public List<RegionStatistics> getRegions() {
+            return regions;
+        }
+
+        public void setRegions(List<RegionStatistics> regions) {
+            this.regions = regions;
+        }
+
+        public long getQueryCacheHits() {
+            return queryCacheHits;
+        }
+
+        public void setQueryCacheHits(long queryCacheHits) {
+            this.queryCacheHits = queryCacheHits;
+        }
+
+        public long getQueryCacheMisses() {
+            return queryCacheMisses;
+        }
+
+        public void setQueryCacheMisses(long queryCacheMisses) {
+            this.queryCacheMisses = queryCacheMisses;
+        }
+
+        public long getQueryCachePuts() {
+            return queryCachePuts;
+        }
+
+        public void setQueryCachePuts(long queryCachePuts) {
+            this.queryCachePuts = queryCachePuts;
+        }
+
+        public long getProductLoadsFromDatabase() {
+            return productLoadsFromDatabase;
+        }
+
+        public void setProductLoadsFromDatabase(long productLoadsFromDatabase) {
+            this.productLoadsFromDatabase = productLoadsFromDatabase;
+        }
+    }
+
+    public static class RegionStatistics {
+        private String region;
+        private long hits;
+        private long misses;
+        private long puts;
+        // Approximate, expired entries may still be counted until they are cleaned up
+        private long entries;
+        private double hitRatio;
+
+        public RegionStatistics(String region, CacheRegionStatistics statistics) {
+            this.region = region;
+            this.hits = statistics.getHitCount();
+            this.misses = statistics.getMissCount();
+            this.puts = statistics.getPutCount();
+            long requests = hits + misses;
+            this.hitRatio = requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public void setRegion(String region) {
+            this.region = region;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public void setHits(long hits) {
+            this.hits = hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public void setMisses(long misses) {
+            this.misses = misses;
+        }
+
+        public long getPuts() {
+            return puts;
+        }
+
+        public void setPuts(long puts) {
+            this.puts = puts;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public void setEntries(long entries) {
+            this.entries = entries;
+        }
+
+        public double getHitRatio() {
+            return hitRatio;
+        }
+
+        public void setHitRatio(double hitRatio) {
+            this.hitRatio = hitRatio;
+        }
+    }
+}
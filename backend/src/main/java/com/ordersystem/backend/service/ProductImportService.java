@@ -0,0 +1,526 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.model.StockBucket;
+import com.ordersystem.backend.model.StockMovementReason;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Bulk catalogue import from CSV files
+// The file is parsed as a stream and written in chunks of multi-row
+// INSERT ... ON CONFLICT statements, instead of one findById + save per row.
+// Caches (ETags, search index) are refreshed once per import, not once per row;
+// the products each chunk changed are evicted from the second-level cache once it has committed.
+@Service
+public class ProductImportService {
+
+    // Rows per INSERT statement / transaction
+    // 6 parameters per row keeps us far below PostgreSQL's 65535 bind parameter limit
+    private static final int CHUNK_SIZE = 1000;
+
+    // Don't send back millions of error messages for a completely wrong file
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    // These statements bypass Hibernate, so the cached products must be evicted by hand
+    @Autowired
+    private ProductCache productCache;
+
+    // ... and the stock changes must be journalled by hand
+    @Autowired
+    private StockJournalService stockJournalService;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    // At startup: product names used to be unique across all stores, they are now unique per
+    // store (the upsert below conflicts on store and name). Hibernate's schema update adds the
+    // new constraint but never drops the old one, and doesn't run at all in the prod profile.
+    // Done on every shard, in one transaction per shard (a transaction is bound to one shard)
+    @EventListener(ApplicationStartedEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void initialize() {
+        for (String shard : shardDirectory.getShardNames()) {
+            StoreContext.onShard(shard, () -> transactionTemplate.execute(status -> {
+                jdbcTemplate.execute("ALTER TABLE products DROP CONSTRAINT IF EXISTS uk_products_name");
+                jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_products_store_name ON products (store_id, name)");
+                return null;
+            }));
+        }
+    }
+
+    // Create or update the caller's store's products by name
+    // Expected header: name,description,price,stockQuantity,minStockLevel
+    // description is optional: without it new products get none and existing ones keep theirs
+    public ImportResult importProducts(InputStream csv) throws IOException {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+
+        try (CsvReader reader = new CsvReader(csv)) {
+            Map<String, Integer> header = reader.readHeader();
+            requireColumns(header, "name", "price", "stockquantity", "minstocklevel");
+
+            // Later rows for the same name replace earlier ones in the same chunk,
+            // PostgreSQL can't update the same row twice in one ON CONFLICT statement
+            Map<String, ImportRow> chunk = new LinkedHashMap<>();
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                result.rowsRead++;
+                int line = reader.getRecordLine();
+                try {
+                    Product product = new Product(
+                        field(record, header, "name"),
+                        field(record, header, "description"),
+                        decimal(field(record, header, "price"), "price"),
+                        integer(field(record, header, "stockquantity"), "stockQuantity"),
+                        integer(field(record, header, "minstocklevel"), "minStockLevel"));
+                    productService.validateProduct(product);
+                    product.setName(product.getName().trim());
+                    chunk.put(product.getName(), new ImportRow(line, product));
+                } catch (IllegalArgumentException e) {
+                    result.addError(line, e.getMessage());
+                }
+
+                if (chunk.size() >= CHUNK_SIZE) {
+                    upsertChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+            upsertChunk(chunk, result);
+        } finally {
+            finish(result, start);
+        }
+        return result;
+    }
+
+    // Price-only update for existing products
+    // Expected header: name,price
+    public ImportResult importPrices(InputStream csv) throws IOException {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+
+        try (CsvReader reader = new CsvReader(csv)) {
+            Map<String, Integer> header = reader.readHeader();
+            requireColumns(header, "name", "price");
+
+            Map<String, ImportRow> chunk = new LinkedHashMap<>();
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                result.rowsRead++;
+                int line = reader.getRecordLine();
+                try {
+                    String name = field(record, header, "name");
+                    if (name == null) {
+                        throw new IllegalArgumentException("Product name cannot be empty");
+                    }
+                    BigDecimal price = decimal(field(record, header, "price"), "price");
+                    if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
+                        throw new IllegalArgumentException("Product price must be greater than zero");
+                    }
+                    Product product = new Product();
+                    product.setName(name.trim());
+                    product.setPrice(price);
+                    chunk.put(product.getName(), new ImportRow(line, product));
+                } catch (IllegalArgumentException e) {
+                    result.addError(line, e.getMessage());
+                }
+
+                if (chunk.size() >= CHUNK_SIZE) {
+                    updatePricesChunk(chunk, result);
+                    chunk.clear();
+                }
+            }
+            updatePricesChunk(chunk, result);
+        } finally {
+            finish(result, start);
+        }
+        return result;
+    }
+
+    // One multi-row upsert per chunk, in its own transaction
+    // If the statement fails, only this chunk's rows are reported as failed
+    private void upsertChunk(Map<String, ImportRow> chunk, ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<ImportRow> rows = new ArrayList<>(chunk.values());
+
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO products (name, description, price, stock_quantity, min_stock_level, store_id, version) VALUES ");
+        List<Object> params = new ArrayList<>(rows.size() * 6);
+        // Products belong to the importing store; names are unique per store, so the same name
+        // in another store is a different product and is never overwritten
+        String storeId = StoreContext.currentStore();
+        for (int i = 0; i < rows.size(); i++) {
+            Product product = rows.get(i).product();
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, 0)" : ", (?, ?, ?, ?, ?, ?, 0)");
+            params.add(product.getName());
+            params.add(product.getDescription());
+            params.add(product.getPrice());
+            params.add(product.getStockQuantity());
+            params.add(product.getMinStockLevel());
+            params.add(storeId);
+        }
+        sql.append(" ON CONFLICT (store_id, name) DO UPDATE SET " +
+            // description is optional: a file without it (or with an empty cell) keeps the existing one
+            "description = COALESCE(EXCLUDED.description, products.description), " +
+            "price = EXCLUDED.price, " +
+            "stock_quantity = EXCLUDED.stock_quantity, " +
+            "min_stock_level = EXCLUDED.min_stock_level, " +
+            // Bump the optimistic lock version, so edits based on the old row are rejected
+            "version = products.version + 1 " +
+            // xmax = 0 is PostgreSQL's way of telling a fresh insert from an update
+            "RETURNING id, name, description, (xmax = 0) AS inserted, stock_quantity");
+
+        // The stock before the import, locked so no order changes it between here and the upsert
+        // Products with stock buckets (see StockBucketService): the buckets are locked first (the
+        // order every stock change locks them in) and counted in; the imported stock replaces them,
+        // it goes on the product row and the buckets are emptied, the rebalancer spreads it again
+        StringBuilder nameList = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            nameList.append(i == 0 ? "?" : ", ?");
+        }
+        String bucketLockSql = "SELECT b.id FROM product_stock_buckets b JOIN products p ON p.id = b.product_id " +
+            "WHERE p.name IN (" + nameList + ") AND p.store_id = ? ORDER BY b.product_id, b.bucket FOR UPDATE OF b";
+        String lockSql = "SELECT p.id, " + StockBucket.TOTAL_STOCK_SQL + " AS stock_quantity FROM products p " +
+            "WHERE p.name IN (" + nameList + ") AND p.store_id = ? ORDER BY p.id FOR UPDATE OF p";
+        String emptyBucketsSql = "UPDATE product_stock_buckets SET quantity = 0 WHERE quantity <> 0 AND product_id IN " +
+            "(SELECT id FROM products WHERE name IN (" + nameList + ") AND store_id = ?)";
+        List<Object> nameParams = new ArrayList<>(rows.size() + 1);
+        rows.forEach(row -> nameParams.add(row.product().getName()));
+        nameParams.add(storeId);
+        Object[] names = nameParams.toArray();
+
+        try {
+            List<Object[]> returned = transactionTemplate.execute(status -> {
+                Map<Long, Integer> stockChanges = new HashMap<>();
+                jdbcTemplate.queryForList(bucketLockSql, Long.class, names);
+                jdbcTemplate.query(lockSql,
+                    (RowCallbackHandler) rs -> stockChanges.put(rs.getLong("id"), -rs.getInt("stock_quantity")),
+                    names);
+                List<Object[]> upserted = jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> new Object[] {rs.getLong("id"), rs.getString("name"), rs.getBoolean("inserted"),
+                                                  rs.getInt("stock_quantity"), rs.getString("description")},
+                    params.toArray());
+                jdbcTemplate.update(emptyBucketsSql, names);
+                // New stock minus old stock (0 for new products) is the change to journal
+                for (Object[] row : upserted) {
+                    stockChanges.merge((Long) row[0], (Integer) row[3], Integer::sum);
+                }
+                stockJournalService.recordChanges(stockChanges, StockMovementReason.IMPORT);
+                return upserted;
+            });
+
+            List<Long> changedIds = new ArrayList<>(returned.size());
+            for (Object[] row : returned) {
+                if ((Boolean) row[2]) {
+                    result.inserted++;
+                } else {
+                    result.updated++;
+                }
+                changedIds.add((Long) row[0]);
+                // Keep the search index current without a full rebuild
+                // (with the stored description, the file may not have had one)
+                productSearchIndex.index((Long) row[0], storeId, (String) row[1], (String) row[4]);
+            }
+            // The chunk has committed, drop the old copies (new products change the stock query results too)
+            productCache.evictProducts(changedIds);
+            productCache.evictStockQueries();
+        } catch (RuntimeException e) {
+            for (ImportRow row : rows) {
+                result.addError(row.line(), "Chunk failed: " + rootMessage(e));
+            }
+        }
+    }
+
+    // UPDATE ... FROM (VALUES ...) sets every price of the chunk in one statement
+    private void updatePricesChunk(Map<String, ImportRow> chunk, ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<ImportRow> rows = new ArrayList<>(chunk.values());
+
+        StringBuilder sql = new StringBuilder("UPDATE products p SET price = v.price, version = p.version + 1 FROM (VALUES ");
+        List<Object> params = new ArrayList<>(rows.size() * 2);
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, CAST(? AS numeric))" : ", (?, CAST(? AS numeric))");
+            params.add(rows.get(i).product().getName());
+            params.add(rows.get(i).product().getPrice());
+        }
+        // Only the importing store's products (another store's product counts as not found)
+        sql.append(") AS v(name, price) WHERE p.name = v.name AND p.store_id = ? RETURNING p.id, p.name");
+        params.add(StoreContext.currentStore());
+
+        try {
+            List<Object[]> updated = transactionTemplate.execute(status ->
+                jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> new Object[] {rs.getLong("id"), rs.getString("name")},
+                    params.toArray()));
+
+            Set<String> found = new HashSet<>();
+            List<Long> changedIds = new ArrayList<>(updated.size());
+            for (Object[] row : updated) {
+                changedIds.add((Long) row[0]);
+                found.add((String) row[1]);
+            }
+            productCache.evictProducts(changedIds);
+            result.updated += found.size();
+            for (ImportRow row : rows) {
+                if (!found.contains(row.product().getName())) {
+                    result.addError(row.line(), "Product not found with name: " + row.product().getName());
+                }
+            }
+        } catch (RuntimeException e) {
+            for (ImportRow row : rows) {
+                result.addError(row.line(), "Chunk failed: " + rootMessage(e));
+            }
+        }
+    }
+
+    // A single invalidation for the whole file
+    private void finish(ImportResult result, long startNanos) {
+        if (result.inserted + result.updated > 0) {
+            dataVersionTracker.productsChanged();
+        }
+        result.elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        result.rowsPerSecond = result.elapsedMillis == 0
+            ? result.rowsRead
+            : result.rowsRead * 1000 / result.elapsedMillis;
+        System.out.println("Product import finished: " + result.rowsRead + " rows, " +
+            result.inserted + " inserted, " + result.updated + " updated, " + result.failed + " failed in " +
+            result.elapsedMillis + " ms (" + result.rowsPerSecond + " rows/s)");
+    }
+
+    private static void requireColumns(Map<String, Integer> header, String... columns) {
+        for (String column : columns) {
+            if (!header.containsKey(column)) {
+                throw new IllegalArgumentException("Missing CSV column: " + column);
+            }
+        }
+    }
+
+    // Value of a column for this record, null when missing or blank
+    private static String field(List<String> record, Map<String, Integer> header, String column) {
+        Integer index = header.get(column);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index);
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    private static BigDecimal decimal(String value, String column) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + value);
+        }
+    }
+
+    private static Integer integer(String value, String column) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + value);
+        }
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+
+    private record ImportRow(int line, Product product) {}
+
+    // Summary returned to the caller
+    public static class ImportResult {
+        private long rowsRead;
+        private long inserted;
+        private long updated;
+        private long failed;
+        private long elapsedMillis;
+        private long rowsPerSecond;
+        private final List<RowError> errors = new ArrayList<>();
+
+        void addError(int line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(line, message));
+            }
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getRowsPerSecond() {
+            return rowsPerSecond;
+        }
+
+        // Only the first MAX_REPORTED_ERRORS errors, "failed" has the real count
+        public List<RowError> getErrors() {
+            return errors;
+        }
+    }
+
+    // A rejected row: its line number in the file and why
+    public record RowError(int line, String message) {}
+
+    // Minimal streaming CSV reader
+    // Handles quoted fields with commas, doubled quotes and line breaks
+    static class CsvReader implements AutoCloseable {
+        private final Reader reader;
+        private int line = 1;
+        private int recordLine;
+
+        CsvReader(InputStream in) {
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        // Header names are matched case-insensitively and without '_' or spaces,
+        // so "stock_quantity", "Stock Quantity" and "stockQuantity" all work
+        Map<String, Integer> readHeader() throws IOException {
+            List<String> names = readRecord();
+            if (names == null) {
+                throw new IllegalArgumentException("CSV file is empty");
+            }
+            Map<String, Integer> header = new HashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i).replace("\uFEFF", "").replaceAll("[_\\s]", "").toLowerCase(Locale.ROOT);
+                header.put(name, i);
+            }
+            return header;
+        }
+
+        // Line number where the last record started (1-based, header is line 1)
+        int getRecordLine() {
+            return recordLine;
+        }
+
+        // Next record, or null at end of file; blank lines are skipped
+        List<String> readRecord() throws IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            boolean any = false;
+            recordLine = line;
+
+            int c;
+            while ((c = reader.read()) != -1) {
+                char ch = (char) c;
+                if (quoted) {
+                    if (ch == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if (next == '"') {
+                            current.append('"');
+                        } else {
+                            quoted = false;
+                            if (next != -1) {
+                                reader.reset();
+                            }
+                        }
+                    } else {
+                        if (ch == '\n') {
+                            line++;
+                        }
+                        current.append(ch);
+                    }
+                } else if (ch == '"') {
+                    quoted = true;
+                    any = true;
+                } else if (ch == ',') {
+                    fields.add(current.toString());
+                    current.setLength(0);
+                    any = true;
+                } else if (ch == '\r') {
+                    // Part of a \r\n line ending
+                } else if (ch == '\n') {
+                    line++;
+                    if (any || current.length() > 0) {
+                        fields.add(current.toString());
+                        return fields;
+                    }
+                    recordLine = line; // blank line
+                } else {
+                    current.append(ch);
+                    any = true;
+                }
+            }
+            if (any || current.length() > 0) {
+                fields.add(current.toString());
+                return fields;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
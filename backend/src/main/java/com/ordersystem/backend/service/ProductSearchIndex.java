@@ -0,0 +1,333 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// In-memory trigram index over product name and description
+// Replaces the LIKE '%x%' scan of findByNameContainingIgnoreCase for the POS search box:
+// every 3-character piece of the text points to the products containing it,
+// so a query only has to look at products that share all of its trigrams
+// Query words of 1-2 characters have no trigram; they match the start of a word and are
+// looked up in a second, much smaller map of word prefixes, so the first keystrokes of a
+// search don't check every product
+// Stores sharing the default shard share the index, every document knows its store and a
+// search only returns the caller's store's products
+// The index is kept up to date by this instance's own product changes only: with several instances
+// (app.single-instance=false) it isn't built, and searches use the database query
+// With store sharding the index only covers the default shard; searches and changes on
+// other shards don't use it (ProductService falls back to the database query there)
+@Component
+public class ProductSearchIndex {
+
+    // Length of the pieces the text is cut into
+    // Shorter query words use the word prefixes instead
+    private static final int GRAM = 3;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Value("${app.single-instance:true}")
+    private boolean singleInstance;
+
+    // The documents, postings and word prefixes searches read; rebuild() fills new ones off to
+    // the side and swaps them in at once, so a search never sees a half-built index
+    private volatile Snapshot snapshot = new Snapshot();
+
+    // Until the first build finishes, ProductService falls back to the database query
+    private volatile boolean ready = false;
+
+    // Build the index once the application context has started, before the startup warm-up
+    // runs and before the application reports itself ready for traffic
+    @EventListener(ApplicationStartedEvent.class)
+    public void build() {
+        if (!singleInstance) {
+            System.out.println("Product search index off (app.single-instance=false), searches query the database");
+            return;
+        }
+        rebuild();
+    }
+
+    // (Re)load every product from the database
+    // Only build() calls it, at startup; afterwards the index follows ProductService's and
+    // ProductImportService's changes through index() and remove()
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Snapshot built = new Snapshot();
+        List<Object[]> rows = StoreContext.onShard(ShardDirectory.DEFAULT_SHARD,
+            () -> productRepository.findSearchableFields());
+        for (Object[] row : rows) {
+            built.add((Long) row[0], (String) row[1], (String) row[2], (String) row[3]);
+        }
+        snapshot = built;
+        ready = true;
+        System.out.println("Product search index built: " + built.documents.size() + " products, " +
+            built.postings.size() + " trigrams, " + built.wordPrefixes.size() + " word prefixes in " +
+            (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Whether searches of the current request can use the index
+    public boolean isReady() {
+        return ready && shardDirectory.isDefaultShard();
+    }
+
+    // Index (or re-index) a product once the surrounding transaction commits
+    public void indexAfterCommit(Product product) {
+        Long id = product.getId();
+        String storeId = product.getStoreId();
+        String name = product.getName();
+        String description = product.getDescription();
+        afterCommit(() -> index(id, storeId, name, description));
+    }
+
+    // Remove a product from the index once the surrounding transaction commits
+    public void removeAfterCommit(Long productId) {
+        afterCommit(() -> remove(productId));
+    }
+
+    public synchronized void index(Long id, String storeId, String name, String description) {
+        if (!singleInstance || !shardDirectory.isDefaultShard()) {
+            return;
+        }
+        Snapshot current = snapshot;
+        current.remove(id);
+        current.add(id, storeId, name, description);
+    }
+
+    public synchronized void remove(Long id) {
+        if (!singleInstance || !shardDirectory.isDefaultShard()) {
+            return;
+        }
+        snapshot.remove(id);
+    }
+
+    // Find the store's product ids matching every word of the query, best matches first
+    // The last word may be incomplete (search-as-you-type), which a substring match handles naturally
+    // Words of 1-2 characters only match the start of a word ("iced c" finds "Iced Coffee")
+    public List<Long> search(String storeId, String query, int limit, int offset) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        String[] tokens = normalized.split(" ");
+
+        // Keep only the best (offset + limit) hits instead of sorting every match
+        int wanted = offset + limit;
+        Comparator<ScoredHit> worstFirst = Comparator
+            .comparingInt(ScoredHit::score)
+            .thenComparing(Comparator.comparingInt(ScoredHit::nameLength).reversed())
+            .thenComparing(Comparator.comparingLong(ScoredHit::id).reversed());
+        PriorityQueue<ScoredHit> best = new PriorityQueue<>(worstFirst);
+
+        Snapshot current = snapshot;
+        for (Long id : candidates(current, tokens)) {
+            SearchDocument doc = current.documents.get(id);
+            if (doc == null || !doc.storeId().equals(storeId) || !matchesAll(doc, tokens)) {
+                continue;
+            }
+            best.add(new ScoredHit(id, score(doc, normalized, tokens), doc.name().length()));
+            if (best.size() > wanted) {
+                best.poll();
+            }
+        }
+
+        List<ScoredHit> ranked = new ArrayList<>(best);
+        ranked.sort(worstFirst.reversed());
+        List<Long> page = new ArrayList<>();
+        for (int i = offset; i < ranked.size(); i++) {
+            page.add(ranked.get(i).id());
+        }
+        return page;
+    }
+
+    // Intersect the posting lists of every trigram (or word prefix) in the query, starting with the rarest
+    private Collection<Long> candidates(Snapshot current, String[] tokens) {
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String token : tokens) {
+            if (token.length() < GRAM) {
+                Set<Long> ids = current.wordPrefixes.get(token);
+                if (ids == null) {
+                    return List.of();
+                }
+                lists.add(ids);
+                continue;
+            }
+            for (String gram : trigrams(token)) {
+                Set<Long> ids = current.postings.get(gram);
+                if (ids == null) {
+                    return List.of(); // a trigram nobody has means no product can match
+                }
+                lists.add(ids);
+            }
+        }
+        if (lists.size() == 1) {
+            return lists.get(0); // e.g. a single short word, no need to copy the list
+        }
+
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    // Trigrams only narrow the candidates down, this confirms the real substring match
+    private boolean matchesAll(SearchDocument doc, String[] tokens) {
+        for (String token : tokens) {
+            boolean matches = token.length() < GRAM
+                ? doc.text().startsWith(token) || doc.text().contains(" " + token)
+                : doc.text().contains(token);
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Higher is better: exact name, then name prefix, then word prefixes, then anywhere in the name,
+    // and description-only matches last
+    private int score(SearchDocument doc, String query, String[] tokens) {
+        String name = doc.name();
+        if (name.equals(query)) {
+            return 100;
+        }
+        if (name.startsWith(query)) {
+            return 80;
+        }
+        boolean allWordPrefixes = true;
+        boolean allInName = true;
+        for (String token : tokens) {
+            if (!name.startsWith(token) && !name.contains(" " + token)) {
+                allWordPrefixes = false;
+            }
+            if (!name.contains(token)) {
+                allInName = false;
+            }
+        }
+        if (allWordPrefixes) {
+            return 60;
+        }
+        if (name.contains(query)) {
+            return 40;
+        }
+        if (allInName) {
+            return 30;
+        }
+        return 10;
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    // The first 1 to GRAM - 1 characters of every word
+    private static Set<String> wordPrefixes(String text) {
+        Set<String> prefixes = new HashSet<>();
+        for (String word : text.split(" ")) {
+            for (int length = 1; length < GRAM && length <= word.length(); length++) {
+                prefixes.add(word.substring(0, length));
+            }
+        }
+        return prefixes;
+    }
+
+    // Lower-case and collapse whitespace so "  Iced   COFFEE" and "iced coffee" index the same way
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Snapshot {
+
+        // productId -> normalized searchable text
+        private final Map<Long, SearchDocument> documents = new ConcurrentHashMap<>();
+
+        // trigram -> ids of products whose name or description contains it
+        private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+        // first 1 and first 2 characters of every word -> ids of products with such a word
+        private final Map<String, Set<Long>> wordPrefixes = new ConcurrentHashMap<>();
+
+        private void add(Long id, String storeId, String name, String description) {
+            SearchDocument doc = new SearchDocument(storeId, normalize(name),
+                normalize(name) + " " + normalize(description));
+            documents.put(id, doc);
+            for (String gram : trigrams(doc.text())) {
+                postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            for (String prefix : wordPrefixes(doc.text())) {
+                wordPrefixes.computeIfAbsent(prefix, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        private void remove(Long id) {
+            SearchDocument old = documents.remove(id);
+            if (old == null) {
+                return;
+            }
+            for (String gram : trigrams(old.text())) {
+                removeFrom(postings, gram, id);
+            }
+            for (String prefix : wordPrefixes(old.text())) {
+                removeFrom(wordPrefixes, prefix, id);
+            }
+        }
+
+        private static void removeFrom(Map<String, Set<Long>> index, String key, Long id) {
+            Set<Long> ids = index.get(key);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    // name is kept separately for ranking, text is name + description for matching
+    private record SearchDocument(String storeId, String name, String text) {}
+
+    private record ScoredHit(long id, int score, int nameLength) {}
+}
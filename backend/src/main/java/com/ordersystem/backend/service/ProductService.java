@@ -1,87 +1,199 @@
 package com.ordersystem.backend.service;
 
+import com.ordersystem.backend.config.StoreContext;
 import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.model.StockMovementReason;
 import com.ordersystem.backend.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 // @Service tells Spring this is a service component (business logic layer)
 @Service
 // @Transactional ensures database operations are atomic (all succeed or all fail)
+// Query methods override it with readOnly = true, which skips Hibernate's dirty checking
+// and lets them run on a read replica (see ReadReplicaConfig)
 @Transactional
 public class ProductService {
     
+    // Page size limits for the product search
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+    public static final int MAX_SEARCH_LIMIT = 200;
+    
     // @Autowired injects the ProductRepository dependency
     @Autowired
     private ProductRepository productRepository;
     
-    // Get all products
+    // Tracks the product data version used for ETags
+    @Autowired
+    private DataVersionTracker dataVersionTracker;
+    
+    // In-memory trigram index used by the product search
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    
+    // Stock changes are recorded in the stock journal
+    @Autowired
+    private StockJournalService stockJournalService;
+    
+    // Where the stock of bucketed best-sellers is kept
+    @Autowired
+    private StockBucketService stockBucketService;
+    
+    // Get all products of the caller's store
+    @Transactional(readOnly = true)
     public List<Product> getAllProducts() {
-        return productRepository.findAll();
+        return productRepository.findByStoreId(StoreContext.currentStore());
     }
     
     // Get a single product by ID
+    @Transactional(readOnly = true)
     public Optional<Product> getProductById(Long id) {
-        return productRepository.findById(id);
+        return findProductOfStore(id);
+    }
+    
+    // The product, if it belongs to the caller's store
+    // Stores can share a shard (see StoreConfig), so another store's product id must be treated
+    // as unknown: that store's products are neither shown nor changed
+    // findById still goes through the second-level cache, the store is checked on the loaded product
+    private Optional<Product> findProductOfStore(Long id) {
+        return productRepository.findById(id)
+            .filter(product -> StoreContext.currentStore().equals(product.getStoreId()));
     }
     
     // Create a new product
     public Product createProduct(Product product) {
         // Validate product data before saving
         validateProduct(product);
-        return productRepository.save(product);
+        // A new product always starts at version 0, whatever the client sent
+        product.setVersion(null);
+        // It belongs to the caller's store, whatever the client sent
+        product.setStoreId(StoreContext.currentStore());
+        dataVersionTracker.productsChanged();
+        Product savedProduct = productRepository.save(product);
+        stockJournalService.recordInitial(savedProduct);
+        productSearchIndex.indexAfterCommit(savedProduct);
+        return savedProduct;
     }
     
-    // Update an existing product
+    // Update the catalogue fields of an existing product (partial update)
+    // Only fields present in productDetails are changed. The stock quantity is never touched
+    // here, otherwise an edit form loaded a minute ago would overwrite the stock sold since;
+    // stock only changes through orders and restocking.
+    // If the client sends the version it loaded and the product changed since, the update
+    // is rejected with an OptimisticLockingFailureException instead of overwriting.
     public Product updateProduct(Long id, Product productDetails) {
-        Product product = productRepository.findById(id)
+        Product product = findProductOfStore(id)
             .orElseThrow(() -> new RuntimeException("Product not found with id: " + id));
         
-        // Update product fields
-        product.setName(productDetails.getName());
-        product.setDescription(productDetails.getDescription());
-        product.setPrice(productDetails.getPrice());
-        product.setStockQuantity(productDetails.getStockQuantity());
-        product.setMinStockLevel(productDetails.getMinStockLevel());
+        if (productDetails.getVersion() != null && !productDetails.getVersion().equals(product.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Product.class, id);
+        }
         
+        // Update only the fields that were sent
+        if (productDetails.getName() != null) {
+            product.setName(productDetails.getName());
+        }
+        if (productDetails.getDescription() != null) {
+            product.setDescription(productDetails.getDescription());
+        }
+        if (productDetails.getPrice() != null) {
+            product.setPrice(productDetails.getPrice());
+        }
+        if (productDetails.getMinStockLevel() != null) {
+            product.setMinStockLevel(productDetails.getMinStockLevel());
+        }
+        validateProduct(product);
+        
+        dataVersionTracker.productsChanged();
+        productSearchIndex.indexAfterCommit(product);
         return productRepository.save(product);
     }
     
     // Delete a product
     public void deleteProduct(Long id) {
-        Product product = productRepository.findById(id)
+        Product product = findProductOfStore(id)
             .orElseThrow(() -> new RuntimeException("Product not found with id: " + id));
+        if (product.getBucketCount() > 0) {
+            stockBucketService.deleteBuckets(id);
+        }
         productRepository.delete(product);
+        dataVersionTracker.productsChanged();
+        productSearchIndex.removeAfterCommit(id);
     }
     
     // Get products with low stock
+    @Transactional(readOnly = true)
     public List<Product> getLowStockProducts() {
-        return productRepository.findLowStockProducts();
+        return productRepository.findLowStockProducts(StoreContext.currentStore());
     }
     
     // Get products that need restocking
+    @Transactional(readOnly = true)
     public List<Product> getProductsNeedingRestock() {
-        return productRepository.findProductsNeedingRestock();
+        return productRepository.findProductsNeedingRestock(StoreContext.currentStore());
     }
     
     // Search products by name
+    @Transactional(readOnly = true)
     public List<Product> searchProductsByName(String name) {
-        return productRepository.findByNameContainingIgnoreCase(name);
+        return searchProducts(name, DEFAULT_SEARCH_LIMIT, 0);
+    }
+    
+    // Search products by name and description, best matches first
+    // Uses the in-memory trigram index, so the database only loads the page of results
+    @Transactional(readOnly = true)
+    public List<Product> searchProducts(String query, int limit, int offset) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_SEARCH_LIMIT);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative");
+        }
+        
+        // While the index is still being built at startup (and on shards it doesn't cover),
+        // fall back to the LIKE query
+        if (!productSearchIndex.isReady()) {
+            return productRepository.findByStoreIdAndNameContainingIgnoreCase(StoreContext.currentStore(), query).stream()
+                .skip(offset)
+                .limit(limit)
+                .toList();
+        }
+        
+        List<Long> rankedIds = productSearchIndex.search(StoreContext.currentStore(), query, limit, offset);
+        
+        // findAllById doesn't keep the order, so put the products back in ranked order
+        Map<Long, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findAllById(rankedIds)) {
+            productsById.put(product.getId(), product);
+        }
+        List<Product> results = new ArrayList<>();
+        for (Long id : rankedIds) {
+            Product product = productsById.get(id);
+            if (product != null) {
+                results.add(product);
+            }
+        }
+        return results;
     }
     
     // Get products in stock
+    @Transactional(readOnly = true)
     public List<Product> getProductsInStock() {
-        return productRepository.findByStockQuantityGreaterThan(0);
+        return productRepository.findByStockQuantityGreaterThan(StoreContext.currentStore(), 0);
     }
     
     // Update stock quantity when an order is placed
     public void updateStock(Long productId, Integer quantityToDeduct) {
-        Product product = productRepository.findById(productId)
+        Product product = findProductOfStore(productId)
             .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
         
         // Check if enough stock is available
@@ -90,9 +202,9 @@ public class ProductService {
                 ". Available: " + product.getStockQuantity() + ", Requested: " + quantityToDeduct);
         }
         
-        // Deduct the quantity
-        product.setStockQuantity(product.getStockQuantity() - quantityToDeduct);
-        productRepository.save(product);
+        // Deduct the quantity (no order to link it to, so it is journalled as an adjustment)
+        stockJournalService.change(product, -quantityToDeduct, StockMovementReason.ADJUSTMENT);
+        dataVersionTracker.productsChanged();
         
         // Check if stock is below minimum level and log warning
         if (product.getStockQuantity() <= product.getMinStockLevel()) {
@@ -104,21 +216,24 @@ public class ProductService {
     
     // Restock a product (add to existing stock)
     public Product restockProduct(Long productId, Integer quantityToAdd) {
-        Product product = productRepository.findById(productId)
+        Product product = findProductOfStore(productId)
             .orElseThrow(() -> new RuntimeException("Product not found with id: " + productId));
         
-        product.setStockQuantity(product.getStockQuantity() + quantityToAdd);
-        return productRepository.save(product);
+        stockJournalService.change(product, quantityToAdd, StockMovementReason.RESTOCK);
+        dataVersionTracker.productsChanged();
+        return product;
     }
     
     // Check if product is available in required quantity
+    @Transactional(readOnly = true)
     public boolean isProductAvailable(Long productId, Integer requiredQuantity) {
-        Optional<Product> product = productRepository.findById(productId);
+        Optional<Product> product = findProductOfStore(productId);
         return product.isPresent() && product.get().getStockQuantity() >= requiredQuantity;
     }
     
     // Validate product data
-    private void validateProduct(Product product) {
+    // Package-private so the bulk import applies exactly the same rules
+    void validateProduct(Product product) {
         if (product.getName() == null || product.getName().trim().isEmpty()) {
             throw new IllegalArgumentException("Product name cannot be empty");
         }
@@ -137,18 +252,16 @@ public class ProductService {
     }
     
     // Get product statistics
+    @Transactional(readOnly = true)
+    // Counted by the database (one query), no products are loaded
     public ProductStatistics getProductStatistics() {
-        List<Product> allProducts = productRepository.findAll();
-        List<Product> lowStockProducts = productRepository.findLowStockProducts();
+        Object[] counts = productRepository.countStockLevels().get(0);
         
         ProductStatistics stats = new ProductStatistics();
-        stats.setTotalProducts(allProducts.size());
-        stats.setLowStockCount(lowStockProducts.size());
-        stats.setOutOfStockCount(
-            allProducts.stream()
-                .filter(p -> p.getStockQuantity() == 0)
-                .count()
-        );
+        stats.setTotalProducts(((Number) counts[0]).intValue());
+        // SUM over no rows is NULL
+        stats.setLowStockCount(counts[1] == null ? 0 : ((Number) counts[1]).intValue());
+        stats.setOutOfStockCount(counts[2] == null ? 0 : ((Number) counts[2]).longValue());
         
         return stats;
     }
@@ -0,0 +1,246 @@
+package com.ordersystem.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// On-demand Java Flight Recorder recordings of the running server (see the admin ProfilingController)
+// An operator starts a recording with a preset, reproduces the problem and stops it to download
+// the .jfr file (open it with JDK Mission Control or "jfr print"). One recording at a time;
+// a recording also stops by itself after its duration so a forgotten one doesn't keep running.
+@Service
+public class ProfilingService {
+
+    // What a recording looks at. Each preset starts from the JDK's "default" settings (low
+    // overhead, fine in production) and turns up the events it is about.
+    public enum Preset {
+        // Where the CPU time goes: method samples every 10ms instead of 20ms
+        CPU(Map.of(
+            "jdk.ExecutionSample#period", "10 ms",
+            "jdk.NativeMethodSample#period", "10 ms",
+            "jdk.ThreadCPULoad#period", "1 s")),
+        // Who allocates what: more allocation samples (with stack traces) and the GC events
+        ALLOCATION(Map.of(
+            "jdk.ObjectAllocationSample#throttle", "300/s",
+            "jdk.ObjectAllocationSample#stackTrace", "true",
+            "jdk.OldObjectSample#enabled", "true",
+            "jdk.GCPhasePause#threshold", "0 ms")),
+        // Lock contention: synchronized blocks, Object.wait, ReentrantLock parking and pinned
+        // virtual threads waiting longer than 5ms
+        LOCKS(Map.of(
+            "jdk.JavaMonitorEnter#threshold", "5 ms",
+            "jdk.JavaMonitorWait#threshold", "5 ms",
+            "jdk.ThreadPark#threshold", "5 ms",
+            "jdk.VirtualThreadPinned#threshold", "5 ms")),
+        // Database time: JFR has no JDBC events, but the PostgreSQL driver talks over a socket,
+        // so socket reads show the queries waiting on the database and thread parks show the
+        // waits for a pool connection
+        JDBC(Map.of(
+            "jdk.SocketRead#threshold", "1 ms",
+            "jdk.SocketWrite#threshold", "1 ms",
+            "jdk.ThreadPark#threshold", "1 ms"));
+
+        private final Map<String, String> settings;
+
+        Preset(Map<String, String> settings) {
+            this.settings = settings;
+        }
+
+        public static Preset fromString(String value) {
+            try {
+                return Preset.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown profiling preset: " + value +
+                    " (use cpu, allocation, locks or jdbc)");
+            }
+        }
+    }
+
+    private final Duration maxDuration;
+
+    // The current (or last, until it is downloaded) recording
+    private Recording recording;
+    private Preset preset;
+    private Path file;
+    private LocalDateTime startedAt;
+
+    public ProfilingService(@Value("${app.profiling.max-duration:10m}") Duration maxDuration) {
+        this.maxDuration = maxDuration;
+    }
+
+    public synchronized ProfilingStatus start(Preset preset, Duration duration) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A " + this.preset.name().toLowerCase(Locale.ROOT) +
+                " recording is already running, stop it first");
+        }
+        if (duration == null) {
+            duration = maxDuration;
+        }
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(maxDuration) > 0) {
+            throw new IllegalArgumentException("Duration must be between 1 second and " + maxDuration.toSeconds() + " seconds");
+        }
+        // A recording that was never downloaded is thrown away
+        discard();
+
+        Map<String, String> settings;
+        try {
+            settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        } catch (IOException | ParseException e) {
+            throw new RuntimeException("Could not read the JFR default settings: " + e.getMessage(), e);
+        }
+        settings.putAll(preset.settings);
+        // Every preset shows the checkouts, so samples can be lined up with slow orders
+        settings.put(CheckoutEvent.NAME + "#enabled", "true");
+        settings.put(CheckoutEvent.NAME + "#threshold", "0 ms");
+
+        Path destination;
+        try {
+            destination = Files.createTempFile("ordersystem-" + preset.name().toLowerCase(Locale.ROOT) + "-", ".jfr");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Recording newRecording = new Recording(settings);
+        newRecording.setName("ordersystem-" + preset.name().toLowerCase(Locale.ROOT));
+        newRecording.setToDisk(true);
+        // When the duration is up JFR stops the recording and writes it to the destination
+        newRecording.setDuration(duration);
+        try {
+            newRecording.setDestination(destination);
+        } catch (IOException e) {
+            newRecording.close();
+            throw new UncheckedIOException(e);
+        }
+        newRecording.start();
+
+        this.recording = newRecording;
+        this.preset = preset;
+        this.file = destination;
+        this.startedAt = LocalDateTime.now();
+        System.out.println("Started " + preset + " JFR recording for " + duration.toSeconds() + "s");
+        return getStatus();
+    }
+
+    // Stop the recording (if it is still running) and hand its file over to the caller,
+    // who has to delete it once it has been sent
+    public synchronized Path stop() {
+        if (recording == null) {
+            throw new IllegalStateException("No recording, start one first");
+        }
+        if (recording.getState() == RecordingState.RUNNING || recording.getState() == RecordingState.DELAYED) {
+            // Writes the recording to its destination
+            recording.stop();
+        }
+        recording.close();
+        Path result = file;
+        System.out.println("Stopped " + preset + " JFR recording (" + sizeOf(result) + " bytes)");
+        recording = null;
+        preset = null;
+        file = null;
+        startedAt = null;
+        return result;
+    }
+
+    public synchronized ProfilingStatus getStatus() {
+        ProfilingStatus status = new ProfilingStatus();
+        status.setMaxDurationSeconds(maxDuration.toSeconds());
+        if (recording == null) {
+            status.setState("NONE");
+            return status;
+        }
+        status.setState(recording.getState().name());
+        status.setPreset(preset.name());
+        status.setStartedAt(startedAt);
+        status.setDurationSeconds(recording.getDuration() == null ? null : recording.getDuration().toSeconds());
+        return status;
+    }
+
+    @PreDestroy
+    public synchronized void discard() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.out.println("Could not delete JFR recording " + file + ": " + e.getMessage());
+            }
+            file = null;
+        }
+        preset = null;
+        startedAt = null;
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Inner class for the recording status
+    // state is NONE, RUNNING, or STOPPED/CLOSED once the duration is up (ready to download)
+    public static class ProfilingStatus {
+        private String state;
+        private String preset;
+        private LocalDateTime startedAt;
+        private Long durationSeconds;
+        private long maxDurationSeconds;
+
+        public String getState() {
+            return state;
+        }
+
+        public void setState(String state) {
+            this.state = state;
+        }
+
+        public String getPreset() {
+            return preset;
+        }
+
+        public void setPreset(String preset) {
+            this.preset = preset;
+        }
+
+        public LocalDateTime getStartedAt() {
+            return startedAt;
+        }
+
+        public void setStartedAt(LocalDateTime startedAt) {
+            this.startedAt = startedAt;
+        }
+
+        public Long getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        public void setDurationSeconds(Long durationSeconds) {
+            this.durationSeconds = durationSeconds;
+        }
+
+        public long getMaxDurationSeconds() {
+            return maxDurationSeconds;
+        }
+
+        public void setMaxDurationSeconds(long maxDurationSeconds) {
+            this.maxDurationSeconds = maxDurationSeconds;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.model.JobWatermark;
+import com.ordersystem.backend.model.StockBucket;
+import com.ordersystem.backend.repository.JobWatermarkRepository;
+import com.ordersystem.backend.repository.ProductDailySalesRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Demand-driven reorder suggestions
+// Instead of only comparing stock with the hand-set minStockLevel, every run:
+//  1. rolls up new orders into product_daily_sales (units per product and day), starting
+//     after the last order id of the previous run (the "reorder" job watermark)
+//  2. computes for every product its sales velocity (average units per day over the last
+//     history-days days) and how many days the current stock will last at that rate
+//  3. suggests an order quantity for every product whose stock is at or below its reorder point:
+//       reorder point = demand during the lead time + safety stock (at least minStockLevel)
+//       order up to   = demand during lead time + review period + safety stock
+//     The safety stock covers day-to-day swings: service-level-z * daily std deviation * sqrt(lead time)
+//     Products without any sales only get suggestions from their minStockLevel.
+//  4. publishes the list ranked by days of cover (most urgent first)
+// Step 2 and 3 run on a fork-join pool over product id ranges, each range is one query that only
+// returns the products needing a reorder, so a catalogue of a million products is split into
+// chunk-size pieces processed in parallel.
+//
+// Runs every app.reorder.interval once the application is ready; POST /api/products/reorder-suggestions/refresh
+// runs it immediately.
+// With store sharding enabled it covers the default shard only (the scheduler thread has no store).
+@Service
+public class ReorderEngine {
+
+    private static final String WATERMARK_NAME = "reorder";
+
+    // Orders per rollup transaction, keeps the first run over a long history from holding
+    // one huge transaction open
+    private static final long ROLLUP_BATCH_ORDERS = 50_000;
+
+    @Autowired
+    private ProductDailySalesRepository productDailySalesRepository;
+
+    @Autowired
+    private JobWatermarkRepository jobWatermarkRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final Duration interval;
+    private final Duration settleTime;
+    private final int historyDays;
+    private final int leadTimeDays;
+    private final int reviewDays;
+    private final double serviceLevelZ;
+    private final long chunkSize;
+
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final Timer runTimer;
+
+    // Result of the last run, null until the first run finished
+    private volatile ReorderReport latestReport;
+
+    public ReorderEngine(
+            MeterRegistry registry,
+            @Value("${app.reorder.enabled:true}") boolean enabled,
+            @Value("${app.reorder.interval:15m}") Duration interval,
+            @Value("${app.reorder.settle-time:60s}") Duration settleTime,
+            @Value("${app.reorder.history-days:28}") int historyDays,
+            @Value("${app.reorder.lead-time-days:7}") int leadTimeDays,
+            @Value("${app.reorder.review-days:14}") int reviewDays,
+            @Value("${app.reorder.service-level-z:1.65}") double serviceLevelZ,
+            @Value("${app.reorder.chunk-size:50000}") long chunkSize,
+            @Value("${app.reorder.parallelism:4}") int parallelism) {
+        if (historyDays < 1 || leadTimeDays < 0 || reviewDays < 0) {
+            throw new IllegalArgumentException("app.reorder: history-days must be at least 1, " +
+                "lead-time-days and review-days must not be negative");
+        }
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("app.reorder.chunk-size and app.reorder.parallelism must be at least 1");
+        }
+        this.enabled = enabled;
+        this.interval = interval;
+        this.settleTime = settleTime;
+        this.historyDays = historyDays;
+        this.leadTimeDays = leadTimeDays;
+        this.reviewDays = reviewDays;
+        this.serviceLevelZ = serviceLevelZ;
+        this.chunkSize = chunkSize;
+
+        // Each chunk holds a database connection while its query runs,
+        // so parallelism must stay well below the connection pool size
+        this.pool = new ForkJoinPool(parallelism);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reorder-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.runTimer = Timer.builder("reorder.engine.run")
+            .description("Duration of reorder engine runs (rollup and analysis)")
+            .register(registry);
+    }
+
+    // Start the schedule only once the application is ready, so runs never compete
+    // with the startup warm-up (and the CDS training run never starts one)
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::runSafely, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    // The last published report, with at most "limit" suggestions
+    // null if no run has finished yet
+    public ReorderReport getLatestReport(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        ReorderReport report = latestReport;
+        if (report == null || report.getSuggestions().size() <= limit) {
+            return report;
+        }
+        return report.withSuggestions(report.getSuggestions().subList(0, limit));
+    }
+
+    // Roll up new orders, recompute all suggestions and publish them
+    // Synchronized: a manual refresh waits for a scheduled run instead of running alongside it
+    public synchronized ReorderReport refresh() {
+        long start = System.nanoTime();
+        long ordersRolledUp = rollUpNewOrders();
+
+        LocalDate today = LocalDate.now();
+        LocalDate historyStart = today.minusDays(historyDays);
+        transactionTemplate.executeWithoutResult(status -> productDailySalesRepository.deleteOlderThan(historyStart));
+
+        // Only whole days count, today is still running
+        List<ReorderSuggestion> suggestions = new ArrayList<>();
+        long[] catalogue = jdbcTemplate.queryForObject("SELECT MIN(id), MAX(id), COUNT(*) FROM products",
+            (rs, rowNum) -> new long[] {rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+        long productsAnalysed = catalogue[2];
+        if (productsAnalysed > 0) {
+            suggestions = pool.invoke(new ChunkTask(catalogue[0], catalogue[1] + 1, historyStart, today));
+        }
+
+        // Most urgent first: shortest days of cover, products without sales after those with sales
+        suggestions.sort(Comparator
+            .comparing(ReorderSuggestion::getDaysOfCover, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(ReorderSuggestion::getSuggestedQuantity, Comparator.reverseOrder()));
+        for (int i = 0; i < suggestions.size(); i++) {
+            suggestions.get(i).setRank(i + 1);
+        }
+
+        long durationNanos = System.nanoTime() - start;
+        runTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+
+        ReorderReport report = new ReorderReport();
+        report.setGeneratedAt(LocalDateTime.now());
+        report.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        report.setProductsAnalysed(productsAnalysed);
+        report.setOrdersRolledUp(ordersRolledUp);
+        report.setSalesHistoryDays(historyDays);
+        report.setTotalSuggestions(suggestions.size());
+        report.setSuggestions(suggestions);
+        latestReport = report;
+
+        System.out.println("Reorder engine: " + ordersRolledUp + " new orders rolled up, " + productsAnalysed +
+            " products analysed, " + suggestions.size() + " reorder suggestions in " + report.getDurationMillis() + " ms");
+        return report;
+    }
+
+    private void runSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next run starts from the same watermark
+            System.out.println("Reorder engine run failed: " + e.getMessage());
+        }
+    }
+
+    // Add orders placed since the last run to product_daily_sales
+    // Orders younger than settle-time are left for the next run: ids are handed out when an
+    // order is inserted, but a slow transaction can commit after a later one, and an order
+    // below the watermark that wasn't visible yet would never be counted
+    // Returns the number of order ids covered
+    private long rollUpNewOrders() {
+        LocalDateTime since = LocalDate.now().minusDays(historyDays).atStartOfDay();
+        long target = productDailySalesRepository.findLastOrderIdBefore(LocalDateTime.now().minus(settleTime));
+        long from = jobWatermarkRepository.findById(WATERMARK_NAME)
+            .map(JobWatermark::getLastOrderId)
+            .orElse(0L);
+        long covered = 0;
+
+        while (from < target) {
+            long fromId = from;
+            long toId = Math.min(target, from + ROLLUP_BATCH_ORDERS);
+            // The rows and the new watermark are committed together, a failed run never counts twice
+            transactionTemplate.executeWithoutResult(status -> {
+                productDailySalesRepository.addOrders(fromId, toId, since);
+                JobWatermark watermark = jobWatermarkRepository.findById(WATERMARK_NAME)
+                    .orElse(new JobWatermark(WATERMARK_NAME));
+                watermark.setLastOrderId(toId);
+                watermark.setUpdatedAt(LocalDateTime.now());
+                jobWatermarkRepository.save(watermark);
+            });
+            covered += toId - fromId;
+            from = toId;
+        }
+        return covered;
+    }
+
+    // Products of one id range that are at or below their reorder point, the leaf work of the
+    // fork-join tasks
+    // Velocity, deviation and reorder point are computed in the query, so only the few products
+    // that need reordering are sent back instead of the whole catalogue:
+    //   velocity      = units sold / history days (days without sales count as 0)
+    //   deviation     = standard deviation of the daily units
+    //   reorder point = velocity * lead time + z * deviation * sqrt(lead time), at least minStockLevel
+    //                   (the hand-set minimum still applies, e.g. for new products without sales)
+    private List<ReorderSuggestion> analyseRange(long fromId, long toId, LocalDate historyStart, LocalDate historyEnd) {
+        List<ReorderSuggestion> suggestions = new ArrayList<>();
+        jdbcTemplate.query(
+            "SELECT p.id, p.name, " + StockBucket.TOTAL_STOCK_SQL + ", p.min_stock_level, v.velocity, d.deviation, r.reorder_point " +
+            "FROM products p " +
+            "LEFT JOIN (SELECT product_id, SUM(quantity) AS units, SUM(quantity * quantity) AS units_squared " +
+            "           FROM product_daily_sales " +
+            "           WHERE product_id >= ? AND product_id < ? AND sales_date >= ? AND sales_date < ? " +
+            "           GROUP BY product_id) s ON s.product_id = p.id " +
+            "CROSS JOIN LATERAL (SELECT COALESCE(s.units, 0) / CAST(? AS float8) AS velocity) v " +
+            "CROSS JOIN LATERAL (SELECT SQRT(GREATEST(COALESCE(s.units_squared, 0) / CAST(? AS float8) " +
+            "                                         - v.velocity * v.velocity, 0)) AS deviation) d " +
+            "CROSS JOIN LATERAL (SELECT GREATEST(COALESCE(p.min_stock_level, 0), " +
+            "                                    CEIL(v.velocity * ? + ? * d.deviation * SQRT(?))) AS reorder_point) r " +
+            "WHERE p.id >= ? AND p.id < ? AND " + StockBucket.TOTAL_STOCK_SQL + " <= r.reorder_point",
+            rs -> {
+                ReorderSuggestion suggestion = suggest(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4),
+                    rs.getDouble(5), rs.getDouble(6), rs.getLong(7));
+                if (suggestion != null) {
+                    suggestions.add(suggestion);
+                }
+            },
+            fromId, toId, historyStart, historyEnd,
+            historyDays, historyDays,
+            leadTimeDays, serviceLevelZ, leadTimeDays,
+            fromId, toId);
+        return suggestions;
+    }
+
+    // How much to order for a product at or below its reorder point: enough to reach
+    // the demand during lead time + review period plus the safety stock
+    // null if the product doesn't need anything (no sales and no minimum)
+    private ReorderSuggestion suggest(long productId, String name, int stock, int minStockLevel,
+                                      double velocity, double deviation, long reorderPoint) {
+        double safetyStock = serviceLevelZ * deviation * Math.sqrt(leadTimeDays);
+        long orderUpTo = Math.max((long) Math.ceil(velocity * (leadTimeDays + reviewDays) + safetyStock),
+            2 * reorderPoint);
+        long suggestedQuantity = orderUpTo - stock;
+        if (suggestedQuantity <= 0) {
+            return null;
+        }
+
+        ReorderSuggestion suggestion = new ReorderSuggestion();
+        suggestion.setProductId(productId);
+        suggestion.setProductName(name);
+        suggestion.setStockQuantity(stock);
+        suggestion.setMinStockLevel(minStockLevel);
+        suggestion.setDailyVelocity(Math.round(velocity * 100) / 100.0);
+        suggestion.setDaysOfCover(velocity > 0 ? Math.round(stock / velocity * 10) / 10.0 : null);
+        suggestion.setReorderPoint(reorderPoint);
+        suggestion.setSuggestedQuantity(suggestedQuantity);
+        return suggestion;
+    }
+
+    // Splits a product id range in halves until it is at most chunk-size ids wide
+    private class ChunkTask extends RecursiveTask<List<ReorderSuggestion>> {
+        private final long fromId;
+        private final long toId;
+        private final LocalDate historyStart;
+        private final LocalDate historyEnd;
+
+        ChunkTask(long fromId, long toId, LocalDate historyStart, LocalDate historyEnd) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.historyStart = historyStart;
+            this.historyEnd = historyEnd;
+        }
+
+        @Override
+        protected List<ReorderSuggestion> compute() {
+            if (toId - fromId <= chunkSize) {
+                return analyseRange(fromId, toId, historyStart, historyEnd);
+            }
+            long middle = fromId + (toId - fromId) / 2;
+            ChunkTask left = new ChunkTask(fromId, middle, historyStart, historyEnd);
+            ChunkTask right = new ChunkTask(middle, toId, historyStart, historyEnd);
+            left.fork();
+            List<ReorderSuggestion> result = right.compute();
+            result.addAll(left.join());
+            return result;
+        }
+    }
+
+    // Inner class for one product that should be reordered
+    public static class ReorderSuggestion {
+        private int rank;
+        private Long productId;
+        private String productName;
+        private int stockQuantity;
+        private int minStockLevel;
+        private double dailyVelocity;
+        private Double daysOfCover;
+        private long reorderPoint;
+        private long suggestedQuantity;
+
+        public int getRank() {
+            return rank;
+        }
+
+        public void setRank(int rank) {
+            this.rank = rank;
+        }
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public void setProductName(String productName) {
+            this.productName = productName;
+        }
+
+        public int getStockQuantity() {
+            return stockQuantity;
+        }
+
+        public void setStockQuantity(int stockQuantity) {
+            this.stockQuantity = stockQuantity;
+        }
+
+        public int getMinStockLevel() {
+            return minStockLevel;
+        }
+
+        public void setMinStockLevel(int minStockLevel) {
+            this.minStockLevel = minStockLevel;
+        }
+
+        // Average units sold per day
+        public double getDailyVelocity() {
+            return dailyVelocity;
+        }
+
+        public void setDailyVelocity(double dailyVelocity) {
+            this.dailyVelocity = dailyVelocity;
+        }
+
+        // How many days the current stock lasts at that rate (null = no sales)
+        public Double getDaysOfCover() {
+            return daysOfCover;
+        }
+
+        public void setDaysOfCover(Double daysOfCover) {
+            this.daysOfCover = daysOfCover;
+        }
+
+        public long getReorderPoint() {
+            return reorderPoint;
+        }
+
+        public void setReorderPoint(long reorderPoint) {
+            this.reorderPoint = reorderPoint;
+        }
+
+        public long getSuggestedQuantity() {
+            return suggestedQuantity;
+        }
+
+        public void setSuggestedQuantity(long suggestedQuantity) {
+            this.suggestedQuantity = suggestedQuantity;
+        }
+    }
+
+    // Inner class for the result of one run
+    public static class ReorderReport {
+        private LocalDateTime generatedAt;
+        private long durationMillis;
+        private long productsAnalysed;
+        private long ordersRolledUp;
+        private int salesHistoryDays;
+        private int totalSuggestions;
+        private List<ReorderSuggestion> suggestions;
+
+        // Same report with a shorter suggestion list
+        ReorderReport withSuggestions(List<ReorderSuggestion> suggestions) {
+            ReorderReport copy = new ReorderReport();
+            copy.setGeneratedAt(generatedAt);
+            copy.setDurationMillis(durationMillis);
+            copy.setProductsAnalysed(productsAnalysed);
+            copy.setOrdersRolledUp(ordersRolledUp);
+            copy.setSalesHistoryDays(salesHistoryDays);
+            copy.setTotalSuggestions(totalSuggestions);
+            copy.setSuggestions(suggestions);
+            return copy;
+        }
+
+        public LocalDateTime getGeneratedAt() {
+            return generatedAt;
+        }
+
+        public void setGeneratedAt(LocalDateTime generatedAt) {
+            this.generatedAt = generatedAt;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public void setDurationMillis(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        public long getProductsAnalysed() {
+            return productsAnalysed;
+        }
+
+        public void setProductsAnalysed(long productsAnalysed) {
+            this.productsAnalysed = productsAnalysed;
+        }
+
+        // Order ids newly rolled up into the daily sales by this run
+        public long getOrdersRolledUp() {
+            return ordersRolledUp;
+        }
+
+        public void setOrdersRolledUp(long ordersRolledUp) {
+            this.ordersRolledUp = ordersRolledUp;
+        }
+
+        public int getSalesHistoryDays() {
+            return salesHistoryDays;
+        }
+
+        public void setSalesHistoryDays(int salesHistoryDays) {
+            this.salesHistoryDays = salesHistoryDays;
+        }
+
+        // All products that should be reordered, even if the list was cut to a limit
+        public int getTotalSuggestions() {
+            return totalSuggestions;
+        }
+
+        public void setTotalSuggestions(int totalSuggestions) {
+            this.totalSuggestions = totalSuggestions;
+        }
+
+        public List<ReorderSuggestion> getSuggestions() {
+            return suggestions;
+        }
+
+        public void setSuggestions(List<ReorderSuggestion> suggestions) {
+            this.suggestions = suggestions;
+        }
+    }
+}
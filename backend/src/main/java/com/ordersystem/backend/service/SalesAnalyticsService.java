@@ -0,0 +1,566 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ReadRouting;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.OrderStatus;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sales time series: orders, units and revenue per hour/day/week, optionally per product or status
+// The requested range is cut into chunks on a fixed calendar grid (a week of hours, a month of
+// days, 13 weeks of weeks). Every chunk is one GROUP BY date_trunc(...) query, the chunks run at
+// the same time on virtual threads (at most "parallelism" at once, each holds a read connection),
+// and the chunk results are glued together in time order into a columnar response.
+//
+// Chunks that are over (ended more than settle-time ago) are cached for good: new orders only
+// land in the current chunk. The one thing that changes old chunks is a status change of an old
+// order (e.g. a late cancellation), OrderService reports those and the chunks holding the order's
+// date are dropped (see ordersChanged).
+// Analytics cover the caller's store (X-Store-Id) only.
+@Service
+public class SalesAnalyticsService {
+
+    public static final int MAX_BUCKETS = 20000;
+    public static final int MAX_ROWS = 500000;
+
+    // Bucket size, each with the chunk grid its queries are cut on
+    public enum Interval {
+        HOUR, DAY, WEEK;
+
+        private static final LocalDate GRID_MONDAY = LocalDate.of(2024, 1, 1);
+
+        LocalDateTime truncate(LocalDateTime time) {
+            return switch (this) {
+                case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+                case DAY -> time.truncatedTo(ChronoUnit.DAYS);
+                // Like PostgreSQL's date_trunc('week'): weeks start on Monday
+                case WEEK -> time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            };
+        }
+
+        LocalDateTime next(LocalDateTime bucket) {
+            return switch (this) {
+                case HOUR -> bucket.plusHours(1);
+                case DAY -> bucket.plusDays(1);
+                case WEEK -> bucket.plusWeeks(1);
+            };
+        }
+
+        // Start of the chunk holding the given time
+        LocalDateTime chunkStart(LocalDateTime time) {
+            return switch (this) {
+                case HOUR -> WEEK.truncate(time);
+                case DAY -> time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+                case WEEK -> {
+                    long weeks = ChronoUnit.WEEKS.between(GRID_MONDAY, WEEK.truncate(time).toLocalDate());
+                    yield GRID_MONDAY.plusWeeks(Math.floorDiv(weeks, 13) * 13).atStartOfDay();
+                }
+            };
+        }
+
+        LocalDateTime chunkEnd(LocalDateTime chunkStart) {
+            return switch (this) {
+                case HOUR -> chunkStart.plusWeeks(1);
+                case DAY -> chunkStart.plusMonths(1);
+                case WEEK -> chunkStart.plusWeeks(13);
+            };
+        }
+    }
+
+    // What each row of the series is split by
+    public enum GroupBy {
+        NONE, PRODUCT, STATUS
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final TransactionTemplate readOnlyTransaction;
+    private final Duration settleTime;
+    private final Duration timeout;
+    private final int maxCachedChunks;
+
+    // Chunk queries mostly wait on the database, a virtual thread each is enough;
+    // the semaphore keeps them from taking every connection of the pool
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+
+    private final Map<ChunkId, CachedChunk> cache = new ConcurrentHashMap<>();
+    private final AtomicLong cachedResults = new AtomicLong();
+
+    public SalesAnalyticsService(
+            PlatformTransactionManager transactionManager,
+            @Value("${app.analytics.parallelism:4}") int parallelism,
+            @Value("${app.analytics.settle-time:2m}") Duration settleTime,
+            @Value("${app.analytics.timeout:30s}") Duration timeout,
+            @Value("${app.analytics.max-cached-chunks:50000}") int maxCachedChunks,
+            @Value("${app.single-instance:true}") boolean singleInstance) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("app.analytics.parallelism must be at least 1");
+        }
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.permits = new Semaphore(parallelism);
+        this.settleTime = settleTime;
+        this.timeout = timeout;
+        // Cached chunks are only dropped for this instance's status changes, so with several
+        // instances nothing is cached
+        this.maxCachedChunks = singleInstance ? maxCachedChunks : 0;
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // from and to are inclusive days, widened to whole buckets (a week series starts on a Monday)
+    // status: only orders in that status; without it cancelled orders are left out, except when
+    // grouping by status (then every status is its own series)
+    public SalesSeries getSeries(LocalDate from, LocalDate to, Interval interval, GroupBy groupBy, OrderStatus status) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("from and to are required, and to must not be before from");
+        }
+        long start = System.nanoTime();
+        String store = StoreContext.currentStore();
+        LocalDateTime rangeStart = interval.truncate(from.atStartOfDay());
+        LocalDateTime rangeEnd = interval.truncate(to.plusDays(1).atStartOfDay());
+        if (rangeEnd.isBefore(to.plusDays(1).atStartOfDay())) {
+            rangeEnd = interval.next(rangeEnd);
+        }
+
+        List<LocalDateTime> buckets = new ArrayList<>();
+        for (LocalDateTime bucket = rangeStart; bucket.isBefore(rangeEnd); bucket = interval.next(bucket)) {
+            if (buckets.size() == MAX_BUCKETS) {
+                throw new IllegalArgumentException("Too many buckets (more than " + MAX_BUCKETS +
+                    "), use a shorter range or a longer interval");
+            }
+            buckets.add(bucket);
+        }
+
+        // Chunks that started after now can't have orders yet
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime closedBefore = now.minus(settleTime);
+        String variant = groupBy + "/" + status;
+        List<ChunkId> chunks = new ArrayList<>();
+        for (LocalDateTime chunk = interval.chunkStart(rangeStart);
+             chunk.isBefore(rangeEnd) && !chunk.isAfter(now); chunk = interval.chunkEnd(chunk)) {
+            chunks.add(new ChunkId(store, interval, chunk));
+        }
+
+        // Cached chunks are used as they are, the others are queried in parallel
+        Map<ChunkId, List<Row>> results = new HashMap<>();
+        Map<ChunkId, Future<List<Row>>> futures = new LinkedHashMap<>();
+        Map<ChunkId, Long> generations = new HashMap<>();
+        for (ChunkId chunk : chunks) {
+            boolean closed = !interval.chunkEnd(chunk.start()).isAfter(closedBefore);
+            CachedChunk cached = cache.get(chunk);
+            if (closed && cached != null && cached.rows.containsKey(variant)) {
+                results.put(chunk, cached.rows.get(variant));
+                continue;
+            }
+            if (closed) {
+                // Remember the chunk's generation: if an order in it changes while the
+                // query runs, the (possibly old) result must not be cached
+                generations.put(chunk, cached != null ? cached.generation : 0L);
+            }
+            futures.put(chunk, executor.submit(() -> queryChunk(chunk, groupBy, status)));
+        }
+        int fromCache = results.size();
+        waitForChunks(futures, results);
+
+        for (Map.Entry<ChunkId, Long> entry : generations.entrySet()) {
+            cacheChunk(entry.getKey(), entry.getValue(), variant, results.get(entry.getKey()));
+        }
+
+        SalesSeries series = toColumns(chunks, results, buckets, rangeStart, rangeEnd, interval, groupBy, status);
+        series.setChunks(chunks.size());
+        series.setChunksFromCache(fromCache);
+        series.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return series;
+    }
+
+    // Called by OrderService when orders changed status: their dates' chunks are dropped
+    // from the cache once the change has committed
+    public void ordersChanged(Map<String, Set<LocalDateTime>> orderDatesByStore) {
+        if (orderDatesByStore.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(orderDatesByStore);
+                }
+            });
+        } else {
+            evict(orderDatesByStore);
+        }
+    }
+
+    public void ordersChanged(String storeId, Collection<LocalDateTime> orderDates) {
+        ordersChanged(Map.of(storeId, new HashSet<>(orderDates)));
+    }
+
+    private void evict(Map<String, Set<LocalDateTime>> orderDatesByStore) {
+        Set<ChunkId> chunks = new HashSet<>();
+        for (Map.Entry<String, Set<LocalDateTime>> entry : orderDatesByStore.entrySet()) {
+            for (LocalDateTime date : entry.getValue()) {
+                for (Interval interval : Interval.values()) {
+                    chunks.add(new ChunkId(entry.getKey(), interval, interval.chunkStart(date)));
+                }
+            }
+        }
+        for (ChunkId chunk : chunks) {
+            // An empty entry with the next generation: queries that started before this
+            // change see a different generation when they finish and don't cache their result
+            cache.compute(chunk, (id, old) -> {
+                if (old != null) {
+                    cachedResults.addAndGet(-old.rows.size());
+                }
+                return new CachedChunk(old != null ? old.generation + 1 : 1);
+            });
+        }
+    }
+
+    private void cacheChunk(ChunkId chunk, long generation, String variant, List<Row> rows) {
+        if (cachedResults.get() >= maxCachedChunks) {
+            // Full: keep serving from what is cached, query the rest every time
+            return;
+        }
+        cache.compute(chunk, (id, current) -> {
+            long currentGeneration = current != null ? current.generation : 0L;
+            if (currentGeneration != generation) {
+                return current;
+            }
+            CachedChunk updated = current != null ? current : new CachedChunk(generation);
+            if (updated.rows.putIfAbsent(variant, rows) == null) {
+                cachedResults.incrementAndGet();
+            }
+            return updated;
+        });
+    }
+
+    private void waitForChunks(Map<ChunkId, Future<List<Row>>> futures, Map<ChunkId, List<Row>> results) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (Map.Entry<ChunkId, Future<List<Row>>> entry : futures.entrySet()) {
+                try {
+                    results.put(entry.getKey(),
+                        entry.getValue().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Analytics query failed: " + e.getCause().getMessage(), e.getCause());
+                } catch (TimeoutException e) {
+                    throw new RuntimeException("Analytics query took longer than " + timeout.toSeconds() + "s");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the analytics queries", e);
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+    }
+
+    // One chunk: runs on its own virtual thread, in a read-only transaction (read replica if
+    // configured, the reporting one first) on the store's shard
+    private List<Row> queryChunk(ChunkId chunk, GroupBy groupBy, OrderStatus status) throws InterruptedException {
+        String key = switch (groupBy) {
+            case NONE -> "NULL";
+            case PRODUCT -> "oi.product_id";
+            case STATUS -> "o.status";
+        };
+        StringBuilder sql = new StringBuilder(
+            "SELECT date_trunc('" + chunk.interval().name().toLowerCase() + "', o.order_date), " + key + ", " +
+            "COUNT(DISTINCT o.id), SUM(oi.quantity), SUM(oi.quantity * oi.unit_price) " +
+            "FROM orders o JOIN order_items oi ON oi.order_id = o.id " +
+            "WHERE o.store_id = ? AND o.order_date >= ? AND o.order_date < ?");
+        List<Object> params = new ArrayList<>(List.of(chunk.store(),
+            Timestamp.valueOf(chunk.start()), Timestamp.valueOf(chunk.interval().chunkEnd(chunk.start()))));
+        if (status != null) {
+            sql.append(" AND o.status = ?");
+            params.add(status.name());
+        } else if (groupBy != GroupBy.STATUS) {
+            sql.append(" AND o.status <> 'CANCELLED'");
+        }
+        sql.append(groupBy == GroupBy.NONE ? " GROUP BY 1 ORDER BY 1" : " GROUP BY 1, 2 ORDER BY 1, 2");
+
+        permits.acquire();
+        try {
+            return StoreContext.forStore(chunk.store(), () -> ReadRouting.reporting(() ->
+                readOnlyTransaction.execute(tx -> jdbcTemplate.query(sql.toString(),
+                    (rs, rowNum) -> new Row(rs.getTimestamp(1).toLocalDateTime(),
+                        groupBy == GroupBy.NONE ? null : rs.getString(2),
+                        rs.getLong(3), rs.getLong(4), rs.getBigDecimal(5)),
+                    params.toArray()))));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private SalesSeries toColumns(List<ChunkId> chunks, Map<ChunkId, List<Row>> results, List<LocalDateTime> buckets,
+                                  LocalDateTime rangeStart, LocalDateTime rangeEnd, Interval interval,
+                                  GroupBy groupBy, OrderStatus status) {
+        // Chunks are in time order and each is sorted, so the rows come out sorted too
+        List<Row> rows = new ArrayList<>();
+        for (ChunkId chunk : chunks) {
+            for (Row row : results.get(chunk)) {
+                if (!row.bucket().isBefore(rangeStart) && row.bucket().isBefore(rangeEnd)) {
+                    rows.add(row);
+                }
+            }
+            if (rows.size() > MAX_ROWS) {
+                throw new IllegalArgumentException("Too many rows (more than " + MAX_ROWS +
+                    "), use a shorter range or a longer interval");
+            }
+        }
+
+        Map<LocalDateTime, Integer> bucketIndexes = new HashMap<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            bucketIndexes.put(buckets.get(i), i);
+        }
+        int[] bucketColumn = new int[rows.size()];
+        List<String> keyColumn = groupBy == GroupBy.NONE ? null : new ArrayList<>(rows.size());
+        long[] ordersColumn = new long[rows.size()];
+        long[] unitsColumn = new long[rows.size()];
+        BigDecimal[] revenueColumn = new BigDecimal[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            bucketColumn[i] = bucketIndexes.get(row.bucket());
+            if (keyColumn != null) {
+                keyColumn.add(row.key());
+            }
+            ordersColumn[i] = row.orders();
+            unitsColumn[i] = row.units();
+            revenueColumn[i] = row.revenue();
+        }
+
+        SalesSeries series = new SalesSeries();
+        series.setInterval(interval.name().toLowerCase());
+        series.setGroupBy(groupBy.name().toLowerCase());
+        series.setStatus(status);
+        series.setFrom(rangeStart);
+        series.setTo(rangeEnd);
+        series.setBuckets(buckets);
+        series.setBucket(bucketColumn);
+        series.setKey(keyColumn);
+        series.setOrders(ordersColumn);
+        series.setUnits(unitsColumn);
+        series.setRevenue(revenueColumn);
+        if (groupBy == GroupBy.PRODUCT) {
+            series.setProductNames(productNames(keyColumn));
+        }
+        return series;
+    }
+
+    // Current names of the products in the series (names aren't part of the cached chunks)
+    private Map<String, String> productNames(List<String> productIds) {
+        Set<Long> ids = new HashSet<>();
+        for (String id : productIds) {
+            ids.add(Long.valueOf(id));
+        }
+        Map<String, String> names = new HashMap<>();
+        if (ids.isEmpty()) {
+            return names;
+        }
+        readOnlyTransaction.executeWithoutResult(tx -> {
+            for (Product product : productRepository.findAllById(ids)) {
+                names.put(String.valueOf(product.getId()), product.getName());
+            }
+        });
+        return names;
+    }
+
+    private record ChunkId(String store, Interval interval, LocalDateTime start) {}
+
+    private record Row(LocalDateTime bucket, String key, long orders, long units, BigDecimal revenue) {}
+
+    // The results of one chunk per variant (group by + status filter)
+    private static class CachedChunk {
+        private final long generation;
+        private final Map<String, List<Row>> rows = new ConcurrentHashMap<>();
+
+        CachedChunk(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    // Columnar result: "buckets" lists every bucket of the range once, then one entry per row in
+    // each of bucket (index into buckets), key (product id or status, absent without groupBy),
+    // orders, units and revenue. Buckets without sales have no row.
+    public static class SalesSeries {
+        private String interval;
+        private String groupBy;
+        private OrderStatus status;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private List<LocalDateTime> buckets;
+        private int[] bucket;
+        private List<String> key;
+        private long[] orders;
+        private long[] units;
+        private BigDecimal[] revenue;
+        private Map<String, String> productNames;
+        private int chunks;
+        private int chunksFromCache;
+        private long elapsedMillis;
+
+        public String getInterval() {
+            return interval;
+        }
+
+        public void setInterval(String interval) {
+            this.interval = interval;
+        }
+
+        public String getGroupBy() {
+            return groupBy;
+        }
+
+        public void setGroupBy(String groupBy) {
+            this.groupBy = groupBy;
+        }
+
+        public OrderStatus getStatus() {
+            return status;
+        }
+
+        public void setStatus(OrderStatus status) {
+            this.status = status;
+        }
+
+        public LocalDateTime getFrom() {
+            return from;
+        }
+
+        public void setFrom(LocalDateTime from) {
+            this.from = from;
+        }
+
+        // Exclusive
+        public LocalDateTime getTo() {
+            return to;
+        }
+
+        public void setTo(LocalDateTime to) {
+            this.to = to;
+        }
+
+        public List<LocalDateTime> getBuckets() {
+            return buckets;
+        }
+
+        public void setBuckets(List<LocalDateTime> buckets) {
+            this.buckets = buckets;
+        }
+
+        public int[] getBucket() {
+            return bucket;
+        }
+
+        public void setBucket(int[] bucket) {
+            this.bucket = bucket;
+        }
+
+        public List<String> getKey() {
+            return key;
+        }
+
+        public void setKey(List<String> key) {
+            this.key = key;
+        }
+
+        public long[] getOrders() {
+            return orders;
+        }
+
+        public void setOrders(long[] orders) {
+            this.orders = orders;
+        }
+
+        public long[] getUnits() {
+            return units;
+        }
+
+        public void setUnits(long[] units) {
+            this.units = units;
+        }
+
+        public BigDecimal[] getRevenue() {
+            return revenue;
+        }
+
+        public void setRevenue(BigDecimal[] revenue) {
+            this.revenue = revenue;
+        }
+
+        public Map<String, String> getProductNames() {
+            return productNames;
+        }
+
+        public void setProductNames(Map<String, String> productNames) {
+            this.productNames = productNames;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public void setChunks(int chunks) {
+            this.chunks = chunks;
+        }
+
+        public int getChunksFromCache() {
+            return chunksFromCache;
+        }
+
+        public void setChunksFromCache(int chunksFromCache) {
+            this.chunksFromCache = chunksFromCache;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public void setElapsedMillis(long elapsedMillis) {
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+}
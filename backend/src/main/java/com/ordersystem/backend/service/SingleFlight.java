@@ -0,0 +1,94 @@
+package com.ordersystem.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Request coalescing ("single flight"): concurrent calls for the same key share one load
+// The first caller (the leader) runs the loader, callers arriving while it runs wait for
+// its result instead of running their own query. A follower waits at most "timeout";
+// after that it gives up on the shared load and runs the loader itself.
+//
+// Metrics (tag name=<name>):
+//   coalescing.calls{role=leader|follower|timeout}  - how each call was served
+//   coalescing.collapse.ratio                       - calls per actual load (1.0 = no coalescing)
+//   coalescing.inflight                             - keys currently loading
+public class SingleFlight<K, V> {
+
+    private static final String CALLS_DESCRIPTION = "Coalesced calls by how they were served";
+
+    private final Duration timeout;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter leaders;
+    private final Counter followers;
+    private final Counter timeouts;
+
+    public SingleFlight(String name, Duration timeout, MeterRegistry registry) {
+        this.timeout = timeout;
+        this.leaders = Counter.builder("coalescing.calls").tag("name", name).tag("role", "leader")
+            .description(CALLS_DESCRIPTION).register(registry);
+        this.followers = Counter.builder("coalescing.calls").tag("name", name).tag("role", "follower")
+            .description(CALLS_DESCRIPTION).register(registry);
+        this.timeouts = Counter.builder("coalescing.calls").tag("name", name).tag("role", "timeout")
+            .description(CALLS_DESCRIPTION).register(registry);
+        Gauge.builder("coalescing.collapse.ratio", this, SingleFlight::collapseRatio).tag("name", name)
+            .description("Calls per database load").register(registry);
+        Gauge.builder("coalescing.inflight", inFlight, Map::size).tag("name", name)
+            .description("Keys currently being loaded").register(registry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing == null) {
+            // We are the leader: load and hand the result to everyone waiting
+            leaders.increment();
+            try {
+                V value = loader.get();
+                mine.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        try {
+            V value = existing.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            followers.increment();
+            return value;
+        } catch (TimeoutException e) {
+            // The shared load is too slow, don't let it hold up this request any longer
+            timeouts.increment();
+            return loader.get();
+        } catch (ExecutionException e) {
+            // The leader failed, so do we (with the same error)
+            followers.increment();
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for " + key, e);
+        }
+    }
+
+    private double collapseRatio() {
+        double loads = leaders.count() + timeouts.count();
+        return loads == 0 ? 1.0 : (loads + followers.count()) / loads;
+    }
+}
@@ -0,0 +1,101 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Evens out the stock buckets of bucketed products (see StockBucketService)
+// Checkouts take from random buckets, so some run empty before others, and bulk cancellations
+// and imports put stock on the product row. An empty bucket only costs a checkout another try,
+// but with several empty ones more checkouts end up waiting or locking everything. Every interval,
+// products with stock on the row or a bucket below half an even share get their stock spread evenly
+// again, one short transaction per product.
+// Metric: stock.buckets.rebalanced - products rebalanced
+@Service
+public class StockBucketRebalancer {
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    private final boolean enabled;
+    private final Duration interval;
+
+    private final ScheduledExecutorService scheduler;
+    private final Counter rebalanced;
+
+    public StockBucketRebalancer(
+            MeterRegistry registry,
+            @Value("${app.stock-buckets.enabled:false}") boolean enabled,
+            @Value("${app.stock-buckets.rebalance-interval:10s}") Duration interval) {
+        this.enabled = enabled;
+        this.interval = interval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-bucket-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rebalanced = Counter.builder("stock.buckets.rebalanced")
+            .description("Products whose stock buckets were evened out")
+            .register(registry);
+    }
+
+    // Start the schedule only once the application is ready, like the reorder engine
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::runSafely, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Rebalance every uneven bucketed product on every shard
+    // Returns the number of products rebalanced
+    // Synchronized: a manual run waits for a scheduled one instead of running alongside it
+    public synchronized int rebalance() {
+        int products = 0;
+        for (String shard : shardDirectory.getShardNames()) {
+            List<Long> productIds = StoreContext.onShard(shard, stockBucketService::findUnbalanced);
+            for (Long productId : productIds) {
+                // Each call is its own transaction, on this shard
+                if (StoreContext.onShard(shard, () -> stockBucketService.rebalance(productId))) {
+                    products++;
+                }
+            }
+        }
+        rebalanced.increment(products);
+        if (products > 0) {
+            System.out.println("Stock buckets rebalanced for " + products + " products");
+        }
+        return products;
+    }
+
+    private void runSafely() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next run finds the same products again
+            System.out.println("Stock bucket rebalancing failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.ordersystem.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Stock buckets for best-selling products (see StockBucket)
+// Every checkout of a product normally locks its products row until it commits, so sales of one
+// best-seller happen one after the other however many tills there are. A product switched to
+// buckets keeps its stock in N rows instead: a checkout takes its units from one random bucket
+// that no other checkout is using, and only waits when all of them are busy. Restocks and
+// cancellations are spread over all buckets, the rebalancer (StockBucketRebalancer) evens them
+// out again as sales drain them unevenly.
+//
+// The oversell check moves into the UPDATE: a bucket is only decremented if it has enough
+// ("quantity >= ?"), so no bucket goes below zero. A sale that no single bucket can serve locks all
+// buckets and takes what they have; the caller takes the rest from the product row, which then has
+// to cover it.
+//
+// Stock held for carts (StockHoldService) is kept on the product row, never in a bucket: a hold
+// moves its units from the buckets onto the row, and the rebalancer and setBuckets leave the
+// held units there. A checkout taking from a bucket therefore only gets unheld stock, and one
+// that needs the row checks it against the holds while it has the row locked, like a product
+// without buckets. Ended holds leave their units on the row, the rebalancer moves them back.
+//
+// Lock order: every transaction that changes stock locks the stock buckets it needs first (by
+// product id, then bucket) and the product rows after that (by id). Checkouts, cancellations,
+// restocks and imports all follow it, so they can only wait for each other, never deadlock.
+// That's why nothing here touches the product row while taking or adding stock: the caller
+// changes the row afterwards (OrderService, StockJournalService). Only the rebalancer and
+// setBuckets lock a product row first, and they never wait for a bucket after it.
+// The bucket total isn't part of the cached product (BucketQuantityLoader reads it on every load),
+// so sales and restocks through the buckets leave the second-level cache alone. Only statements
+// that change the product row itself (setBuckets, rebalance) evict the product afterwards.
+//
+// Opt-in per product (PUT /api/products/{id}/stock-buckets), and only when app.stock-buckets.enabled
+// Metric: stock.buckets.fallback - sales that no single bucket could serve
+@Service
+@Transactional
+public class StockBucketService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProductCache productCache;
+
+    // Looked up when needed: holds move their units out of the buckets through this service
+    @Autowired
+    private ObjectProvider<StockHoldService> stockHoldService;
+
+    private final boolean enabled;
+    private final int maxCount;
+    private final Counter fallbacks;
+
+    public StockBucketService(
+            MeterRegistry registry,
+            @Value("${app.stock-buckets.enabled:false}") boolean enabled,
+            @Value("${app.stock-buckets.max-count:64}") int maxCount) {
+        this.enabled = enabled;
+        this.maxCount = maxCount;
+        this.fallbacks = Counter.builder("stock.buckets.fallback")
+            .description("Sales of bucketed products that no single bucket could serve")
+            .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Take up to quantity units from the product's buckets, returns how many it got
+    // Less than asked only if the buckets together don't have that much, the caller then takes the
+    // rest from the product row (or fails the sale)
+    public int take(Long productId, int quantity) {
+        // An attempt that finds its bucket too empty once it has locked it keeps that lock
+        // (PostgreSQL re-checks a changed row after locking it), and a bucket locked out of order
+        // would deadlock with takeFromSeveral: a failed attempt is rolled back to this savepoint,
+        // which releases its lock
+        jdbcTemplate.execute("SAVEPOINT stock_bucket_take");
+        // A random bucket with enough stock that no other checkout is using right now
+        boolean taken = takeFromOneBucket(productId, quantity, "FOR UPDATE SKIP LOCKED");
+        if (!taken) {
+            // All of them are busy: wait for one
+            jdbcTemplate.execute("ROLLBACK TO SAVEPOINT stock_bucket_take");
+            taken = takeFromOneBucket(productId, quantity, "");
+        }
+        int got = quantity;
+        if (!taken) {
+            // No single bucket has enough (low stock or a large quantity)
+            jdbcTemplate.execute("ROLLBACK TO SAVEPOINT stock_bucket_take");
+            fallbacks.increment();
+            got = takeFromSeveral(productId, quantity);
+        }
+        jdbcTemplate.execute("RELEASE SAVEPOINT stock_bucket_take");
+        return got;
+    }
+
+    // Add stock to the product's buckets, spread evenly (the units that don't divide evenly go to
+    // random buckets). Returns how many units found a bucket: buckets removed meanwhile don't exist
+    // anymore, the caller puts their part on the product row, which counts as stock just the same.
+    public int add(Long productId, int bucketCount, int quantity) {
+        int count = Math.max(bucketCount, 1);
+        int first = ThreadLocalRandom.current().nextInt(count);
+        List<Object[]> updates = new ArrayList<>();
+        for (int bucket = 0; bucket < count; bucket++) {
+            int amount = quantity / count + (Math.floorMod(bucket - first, count) < quantity % count ? 1 : 0);
+            if (amount > 0) {
+                updates.add(new Object[] {amount, productId, bucket});
+            }
+        }
+        int[] updated = jdbcTemplate.batchUpdate(
+            "UPDATE product_stock_buckets SET quantity = quantity + ? WHERE product_id = ? AND bucket = ?", updates);
+        int added = 0;
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 0) {
+                added += (Integer) updates.get(i)[0];
+            }
+        }
+        return added;
+    }
+
+    // Which of the products keep their stock in buckets (a plain read, nothing is locked)
+    @Transactional(readOnly = true)
+    public Set<Long> findBucketed(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(
+            "SELECT id FROM products WHERE id IN (" + placeholders(productIds.size()) + ") AND bucket_count > 0",
+            Long.class, productIds.toArray()));
+    }
+
+    // Lock every bucket of the products (by product id, then bucket), for a transaction that takes
+    // from them many times (a group commit batch): its own takes then never wait
+    public void lockBuckets(Collection<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            jdbcTemplate.queryForList("SELECT id FROM product_stock_buckets WHERE product_id IN (" +
+                placeholders(productIds.size()) + ") ORDER BY product_id, bucket FOR UPDATE",
+                Long.class, productIds.toArray());
+        }
+    }
+
+    // Split a product's stock over count buckets (evenly), or with count 0 move it back onto the
+    // product row; changing the count redistributes all of it
+    public StockBuckets setBuckets(Long productId, int count) {
+        if (!enabled) {
+            throw new IllegalArgumentException("Stock buckets are turned off (app.stock-buckets.enabled)");
+        }
+        if (count < 0 || count > maxCount) {
+            throw new IllegalArgumentException("Bucket count must be between 0 and " + maxCount);
+        }
+
+        // Waits for checkouts still using a bucket, then takes its latest quantity
+        List<Integer> removed = jdbcTemplate.queryForList(
+            "DELETE FROM product_stock_buckets WHERE product_id = ? RETURNING quantity", Integer.class, productId);
+        Integer onRow = lockRow(productId);
+        if (onRow == null) {
+            throw new RuntimeException("Product not found with id: " + productId);
+        }
+        int total = onRow + removed.stream().mapToInt(Integer::intValue).sum();
+        // Held stock stays on the row (read while the row is locked, holds lock it too)
+        int keptOnRow = count > 0 ? Math.max(Math.min(held(productId), total), 0) : total;
+
+        List<Object[]> buckets = new ArrayList<>(count);
+        for (int bucket = 0; bucket < count; bucket++) {
+            buckets.add(new Object[] {productId, bucket, evenShare(total - keptOnRow, count, bucket)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO product_stock_buckets (product_id, bucket, quantity) VALUES (?, ?, ?)",
+            buckets);
+        // A new layout is a product change: the version is bumped, unlike for stock changes
+        jdbcTemplate.update("UPDATE products SET stock_quantity = ?, bucket_count = ?, version = version + 1 WHERE id = ?",
+            keptOnRow, count, productId);
+        evictAfterCommit(productId);
+
+        System.out.println("Stock of product " + productId + (count > 0 ? " split over " + count + " buckets" :
+            " moved back onto the product row") + ": " + total);
+        return getBuckets(productId).orElseThrow();
+    }
+
+    // The product row and bucket quantities of a product, empty if it doesn't exist
+    @Transactional(readOnly = true)
+    public Optional<StockBuckets> getBuckets(Long productId) {
+        List<StockBuckets> products = jdbcTemplate.query(
+            "SELECT id, stock_quantity, bucket_count FROM products WHERE id = ?",
+            (rs, rowNum) -> {
+                StockBuckets buckets = new StockBuckets();
+                buckets.setProductId(rs.getLong("id"));
+                buckets.setRowQuantity(rs.getInt("stock_quantity"));
+                buckets.setBucketCount(rs.getInt("bucket_count"));
+                return buckets;
+            },
+            productId);
+        if (products.isEmpty()) {
+            return Optional.empty();
+        }
+        StockBuckets buckets = products.get(0);
+        buckets.setBucketQuantities(jdbcTemplate.queryForList(
+            "SELECT quantity FROM product_stock_buckets WHERE product_id = ? ORDER BY bucket", Integer.class, productId));
+        buckets.setStockQuantity(buckets.getRowQuantity() +
+            buckets.getBucketQuantities().stream().mapToInt(Integer::intValue).sum());
+        return Optional.of(buckets);
+    }
+
+    // Bucketed products whose stock is uneven: some of it is on the product row (held stock is
+    // too, rebalance finds nothing to do then), or a bucket holds less than half of an even share
+    // (sales drained it)
+    @Transactional(readOnly = true)
+    public List<Long> findUnbalanced() {
+        return jdbcTemplate.queryForList(
+            "SELECT p.id FROM products p JOIN product_stock_buckets b ON b.product_id = p.id " +
+            "WHERE p.bucket_count > 0 " +
+            "GROUP BY p.id, p.stock_quantity " +
+            "HAVING p.stock_quantity <> 0 OR MIN(b.quantity) * 2 < (p.stock_quantity + SUM(b.quantity)) / COUNT(*) " +
+            "ORDER BY p.id",
+            Long.class);
+    }
+
+    // Spread a product's stock evenly over its buckets again, the product row is emptied into them
+    // except for the stock held for carts, which stays on it (or is taken from the buckets if the
+    // row has less than that, e.g. holds from before the product had buckets)
+    // Buckets that checkouts are using right now are left as they are (SKIP LOCKED), so this never
+    // makes a checkout wait. The product row is locked first: a checkout that needs it waits for
+    // it while holding buckets, which this then skips, so the two can't deadlock.
+    // Returns false if nothing was moved
+    public boolean rebalance(Long productId) {
+        Integer onRow = lockRow(productId);
+        if (onRow == null) {
+            return false;
+        }
+        // Read while the row is locked: a hold that adds units locks it too
+        int held = Math.max(held(productId), 0);
+        List<int[]> buckets = jdbcTemplate.query(
+            "SELECT bucket, quantity FROM product_stock_buckets WHERE product_id = ? ORDER BY bucket " +
+            "FOR UPDATE SKIP LOCKED",
+            (rs, rowNum) -> new int[] {rs.getInt("bucket"), rs.getInt("quantity")},
+            productId);
+        int total = onRow - held + buckets.stream().mapToInt(bucket -> bucket[1]).sum();
+        if (buckets.isEmpty() || total < 0) {
+            return false;
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        for (int i = 0; i < buckets.size(); i++) {
+            int quantity = evenShare(total, buckets.size(), i);
+            if (quantity != buckets.get(i)[1]) {
+                updates.add(new Object[] {quantity, productId, buckets.get(i)[0]});
+            }
+        }
+        if (updates.isEmpty() && onRow == held) {
+            return false;
+        }
+        jdbcTemplate.batchUpdate("UPDATE product_stock_buckets SET quantity = ? WHERE product_id = ? AND bucket = ?",
+            updates);
+        if (onRow != held) {
+            changeRow(productId, held - onRow);
+            // The total didn't change, but the cached row part did
+            evictAfterCommit(productId);
+        }
+        return true;
+    }
+
+    // A product is being deleted
+    public void deleteBuckets(Long productId) {
+        jdbcTemplate.update("DELETE FROM product_stock_buckets WHERE product_id = ?", productId);
+    }
+
+    // Take one line's quantity from a single random bucket that has enough
+    // The outer "quantity >= ?" is the oversell check, the subquery only picks the bucket
+    // (and with SKIP LOCKED, one that nobody is using)
+    private boolean takeFromOneBucket(Long productId, int quantity, String lock) {
+        return jdbcTemplate.update(
+            "UPDATE product_stock_buckets SET quantity = quantity - ? " +
+            "WHERE id = (SELECT id FROM product_stock_buckets WHERE product_id = ? AND quantity >= ? " +
+            "            ORDER BY random() LIMIT 1 " + lock + ") " +
+            "AND quantity >= ?",
+            quantity, productId, quantity, quantity) == 1;
+    }
+
+    // Take a quantity no single bucket has: lock all buckets (in bucket order) and take from them
+    // in order until the quantity is reached or they are empty; returns the units taken
+    private int takeFromSeveral(Long productId, int quantity) {
+        List<int[]> buckets = jdbcTemplate.query(
+            "SELECT bucket, quantity FROM product_stock_buckets WHERE product_id = ? ORDER BY bucket FOR UPDATE",
+            (rs, rowNum) -> new int[] {rs.getInt("bucket"), rs.getInt("quantity")},
+            productId);
+        int remaining = quantity;
+        List<Object[]> updates = new ArrayList<>();
+        for (int[] bucket : buckets) {
+            int amount = Math.min(bucket[1], remaining);
+            if (amount > 0) {
+                updates.add(new Object[] {amount, productId, bucket[0]});
+                remaining -= amount;
+            }
+        }
+        jdbcTemplate.batchUpdate(
+            "UPDATE product_stock_buckets SET quantity = quantity - ? WHERE product_id = ? AND bucket = ?", updates);
+        return quantity - remaining;
+    }
+
+    // Units of the product held for carts, which have to stay on its row
+    private int held(Long productId) {
+        return stockHoldService.getObject().heldByOthers(productId, null);
+    }
+
+    // Lock the product row, returns the stock on it (null = no such product)
+    private Integer lockRow(Long productId) {
+        List<Integer> rows = jdbcTemplate.queryForList(
+            "SELECT stock_quantity FROM products WHERE id = ? FOR UPDATE", Integer.class, productId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // Change the stock on the product row (the row is locked; stock isn't version checked)
+    private void changeRow(Long productId, int quantity) {
+        jdbcTemplate.update("UPDATE products SET stock_quantity = stock_quantity + ? WHERE id = ?",
+            quantity, productId);
+    }
+
+    // "?, ?, ?" for an IN list of n values
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    // Bucket i's part of total split over count buckets, the first ones get the remainder
+    private static int evenShare(int total, int count, int i) {
+        return total / count + (i < total % count ? 1 : 0);
+    }
+
+    private void evictAfterCommit(Long productId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    productCache.evictProducts(List.of(productId));
+                }
+            });
+        } else {
+            productCache.evictProducts(List.of(productId));
+        }
+    }
+
+    // Inner class for where a product's stock is
+    public static class StockBuckets {
+        private Long productId;
+        private int bucketCount;
+        // Stock that isn't in a bucket (yet)
+        private int rowQuantity;
+        // Per bucket, in bucket order
+        private List<Integer> bucketQuantities;
+        // Row plus buckets, the product's stock
+        private int stockQuantity;
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public int getBucketCount() {
+            return bucketCount;
+        }
+
+        public void setBucketCount(int bucketCount) {
+            this.bucketCount = bucketCount;
+        }
+
+        public int getRowQuantity() {
+            return rowQuantity;
+        }
+
+        public void setRowQuantity(int rowQuantity) {
+            this.rowQuantity = rowQuantity;
+        }
+
+        public List<Integer> getBucketQuantities() {
+            return bucketQuantities;
+        }
+
+        public void setBucketQuantities(List<Integer> bucketQuantities) {
+            this.bucketQuantities = bucketQuantities;
+        }
+
+        public int getStockQuantity() {
+            return stockQuantity;
+        }
+
+        public void setStockQuantity(int stockQuantity) {
+            this.stockQuantity = stockQuantity;
+        }
+    }
+}
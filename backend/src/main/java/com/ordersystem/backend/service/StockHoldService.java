@@ -0,0 +1,526 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Stock holds: quantities reserved for a cart while it is being scanned, for a limited time
+// A hold counts against availability when orders (and other holds) are validated, so the stock
+// a cashier has scanned can't be sold to someone else before payment. Checking out with the
+// hold's id (OrderRequest.holdId) gives the order the held quantities and ends the hold.
+// Holds that aren't checked out expire after their TTL; every change to the hold restarts it.
+//
+// Holds live in memory (like the group commit queue), they are not written to the database.
+// Another instance's holds are invisible here, so with several instances (app.single-instance=false)
+// holds can't be created: orders are then checked against the stock alone.
+// Creating or changing a hold locks the product rows like an order does, so holds and orders
+// for the same product are checked one after the other and never promise the same stock twice.
+// A product with stock buckets (StockBucketService) keeps its held units on the product row: the
+// units a hold adds are moved there out of its buckets, so checkouts taking from the buckets
+// never get them. Ending a hold changes nothing in the database, the units simply stop counting
+// as held.
+// Expiry runs on a hierarchical timing wheel (TimingWheel) advanced by one thread every tick:
+// no timer per hold and no polling of the database, however many holds there are.
+//
+// Metrics: stock.holds.active, stock.holds.ended{reason=converted|expired|released}
+@Service
+public class StockHoldService {
+
+    public static final int MAX_HOLD_ITEMS = 500;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private StockJournalService stockJournalService;
+
+    private final boolean singleInstance;
+    private final Duration defaultTtl;
+    private final Duration maxTtl;
+    private final TimingWheel<StockHold> expiryWheel;
+    private final ScheduledExecutorService ticker;
+
+    // Everything below is guarded by "this"
+    private final Map<String, StockHold> holds = new HashMap<>();
+    // Units held per product (product ids are per shard, so the shard is part of the key)
+    private final Map<ProductKey, Integer> heldByProduct = new HashMap<>();
+
+    private final Counter converted;
+    private final Counter expired;
+    private final Counter released;
+
+    public StockHoldService(
+            MeterRegistry registry,
+            @Value("${app.stock-holds.default-ttl:15m}") Duration defaultTtl,
+            @Value("${app.stock-holds.max-ttl:2h}") Duration maxTtl,
+            @Value("${app.stock-holds.tick:100ms}") Duration tick,
+            @Value("${app.single-instance:true}") boolean singleInstance) {
+        this.singleInstance = singleInstance;
+        this.defaultTtl = defaultTtl;
+        this.maxTtl = maxTtl;
+        // 64 slots on 4 levels: with the default 100ms tick the wheel reaches 19 days ahead
+        this.expiryWheel = new TimingWheel<>(tick, 64, 4, System.currentTimeMillis());
+        if (defaultTtl.compareTo(maxTtl) > 0 || maxTtl.compareTo(expiryWheel.getRange()) > 0) {
+            throw new IllegalArgumentException("app.stock-holds: default-ttl must not exceed max-ttl, " +
+                "and max-ttl must be below " + expiryWheel.getRange() + " with this tick");
+        }
+
+        this.converted = ended(registry, "converted");
+        this.expired = ended(registry, "expired");
+        this.released = ended(registry, "released");
+        Gauge.builder("stock.holds.active", this, StockHoldService::activeHolds)
+            .description("Stock holds currently reserving stock").register(registry);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::expireDueHolds, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void requireSingleInstance() {
+        if (!singleInstance) {
+            throw new IllegalStateException("Stock holds need app.single-instance=true, " +
+                "they are kept in this instance's memory");
+        }
+    }
+
+    private static Counter ended(MeterRegistry registry, String reason) {
+        return Counter.builder("stock.holds.ended").tag("reason", reason)
+            .description("Stock holds that ended, by reason").register(registry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    // Reserve the items for the current store, fails if any product doesn't have enough unheld stock
+    @Transactional
+    public StockHold createHold(List<OrderItemRequest> items, Integer ttlSeconds) {
+        requireSingleInstance();
+        Duration ttl = ttlOf(ttlSeconds);
+        Map<Long, Integer> quantities = sumByProduct(items);
+        Map<Long, Product> products = lockProducts(quantities, Map.of());
+        String shard = shardDirectory.currentShard();
+
+        synchronized (this) {
+            checkAvailable(shard, quantities, products, null);
+            StockHold hold = new StockHold(UUID.randomUUID().toString(), shard, StoreContext.currentStore(),
+                Instant.now());
+            hold.quantities = quantities;
+            holds.put(hold.id, hold);
+            addHeld(shard, quantities, 1);
+            startTtl(hold, ttl);
+            return hold.copy();
+        }
+    }
+
+    // Replace the items of a hold (the cart changed), the TTL starts again
+    @Transactional
+    public StockHold updateHold(String holdId, List<OrderItemRequest> items, Integer ttlSeconds) {
+        requireSingleInstance();
+        Duration ttl = ttlOf(ttlSeconds);
+        Map<Long, Integer> quantities = sumByProduct(items);
+        Map<Long, Integer> before;
+        synchronized (this) {
+            before = activeHold(holdId).quantities;
+        }
+        Map<Long, Product> products = lockProducts(quantities, before);
+
+        synchronized (this) {
+            StockHold hold = activeHold(holdId);
+            if (hold.quantities != before) {
+                // Changed by another request while this one moved stock for the old items
+                throw new RuntimeException("Stock hold " + holdId + " was changed at the same time, try again");
+            }
+            // The hold's own units are available to it
+            checkAvailable(hold.shard, quantities, products, hold);
+            addHeld(hold.shard, hold.quantities, -1);
+            hold.quantities = quantities;
+            addHeld(hold.shard, quantities, 1);
+            startTtl(hold, ttl);
+            return hold.copy();
+        }
+    }
+
+    public synchronized Optional<StockHold> getHold(String holdId) {
+        StockHold hold = holds.get(holdId);
+        if (hold == null || !hold.shard.equals(shardDirectory.currentShard())) {
+            return Optional.empty();
+        }
+        return Optional.of(hold.copy());
+    }
+
+    // Give the stock back (cart abandoned); false if there is no such hold
+    public synchronized boolean releaseHold(String holdId) {
+        StockHold hold = holds.get(holdId);
+        if (hold == null || !hold.shard.equals(shardDirectory.currentShard()) || hold.checkingOut) {
+            return false;
+        }
+        end(hold, released);
+        return true;
+    }
+
+    // Units of the product held by holds other than the given one (which may be null)
+    // Only meaningful while the product row is locked, see OrderService
+    public synchronized int heldByOthers(Long productId, String holdId) {
+        String shard = shardDirectory.currentShard();
+        int held = heldByProduct.getOrDefault(new ProductKey(shard, productId), 0);
+        StockHold own = holdId != null ? holds.get(holdId) : null;
+        if (own != null && own.shard.equals(shard) && !own.checkingOut) {
+            held -= own.quantities.getOrDefault(productId, 0);
+        }
+        return held;
+    }
+
+    // Fails unless the hold exists for the current store's shard and can be checked out
+    public synchronized void requireHold(String holdId) {
+        activeHold(holdId);
+    }
+
+    // Hand the hold's units over to the order being saved in the current transaction
+    // The units stop counting as held for the rest of the transaction (the order's stock
+    // deduction replaces them). They are put back before the transaction ends, while the
+    // product rows are still locked: after a rollback the hold is simply active again,
+    // after a commit it is ended as converted.
+    public synchronized void claimForOrder(String holdId) {
+        StockHold hold = activeHold(holdId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("A stock hold can only be claimed inside a transaction");
+        }
+        hold.checkingOut = true;
+        addHeld(hold.shard, hold.quantities, -1);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCompletion() {
+                synchronized (StockHoldService.this) {
+                    addHeld(hold.shard, hold.quantities, 1);
+                    hold.checkingOut = false;
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (StockHoldService.this) {
+                    if (holds.get(hold.id) != hold) {
+                        return;
+                    }
+                    if (status == STATUS_COMMITTED) {
+                        end(hold, converted);
+                    } else if (!hold.expiresAt.isAfter(Instant.now())) {
+                        // Expired while the checkout was running and the checkout failed
+                        end(hold, expired);
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized HoldStatistics getStatistics() {
+        HoldStatistics statistics = new HoldStatistics();
+        statistics.setActiveHolds(holds.size());
+        long units = 0;
+        for (int quantity : heldByProduct.values()) {
+            units += quantity;
+        }
+        statistics.setHeldUnits(units);
+        statistics.setConverted((long) converted.count());
+        statistics.setExpired((long) expired.count());
+        statistics.setReleased((long) released.count());
+        statistics.setScheduledExpiries(expiryWheel.size());
+        return statistics;
+    }
+
+    private synchronized int activeHolds() {
+        return holds.size();
+    }
+
+    // Runs every tick on the expiry thread
+    private void expireDueHolds() {
+        try {
+            List<StockHold> due = expiryWheel.advance(System.currentTimeMillis());
+            if (due.isEmpty()) {
+                return;
+            }
+            Instant now = Instant.now();
+            synchronized (this) {
+                for (StockHold hold : due) {
+                    // Skip holds that already ended, whose TTL was restarted (a newer wheel
+                    // entry is waiting for them) or that are in the middle of a checkout
+                    if (holds.get(hold.id) == hold && !hold.expiresAt.isAfter(now) && !hold.checkingOut) {
+                        end(hold, expired);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking, a failed tick must not stop all future expiries
+            System.out.println("Stock hold expiry failed: " + e.getMessage());
+        }
+    }
+
+    // Must hold the lock
+    private StockHold activeHold(String holdId) {
+        StockHold hold = holdId != null ? holds.get(holdId) : null;
+        if (hold == null || !hold.shard.equals(shardDirectory.currentShard())) {
+            throw new RuntimeException("Stock hold not found or expired: " + holdId);
+        }
+        if (hold.checkingOut) {
+            throw new RuntimeException("Stock hold " + holdId + " is already being checked out");
+        }
+        return hold;
+    }
+
+    // Must hold the lock
+    private void checkAvailable(String shard, Map<Long, Integer> quantities, Map<Long, Product> products,
+                                StockHold own) {
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            int held = heldByProduct.getOrDefault(new ProductKey(shard, entry.getKey()), 0);
+            if (own != null) {
+                held -= own.quantities.getOrDefault(entry.getKey(), 0);
+            }
+            // Only the units on the product row can be held (for a product with buckets that's the
+            // held stock and what lockProducts just moved there for this hold)
+            int available = product.getStockQuantity() - product.getBucketQuantity() - held;
+            if (available < entry.getValue()) {
+                throw new RuntimeException(
+                    "Insufficient stock for product: " + product.getName() +
+                    ". Available: " + Math.max(available, 0) +
+                    ", Requested: " + entry.getValue()
+                );
+            }
+        }
+    }
+
+    // Must hold the lock
+    private void startTtl(StockHold hold, Duration ttl) {
+        hold.expiresAt = Instant.now().plus(ttl);
+        expiryWheel.schedule(hold, hold.expiresAt.toEpochMilli());
+    }
+
+    // Must hold the lock
+    private void end(StockHold hold, Counter reason) {
+        holds.remove(hold.id);
+        addHeld(hold.shard, hold.quantities, -1);
+        reason.increment();
+    }
+
+    // Must hold the lock
+    private void addHeld(String shard, Map<Long, Integer> quantities, int sign) {
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            heldByProduct.merge(new ProductKey(shard, entry.getKey()), sign * entry.getValue(),
+                (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private Duration ttlOf(Integer ttlSeconds) {
+        if (ttlSeconds == null) {
+            return defaultTtl;
+        }
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        if (ttlSeconds < 1 || ttl.compareTo(maxTtl) > 0) {
+            throw new IllegalArgumentException("ttlSeconds must be between 1 and " + maxTtl.toSeconds());
+        }
+        return ttl;
+    }
+
+    private Map<Long, Integer> sumByProduct(List<OrderItemRequest> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("A stock hold must contain at least one item");
+        }
+        if (items.size() > MAX_HOLD_ITEMS) {
+            throw new IllegalArgumentException("A stock hold can have at most " + MAX_HOLD_ITEMS + " items");
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItemRequest item : items) {
+            if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() < 1) {
+                throw new IllegalArgumentException("Every item needs a productId and a quantity of at least 1");
+            }
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    // Same locks as checkout, so holds and orders for a product take turns: first the buckets of
+    // products that have them, for the units the hold adds (compared to before), then the product
+    // rows in id order. The units taken from the buckets are put on the row, the product's stock
+    // doesn't change.
+    private Map<Long, Product> lockProducts(Map<Long, Integer> quantities, Map<Long, Integer> before) {
+        Map<Long, Integer> added = new TreeMap<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            int more = entry.getValue() - before.getOrDefault(entry.getKey(), 0);
+            if (more > 0) {
+                added.put(entry.getKey(), more);
+            }
+        }
+        Map<Long, Integer> taken = stockJournalService.takeFromBuckets(added);
+
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllByIdForUpdate(quantities.keySet())) {
+            products.put(product.getId(), product);
+        }
+        for (Long productId : quantities.keySet()) {
+            if (!products.containsKey(productId)) {
+                throw new RuntimeException("Product not found with id: " + productId);
+            }
+        }
+        for (Long productId : added.keySet()) {
+            Product product = products.get(productId);
+            if ((product.getBucketCount() > 0) != taken.containsKey(productId)) {
+                // Switched to or from buckets in the meantime
+                throw new ObjectOptimisticLockingFailureException(Product.class, productId);
+            }
+            // Loaded after the take: its bucket total is already lower, the row gets the units
+            product.setStockQuantity(product.getStockQuantity() + taken.getOrDefault(productId, 0));
+        }
+        return products;
+    }
+
+    private record ProductKey(String shard, Long productId) {}
+
+    // A hold as the API shows it
+    // The service keeps its own instance and hands out copies, so callers never see it change
+    public static class StockHold {
+        private final String id;
+        private final String shard;
+        private final String storeId;
+        private final Instant createdAt;
+        private Instant expiresAt;
+        private Map<Long, Integer> quantities = new LinkedHashMap<>();
+        private boolean checkingOut;
+
+        private StockHold(String id, String shard, String storeId, Instant createdAt) {
+            this.id = id;
+            this.shard = shard;
+            this.storeId = storeId;
+            this.createdAt = createdAt;
+        }
+
+        private StockHold copy() {
+            StockHold copy = new StockHold(id, shard, storeId, createdAt);
+            copy.expiresAt = expiresAt;
+            copy.quantities = new LinkedHashMap<>(quantities);
+            copy.checkingOut = checkingOut;
+            return copy;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getStoreId() {
+            return storeId;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public Instant getExpiresAt() {
+            return expiresAt;
+        }
+
+        public List<OrderItemRequest> getItems() {
+            List<OrderItemRequest> items = new ArrayList<>();
+            for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                items.add(new OrderItemRequest(entry.getKey(), entry.getValue()));
+            }
+            return items;
+        }
+
+        public boolean isCheckingOut() {
+            return checkingOut;
+        }
+    }
+
+    // Inner class for hold statistics
+    public static class HoldStatistics {
+        private int activeHolds;
+        private long heldUnits;
+        private long converted;
+        private long expired;
+        private long released;
+        private int scheduledExpiries;
+
+        public int getActiveHolds() {
+            return activeHolds;
+        }
+
+        public void setActiveHolds(int activeHolds) {
+            this.activeHolds = activeHolds;
+        }
+
+        public long getHeldUnits() {
+            return heldUnits;
+        }
+
+        public void setHeldUnits(long heldUnits) {
+            this.heldUnits = heldUnits;
+        }
+
+        public long getConverted() {
+            return converted;
+        }
+
+        public void setConverted(long converted) {
+            this.converted = converted;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        public void setExpired(long expired) {
+            this.expired = expired;
+        }
+
+        public long getReleased() {
+            return released;
+        }
+
+        public void setReleased(long released) {
+            this.released = released;
+        }
+
+        // Wheel entries still waiting, including stale ones of holds that ended or were renewed
+        public int getScheduledExpiries() {
+            return scheduledExpiries;
+        }
+
+        public void setScheduledExpiries(int scheduledExpiries) {
+            this.scheduledExpiries = scheduledExpiries;
+        }
+    }
+}
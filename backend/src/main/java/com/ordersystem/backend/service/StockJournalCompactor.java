@@ -0,0 +1,192 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.StockSnapshot;
+import com.ordersystem.backend.repository.StockMovementRepository;
+import com.ordersystem.backend.repository.StockSnapshotRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Folds the stock journal into snapshots (see StockMovement, StockSnapshot)
+// Every run writes one snapshot per product that had movements since the last run: its previous
+// snapshot plus those movements. A point-in-time stock lookup then reads one snapshot and the few
+// movements after it, however long the product's history is. Movements are kept (they are the
+// history), only the work of reading them is saved.
+//
+// Movements younger than settle-time are left for the next run: ids are handed out when a movement
+// is inserted, but a slow transaction can commit after a later one, and a movement below the
+// compacted id that wasn't visible yet would never be in a snapshot (same as ReorderEngine).
+//
+// After compacting, it checks that every product's journal stock matches its stock_quantity
+// (stock.journal.drift); a difference means stock was changed without going through StockJournalService.
+@Service
+public class StockJournalCompactor {
+
+    // Movements per compaction transaction, keeps the first run over a long journal from holding
+    // one huge transaction open
+    private static final long BATCH_MOVEMENTS = 200_000;
+
+    // Product ids listed in the log when stock drifted
+    private static final int MAX_LOGGED_DRIFT = 20;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final Duration interval;
+    private final Duration settleTime;
+    private final boolean verify;
+
+    private final ScheduledExecutorService scheduler;
+    private final Timer runTimer;
+
+    // Numbers of the last run, over all shards
+    private final AtomicLong uncompactedMovements = new AtomicLong();
+    private final AtomicLong driftedProducts = new AtomicLong();
+
+    public StockJournalCompactor(
+            MeterRegistry registry,
+            @Value("${app.stock-journal.enabled:true}") boolean enabled,
+            @Value("${app.stock-journal.compaction-interval:5m}") Duration interval,
+            @Value("${app.stock-journal.settle-time:60s}") Duration settleTime,
+            @Value("${app.stock-journal.verify:true}") boolean verify) {
+        this.enabled = enabled;
+        this.interval = interval;
+        this.settleTime = settleTime;
+        this.verify = verify;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.runTimer = Timer.builder("stock.journal.compaction")
+            .description("Duration of stock journal compaction runs")
+            .register(registry);
+        Gauge.builder("stock.journal.uncompacted", uncompactedMovements, AtomicLong::get)
+            .description("Stock movements not folded into a snapshot after the last compaction")
+            .register(registry);
+        Gauge.builder("stock.journal.drift", driftedProducts, AtomicLong::get)
+            .description("Products whose stock differs from their journal stock at the last check")
+            .register(registry);
+    }
+
+    // Start the schedule only once the application is ready, like the reorder engine
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::runSafely, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    // Compact every shard's journal up to settle-time ago
+    // Returns the number of snapshots written
+    // Synchronized: a manual run waits for a scheduled one instead of running alongside it
+    public synchronized long compact() {
+        long start = System.nanoTime();
+        long snapshots = 0;
+        long uncompacted = 0;
+        long drifted = 0;
+        for (String shard : shardDirectory.getShardNames()) {
+            String where = shardDirectory.isSharded() ? " on shard " + shard : "";
+            snapshots += StoreContext.onShard(shard, this::compactShard);
+            long compactedUpTo = StoreContext.onShard(shard, this::compactedUpTo);
+            uncompacted += StoreContext.onShard(shard, () -> stockMovementRepository.countAfter(compactedUpTo));
+            if (verify) {
+                List<Object[]> drift = StoreContext.onShard(shard, () -> stockSnapshotRepository.findDrift(compactedUpTo));
+                if (!drift.isEmpty()) {
+                    StringBuilder products = new StringBuilder();
+                    for (Object[] row : drift.subList(0, Math.min(drift.size(), MAX_LOGGED_DRIFT))) {
+                        products.append(products.isEmpty() ? "" : ", ")
+                            .append(row[0]).append(" (stock ").append(row[1]).append(", journal ").append(row[2]).append(")");
+                    }
+                    System.out.println("WARNING: Stock of " + drift.size() + " products differs from the stock journal" +
+                        where + ": " + products + (drift.size() > MAX_LOGGED_DRIFT ? ", ..." : ""));
+                }
+                drifted += drift.size();
+            }
+        }
+        uncompactedMovements.set(uncompacted);
+        driftedProducts.set(drifted);
+
+        long durationNanos = System.nanoTime() - start;
+        runTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        System.out.println("Stock journal compaction: " + snapshots + " snapshots written, " + uncompacted +
+            " movements left in the tail in " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms");
+        return snapshots;
+    }
+
+    private void runSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // Keep the schedule alive, the next run starts where the snapshots end
+            System.out.println("Stock journal compaction failed: " + e.getMessage());
+        }
+    }
+
+    // Fold the current shard's settled movements into snapshots, in batches
+    private long compactShard() {
+        LocalDateTime before = LocalDateTime.now().minus(settleTime);
+        long snapshots = 0;
+        while (true) {
+            // The snapshots and how far they reach are committed together, a failed run never folds twice
+            Integer written = transactionTemplate.execute(status -> {
+                stockSnapshotRepository.lockForCompaction();
+                long from = compactedUpTo();
+                long to = stockMovementRepository.findLastIdBefore(from, before);
+                if (to == 0) {
+                    return null;
+                }
+                // Ids have gaps (rolled back inserts), so the batch ends at an actual movement
+                Long batchEnd = stockMovementRepository.findIdAfter(from, BATCH_MOVEMENTS);
+                if (batchEnd != null && batchEnd < to) {
+                    to = batchEnd;
+                }
+                return stockSnapshotRepository.compact(from, to, LocalDateTime.now());
+            });
+            if (written == null) {
+                return snapshots;
+            }
+            snapshots += written;
+        }
+    }
+
+    // Last movement id folded into a snapshot
+    private long compactedUpTo() {
+        return stockSnapshotRepository.findFirstByOrderByIdDesc()
+            .map(StockSnapshot::getLastMovementId)
+            .orElse(0L);
+    }
+}
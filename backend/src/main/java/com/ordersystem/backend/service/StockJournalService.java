@@ -0,0 +1,389 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.OrderItem;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.model.StockMovement;
+import com.ordersystem.backend.model.StockMovementReason;
+import com.ordersystem.backend.model.StockSnapshot;
+import com.ordersystem.backend.repository.ProductRepository;
+import com.ordersystem.backend.repository.StockMovementRepository;
+import com.ordersystem.backend.repository.StockSnapshotRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// All stock changes go through here: the product's stock_quantity is changed and the change is
+// appended to the stock journal (stock_movements) in the same transaction, with its reason and order
+// stock_quantity stays the number checkouts lock and validate against (an oversell check needs one
+// row to lock, a sum over a journal can't be locked); the journal adds the history of why stock
+// changed and, with the snapshots of StockJournalCompactor, the stock at any point in time.
+// Journal inserts don't lock anything, so they add no waiting to the hot product rows.
+//
+// Sales and cancellations are recorded per order with one INSERT ... SELECT from order_items,
+// like the committed quantities (AvailabilityService).
+// For a product with stock buckets the change goes to its buckets instead (StockBucketService);
+// the journal doesn't care where the stock is kept. Changes to several products follow the lock
+// order described there: the buckets first (in product id order), the product rows after them.
+@Service
+@Transactional
+public class StockJournalService {
+
+    // Upper limit for one page of movements
+    public static final int MAX_MOVEMENTS = 500;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardDirectory shardDirectory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    // First step of taking stock for an order: take what the buckets of the products that have
+    // them can give (in product id order), before any product row is locked
+    // Returns the units taken per bucketed product; products without buckets aren't in it
+    public Map<Long, Integer> takeFromBuckets(Map<Long, Integer> quantities) {
+        Map<Long, Integer> taken = new TreeMap<>();
+        for (Long productId : new TreeSet<>(stockBucketService.findBucketed(quantities.keySet()))) {
+            taken.put(productId, stockBucketService.take(productId, quantities.get(productId)));
+        }
+        return taken;
+    }
+
+    // The same for one product that is already loaded (its buckets must be locked by this
+    // transaction already if other product rows are, see OrderService.createOrdersInBatch)
+    public int takeFromBuckets(Product product, int quantity) {
+        if (product.getBucketCount() == 0) {
+            return 0;
+        }
+        int taken = stockBucketService.take(product.getId(), quantity);
+        bucketsChanged(product, -taken);
+        return taken;
+    }
+
+    // Second step: load the products and lock the rows whose stock will change (in id order):
+    // the products without buckets, and those whose buckets didn't have enough (bucketed: the
+    // products passed to takeFromBuckets, taken: what they gave). The other bucketed products are
+    // only read, their row isn't touched, so checkouts of a best-seller don't queue on it.
+    // A product switched to or from buckets in the meantime fails with an optimistic locking
+    // conflict, the caller runs again with the new layout.
+    // Unknown products are simply not in the result
+    public Map<Long, Product> loadForStockChange(Map<Long, Integer> quantities, Set<Long> bucketed,
+                                                 Map<Long, Integer> taken) {
+        List<Long> rowIds = new ArrayList<>();
+        List<Long> readIds = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            if (bucketed.contains(entry.getKey()) && taken.getOrDefault(entry.getKey(), 0) >= entry.getValue()) {
+                readIds.add(entry.getKey());
+            } else {
+                rowIds.add(entry.getKey());
+            }
+        }
+        Map<Long, Product> products = new HashMap<>();
+        if (!rowIds.isEmpty()) {
+            for (Product product : productRepository.findAllByIdForUpdate(rowIds)) {
+                products.put(product.getId(), product);
+            }
+        }
+        if (!readIds.isEmpty()) {
+            for (Product product : productRepository.findAllById(readIds)) {
+                products.put(product.getId(), product);
+            }
+        }
+        for (Product product : products.values()) {
+            if ((product.getBucketCount() > 0) != bucketed.contains(product.getId())) {
+                throw new ObjectOptimisticLockingFailureException(Product.class, product.getId());
+            }
+        }
+        return products;
+    }
+
+    // Last step: take the rest of an order line from the (locked) product row
+    // takenFromBuckets: what the buckets already gave for this line
+    // The movement is written by recordSales once the order is saved and has an id
+    public void deduct(Product product, int quantity, int takenFromBuckets) {
+        product.setStockQuantity(product.getStockQuantity() - (quantity - takenFromBuckets));
+    }
+
+    // Undo takeFromBuckets and deduct for an order that isn't saved after all (nothing was
+    // journalled for it); the transaction still holds the locks, so this never waits
+    public void putBack(Product product, int quantity, int takenFromBuckets) {
+        if (takenFromBuckets > 0) {
+            addToBuckets(product, takenFromBuckets);
+        }
+        product.setStockQuantity(product.getStockQuantity() + (quantity - takenFromBuckets));
+    }
+
+    // Journal the items of newly saved orders as sales
+    public void recordSales(List<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            stockMovementRepository.recordForOrders(orderIds, -1, StockMovementReason.SALE.name(), LocalDateTime.now());
+        }
+    }
+
+    // Put back the stock of a cancelled order
+    // Buckets are added to first, in product id order; then the product rows of the products
+    // without buckets are locked and re-read in id order (the order's products were loaded
+    // without a lock, checkouts have changed them since), like checkouts lock them
+    public void restoreForOrder(Order order) {
+        Map<Long, Product> products = new HashMap<>();
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            products.put(item.getProduct().getId(), item.getProduct());
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        List<Long> onRow = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product.getBucketCount() > 0) {
+                addToBuckets(product, entry.getValue());
+            } else {
+                onRow.add(entry.getKey());
+            }
+        }
+        for (Long productId : onRow) {
+            Product product = products.get(productId);
+            productRepository.refreshForUpdate(product);
+            if (product.getBucketCount() > 0) {
+                // Switched to buckets in the meantime, its buckets would be locked after its row
+                throw new ObjectOptimisticLockingFailureException(Product.class, productId);
+            }
+            product.setStockQuantity(product.getStockQuantity() + quantities.get(productId));
+        }
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            System.out.println("Stock restored for product: " + products.get(entry.getKey()).getName() +
+                ", Quantity: " + entry.getValue());
+        }
+        stockMovementRepository.recordForOrders(List.of(order.getId()), 1,
+            StockMovementReason.CANCELLATION.name(), LocalDateTime.now());
+    }
+
+    // Put back the stock of many cancelled orders (one UPDATE, one INSERT)
+    // Bucketed products get it on their product row too, the rebalancer moves it into the buckets
+    // The rows are locked in id order first, a multi-row UPDATE locks them in whatever order its
+    // plan reads them
+    public void restoreForOrders(List<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            productRepository.lockProductsOfOrders(orderIds);
+            productRepository.restoreStockForOrders(orderIds);
+            stockMovementRepository.recordForOrders(orderIds, 1,
+                StockMovementReason.CANCELLATION.name(), LocalDateTime.now());
+        }
+    }
+
+    // Add (or with a negative quantity, take) stock outside of orders
+    // A product with buckets: its buckets first, what they can't take or give goes to the row
+    // The product may have been loaded without a lock (or from the cache), and its version
+    // doesn't cover the stock: the row is locked and re-read before its stock changes, after the
+    // buckets like every other stock change
+    public void change(Product product, int quantity, StockMovementReason reason) {
+        int fromBuckets = 0;
+        if (product.getBucketCount() > 0 && quantity > 0) {
+            fromBuckets = -stockBucketService.add(product.getId(), product.getBucketCount(), quantity);
+        } else if (product.getBucketCount() > 0) {
+            fromBuckets = stockBucketService.take(product.getId(), -quantity);
+        }
+        int rowChange = quantity + fromBuckets;
+        if (rowChange != 0) {
+            // Also re-reads the bucket total, which includes this transaction's change
+            productRepository.refreshForUpdate(product);
+            int onRow = product.getStockQuantity() - product.getBucketQuantity();
+            if (onRow + rowChange < 0) {
+                throw new RuntimeException("Insufficient stock for product: " + product.getName() +
+                    ". Available: " + (onRow + fromBuckets) + ", Requested: " + -quantity);
+            }
+            product.setStockQuantity(product.getStockQuantity() + rowChange);
+        } else {
+            bucketsChanged(product, -fromBuckets);
+        }
+        productRepository.save(product);
+        stockMovementRepository.record(product.getId(), quantity, reason.name(), LocalDateTime.now());
+    }
+
+    // Spread units over the product's buckets; units whose bucket was removed meanwhile go on the row
+    private void addToBuckets(Product product, int quantity) {
+        int added = stockBucketService.add(product.getId(), product.getBucketCount(), quantity);
+        bucketsChanged(product, added);
+        product.setStockQuantity(product.getStockQuantity() + (quantity - added));
+    }
+
+    // The product's buckets changed by this much: keep the entity's bucket total in step for the
+    // rest of the transaction (its row part stays as it is)
+    private static void bucketsChanged(Product product, int bucketChange) {
+        product.setBucketQuantity(product.getBucketQuantity() + bucketChange);
+    }
+
+    // A new product was saved with its starting stock
+    public void recordInitial(Product product) {
+        if (product.getStockQuantity() != 0) {
+            stockMovementRepository.record(product.getId(), product.getStockQuantity(),
+                StockMovementReason.INITIAL.name(), LocalDateTime.now());
+        }
+    }
+
+    // Stock set by statements that bypass Hibernate (product import): one movement per product id
+    // Must run in the transaction that changed the stock
+    public void recordChanges(Map<Long, Integer> changes, StockMovementReason reason) {
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+            if (change.getValue() != 0) {
+                rows.add(new Object[] {change.getKey(), change.getValue(), reason.name(), now});
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO stock_movements (product_id, quantity_change, reason, created_at) " +
+                "VALUES (?, ?, ?, ?)", rows);
+        }
+    }
+
+    // A product's stock according to the journal, at a point in time (null = now): its latest
+    // snapshot before that time plus the movements after the snapshot
+    // Empty if the product doesn't exist; fails for a time before the journal was started
+    @Transactional(readOnly = true)
+    public Optional<JournalStock> getStockAt(Long productId, LocalDateTime at) {
+        Optional<Product> product = productRepository.findById(productId);
+        if (product.isEmpty()) {
+            return Optional.empty();
+        }
+        LocalDateTime time = at != null ? at : LocalDateTime.now();
+
+        Optional<StockSnapshot> snapshot = stockSnapshotRepository
+            .findFirstByProductIdAndCoversUntilLessThanEqualOrderByCoversUntilDescIdDesc(productId, time);
+        // No snapshot that early: the product's history starts with its first movement, unless
+        // it already existed when the journal was started
+        if (snapshot.isEmpty() && stockSnapshotRepository.existsByProductIdAndOpeningTrue(productId)) {
+            throw new IllegalArgumentException("No stock history for product " + productId + " before " +
+                "the stock journal was started");
+        }
+        long afterId = snapshot.map(StockSnapshot::getLastMovementId).orElse(0L);
+        long quantity = snapshot.map(StockSnapshot::getQuantity).orElse(0)
+            + stockMovementRepository.sumAfter(productId, afterId, time);
+
+        JournalStock stock = new JournalStock();
+        stock.setProductId(productId);
+        stock.setAt(time);
+        stock.setQuantity(quantity);
+        stock.setSnapshotCoversUntil(snapshot.map(StockSnapshot::getCoversUntil).orElse(null));
+        stock.setCurrentStockQuantity(product.get().getStockQuantity());
+        return Optional.of(stock);
+    }
+
+    // A product's movements, newest first; the next page starts before the last id returned
+    @Transactional(readOnly = true)
+    public List<StockMovement> getMovements(Long productId, int limit, Long beforeId) {
+        if (limit < 1 || limit > MAX_MOVEMENTS) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_MOVEMENTS);
+        }
+        return stockMovementRepository.findByProductIdAndIdLessThanOrderByIdDesc(productId,
+            beforeId != null ? beforeId : Long.MAX_VALUE, PageRequest.of(0, limit));
+    }
+
+    // At startup: start the journal with an opening snapshot of every product's current stock
+    // when there are no snapshots yet (first start with the journal, or after the load test
+    // seeder cleared it), so the journal stock matches stock_quantity from the first movement on
+    // Done on every shard, in one transaction per shard (a transaction is bound to one shard)
+    @EventListener(ApplicationStartedEvent.class)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void initialize() {
+        for (String shard : shardDirectory.getShardNames()) {
+            StoreContext.onShard(shard, () -> transactionTemplate.execute(status -> {
+                stockSnapshotRepository.lockForCompaction();
+                if (stockSnapshotRepository.count() == 0) {
+                    int products = stockSnapshotRepository.createOpening(stockMovementRepository.findLastId(),
+                        LocalDateTime.now());
+                    if (products > 0) {
+                        System.out.println("Stock journal started with opening stock of " + products + " products" +
+                            (shardDirectory.isSharded() ? " on shard " + shard : ""));
+                    }
+                }
+                return null;
+            }));
+        }
+    }
+
+    // Inner class for a product's stock according to the journal
+    public static class JournalStock {
+        private Long productId;
+        private LocalDateTime at;
+        // Snapshot plus later movements
+        private long quantity;
+        // The snapshot used (null = computed from the product's first movement)
+        private LocalDateTime snapshotCoversUntil;
+        // The product's stock_quantity right now, for comparison
+        private int currentStockQuantity;
+
+        public Long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(Long productId) {
+            this.productId = productId;
+        }
+
+        public LocalDateTime getAt() {
+            return at;
+        }
+
+        public void setAt(LocalDateTime at) {
+            this.at = at;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(long quantity) {
+            this.quantity = quantity;
+        }
+
+        public LocalDateTime getSnapshotCoversUntil() {
+            return snapshotCoversUntil;
+        }
+
+        public void setSnapshotCoversUntil(LocalDateTime snapshotCoversUntil) {
+            this.snapshotCoversUntil = snapshotCoversUntil;
+        }
+
+        public int getCurrentStockQuantity() {
+            return currentStockQuantity;
+        }
+
+        public void setCurrentStockQuantity(int currentStockQuantity) {
+            this.currentStockQuantity = currentStockQuantity;
+        }
+    }
+}
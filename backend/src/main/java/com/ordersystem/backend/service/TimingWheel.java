@@ -0,0 +1,124 @@
+package com.ordersystem.backend.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical timing wheel: expires any number of deadlines with one thread and no timer per entry
+// Works like a clock with several hands. Level 0 has "slots" buckets of one tick each, every
+// higher level has "slots" buckets as wide as a full turn of the level below. An entry goes into
+// the finest level that reaches its deadline. Whenever a coarser bucket comes round its entries
+// are spread down into the finer levels ("cascading"), so level 0's current bucket always holds
+// exactly the entries that are due. Adding an entry is O(1) and each entry is moved at most once
+// per level, however many entries there are.
+//
+// The owner calls advance() every tick (from a single thread) and gets the due items back.
+// Entries never fire early (deadlines are rounded up to whole ticks) and at most a tick late.
+// There is no cancel: callers ignore items that are no longer relevant when they come due.
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int slotBits;
+    private final long mask;
+    private final int levels;
+    private final List<List<Entry<T>>> buckets = new ArrayList<>();
+
+    // Entries scheduled for a time that has already passed, handed out by the next advance()
+    private List<Entry<T>> overdue = new ArrayList<>();
+
+    private long currentTick;
+    private int size;
+
+    // slots must be a power of two; the wheel reaches tick * slots^levels ahead
+    public TimingWheel(Duration tick, int slots, int levels, long startMillis) {
+        if (tick.toMillis() < 1 || slots < 2 || Integer.bitCount(slots) != 1 || levels < 1) {
+            throw new IllegalArgumentException("Timing wheel needs a tick of at least 1ms, " +
+                "a power of two (at least 2) slots and at least one level");
+        }
+        this.tickMillis = tick.toMillis();
+        this.slotBits = Integer.numberOfTrailingZeros(slots);
+        this.mask = slots - 1;
+        this.levels = levels;
+        if (slotBits * levels > 62) {
+            throw new IllegalArgumentException("Timing wheel range too large: " + slots + "^" + levels + " ticks");
+        }
+        for (int i = 0; i < slots * levels; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    // How far ahead an entry can be scheduled
+    public Duration getRange() {
+        return Duration.ofMillis(((1L << (slotBits * levels)) - 1) * tickMillis);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void schedule(T item, long deadlineMillis) {
+        long deadlineTick = Math.ceilDiv(deadlineMillis, tickMillis);
+        if (deadlineTick - currentTick >= 1L << (slotBits * levels)) {
+            throw new IllegalArgumentException("Deadline is further ahead than the timing wheel's range of " +
+                getRange());
+        }
+        place(new Entry<>(item, deadlineTick), overdue);
+        size++;
+    }
+
+    // Move the wheel up to nowMillis and return everything that came due, oldest tick first
+    public synchronized List<T> advance(long nowMillis) {
+        List<Entry<T>> due = overdue;
+        overdue = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Coarse levels first: their entries may land in level 0's bucket for this very tick
+            for (int level = levels - 1; level >= 1; level--) {
+                if ((currentTick & ((1L << (slotBits * level)) - 1)) == 0) {
+                    for (Entry<T> entry : take(level, slotOf(currentTick, level))) {
+                        place(entry, due);
+                    }
+                }
+            }
+            due.addAll(take(0, slotOf(currentTick, 0)));
+        }
+        size -= due.size();
+        List<T> items = new ArrayList<>(due.size());
+        for (Entry<T> entry : due) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    // The finest level whose span covers the remaining delay
+    private void place(Entry<T> entry, List<Entry<T>> due) {
+        long delay = entry.deadlineTick - currentTick;
+        if (delay <= 0) {
+            due.add(entry);
+            return;
+        }
+        int level = 0;
+        while (delay >= 1L << (slotBits * (level + 1))) {
+            level++;
+        }
+        buckets.get(level * (int) (mask + 1) + slotOf(entry.deadlineTick, level)).add(entry);
+    }
+
+    private int slotOf(long tick, int level) {
+        return (int) ((tick >>> (slotBits * level)) & mask);
+    }
+
+    private List<Entry<T>> take(int level, int slot) {
+        int index = level * (int) (mask + 1) + slot;
+        List<Entry<T>> entries = buckets.get(index);
+        if (entries.isEmpty()) {
+            return entries;
+        }
+        buckets.set(index, new ArrayList<>());
+        return entries;
+    }
+
+    private record Entry<T>(T item, long deadlineTick) {}
+}
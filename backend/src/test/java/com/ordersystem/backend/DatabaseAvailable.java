@@ -0,0 +1,38 @@
+package com.ordersystem.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+// Condition for @DatabaseTest: can we log in to the database from application.properties?
+public final class DatabaseAvailable {
+
+    private DatabaseAvailable() {}
+
+    public static boolean check() {
+        return check(null);
+    }
+
+    // The same for another database on the server (e.g. a second shard), with the same login
+    public static boolean check(String url) {
+        Properties properties = new Properties();
+        try (InputStream in = DatabaseAvailable.class.getResourceAsStream("/application.properties")) {
+            properties.load(in);
+        } catch (IOException e) {
+            return false;
+        }
+        DriverManager.setLoginTimeout(2);
+        try (Connection connection = DriverManager.getConnection(
+                url != null ? url : properties.getProperty("spring.datasource.url"),
+                properties.getProperty("spring.datasource.username"),
+                properties.getProperty("spring.datasource.password"))) {
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Database not reachable, skipping database tests: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.ordersystem.backend;
+
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Tests that run the application against the PostgreSQL database from application.properties
+// Most of the stock and import code is native PostgreSQL SQL (ON CONFLICT, FOR UPDATE SKIP LOCKED,
+// FILTER), so there is no in-memory database to run it on. Without a reachable database the tests
+// are skipped instead of failing the build (see DatabaseAvailable).
+// Tests share the database with development data: they create their own products (with unique
+// names) and delete them again.
+// The background jobs are turned off so they don't touch the test's products halfway through.
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@SpringBootTest(properties = {
+    "spring.jpa.show-sql=false",
+    "app.reorder.enabled=false",
+    "app.stock-journal.compaction-interval=1h",
+    "app.profiling.event-stream.enabled=false",
+    "app.stock-buckets.enabled=true",
+    "app.stock-buckets.rebalance-interval=1h"
+})
+@EnabledIf("com.ordersystem.backend.DatabaseAvailable#check")
+public @interface DatabaseTest {
+}
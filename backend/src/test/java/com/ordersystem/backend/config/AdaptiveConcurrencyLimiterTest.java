@@ -0,0 +1,75 @@
+package com.ordersystem.backend.config;
+
+import com.ordersystem.backend.config.AdaptiveConcurrencyLimiter.Permit;
+import com.ordersystem.backend.config.AdaptiveConcurrencyLimiter.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void unsampledRequestsDontChangeTheLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        // Busy enough that every sample would count (more than half the limit in flight)
+        List<Permit> permits = acquire(limiter, 8, false);
+        Thread.sleep(50);
+        permits.forEach(limiter::release);
+
+        assertEquals(10.0, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void sampledRequestsChangeTheLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        List<Permit> permits = acquire(limiter, 8, true);
+        Thread.sleep(50);
+        permits.forEach(limiter::release);
+
+        assertNotEquals(10.0, limiter.getLimit());
+    }
+
+    @Test
+    void unsampledRequestsStillCountAgainstTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        acquire(limiter, 5, false);
+
+        // Best effort may use half of the limit of 10
+        assertNull(limiter.tryAcquire(Priority.BEST_EFFORT));
+    }
+
+    @Test
+    void exportsAreStreaming() {
+        assertTrue(ConcurrencyLimitFilter.isStreaming(new MockHttpServletRequest("GET", "/api/orders/export")));
+        assertTrue(ConcurrencyLimitFilter.isStreaming(new MockHttpServletRequest("GET", "/api/orders/export/items")));
+        assertFalse(ConcurrencyLimitFilter.isStreaming(new MockHttpServletRequest("GET", "/api/orders")));
+        assertEquals(Priority.BEST_EFFORT,
+            ConcurrencyLimitFilter.classify(new MockHttpServletRequest("GET", "/api/orders/export")));
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter() {
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setInitialLimit(10);
+        properties.setMinLimit(1);
+        properties.setMaxLimit(100);
+        return new AdaptiveConcurrencyLimiter(properties, new SimpleMeterRegistry());
+    }
+
+    private static List<Permit> acquire(AdaptiveConcurrencyLimiter limiter, int count, boolean sampled) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(limiter.tryAcquire(Priority.CRITICAL, sampled));
+        }
+        return permits;
+    }
+}
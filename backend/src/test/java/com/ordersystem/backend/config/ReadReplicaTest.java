@@ -0,0 +1,175 @@
+package com.ordersystem.backend.config;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.OrderExportService;
+import com.ordersystem.backend.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Read replica routing with three pools on the same database, told apart by their
+// application_name: read-only transactions use the replica, a write after a read in the
+// same request still goes to the primary, and exports use the reporting replica
+@DatabaseTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:postgresql://localhost:5432/order_system?ApplicationName=" + ReadReplicaTest.PRIMARY,
+    "app.datasource.replicas.enabled=true",
+    "app.datasource.replicas.check-interval=100ms",
+    "app.datasource.replicas.nodes[0].url=jdbc:postgresql://localhost:5432/order_system?ApplicationName=" +
+        ReadReplicaTest.REPLICA,
+    "app.datasource.replicas.nodes[1].url=jdbc:postgresql://localhost:5432/order_system?ApplicationName=" +
+        ReadReplicaTest.REPORTING,
+    "app.datasource.replicas.nodes[1].reporting=true"
+})
+class ReadReplicaTest {
+
+    static final String PRIMARY = "order-system-primary";
+    static final String REPLICA = "order-system-replica";
+    static final String REPORTING = "order-system-reporting";
+
+    private static final String CONNECTION_NAME = "SELECT current_setting('application_name')";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Product product;
+
+    @BeforeEach
+    void createProduct() throws InterruptedException {
+        product = productService.createProduct(new Product("Read replica test " + UUID.randomUUID(), null,
+            new BigDecimal("6.00"), 10, 0));
+        // The replicas join the rotation after their first lag check
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!REPLICA.equals(readOnly(transactionManager).execute(status ->
+                jdbcTemplate.queryForObject(CONNECTION_NAME, String.class))) ||
+               !REPORTING.equals(ReadRouting.reporting(() -> readOnly(transactionManager).execute(status ->
+                jdbcTemplate.queryForObject(CONNECTION_NAME, String.class))))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Replicas not in rotation");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void writeAfterReadInOneRequestGoesToThePrimary() throws Exception {
+        mockMvc.perform(post("/test/read-then-restock/" + product.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.readOn").value(REPLICA))
+            .andExpect(jsonPath("$.writeOn").value(PRIMARY))
+            .andExpect(jsonPath("$.stock").value(15));
+        assertEquals(15, productService.getProductById(product.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void exportsRunOnTheReportingReplica() throws Exception {
+        // Asked from inside the export (when it writes its header): a JdbcTemplate call on the
+        // same thread joins the export's transaction, so it shows the export's connection
+        String[] exportedOn = new String[1];
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (exportedOn[0] == null) {
+                    exportedOn[0] = jdbcTemplate.queryForObject(CONNECTION_NAME, String.class);
+                }
+            }
+        };
+        orderExportService.exportOrders(new OrderExportService.ExportFilter(null, null, null),
+            OrderExportService.ExportFormat.CSV, out);
+        assertEquals(REPORTING, exportedOn[0]);
+    }
+
+    @Test
+    void orderReadsWorkWithoutOpenInView() throws Exception {
+        mockMvc.perform(get("/api/orders/today"))
+            .andExpect(status().isOk());
+    }
+
+    private static TransactionTemplate readOnly(PlatformTransactionManager transactionManager) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    @TestConfiguration
+    static class Endpoints {
+
+        @Bean
+        ReadThenWriteController readThenWriteController(ProductService productService,
+                                                        PlatformTransactionManager transactionManager,
+                                                        JdbcTemplate jdbcTemplate) {
+            return new ReadThenWriteController(productService, transactionManager, jdbcTemplate);
+        }
+    }
+
+    // One request with a read-only transaction followed by writing ones
+    @RestController
+    static class ReadThenWriteController {
+
+        private final ProductService productService;
+        private final PlatformTransactionManager transactionManager;
+        private final JdbcTemplate jdbcTemplate;
+
+        ReadThenWriteController(ProductService productService, PlatformTransactionManager transactionManager,
+                                JdbcTemplate jdbcTemplate) {
+            this.productService = productService;
+            this.transactionManager = transactionManager;
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @PostMapping("/test/read-then-restock/{id}")
+        Map<String, Object> readThenRestock(@PathVariable Long id) {
+            String readOn = readOnly(transactionManager).execute(status -> {
+                productService.getProductById(id).orElseThrow();
+                return jdbcTemplate.queryForObject(CONNECTION_NAME, String.class);
+            });
+            Product restocked = productService.restockProduct(id, 5);
+            String writeOn = new TransactionTemplate(transactionManager).execute(status ->
+                jdbcTemplate.queryForObject(CONNECTION_NAME, String.class));
+            return Map.of("readOn", readOn, "writeOn", writeOn, "stock", restocked.getStockQuantity());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ordersystem.backend.config;
+
+import com.ordersystem.backend.DatabaseAvailable;
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.OrderService;
+import com.ordersystem.backend.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Store sharding with a second local database (order_system_north, owned by the application's
+// database user) as the shard of one store: that store's products and orders are written there
+// and nowhere else, and top products are merged over both databases
+// Skipped when the second database can't be reached.
+@DatabaseTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "app.datasource.shards.enabled=true",
+    "app.datasource.shards.nodes[0].name=north",
+    "app.datasource.shards.nodes[0].url=" + ShardingTest.NORTH_URL,
+    "app.datasource.shards.nodes[0].stores=" + ShardingTest.NORTH_STORE
+})
+@EnabledIf("shardDatabaseAvailable")
+class ShardingTest {
+
+    static final String NORTH_URL = "jdbc:postgresql://localhost:5432/order_system_north";
+    static final String NORTH_STORE = "sharding-test-north";
+
+    // Far more than any product of the development data has sold, so the test product is the top seller
+    private static final int SOLD_PER_SHARD = 500_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    private final String name = "Sharding test " + UUID.randomUUID();
+    private final String email = "sharding-" + UUID.randomUUID() + "@example.com";
+    private final List<String> stores = new ArrayList<>();
+
+    static boolean shardDatabaseAvailable() {
+        return DatabaseAvailable.check() && DatabaseAvailable.check(NORTH_URL);
+    }
+
+    @AfterEach
+    void deleteProducts() {
+        for (String store : stores) {
+            // The JdbcTemplate runs on the store's shard as well
+            StoreContext.forStore(store, () -> {
+                jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN " +
+                    "(SELECT id FROM orders WHERE customer_email = ?)", email);
+                jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+                jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+                for (Long id : jdbcTemplate.queryForList("SELECT id FROM products WHERE name = ?", Long.class, name)) {
+                    jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", id);
+                    jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+                    productService.deleteProduct(id);
+                }
+                return null;
+            });
+        }
+    }
+
+    @Test
+    void aStoresDataIsWrittenToItsShard() throws Exception {
+        Order order = placeOrder(NORTH_STORE, 2);
+
+        JdbcTemplate north = new JdbcTemplate(new DriverManagerDataSource(NORTH_URL, username, password));
+        assertEquals(1, north.queryForObject("SELECT COUNT(*) FROM products WHERE name = ? AND store_id = ?",
+            Integer.class, name, NORTH_STORE));
+        assertEquals(1, north.queryForObject("SELECT COUNT(*) FROM orders WHERE id = ? AND customer_email = ?",
+            Integer.class, order.getId(), email));
+        // Outside a store's context the JdbcTemplate reads the default database
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE name = ?",
+            Integer.class, name));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders WHERE customer_email = ?",
+            Integer.class, email));
+
+        mockMvc.perform(get("/api/orders/" + order.getId()).header(StoreContext.HEADER, NORTH_STORE))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.orderItems[0].product.name").value(name));
+    }
+
+    @Test
+    void topProductsAreMergedOverShards() throws Exception {
+        placeOrder(StoreContext.DEFAULT_STORE, SOLD_PER_SHARD);
+        placeOrder(NORTH_STORE, SOLD_PER_SHARD);
+
+        mockMvc.perform(get("/api/orders/top-products?limit=1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].productName").value(name))
+            .andExpect(jsonPath("$[0].totalSold").value(2 * SOLD_PER_SHARD));
+    }
+
+    // A product with the test's name in the store, and an order for some of it
+    private Order placeOrder(String store, int quantity) {
+        stores.add(store);
+        return StoreContext.forStore(store, () -> {
+            Product product = productService.createProduct(new Product(name, null, new BigDecimal("1.00"),
+                SOLD_PER_SHARD, 0));
+            return orderService.createOrder(new OrderRequest("Sharding test", email,
+                List.of(new OrderItemRequest(product.getId(), quantity))));
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// With app.single-instance=false (and the second-level cache off, as application.properties
+// says to do) nothing is answered from state that only follows this instance's own writes
+@DatabaseTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "app.single-instance=false",
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+    "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+class MultipleInstancesTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Multiple instances test " + UUID.randomUUID(), null,
+            new BigDecimal("3.00"), 10, 0));
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void productResponsesHaveNoETag() throws Exception {
+        mockMvc.perform(get("/api/products/" + product.getId()))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        mockMvc.perform(get("/api/products").header(HttpHeaders.IF_NONE_MATCH, "*"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void searchQueriesTheDatabase() throws Exception {
+        mockMvc.perform(get("/api/products/search").param("name", product.getName()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(product.getId()));
+    }
+
+    @Test
+    void holdsAreRejected() throws Exception {
+        mockMvc.perform(post("/api/holds")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"items\": [{\"productId\": " + product.getId() + ", \"quantity\": 1}]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value(containsString("app.single-instance")));
+    }
+}
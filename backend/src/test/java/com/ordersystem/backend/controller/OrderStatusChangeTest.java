@@ -0,0 +1,112 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.OrderService;
+import com.ordersystem.backend.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Single-order status changes follow the same transition rules as the bulk endpoint
+@DatabaseTest
+@AutoConfigureMockMvc
+class OrderStatusChangeTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String email = "status-change-" + UUID.randomUUID() + "@example.com";
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Status change test " + UUID.randomUUID(), null,
+            new BigDecimal("5.00"), 10, 0));
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", product.getId());
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void completedOrderCantBeReopened() throws Exception {
+        Order order = placeOrder();
+        orderService.completeOrder(order.getId());
+
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\": \"PENDING\"}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.error").value("Order " + order.getId() + " can't change from COMPLETED to PENDING"));
+    }
+
+    @Test
+    void cancelledOrderIsNotCancelledTwice() throws Exception {
+        Order order = placeOrder();
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/cancel"))
+            .andExpect(status().isOk());
+        assertEquals(10, stock());
+
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/cancel"))
+            .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\": \"CANCELLED\"}"))
+            .andExpect(status().isBadRequest());
+        // The stock was restored once
+        assertEquals(10, stock());
+    }
+
+    @Test
+    void completedOrderCantBeCancelled() throws Exception {
+        Order order = placeOrder();
+        orderService.completeOrder(order.getId());
+
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/cancel"))
+            .andExpect(status().isBadRequest());
+        assertEquals(7, stock());
+    }
+
+    private Order placeOrder() {
+        return orderService.createOrder(new OrderRequest("Status change test", email,
+            List.of(new OrderItemRequest(product.getId(), 3))));
+    }
+
+    private int stock() {
+        return productService.getProductById(product.getId()).orElseThrow().getStockQuantity();
+    }
+}
@@ -0,0 +1,155 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.config.SqlBudget;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.OrderService;
+import com.ordersystem.backend.service.ProductCache;
+import com.ordersystem.backend.service.ProductService;
+import com.ordersystem.backend.service.StockBucketService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// Every endpoint with a @SqlBudget stays within it, with app.sql-inspector.fail-on-budget-exceeded
+// on (an endpoint over its budget answers 500)
+// The second-level cache is emptied before each call, so products are read from the database
+// (GET /api/products/{id} as well, which goes through the cache and HotReadCoalescer), and the
+// store has a product with stock buckets: the worst case the budgets are for.
+@DatabaseTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "app.sql-inspector.fail-on-budget-exceeded=true")
+class SqlBudgetTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String store = "sql-budget-" + UUID.randomUUID();
+    private final String email = "sql-budget-" + UUID.randomUUID() + "@example.com";
+    private final List<Long> productIds = new ArrayList<>();
+    private Order order;
+
+    @BeforeEach
+    void createProducts() {
+        StoreContext.forStore(store, () -> {
+            Product plain = productService.createProduct(new Product("SQL budget test " + UUID.randomUUID(), null,
+                new BigDecimal("2.00"), 3, 5));
+            Product bucketed = productService.createProduct(new Product("SQL budget test " + UUID.randomUUID(), null,
+                new BigDecimal("3.00"), 40, 50));
+            productIds.add(plain.getId());
+            productIds.add(bucketed.getId());
+            stockBucketService.setBuckets(bucketed.getId(), 4);
+            order = orderService.createOrder(new OrderRequest("SQL budget test", email, List.of(
+                new OrderItemRequest(plain.getId(), 1), new OrderItemRequest(bucketed.getId(), 2))));
+            return null;
+        });
+    }
+
+    @AfterEach
+    void deleteProducts() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id = ?", order.getId());
+        jdbcTemplate.update("DELETE FROM orders WHERE id = ?", order.getId());
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        for (Long id : productIds) {
+            jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", id);
+            jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+            StoreContext.forStore(store, () -> {
+                productService.deleteProduct(id);
+                return null;
+            });
+        }
+    }
+
+    @Test
+    void endpointsStayWithinTheirBudget() throws Exception {
+        Long plainId = productIds.get(0);
+        Long bucketedId = productIds.get(1);
+        List<String> urls = new ArrayList<>();
+        urls.add("/api/products");
+        for (Long id : productIds) {
+            urls.add("/api/products/" + id);
+            urls.add("/api/products/" + id + "/availability");
+            urls.add("/api/products/" + id + "/stock");
+            urls.add("/api/products/" + id + "/stock?at=2020-01-01T00:00:00");
+            urls.add("/api/products/" + id + "/movements");
+            urls.add("/api/products/" + id + "/stock-buckets");
+        }
+        urls.add("/api/products/availability?ids=" + plainId + "," + bucketedId);
+        urls.add("/api/products/low-stock");
+        urls.add("/api/products/statistics");
+        urls.add("/api/orders/" + order.getId());
+        urls.add("/api/orders/statistics");
+        urls.add("/api/orders/top-products");
+
+        List<String> failures = new ArrayList<>();
+        TreeSet<String> covered = new TreeSet<>();
+        for (String url : urls) {
+            productCache.evictAll();
+            MvcResult result = mockMvc.perform(get(url).header(StoreContext.HEADER, store)).andReturn();
+            if (result.getResponse().getStatus() != 200) {
+                failures.add(url + ": " + result.getResponse().getContentAsString());
+            }
+            covered.add(pattern(url));
+        }
+        assertEquals(List.of(), failures);
+
+        // Every @SqlBudget GET endpoint was called
+        assertEquals(budgetedEndpoints(), covered);
+    }
+
+    // "/api/products/12/stock?at=..." -> "/api/products/{}/stock"
+    private static String pattern(String url) {
+        return url.replaceAll("\\?.*", "").replaceAll("/\\d+", "/{}");
+    }
+
+    private static TreeSet<String> budgetedEndpoints() {
+        TreeSet<String> endpoints = new TreeSet<>();
+        for (Class<?> controller : List.of(ProductController.class, OrderController.class)) {
+            String base = controller.getAnnotation(org.springframework.web.bind.annotation.RequestMapping.class).value()[0];
+            for (Method method : controller.getDeclaredMethods()) {
+                GetMapping mapping = method.getAnnotation(GetMapping.class);
+                if (method.isAnnotationPresent(SqlBudget.class) && mapping != null) {
+                    String path = mapping.value().length == 0 ? "" : mapping.value()[0];
+                    endpoints.add((base + path).replaceAll("\\{[^}]*}", "{}"));
+                }
+            }
+        }
+        return endpoints;
+    }
+}
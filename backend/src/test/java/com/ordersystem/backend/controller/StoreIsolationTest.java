@@ -0,0 +1,239 @@
+package com.ordersystem.backend.controller;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.OrderStatus;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.service.OrderExportService;
+import com.ordersystem.backend.service.OrderService;
+import com.ordersystem.backend.service.ProductImportService;
+import com.ordersystem.backend.service.ProductService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Stores that share a shard (all of them, while sharding is off) don't see or change each other's
+// orders and products, can't order each other's products, and may use the same product names
+@DatabaseTest
+@AutoConfigureMockMvc
+class StoreIsolationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String storeA = "isolation-a-" + UUID.randomUUID();
+    private final String storeB = "isolation-b-" + UUID.randomUUID();
+    private final String email = "store-isolation-" + UUID.randomUUID() + "@example.com";
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = StoreContext.forStore(storeA, () -> productService.createProduct(
+            new Product("Store isolation test " + UUID.randomUUID(), "Store A's", new BigDecimal("5.00"), 10, 0)));
+    }
+
+    @AfterEach
+    void deleteProducts() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        // Store B's copy, if the test imported one
+        for (Long id : jdbcTemplate.queryForList("SELECT id FROM products WHERE name = ?", Long.class, product.getName())) {
+            jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", id);
+            jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+            String store = jdbcTemplate.queryForObject("SELECT store_id FROM products WHERE id = ?", String.class, id);
+            StoreContext.forStore(store, () -> {
+                productService.deleteProduct(id);
+                return null;
+            });
+        }
+    }
+
+    @Test
+    void otherStoresDontSeeTheOrder() throws Exception {
+        Order order = placeOrder();
+
+        mockMvc.perform(get("/api/orders/" + order.getId()).header(StoreContext.HEADER, storeB))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/orders/" + order.getId()).header(StoreContext.HEADER, storeA))
+            .andExpect(status().isOk());
+        mockMvc.perform(get("/api/orders").header(StoreContext.HEADER, storeB))
+            .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/api/orders/status/PENDING").header(StoreContext.HEADER, storeB))
+            .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/api/orders/today").header(StoreContext.HEADER, storeA))
+            .andExpect(jsonPath("$.length()").value(1))
+            .andExpect(jsonPath("$[0].id").value(order.getId()));
+
+        assertFalse(export(storeB).contains(email));
+        assertTrue(export(storeA).contains(email));
+    }
+
+    @Test
+    void otherStoresCantChangeTheOrder() throws Exception {
+        Order order = placeOrder();
+
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/cancel").header(StoreContext.HEADER, storeB))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(put("/api/orders/status")
+                .header(StoreContext.HEADER, storeB)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"orderIds\": [" + order.getId() + "], \"status\": \"COMPLETED\"}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.skippedOrderIds[0]").value(order.getId()));
+        assertEquals(OrderStatus.PENDING, StoreContext.forStore(storeA,
+            () -> orderService.getOrderById(order.getId()).orElseThrow().getStatus()));
+        assertEquals(7, stock());
+
+        mockMvc.perform(put("/api/orders/" + order.getId() + "/cancel").header(StoreContext.HEADER, storeA))
+            .andExpect(status().isOk());
+        assertEquals(10, stock());
+    }
+
+    @Test
+    void otherStoresDontSeeTheProduct() throws Exception {
+        mockMvc.perform(get("/api/products/" + product.getId()).header(StoreContext.HEADER, storeB))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/products/" + product.getId()).header(StoreContext.HEADER, storeA))
+            .andExpect(status().isOk());
+        mockMvc.perform(get("/api/products").header(StoreContext.HEADER, storeB))
+            .andExpect(jsonPath("$[?(@.id == " + product.getId() + ")]").isEmpty());
+        mockMvc.perform(get("/api/products/in-stock").header(StoreContext.HEADER, storeB))
+            .andExpect(jsonPath("$[?(@.id == " + product.getId() + ")]").isEmpty());
+        mockMvc.perform(get("/api/products/search").param("name", product.getName()).header(StoreContext.HEADER, storeB))
+            .andExpect(jsonPath("$.length()").value(0));
+        mockMvc.perform(get("/api/products/search").param("name", product.getName()).header(StoreContext.HEADER, storeA))
+            .andExpect(jsonPath("$[0].id").value(product.getId()));
+    }
+
+    @Test
+    void otherStoresCantChangeTheProduct() throws Exception {
+        mockMvc.perform(put("/api/products/" + product.getId())
+                .header(StoreContext.HEADER, storeB)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"price\": 1.00}"))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(put("/api/products/" + product.getId() + "/restock").param("quantity", "5")
+                .header(StoreContext.HEADER, storeB))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(delete("/api/products/" + product.getId()).header(StoreContext.HEADER, storeB))
+            .andExpect(status().isNotFound());
+
+        Product stored = storedProduct();
+        assertEquals(0, new BigDecimal("5.00").compareTo(stored.getPrice()));
+        assertEquals(10, stored.getStockQuantity());
+    }
+
+    @Test
+    void otherStoresCantOrderTheProduct() {
+        OrderRequest request = new OrderRequest("Store isolation test", email,
+            List.of(new OrderItemRequest(product.getId(), 3)));
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> StoreContext.forStore(storeB, () -> orderService.createOrder(request)));
+        assertEquals("Product not found with id: " + product.getId(), e.getMessage());
+
+        List<OrderService.BatchOrderOutcome> outcomes = StoreContext.forStore(storeB,
+            () -> orderService.createOrdersInBatch(List.of(request)));
+        assertFalse(outcomes.get(0).isSuccess());
+        assertEquals("Product not found with id: " + product.getId(), outcomes.get(0).getError());
+        assertEquals(10, stock());
+    }
+
+    @Test
+    void storesImportTheirOwnProductOfTheSameName() {
+        String csv = "name,description,price,stockQuantity,minStockLevel\n" +
+            product.getName() + ",Store B's,9.00,99,0\n";
+        ProductImportService.ImportResult result = StoreContext.forStore(storeB, () -> importCsv(csv));
+
+        // A new product of store B, store A's is left alone
+        assertEquals(1, result.getInserted());
+        assertEquals(0, result.getFailed());
+        Product stored = storedProduct();
+        assertEquals("Store A's", stored.getDescription());
+        assertEquals(0, new BigDecimal("5.00").compareTo(stored.getPrice()));
+        assertEquals(10, stored.getStockQuantity());
+
+        // Importing it again updates store B's product
+        result = StoreContext.forStore(storeB, () -> importCsv(csv));
+        assertEquals(1, result.getUpdated());
+        assertEquals(10, stock());
+    }
+
+    private Order placeOrder() {
+        return StoreContext.forStore(storeA, () -> orderService.createOrder(new OrderRequest("Store isolation test",
+            email, List.of(new OrderItemRequest(product.getId(), 3)))));
+    }
+
+    private String export(String store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StoreContext.forStore(store, () -> {
+            try {
+                orderExportService.exportOrders(new OrderExportService.ExportFilter(null, null, null),
+                    OrderExportService.ExportFormat.CSV, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private ProductImportService.ImportResult importCsv(String csv) {
+        try {
+            return productImportService.importProducts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Product storedProduct() {
+        return StoreContext.forStore(storeA, () -> productService.getProductById(product.getId()).orElseThrow());
+    }
+
+    private int stock() {
+        return storedProduct().getStockQuantity();
+    }
+}
@@ -0,0 +1,114 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Product;
+import com.ordersystem.backend.model.StockMovementReason;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The cached product doesn't hold its bucket total: sales from the buckets don't evict it,
+// and a product read from the cache afterwards still has its current stock
+@DatabaseTest
+class BucketStockCacheTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private StockJournalService stockJournalService;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String email = "bucket-cache-" + UUID.randomUUID() + "@example.com";
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Bucket cache test " + UUID.randomUUID(), null,
+            new BigDecimal("1.50"), 40, 0));
+        stockBucketService.setBuckets(product.getId(), 4);
+        // Cached with its new layout
+        assertEquals(40, stock());
+        assertTrue(cache().containsEntity(Product.class, product.getId()));
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", product.getId());
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void takeFromABucketDoesntServeAStaleTotal() {
+        orderService.createOrder(new OrderRequest("Bucket cache test", email,
+            List.of(new OrderItemRequest(product.getId(), 3))));
+
+        // Still cached, and read from the cache with the buckets' current total
+        assertTrue(cache().containsEntity(Product.class, product.getId()));
+        long loadsBefore = productCache.getStatistics().getProductLoadsFromDatabase();
+        assertEquals(37, stock());
+        assertEquals(loadsBefore, productCache.getStatistics().getProductLoadsFromDatabase());
+
+        // A restock spread over the buckets doesn't evict it either
+        transactionTemplate.executeWithoutResult(status -> stockJournalService.change(
+            productService.getProductById(product.getId()).orElseThrow(), 5, StockMovementReason.RESTOCK));
+        assertTrue(cache().containsEntity(Product.class, product.getId()));
+        assertEquals(42, stock());
+    }
+
+    @Test
+    void changingTheRowEvictsTheProduct() {
+        // Units left on the row (as a bulk cancellation does), then moved into the buckets
+        jdbcTemplate.update("UPDATE products SET stock_quantity = stock_quantity + 4 WHERE id = ?", product.getId());
+        stockBucketService.rebalance(product.getId());
+
+        assertFalse(cache().containsEntity(Product.class, product.getId()));
+        assertEquals(44, stock());
+    }
+
+    private int stock() {
+        return productService.getProductById(product.getId()).orElseThrow().getStockQuantity();
+    }
+
+    private Cache cache() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+}
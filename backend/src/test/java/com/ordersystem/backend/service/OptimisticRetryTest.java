@@ -0,0 +1,128 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Parallel writers on one product: edits without a client version collide on the product's
+// version and are retried until each of them is saved, restocks at the same time never conflict
+@DatabaseTest
+class OptimisticRetryTest {
+
+    private static final int STOCK = 100;
+    private static final int THREADS = 4;
+    private static final int EDITS_PER_THREAD = 10;
+    private static final int RESTOCKS_PER_THREAD = 10;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // More attempts than the default, so the retry isn't exhausted under this much contention
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OptimisticRetry optimisticRetry = new OptimisticRetry(registry, 50,
+        Duration.ofMillis(5), Duration.ofMillis(50));
+
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Optimistic retry test " + UUID.randomUUID(), null,
+            new BigDecimal("5.00"), STOCK, 0));
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void concurrentEditsAreRetriedAndNoneIsLost() throws Exception {
+        long versionBefore = productService.getProductById(product.getId()).orElseThrow().getVersion();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> writers = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int editor = thread;
+            writers.add(executor.submit(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < EDITS_PER_THREAD; i++) {
+                    Product change = new Product();
+                    change.setDescription("Edit " + i + " by editor " + editor);
+                    try {
+                        optimisticRetry.execute("product-update",
+                            () -> productService.updateProduct(product.getId(), change));
+                    } catch (RuntimeException e) {
+                        failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                }
+            }));
+            writers.add(executor.submit(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < RESTOCKS_PER_THREAD; i++) {
+                    try {
+                        optimisticRetry.execute("product-restock",
+                            () -> productService.restockProduct(product.getId(), 1));
+                    } catch (RuntimeException e) {
+                        failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(List.of(), failures);
+        // The edits did collide, and every one of them was saved in the end
+        assertTrue(conflicts("product-update", "retried") > 0, "no conflicting edits");
+        assertEquals(0, conflicts("product-update", "exhausted"));
+        Product saved = productService.getProductById(product.getId()).orElseThrow();
+        assertEquals(versionBefore + THREADS * EDITS_PER_THREAD, saved.getVersion());
+        // Stock isn't versioned, so restocks don't conflict with the edits or each other
+        assertEquals(0, conflicts("product-restock", "retried"));
+        assertEquals(STOCK + THREADS * RESTOCKS_PER_THREAD, saved.getStockQuantity());
+    }
+
+    private double conflicts(String operation, String outcome) {
+        Counter counter = registry.find("optimistic_lock.conflicts")
+            .tags("operation", operation, "outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Group commit with a batch stuck behind a locked product row: callers give up after the
+// timeout, and shutting down commits what is queued and leaves later orders to their callers
+@DatabaseTest
+class OrderGroupCommitterTest {
+
+    private static final int STOCK = 100;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String email = "group-commit-" + UUID.randomUUID() + "@example.com";
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Product product;
+    private OrderGroupCommitter committer;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Group commit test " + UUID.randomUUID(), null,
+            new BigDecimal("2.00"), STOCK, 0));
+    }
+
+    @AfterEach
+    void deleteProduct() throws Exception {
+        release.countDown();
+        if (committer != null) {
+            committer.shutdown();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", product.getId());
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void callersGiveUpAfterTheTimeout() throws Exception {
+        committer = committer(Duration.ofMillis(500));
+        lockProduct();
+
+        // The worker has taken this one and waits for the product row
+        Future<Order> saving = executor.submit(() -> committer.placeOrder(request()));
+        awaitLockWaiters(1);
+
+        // This one is still queued when its caller gives up, so it is never saved
+        OrderGroupCommitter.CommitTimeoutException queued = assertThrows(
+            OrderGroupCommitter.CommitTimeoutException.class, () -> committer.placeOrder(request()));
+        assertTrue(queued.getMessage().startsWith("Order not saved"), queued.getMessage());
+
+        ExecutionException inFlight = assertThrows(ExecutionException.class, () -> saving.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(OrderGroupCommitter.CommitTimeoutException.class, inFlight.getCause());
+
+        // Once the row is free the first order still goes through
+        release.countDown();
+        awaitOrders(1);
+        assertEquals(STOCK - 1, stock());
+    }
+
+    @Test
+    void shutdownCommitsQueuedOrdersAndLaterOnesAreSavedDirectly() throws Exception {
+        committer = committer(Duration.ofSeconds(30));
+        lockProduct();
+
+        List<Future<Order>> orders = new ArrayList<>();
+        orders.add(executor.submit(() -> committer.placeOrder(request())));
+        awaitLockWaiters(1);
+        for (int i = 0; i < 2; i++) {
+            orders.add(executor.submit(() -> committer.placeOrder(request())));
+        }
+        awaitQueued(2);
+
+        Future<?> shutdown = executor.submit(committer::shutdown);
+        awaitQueued(3); // the two orders and the stop marker
+        release.countDown();
+        shutdown.get(30, TimeUnit.SECONDS);
+        for (Future<Order> order : orders) {
+            assertNotNull(order.get(30, TimeUnit.SECONDS).getId());
+        }
+        Thread worker = (Thread) ReflectionTestUtils.getField(committer, "worker");
+        assertFalse(worker.isAlive());
+
+        // Nothing takes orders from the queue any more, so the caller saves it
+        assertNotNull(committer.placeOrder(request()).getId());
+        assertEquals(0, queue().size());
+        assertEquals(STOCK - 4, stock());
+    }
+
+    private OrderGroupCommitter committer(Duration timeout) {
+        OrderGroupCommitter committer = new OrderGroupCommitter(new SimpleMeterRegistry(), true,
+            Duration.ofMillis(5), 64, timeout);
+        ReflectionTestUtils.setField(committer, "orderService", orderService);
+        ReflectionTestUtils.setField(committer, "optimisticRetry", optimisticRetry);
+        return committer;
+    }
+
+    private OrderRequest request() {
+        return new OrderRequest("Group commit test", email, List.of(new OrderItemRequest(product.getId(), 1)));
+    }
+
+    // Hold the product row until release, so the worker's batch waits for it
+    private void lockProduct() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        executor.submit(() -> transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForList("SELECT id FROM products WHERE id = ? FOR UPDATE", product.getId());
+            locked.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS), "product row not locked");
+    }
+
+    // Wait until this many sessions are waiting for a row lock
+    private void awaitLockWaiters(int waiters) throws InterruptedException {
+        await(() -> jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM pg_stat_activity WHERE datname = current_database() AND wait_event_type = 'Lock'",
+            Integer.class) >= waiters, waiters + " sessions waiting for a lock");
+    }
+
+    private void awaitQueued(int entries) throws InterruptedException {
+        await(() -> queue().size() >= entries, entries + " entries in the group commit queue");
+    }
+
+    private void awaitOrders(int count) throws InterruptedException {
+        await(() -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders WHERE customer_email = ?",
+            Integer.class, email) >= count, count + " saved orders");
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Expected " + what);
+    }
+
+    private BlockingQueue<?> queue() {
+        return (BlockingQueue<?>) ReflectionTestUtils.getField(committer, "queue");
+    }
+
+    private int stock() {
+        return productService.getProductById(product.getId()).orElseThrow().getStockQuantity();
+    }
+}
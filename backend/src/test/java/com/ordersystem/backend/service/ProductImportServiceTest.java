@@ -0,0 +1,104 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.config.StoreContext;
+import com.ordersystem.backend.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DatabaseTest
+class ProductImportServiceTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String prefix = "Import test " + UUID.randomUUID() + " ";
+    private final List<Long> createdIds = new ArrayList<>();
+
+    @AfterEach
+    void deleteProducts() {
+        for (Long id : createdIds) {
+            jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+            productService.deleteProduct(id);
+        }
+    }
+
+    @Test
+    void importWithoutDescriptionColumnKeepsExistingDescriptions() throws Exception {
+        String word = "desc" + UUID.randomUUID().toString().replace("-", "");
+        Product first = create(prefix + "A", "First " + word);
+        Product second = create(prefix + "B", "Second " + word);
+
+        String csv = "name,price,stockQuantity,minStockLevel\n" +
+            first.getName() + ",12.50,40,5\n" +
+            second.getName() + ",7.25,15,2\n";
+        ProductImportService.ImportResult result = productImportService.importProducts(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, result.getUpdated());
+        assertEquals(0, result.getFailed());
+        assertEquals("First " + word, description(first.getId()));
+        assertEquals("Second " + word, description(second.getId()));
+        // The other columns were imported
+        assertEquals(0, new BigDecimal("12.50").compareTo(productService.getProductById(first.getId())
+            .orElseThrow().getPrice()));
+        assertEquals(15, productService.getProductById(second.getId()).orElseThrow().getStockQuantity());
+        // ... and the products are still found by their description
+        List<Long> found = productSearchIndex.search(StoreContext.currentStore(), word, 10, 0);
+        assertTrue(found.contains(first.getId()) && found.contains(second.getId()), "search found " + found);
+    }
+
+    @Test
+    void emptyDescriptionCellKeepsExistingDescription() throws Exception {
+        Product product = create(prefix + "C", "Kept description");
+
+        String csv = "name,description,price,stockQuantity,minStockLevel\n" +
+            product.getName() + ",,3.00,10,1\n";
+        productImportService.importProducts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("Kept description", description(product.getId()));
+    }
+
+    @Test
+    void descriptionColumnStillReplacesDescription() throws Exception {
+        Product product = create(prefix + "D", "Old description");
+
+        String csv = "name,description,price,stockQuantity,minStockLevel\n" +
+            product.getName() + ",New description,3.00,10,1\n";
+        productImportService.importProducts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("New description", description(product.getId()));
+    }
+
+    private Product create(String name, String description) {
+        Product product = productService.createProduct(
+            new Product(name, description, new BigDecimal("9.99"), 20, 3));
+        createdIds.add(product.getId());
+        return product;
+    }
+
+    private String description(Long id) {
+        return jdbcTemplate.queryForObject("SELECT description FROM products WHERE id = ?", String.class, id);
+    }
+}
@@ -0,0 +1,97 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.config.ShardDirectory;
+import com.ordersystem.backend.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTest {
+
+    private static final String STORE = "default";
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void createIndex() {
+        index = new ProductSearchIndex();
+        ReflectionTestUtils.setField(index, "shardDirectory", ShardDirectory.singleDatabase());
+        ReflectionTestUtils.setField(index, "singleInstance", true);
+        index.index(1L, STORE, "Iced Coffee", null);
+        index.index(2L, STORE, "Hot Chocolate", "With cream");
+        index.index(3L, STORE, "Bacon Roll", null);
+    }
+
+    @Test
+    void shortWordsMatchWordStarts() {
+        // Equally good matches, the shorter name first
+        assertEquals(List.of(1L, 2L), search("c"));
+        assertEquals(List.of(1L), search("co"));
+        assertEquals(List.of(2L), search("cr"));
+        assertEquals(List.of(1L), search("iced c"));
+        // Not at the start of a word
+        assertEquals(List.of(), search("on"));
+        assertEquals(List.of(), search("x"));
+    }
+
+    @Test
+    void longerWordsMatchAnywhere() {
+        assertEquals(List.of(3L), search("aco"));
+        assertEquals(List.of(2L), search("late"));
+    }
+
+    @Test
+    void changedProductsAreFoundByTheirNewName() {
+        index.index(1L, STORE, "Iced Tea", null);
+        assertEquals(List.of(2L), search("c"));
+        assertEquals(List.of(1L), search("te"));
+
+        index.remove(2L);
+        assertEquals(List.of(), search("c"));
+    }
+
+    @Test
+    void otherStoresProductsAreNotFound() {
+        index.index(4L, "other", "Iced Coffee", null);
+        assertEquals(List.of(1L), search("iced"));
+        assertEquals(List.of(4L), index.search("other", "iced", 10, 0));
+    }
+
+    @Test
+    void searchesKeepTheOldIndexWhileItIsRebuilt() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        ProductRepository repository = (ProductRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {ProductRepository.class}, (proxy, method, args) -> {
+                if (!method.getName().equals("findSearchableFields")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                loading.countDown();
+                assertTrue(loaded.await(10, TimeUnit.SECONDS));
+                return List.<Object[]>of(new Object[] {5L, STORE, "Cold Coffee", null});
+            });
+        ReflectionTestUtils.setField(index, "productRepository", repository);
+
+        CompletableFuture<Void> rebuild = CompletableFuture.runAsync(index::rebuild);
+        assertTrue(loading.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L), search("c"));
+        loaded.countDown();
+        rebuild.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(5L), search("c"));
+        assertTrue(index.isReady());
+    }
+
+    private List<Long> search(String query) {
+        return index.search(STORE, query, 10, 0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stock held for carts of a product with stock buckets can't be sold to other checkouts
+@DatabaseTest
+class StockHoldBucketTest {
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private StockHoldService stockHoldService;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String prefix = "Hold bucket test " + UUID.randomUUID() + " ";
+    private final String email = "hold-bucket-" + UUID.randomUUID() + "@example.com";
+    private final List<Long> createdIds = new ArrayList<>();
+    private final List<String> holdIds = new ArrayList<>();
+
+    @AfterEach
+    void deleteProducts() {
+        holdIds.forEach(stockHoldService::releaseHold);
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        for (Long id : createdIds) {
+            jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", id);
+            jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+            productService.deleteProduct(id);
+        }
+    }
+
+    @Test
+    void checkoutsDontGetHeldStock() {
+        Product product = createBucketed("A", 10);
+        StockHoldService.StockHold hold = hold(product, 8);
+
+        checkout(product, 1, null);
+        checkout(product, 1, null);
+        RuntimeException error = assertThrows(RuntimeException.class, () -> checkout(product, 1, null));
+        assertTrue(error.getMessage().startsWith("Insufficient stock"), error.getMessage());
+
+        // The held units were moved out of the buckets onto the product row
+        StockBucketService.StockBuckets stock = stockBucketService.getBuckets(product.getId()).orElseThrow();
+        assertEquals(8, stock.getRowQuantity());
+        assertEquals(8, stock.getStockQuantity());
+
+        // The cart that holds the stock still gets it
+        checkout(product, 8, hold.getId());
+        assertEquals(0, stockBucketService.getBuckets(product.getId()).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    void holdCantTakeStockThatIsAlreadyHeld() {
+        Product product = createBucketed("B", 10);
+        hold(product, 6);
+
+        RuntimeException error = assertThrows(RuntimeException.class, () -> hold(product, 5));
+        assertTrue(error.getMessage().startsWith("Insufficient stock"), error.getMessage());
+        hold(product, 4);
+    }
+
+    @Test
+    void rebalancingLeavesHeldStockOnTheRow() {
+        Product product = createBucketed("C", 20);
+        StockHoldService.StockHold hold = hold(product, 6);
+        // Sales drain the buckets unevenly
+        checkout(product, 3, null);
+
+        stockBucketService.rebalance(product.getId());
+        StockBucketService.StockBuckets stock = stockBucketService.getBuckets(product.getId()).orElseThrow();
+        assertEquals(6, stock.getRowQuantity());
+        assertEquals(List.of(3, 3, 3, 2), stock.getBucketQuantities());
+
+        // A released hold's units go back into the buckets
+        stockHoldService.releaseHold(hold.getId());
+        stockBucketService.rebalance(product.getId());
+        stock = stockBucketService.getBuckets(product.getId()).orElseThrow();
+        assertEquals(0, stock.getRowQuantity());
+        assertEquals(17, stock.getStockQuantity());
+    }
+
+    @Test
+    void switchingToBucketsLeavesHeldStockOnTheRow() {
+        Product product = create("D", 12);
+        hold(product, 5);
+
+        stockBucketService.setBuckets(product.getId(), 4);
+        StockBucketService.StockBuckets stock = stockBucketService.getBuckets(product.getId()).orElseThrow();
+        assertEquals(5, stock.getRowQuantity());
+        assertEquals(List.of(2, 2, 2, 1), stock.getBucketQuantities());
+    }
+
+    private Product create(String name, int stock) {
+        Product product = productService.createProduct(
+            new Product(prefix + name, null, new BigDecimal("4.00"), stock, 0));
+        createdIds.add(product.getId());
+        return product;
+    }
+
+    private Product createBucketed(String name, int stock) {
+        Product product = create(name, stock);
+        stockBucketService.setBuckets(product.getId(), 4);
+        return product;
+    }
+
+    private StockHoldService.StockHold hold(Product product, int quantity) {
+        StockHoldService.StockHold hold = stockHoldService.createHold(
+            List.of(new OrderItemRequest(product.getId(), quantity)), null);
+        holdIds.add(hold.getId());
+        return hold;
+    }
+
+    private void checkout(Product product, int quantity, String holdId) {
+        OrderRequest request = new OrderRequest("Hold bucket test", email,
+            List.of(new OrderItemRequest(product.getId(), quantity)));
+        request.setHoldId(holdId);
+        orderService.createOrder(request);
+    }
+}
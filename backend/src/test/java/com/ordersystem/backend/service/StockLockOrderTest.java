@@ -0,0 +1,161 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checkouts, cancellations, restocks, imports and rebalancing of a product with stock buckets and one without,
+// all at once: they lock buckets and product rows in the same order, so none of them may fail
+// with a deadlock, and every product's stock must still match its stock journal
+@DatabaseTest
+class StockLockOrderTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 60;
+    private static final int STOCK = 5000;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String prefix = "Lock order test " + UUID.randomUUID() + " ";
+    private final String email = "lock-order-" + UUID.randomUUID() + "@example.com";
+    private Product bucketed;
+    private Product plain;
+
+    @BeforeEach
+    void createProducts() {
+        bucketed = productService.createProduct(new Product(prefix + "bucketed", null, new BigDecimal("2.00"), STOCK, 0));
+        plain = productService.createProduct(new Product(prefix + "plain", null, new BigDecimal("3.00"), STOCK, 0));
+        stockBucketService.setBuckets(bucketed.getId(), 4);
+    }
+
+    @AfterEach
+    void deleteProducts() {
+        List<Long> ids = List.of(bucketed.getId(), plain.getId());
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        for (Long id : ids) {
+            jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", id);
+            jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", id);
+            jdbcTemplate.update("DELETE FROM stock_snapshots WHERE product_id = ?", id);
+            productService.deleteProduct(id);
+        }
+    }
+
+    @Test
+    void mixedStockChangesDontDeadlock() throws Exception {
+        ConcurrentLinkedQueue<Long> placed = new ConcurrentLinkedQueue<>();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int thread = 0; thread < THREADS; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    try {
+                        int operation = ThreadLocalRandom.current().nextInt(11);
+                        if (operation < 6) {
+                            placed.add(checkout().getId());
+                        } else if (operation < 8) {
+                            Long orderId = placed.poll();
+                            if (orderId != null) {
+                                optimisticRetry.execute("test-cancel", () -> orderService.cancelOrder(orderId));
+                            }
+                        } else if (operation < 9) {
+                            optimisticRetry.execute("test-restock", () -> productService.restockProduct(
+                                ThreadLocalRandom.current().nextBoolean() ? bucketed.getId() : plain.getId(), 3));
+                        } else if (operation < 10) {
+                            importBoth();
+                        } else {
+                            stockBucketService.rebalance(bucketed.getId());
+                        }
+                    } catch (OptimisticLockingFailureException e) {
+                        // Still conflicting after all retries: answered with 409, not a failure here
+                    } catch (RuntimeException e) {
+                        failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES), "operations didn't finish");
+
+        assertEquals(List.of(), failures);
+        for (Product product : List.of(bucketed, plain)) {
+            StockBucketService.StockBuckets stock = stockBucketService.getBuckets(product.getId()).orElseThrow();
+            assertEquals(journalStock(product.getId()), stock.getStockQuantity(), "stock of " + product.getName());
+            assertTrue(stock.getBucketQuantities().stream().allMatch(quantity -> quantity >= 0),
+                "buckets " + stock.getBucketQuantities());
+        }
+    }
+
+    // Both products in one order, the lines in random order
+    private Order checkout() {
+        List<OrderItemRequest> items = new ArrayList<>(List.of(
+            new OrderItemRequest(bucketed.getId(), 1), new OrderItemRequest(plain.getId(), 2)));
+        Collections.shuffle(items);
+        OrderRequest request = new OrderRequest("Lock order test", email, items);
+        return optimisticRetry.execute("test-checkout", () -> orderService.createOrder(request));
+    }
+
+    // Sets both products' stock back to the starting level
+    private void importBoth() {
+        String csv = "name,price,stockQuantity,minStockLevel\n" +
+            bucketed.getName() + ",2.00," + STOCK + ",0\n" +
+            plain.getName() + ",3.00," + STOCK + ",0\n";
+        try {
+            ProductImportService.ImportResult result = productImportService.importProducts(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+            if (result.getFailed() > 0) {
+                throw new RuntimeException("Import failed: " + result.getErrors());
+            }
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int journalStock(Long productId) {
+        return jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(quantity_change), 0) FROM stock_movements WHERE product_id = ?", Integer.class, productId);
+    }
+}
@@ -0,0 +1,216 @@
+package com.ordersystem.backend.service;
+
+import com.ordersystem.backend.DatabaseTest;
+import com.ordersystem.backend.dto.OrderItemRequest;
+import com.ordersystem.backend.dto.OrderRequest;
+import com.ordersystem.backend.model.Order;
+import com.ordersystem.backend.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stock changes don't count for the product's optimistic lock version (see Product.stockQuantity):
+// catalogue edits don't conflict with sales, and what keeps the stock right is the row lock
+@DatabaseTest
+class StockVersionTest {
+
+    private static final int STOCK = 1000;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final String email = "stock-version-" + UUID.randomUUID() + "@example.com";
+    private Product product;
+
+    @BeforeEach
+    void createProduct() {
+        product = productService.createProduct(new Product("Stock version test " + UUID.randomUUID(), null,
+            new BigDecimal("4.00"), STOCK, 0));
+    }
+
+    @AfterEach
+    void deleteProduct() {
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE customer_email = ?)",
+            email);
+        jdbcTemplate.update("DELETE FROM orders WHERE customer_email = ?", email);
+        jdbcTemplate.update("DELETE FROM customer_summaries WHERE email = ?", email);
+        jdbcTemplate.update("DELETE FROM product_commitments WHERE product_id = ?", product.getId());
+        jdbcTemplate.update("DELETE FROM stock_movements WHERE product_id = ?", product.getId());
+        productService.deleteProduct(product.getId());
+    }
+
+    @Test
+    void racingCancelsRestoreTheStockOnce() throws Exception {
+        Order order = checkout(3);
+
+        // Hold the product row, so both cancellations have loaded the pending order and wait
+        // for the row before either of them commits
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Future<?> holder = executor.submit(() -> transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForList("SELECT id FROM products WHERE id = ? FOR UPDATE", product.getId());
+            locked.countDown();
+            awaitQuietly(release);
+            return null;
+        }));
+        assertTrue(locked.await(10, TimeUnit.SECONDS), "product row not locked");
+        List<Future<Order>> cancels = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            cancels.add(executor.submit(() ->
+                optimisticRetry.execute("test-cancel", () -> orderService.cancelOrder(order.getId()))));
+        }
+        awaitLockWaiters(2);
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+
+        int succeeded = 0;
+        for (Future<Order> cancel : cancels) {
+            try {
+                cancel.get(10, TimeUnit.SECONDS);
+                succeeded++;
+            } catch (ExecutionException e) {
+                // The loser's order update fails the order's version check, and its retry finds
+                // the order cancelled already
+                assertInstanceOf(IllegalStateException.class, e.getCause());
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, succeeded);
+        assertEquals(STOCK, stock());
+        assertEquals(STOCK, journalStock());
+    }
+
+    @Test
+    void editsDontConflictWithCheckouts() throws Exception {
+        Product loaded = productService.getProductById(product.getId()).orElseThrow();
+        for (int i = 0; i < 5; i++) {
+            checkout(2);
+        }
+        // An edit based on the product as it was before those sales still goes through,
+        // and doesn't write the stock it loaded back
+        Product details = new Product();
+        details.setVersion(loaded.getVersion());
+        details.setPrice(new BigDecimal("4.50"));
+        productService.updateProduct(product.getId(), details);
+        assertEquals(STOCK - 10, stock());
+
+        // Edits and checkouts at the same time
+        AtomicBoolean checkingOut = new AtomicBoolean(true);
+        AtomicInteger conflicts = new AtomicInteger();
+        AtomicInteger sold = new AtomicInteger(10);
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        Future<?> editor = executor.submit(() -> {
+            int edits = 0;
+            while (checkingOut.get() || edits == 0) {
+                Product current = productService.getProductById(product.getId()).orElseThrow();
+                Product change = new Product();
+                change.setVersion(current.getVersion());
+                change.setMinStockLevel(edits++ % 2);
+                try {
+                    productService.updateProduct(product.getId(), change);
+                } catch (OptimisticLockingFailureException e) {
+                    conflicts.incrementAndGet();
+                }
+            }
+        });
+        List<Future<?>> checkouts = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            checkouts.add(executor.submit(() -> {
+                for (int i = 0; i < 25; i++) {
+                    try {
+                        checkout(1);
+                        sold.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failures.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Future<?> checkout : checkouts) {
+            checkout.get(2, TimeUnit.MINUTES);
+        }
+        checkingOut.set(false);
+        editor.get(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        assertEquals(List.of(), failures);
+        assertEquals(0, conflicts.get());
+        assertEquals(STOCK - sold.get(), stock());
+        assertEquals(STOCK - sold.get(), journalStock());
+    }
+
+    private Order checkout(int quantity) {
+        OrderRequest request = new OrderRequest("Stock version test", email,
+            List.of(new OrderItemRequest(product.getId(), quantity)));
+        return optimisticRetry.execute("test-checkout", () -> orderService.createOrder(request));
+    }
+
+    // Wait until this many sessions are waiting for a row lock
+    private void awaitLockWaiters(int waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            Integer waiting = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_stat_activity WHERE datname = current_database() AND wait_event_type = 'Lock'",
+                Integer.class);
+            if (waiting != null && waiting >= waiters) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Expected " + waiters + " sessions waiting for a lock");
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int stock() {
+        return productService.getProductById(product.getId()).orElseThrow().getStockQuantity();
+    }
+
+    private int journalStock() {
+        return jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(quantity_change), 0) FROM stock_movements WHERE product_id = ?", Integer.class, product.getId());
+    }
+}
@@ -0,0 +1,73 @@
+#!/bin/bash
+
+# Startup time benchmark
+# Starts the backend several times per variant and measures the time until
+# /actuator/health/readiness reports UP (i.e. ready for traffic, after the warm-up).
+#
+# Usage: ./startup-benchmark.sh [runs]
+# Build first with:  ./mvnw -Pcds package -DskipTests
+# PostgreSQL must be running with the schema in place (same settings as the application).
+
+cd "$(dirname "$0")"
+
+RUNS=${1:-5}
+PORT=18080
+JAR=order-system-backend-0.0.1-SNAPSHOT.jar
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+
+if [ ! -f "target/$JAR" ]; then
+    echo "target/$JAR not found, build it first: ./mvnw -Pcds package -DskipTests"
+    exit 1
+fi
+
+# Start one variant, print the milliseconds until ready (or FAILED)
+measure() {
+    local dir=$1
+    shift
+    local start=$(date +%s%N)
+    (cd "$dir" && exec "$JAVA" "$@" -jar "$JAR" --server.port=$PORT > /tmp/startup-benchmark.log 2>&1) &
+    local pid=$!
+    local ready=""
+    for i in $(seq 1 1200); do
+        if curl -s "http://localhost:$PORT/actuator/health/readiness" | grep -q '"UP"'; then
+            ready=$(( ($(date +%s%N) - start) / 1000000 ))
+            break
+        fi
+        sleep 0.05
+    done
+    kill $pid 2>/dev/null
+    wait $pid 2>/dev/null
+    echo "${ready:-FAILED}"
+}
+
+run_variant() {
+    local name=$1
+    shift
+    local total=0
+    local count=0
+    local times=""
+    for run in $(seq 1 "$RUNS"); do
+        local ms=$(measure "$@")
+        times="$times $ms"
+        if [ "$ms" != "FAILED" ]; then
+            total=$((total + ms))
+            count=$((count + 1))
+        fi
+    done
+    if [ $count -gt 0 ]; then
+        printf "%-28s avg %6d ms   runs:%s\n" "$name" $((total / count)) "$times"
+    else
+        printf "%-28s FAILED (see /tmp/startup-benchmark.log)\n" "$name"
+    fi
+}
+
+echo "Time until ready, $RUNS runs each"
+echo "================================"
+run_variant "default profile" target
+run_variant "prod profile" target -Dspring.profiles.active=prod
+if [ -f target/application/application.jsa ]; then
+    run_variant "prod profile + CDS archive" target/application \
+        -XX:SharedArchiveFile=application.jsa -Dspring.profiles.active=prod
+else
+    echo "No CDS archive found (build with -Pcds to include it)"
+fi
@@ -5,4 +5,6 @@ export interface Product {
   price: number;
   stockQuantity: number;
   minStockLevel: number;
+  // Optimistic locking version; send it back on update to get 409 if the product changed meanwhile
+  version?: number;
 }
@@ -0,0 +1,69 @@
+package com.ordersystem.loadtest;
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+// Vocabulary for generated products, shared by the seeder (product names) and the
+// workload (search terms), so searches find realistic numbers of products
+// Names look like "Organic Arabica Coffee 250g #000123"; the number keeps them unique.
+public final class Catalog {
+
+    static final List<String> BRANDS = List.of(
+        "Organic", "Classic", "Premium", "Fresh", "Homestyle", "Daily", "Golden", "Farmhouse",
+        "Artisan", "Select", "Village", "Coastal", "Mountain", "Sunny", "Urban", "Harvest");
+
+    static final List<String> FLAVOURS = List.of(
+        "Arabica", "Vanilla", "Chocolate", "Lemon", "Strawberry", "Honey", "Caramel", "Mint",
+        "Cinnamon", "Almond", "Hazelnut", "Berry", "Ginger", "Maple", "Coconut", "Plain");
+
+    static final List<String> ITEMS = List.of(
+        "Coffee", "Tea", "Muffin", "Croissant", "Bagel", "Cookie", "Juice", "Smoothie",
+        "Yogurt", "Granola", "Sandwich", "Salad", "Soup", "Cake", "Latte", "Water");
+
+    static final List<String> SIZES = List.of("Small", "Medium", "Large", "250g", "500g", "1kg", "6-pack");
+
+    private Catalog() {
+    }
+
+    public static String productName(long number) {
+        // Mixing the number makes neighbouring products differ in every word
+        long mixed = number * 0x9E3779B97F4A7C15L;
+        int brand = (int) Math.floorMod(mixed, (long) BRANDS.size());
+        int flavour = (int) Math.floorMod(mixed >>> 8, (long) FLAVOURS.size());
+        int item = (int) Math.floorMod(mixed >>> 16, (long) ITEMS.size());
+        int size = (int) Math.floorMod(mixed >>> 24, (long) SIZES.size());
+        return BRANDS.get(brand) + " " + FLAVOURS.get(flavour) + " " + ITEMS.get(item) + " " +
+            SIZES.get(size) + String.format(" #%06d", number);
+    }
+
+    public static String description(long number) {
+        return "Generated test product " + number;
+    }
+
+    // One word of a product name, for typing it one character at a time (see SearchBenchmark)
+    public static String nameWord(RandomGenerator random) {
+        List<String> words = switch (random.nextInt(3)) {
+            case 0 -> BRANDS;
+            case 1 -> FLAVOURS;
+            default -> ITEMS;
+        };
+        return words.get(random.nextInt(words.size())).toLowerCase();
+    }
+
+    // A search term as a cashier would type it: one word, sometimes only the start of it,
+    // sometimes two words
+    public static String searchTerm(RandomGenerator random) {
+        double kind = random.nextDouble();
+        String item = ITEMS.get(random.nextInt(ITEMS.size()));
+        if (kind < 0.5) {
+            return item;
+        }
+        if (kind < 0.7) {
+            return item.substring(0, Math.min(item.length(), 3 + random.nextInt(2))).toLowerCase();
+        }
+        if (kind < 0.9) {
+            return FLAVOURS.get(random.nextInt(FLAVOURS.size())) + " " + item;
+        }
+        return BRANDS.get(random.nextInt(BRANDS.size()));
+    }
+}
@@ -0,0 +1,327 @@
+package com.ordersystem.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hammers a single product with concurrent checkouts, once per stock bucket count
+// Every checkout of one product waits for its products row; with stock buckets the checkouts
+// spread over N bucket rows (see the backend's StockBucketService). This measures how many
+// checkouts per second one SKU can take at a given concurrency, with and without buckets.
+//
+// Closed model on purpose: --concurrency tills each send the next checkout as soon as the
+// previous one is answered, so the server is always at that many concurrent checkouts of the
+// product and the result is its maximum throughput (LoadDriver's open model measures latency
+// at a given arrival rate instead).
+//
+// Before every round the product is set to that bucket count (PUT /api/products/{id}/stock-buckets,
+// the backend needs app.stock-buckets.enabled=true) and restocked to --stock units. After the
+// round the stock must have dropped by exactly the units sold, otherwise something oversold.
+//
+// --editors adds back-office users that keep changing the product's minimum stock level
+// (PUT /api/products/{id} without a version, back and forth by one and restored afterwards).
+// Checkouts don't change the product's version, so their saves should only collide with each
+// other; the backend retries those (OptimisticRetry) and answers 409 once all attempts conflicted. Each round also reads the backend's
+// optimistic_lock.conflicts and orders.group_commit.batch.size metrics, so runs against a
+// backend with app.orders.group-commit.enabled=false and =true can be compared.
+//
+// Settings:
+//   --base-url=http://localhost:8080
+//   --product-id=1          the product to check out (should be one nobody else is buying)
+//   --buckets=0,4,16        bucket counts to compare, 0 = stock on the product row
+//   --concurrency=200 --duration=30s --warmup=5s
+//   --quantity=1            units per checkout
+//   --editors=0             concurrent catalogue edits of the product
+//   --stock=1000000         stock at the start of each round, enough not to run out
+//   --timeout=30s
+//   --output=loadtest-results   a timestamped folder with contention.csv is created
+public class ContentionBenchmark {
+
+    private final Settings settings;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public ContentionBenchmark(Settings settings) {
+        this.settings = settings;
+        this.baseUrl = settings.getString("base-url", "http://localhost:8080");
+        this.timeout = settings.getDuration("timeout", Duration.ofSeconds(30));
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    public void run() throws Exception {
+        long productId = settings.getLong("product-id", 1);
+        String[] bucketCounts = settings.getString("buckets", "0,4,16").split(",");
+        int concurrency = settings.getInt("concurrency", 200);
+        Duration duration = settings.getDuration("duration", Duration.ofSeconds(30));
+        Duration warmup = settings.getDuration("warmup", Duration.ofSeconds(5));
+        int quantity = settings.getInt("quantity", 1);
+        int stock = settings.getInt("stock", 1_000_000);
+        int editors = settings.getInt("editors", 0);
+        if (concurrency < 1 || quantity < 1 || editors < 0) {
+            throw new IllegalArgumentException("--concurrency and --quantity must be at least 1, --editors at least 0");
+        }
+
+        System.out.printf("Target %s, product %d, %d concurrent checkouts and %d editors for %ds (after %ds warm-up)%n",
+            baseUrl, productId, concurrency, editors, duration.toSeconds(), warmup.toSeconds());
+        List<Round> rounds = new ArrayList<>();
+        for (String count : bucketCounts) {
+            int buckets = Integer.parseInt(count.trim());
+            prepare(productId, buckets, stock);
+            ServerCounters before = serverCounters();
+            Round round = measure(productId, buckets, concurrency, editors, duration, warmup, quantity);
+            round.server = serverCounters().minus(before);
+            rounds.add(round);
+            System.out.printf("buckets=%d: %.1f orders/s, %d edits (%d conflicted), group commit %s, stock %s%n",
+                buckets, round.stats.succeeded() / (duration.toNanos() / 1e9), round.edits.get(),
+                round.editConflicts.get(), round.server.groupCommitLabel(),
+                round.stockDrop == round.unitsSold ? "matches the units sold" :
+                    "dropped by " + round.stockDrop + " but " + round.unitsSold + " units were sold");
+        }
+        // Leave the product as it was found: stock on its row
+        setBuckets(productId, 0);
+
+        print(rounds, duration.toNanos() / 1e9);
+        Path directory = Path.of(settings.getString("output", "loadtest-results"),
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-contention");
+        Files.createDirectories(directory);
+        writeCsv(rounds, duration.toNanos() / 1e9, directory.resolve("contention.csv"));
+        System.out.println("Results written to " + directory);
+    }
+
+    // Set the bucket count and top the stock up to the starting level
+    private void prepare(long productId, int buckets, int stock) throws IOException, InterruptedException {
+        setBuckets(productId, buckets);
+        int current = currentStock(productId);
+        if (current < stock) {
+            HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + productId + "/restock?quantity=" +
+                        (stock - current)))
+                    .timeout(timeout).PUT(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Restock of product " + productId + " returned " + response.statusCode());
+            }
+        }
+    }
+
+    private void setBuckets(long productId, int buckets) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + productId + "/stock-buckets?count=" + buckets))
+                .timeout(timeout).PUT(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Setting " + buckets + " stock buckets returned " + response.statusCode() +
+                ": " + response.body() + " (is app.stock-buckets.enabled=true?)");
+        }
+    }
+
+    private HttpRequest editRequest(long productId, int minStockLevel) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + productId)).timeout(timeout)
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"minStockLevel\":" + minStockLevel + "}"))
+            .build();
+    }
+
+    private int currentStock(long productId) throws IOException, InterruptedException {
+        return product(productId).get("stockQuantity").asInt();
+    }
+
+    private JsonNode product(long productId) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/" + productId)).timeout(timeout).GET().build(),
+            HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Product " + productId + " returned " + response.statusCode());
+        }
+        return mapper.readTree(response.body());
+    }
+
+    // The backend's retry and group commit counters since it started
+    private ServerCounters serverCounters() throws IOException, InterruptedException {
+        ServerCounters counters = new ServerCounters();
+        counters.retried = metric("optimistic_lock.conflicts?tag=outcome:retried", "COUNT");
+        counters.exhausted = metric("optimistic_lock.conflicts?tag=outcome:exhausted", "COUNT");
+        counters.batches = metric("orders.group_commit.batch.size", "COUNT");
+        counters.batchedOrders = metric("orders.group_commit.batch.size", "TOTAL");
+        return counters;
+    }
+
+    // One statistic of an actuator metric, 0 when the backend hasn't recorded it yet (404)
+    private long metric(String nameAndTags, String statistic) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + nameAndTags)).timeout(timeout).GET().build(),
+            HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 404) {
+            return 0;
+        }
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Metric " + nameAndTags + " returned " + response.statusCode());
+        }
+        for (JsonNode measurement : mapper.readTree(response.body()).get("measurements")) {
+            if (statistic.equals(measurement.get("statistic").asText())) {
+                return measurement.get("value").asLong();
+            }
+        }
+        return 0;
+    }
+
+    private Round measure(long productId, int buckets, int concurrency, int editors, Duration duration,
+                          Duration warmup, int quantity) throws Exception {
+        Round round = new Round();
+        round.buckets = buckets;
+        round.stats = new EndpointStats(Operation.CHECKOUT);
+        AtomicLong unitsSold = new AtomicLong();
+        HttpRequest checkout = HttpRequest.newBuilder(URI.create(baseUrl + "/api/orders")).timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"customerName\":\"Contention\"," +
+                "\"customerEmail\":\"contention@example.com\",\"orderItems\":[{\"productId\":" + productId +
+                ",\"quantity\":" + quantity + "}]}"))
+            .build();
+        // Edits switch the minimum stock level between its value and one more (a save without a
+        // change wouldn't write anything), the last request puts it back
+        int minStockLevel = product(productId).get("minStockLevel").asInt();
+        HttpRequest[] edits = {editRequest(productId, minStockLevel + 1), editRequest(productId, minStockLevel)};
+
+        int stockBefore = currentStock(productId);
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int till = 0; till < concurrency; till++) {
+            executor.execute(() -> {
+                while (true) {
+                    long sentNanos = System.nanoTime();
+                    if (sentNanos >= endNanos) {
+                        return;
+                    }
+                    boolean measured = sentNanos >= measureFromNanos;
+                    try {
+                        HttpResponse<Void> response = client.send(checkout, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 201) {
+                            unitsSold.addAndGet(quantity);
+                        }
+                        if (measured) {
+                            round.stats.record(response.statusCode(), sentNanos, sentNanos, System.nanoTime());
+                        }
+                    } catch (IOException e) {
+                        if (measured) {
+                            round.stats.recordFailure(sentNanos, System.nanoTime());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        for (int editor = 0; editor < editors; editor++) {
+            executor.execute(() -> {
+                for (int i = 0; System.nanoTime() < endNanos; i++) {
+                    boolean measured = System.nanoTime() >= measureFromNanos;
+                    try {
+                        HttpResponse<Void> response = client.send(edits[i % 2], HttpResponse.BodyHandlers.discarding());
+                        if (measured) {
+                            round.edits.incrementAndGet();
+                            if (response.statusCode() == 409) {
+                                round.editConflicts.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        // Counted as neither: the edit's outcome is unknown
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(warmup.toSeconds() + duration.toSeconds() + timeout.toSeconds() + 5, TimeUnit.SECONDS);
+        if (editors > 0) {
+            client.send(edits[1], HttpResponse.BodyHandlers.discarding());
+        }
+
+        // Stock lookups may be served from the backend's cache, which is refreshed after each commit
+        round.unitsSold = unitsSold.get();
+        round.stockDrop = stockBefore - currentStock(productId);
+        return round;
+    }
+
+    private void print(List<Round> rounds, double seconds) {
+        System.out.println();
+        System.out.printf("%-8s %s %7s %9s %9s %9s %9s%n", "buckets", EndpointStats.header(),
+            "edits", "edit 409", "retried", "exhausted", "batch");
+        for (Round round : rounds) {
+            System.out.printf("%-8d %s %7d %9d %9d %9d %9s%n", round.buckets, round.stats.summaryLine(seconds),
+                round.edits.get(), round.editConflicts.get(), round.server.retried, round.server.exhausted,
+                round.server.groupCommitLabel());
+        }
+    }
+
+    private void writeCsv(List<Round> rounds, double seconds, Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            out.println("buckets," + EndpointStats.csvHeader() + ",units_sold,stock_drop,edits,edit_conflicts," +
+                "retried,exhausted,group_commit_batches,group_commit_orders");
+            for (Round round : rounds) {
+                out.println(round.buckets + "," + round.stats.csvLine(seconds) + "," + round.unitsSold + "," +
+                    round.stockDrop + "," + round.edits.get() + "," + round.editConflicts.get() + "," +
+                    round.server.retried + "," + round.server.exhausted + "," + round.server.batches + "," +
+                    round.server.batchedOrders);
+            }
+        }
+    }
+
+    private static class Round {
+        int buckets;
+        EndpointStats stats;
+        long unitsSold;
+        long stockDrop;
+        final AtomicLong edits = new AtomicLong();
+        final AtomicLong editConflicts = new AtomicLong();
+        ServerCounters server;
+    }
+
+    // Counters read from the backend's metrics; a round reports the difference (warm-up included)
+    private static class ServerCounters {
+        long retried;        // optimistic locking conflicts that were retried, all operations
+        long exhausted;      // ... that still conflicted after the last attempt (409)
+        long batches;        // group commit transactions
+        long batchedOrders;  // orders saved by them
+
+        ServerCounters minus(ServerCounters earlier) {
+            ServerCounters difference = new ServerCounters();
+            difference.retried = retried - earlier.retried;
+            difference.exhausted = exhausted - earlier.exhausted;
+            difference.batches = batches - earlier.batches;
+            difference.batchedOrders = batchedOrders - earlier.batchedOrders;
+            return difference;
+        }
+
+        // Average orders per group commit transaction, "off" when nothing went through group commit
+        String groupCommitLabel() {
+            return batches == 0 ? "off" : String.format("%.1f", (double) batchedOrders / batches);
+        }
+    }
+}
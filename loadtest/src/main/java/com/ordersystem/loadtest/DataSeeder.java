@@ -0,0 +1,248 @@
+package com.ordersystem.loadtest;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+// Fills the database with a realistic amount of products, orders and order items
+// Rows are streamed with PostgreSQL COPY (much faster than INSERTs, millions of rows take
+// minutes instead of hours), in batches that are committed one by one.
+//
+// Product popularity is Zipf-distributed: a handful of products appear in a large share of
+// all orders, most products rarely. Customers are skewed the same way (regulars).
+// Order dates are spread over the last --days days; older orders are mostly completed,
+// recent ones are still pending.
+//
+// Settings:
+//   --products=10000 --orders=200000 --customers=20000 --days=180
+//   --zipf=1.0           popularity skew (0 = uniform, ~1 = typical retail)
+//   --max-items=5        items per order are 1..max-items, small orders are more common
+//   --batch-size=10000   orders per COPY batch / commit
+//   --random-seed=42     same seed = same data
+//   --reset              delete all existing products/orders first (TRUNCATE ... CASCADE)
+// The backend builds its search index and customer summaries at startup, so restart it after seeding.
+public class DataSeeder {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final Settings settings;
+
+    public DataSeeder(Settings settings) {
+        this.settings = settings;
+    }
+
+    public void seed() throws SQLException, IOException {
+        int productCount = settings.getInt("products", 10_000);
+        long orderCount = settings.getLong("orders", 200_000);
+        int customerCount = settings.getInt("customers", 20_000);
+        int days = settings.getInt("days", 180);
+        double zipf = settings.getDouble("zipf", 1.0);
+        int maxItems = settings.getInt("max-items", 5);
+        int batchSize = settings.getInt("batch-size", 10_000);
+        SplittableRandom random = new SplittableRandom(settings.getLong("random-seed", 42));
+
+        try (Connection connection = DriverManager.getConnection(
+                settings.jdbcUrl(), settings.dbUser(), settings.dbPassword())) {
+            connection.setAutoCommit(false);
+            CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+
+            if (settings.getBoolean("reset", false)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("TRUNCATE order_items, orders, products RESTART IDENTITY CASCADE");
+                }
+                connection.commit();
+                System.out.println("Existing products and orders deleted");
+            }
+
+            long startNanos = System.nanoTime();
+
+            // Products
+            long firstProductId = nextId(connection, "products");
+            long[] priceCents = new long[productCount];
+            StringBuilder rows = new StringBuilder();
+            for (int i = 0; i < productCount; i++) {
+                long id = firstProductId + i;
+                priceCents[i] = 50 + random.nextLong(4_950);
+                int stock = 1_000 + random.nextInt(9_000);
+                int minStock = 10 + random.nextInt(40);
+                rows.append(id).append('\t')
+                    .append(Catalog.productName(id)).append('\t')
+                    .append(Catalog.description(id)).append('\t')
+                    .append(money(priceCents[i])).append('\t')
+                    .append(stock).append('\t')
+                    .append(minStock).append('\t')
+                    .append(0).append('\n');
+                if ((i + 1) % batchSize == 0 || i == productCount - 1) {
+                    copy.copyIn("COPY products (id, name, description, price, stock_quantity, min_stock_level, version) " +
+                        "FROM STDIN", new StringReader(rows.toString()));
+                    rows.setLength(0);
+                }
+            }
+            connection.commit();
+            System.out.println("Products: " + productCount);
+
+            // Popularity rank -> product, shuffled so the best sellers aren't simply the lowest ids
+            int[] productByRank = shuffledIndexes(productCount, random);
+            ZipfSampler productPopularity = new ZipfSampler(productCount, zipf);
+            int[] customerByRank = shuffledIndexes(customerCount, random);
+            ZipfSampler customerPopularity = new ZipfSampler(customerCount, zipf);
+
+            // Orders and their items, in batches: orders first (the items reference them)
+            long nextOrderId = nextId(connection, "orders");
+            long nextItemId = nextId(connection, "order_items");
+            LocalDateTime now = LocalDateTime.now();
+            long itemCount = 0;
+            StringBuilder orderRows = new StringBuilder();
+            StringBuilder itemRows = new StringBuilder();
+            int[] orderProducts = new int[maxItems];
+
+            for (long n = 0; n < orderCount; n++) {
+                long orderId = nextOrderId++;
+                long ageSeconds = random.nextLong(days * 86_400L);
+                LocalDateTime orderDate = now.minusSeconds(ageSeconds);
+                int customer = customerByRank[customerPopularity.sample(random)];
+
+                // Mostly small baskets: 1 item ~40%, 2 items ~25%, ...
+                int items = 1;
+                while (items < maxItems && random.nextDouble() < 0.6) {
+                    items++;
+                }
+                long totalCents = 0;
+                for (int i = 0; i < items; i++) {
+                    int product = pickDistinct(productByRank, productPopularity, random, orderProducts, i);
+                    orderProducts[i] = product;
+                    int quantity = 1 + (random.nextDouble() < 0.2 ? random.nextInt(3) : 0);
+                    totalCents += priceCents[product] * quantity;
+                    itemRows.append(nextItemId++).append('\t')
+                        .append(orderId).append('\t')
+                        .append(firstProductId + product).append('\t')
+                        .append(quantity).append('\t')
+                        .append(money(priceCents[product])).append('\n');
+                }
+                itemCount += items;
+
+                orderRows.append(orderId).append('\t')
+                    .append(TIMESTAMP.format(orderDate)).append('\t')
+                    .append("Customer ").append(customer).append('\t')
+                    .append("customer").append(customer).append("@example.com").append('\t')
+                    .append(money(totalCents)).append('\t')
+                    .append(status(ageSeconds, random)).append('\t')
+                    .append(0).append('\n');
+
+                if ((n + 1) % batchSize == 0 || n == orderCount - 1) {
+                    copy.copyIn("COPY orders (id, order_date, customer_name, customer_email, total_amount, status, version) " +
+                        "FROM STDIN", new StringReader(orderRows.toString()));
+                    copy.copyIn("COPY order_items (id, order_id, product_id, quantity, unit_price) FROM STDIN",
+                        new StringReader(itemRows.toString()));
+                    connection.commit();
+                    orderRows.setLength(0);
+                    itemRows.setLength(0);
+                    System.out.printf("Orders: %,d / %,d%n", n + 1, orderCount);
+                }
+            }
+
+            // The ids were given explicitly, move the identity sequences past them
+            try (Statement statement = connection.createStatement()) {
+                for (String table : new String[] {"products", "orders", "order_items"}) {
+                    statement.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), " +
+                        "COALESCE((SELECT MAX(id) FROM " + table + "), 0) + 1, false)");
+                }
+            }
+            connection.commit();
+
+            // The backend's derived tables no longer match the orders: it rebuilds the customer
+            // summaries and committed quantities at startup when their tables are empty, the
+            // reorder engine rolls up all orders again once its sales rollup and watermark are gone,
+            // and the stock journal starts over from an opening snapshot of the seeded stock
+            try (Statement statement = connection.createStatement()) {
+                for (String table : new String[] {"customer_summaries", "product_commitments",
+                                                  "product_daily_sales", "job_watermarks",
+                                                  "stock_movements", "stock_snapshots"}) {
+                    statement.execute("DO $$ BEGIN " +
+                        "IF to_regclass('" + table + "') IS NOT NULL THEN TRUNCATE " + table + "; END IF; " +
+                        "END $$");
+                }
+            }
+            connection.commit();
+
+            // Fresh statistics, otherwise the planner still thinks the tables are empty
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE products");
+                statement.execute("ANALYZE orders");
+                statement.execute("ANALYZE order_items");
+            }
+
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            long totalRows = productCount + orderCount + itemCount;
+            System.out.printf("Seeded %,d products, %,d orders, %,d order items in %.1fs (%,.0f rows/s)%n",
+                productCount, orderCount, itemCount, seconds, totalRows / seconds);
+            System.out.println("Restart the backend so it rebuilds its search index and customer summaries");
+        }
+    }
+
+    private long nextId(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // A Zipf-popular product that isn't in the order yet (a basket lists each product once)
+    private int pickDistinct(int[] productByRank, ZipfSampler popularity, SplittableRandom random,
+                             int[] chosen, int chosenCount) {
+        for (int attempt = 0; attempt < 20; attempt++) {
+            int product = productByRank[popularity.sample(random)];
+            boolean duplicate = false;
+            for (int i = 0; i < chosenCount; i++) {
+                if (chosen[i] == product) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                return product;
+            }
+        }
+        // Tiny catalogue or extreme skew: fall back to any product
+        return productByRank[random.nextInt(productByRank.length)];
+    }
+
+    private String status(long ageSeconds, SplittableRandom random) {
+        double r = random.nextDouble();
+        if (ageSeconds < 86_400) {
+            // Today: many orders are still open
+            return r < 0.5 ? "PENDING" : r < 0.65 ? "CONFIRMED" : r < 0.95 ? "COMPLETED" : "CANCELLED";
+        }
+        return r < 0.9 ? "COMPLETED" : r < 0.97 ? "CANCELLED" : "CONFIRMED";
+    }
+
+    private static int[] shuffledIndexes(int n, SplittableRandom random) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = swap;
+        }
+        return indexes;
+    }
+
+    private static String money(long cents) {
+        return (cents / 100) + "." + String.format("%02d", cents % 100);
+    }
+}
@@ -0,0 +1,123 @@
+package com.ordersystem.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histograms and result counters for one operation
+// Two latencies are recorded per request (in microseconds):
+//   response time - from when the request SHOULD have been sent (its scheduled arrival)
+//                   until the response; includes waiting when the client fell behind, so a
+//                   server stall shows up in full (no "coordinated omission")
+//   service time  - from when it was actually sent until the response
+public class EndpointStats {
+
+    // Up to one hour, 3 significant digits
+    private static final long HIGHEST_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private final Operation operation;
+    private final Histogram responseTime = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+    private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+
+    private final LongAdder success = new LongAdder();       // 2xx and 304
+    private final LongAdder clientErrors = new LongAdder();  // other 3xx/4xx (e.g. out of stock, conflict)
+    private final LongAdder serverErrors = new LongAdder();  // 5xx, including 503 from load shedding
+    private final LongAdder failures = new LongAdder();      // connection errors and timeouts
+    private final LongAdder dropped = new LongAdder();       // never sent, too many requests in flight
+
+    public EndpointStats(Operation operation) {
+        this.operation = operation;
+    }
+
+    public void record(int status, long scheduledNanos, long sentNanos, long doneNanos) {
+        responseTime.recordValue(Math.min(HIGHEST_MICROS, (doneNanos - scheduledNanos) / 1_000));
+        serviceTime.recordValue(Math.min(HIGHEST_MICROS, (doneNanos - sentNanos) / 1_000));
+        if ((status >= 200 && status < 300) || status == 304) {
+            success.increment();
+        } else if (status < 500) {
+            clientErrors.increment();
+        } else {
+            serverErrors.increment();
+        }
+    }
+
+    public void recordFailure(long scheduledNanos, long doneNanos) {
+        responseTime.recordValue(Math.min(HIGHEST_MICROS, (doneNanos - scheduledNanos) / 1_000));
+        failures.increment();
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public long completed() {
+        return responseTime.getTotalCount();
+    }
+
+    public long succeeded() {
+        return success.sum();
+    }
+
+    public static String header() {
+        return String.format("%-15s %9s %9s %7s %7s %7s %7s %9s %9s %9s %9s %9s",
+            "operation", "requests", "req/s", "ok", "4xx", "5xx", "failed",
+            "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    }
+
+    public String summaryLine(double seconds) {
+        return String.format("%-15s %9d %9.1f %7d %7d %7d %7d %9.2f %9.2f %9.2f %9.2f %9.2f",
+            operation.name().toLowerCase(), completed(), completed() / seconds,
+            success.sum(), clientErrors.sum(), serverErrors.sum(), failures.sum() + dropped.sum(),
+            millis(responseTime.getValueAtPercentile(50)),
+            millis(responseTime.getValueAtPercentile(90)),
+            millis(responseTime.getValueAtPercentile(99)),
+            millis(responseTime.getValueAtPercentile(99.9)),
+            millis(responseTime.getMaxValue()));
+    }
+
+    public String csvLine(double seconds) {
+        return String.join(",",
+            operation.name().toLowerCase(),
+            String.valueOf(completed()),
+            String.format("%.2f", completed() / seconds),
+            String.valueOf(success.sum()),
+            String.valueOf(clientErrors.sum()),
+            String.valueOf(serverErrors.sum()),
+            String.valueOf(failures.sum()),
+            String.valueOf(dropped.sum()),
+            String.format("%.3f", millis(responseTime.getValueAtPercentile(50))),
+            String.format("%.3f", millis(responseTime.getValueAtPercentile(90))),
+            String.format("%.3f", millis(responseTime.getValueAtPercentile(99))),
+            String.format("%.3f", millis(responseTime.getValueAtPercentile(99.9))),
+            String.format("%.3f", millis(responseTime.getMaxValue())),
+            String.format("%.3f", millis(serviceTime.getValueAtPercentile(50))),
+            String.format("%.3f", millis(serviceTime.getValueAtPercentile(99))));
+    }
+
+    public static String csvHeader() {
+        return "operation,requests,requests_per_second,ok,client_errors,server_errors,failed,dropped," +
+            "p50_ms,p90_ms,p99_ms,p999_ms,max_ms,service_p50_ms,service_p99_ms";
+    }
+
+    // Full percentile distributions in HdrHistogram's .hgrm format (values in milliseconds),
+    // can be plotted with the HdrHistogram plotter
+    public void writeHistograms(Path directory) throws IOException {
+        String name = operation.name().toLowerCase();
+        try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(name + ".hgrm")))) {
+            responseTime.outputPercentileDistribution(out, 1000.0);
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(name + "-service.hgrm")))) {
+            serviceTime.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
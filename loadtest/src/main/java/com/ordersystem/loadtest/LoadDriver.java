@@ -0,0 +1,379 @@
+package com.ordersystem.loadtest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives the backend with an open workload model
+// Requests arrive as a Poisson process at --rate per second, no matter how fast the server
+// answers (like customers at real tills, who don't wait for each other). A closed model
+// ("N users in a loop") slows down together with the server and hides overload.
+// Every request runs on its own virtual thread; --max-in-flight caps the outstanding
+// requests, arrivals above that are counted as dropped.
+//
+// Settings:
+//   --base-url=http://localhost:8080
+//   --read-base-url=http://localhost:8081   send the read operations (product_lookup, product_list,
+//                             todays_orders, dashboard) elsewhere, e.g. to the reactive read API;
+//                             checkout, cancel and search stay on base-url (default: base-url)
+//   --rate=50                 arrivals per second (all operations together)
+//   --duration=60s --warmup=10s   warm-up results are not reported
+//   --mix=checkout:45,cancel:5,search:20,product_lookup:20,dashboard:10
+//   --zipf=1.0                product popularity skew for checkouts and lookups
+//   --customers=20000 --max-items=4
+//   --max-in-flight=1000 --timeout=30s
+//   --output=loadtest-results   a timestamped folder with summary.csv and .hgrm files is created
+//   --random-seed=42
+public class LoadDriver {
+
+    private static final String[] DASHBOARD_PATHS = {
+        "/api/orders/statistics", "/api/products/statistics", "/api/products/low-stock"
+    };
+
+    private final Settings settings;
+    private final String baseUrl;
+    private final String readBaseUrl;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final Map<Operation, EndpointStats> stats = new EnumMap<>(Operation.class);
+
+    // Orders placed during the run, candidates for cancellation (each cancelled at most once)
+    private final BlockingQueue<Long> recentOrders = new ArrayBlockingQueue<>(10_000);
+    // Last ETag per dashboard URL, sent back as If-None-Match like a browser would
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+    private long[] productIds;
+    private int[] productByRank;
+    private ZipfSampler productPopularity;
+    private ZipfSampler customerPopularity;
+    private int maxItems;
+
+    public LoadDriver(Settings settings) {
+        this.settings = settings;
+        this.baseUrl = settings.getString("base-url", "http://localhost:8080");
+        this.readBaseUrl = settings.getString("read-base-url", baseUrl);
+        this.timeout = settings.getDuration("timeout", Duration.ofSeconds(30));
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new EndpointStats(operation));
+        }
+    }
+
+    public void run() throws Exception {
+        double rate = settings.getDouble("rate", 50);
+        Duration duration = settings.getDuration("duration", Duration.ofSeconds(60));
+        Duration warmup = settings.getDuration("warmup", Duration.ofSeconds(10));
+        WorkloadMix mix = new WorkloadMix(settings.getString("mix", WorkloadMix.DEFAULT));
+        int maxInFlight = settings.getInt("max-in-flight", 1000);
+        maxItems = settings.getInt("max-items", 4);
+        SplittableRandom random = new SplittableRandom(settings.getLong("random-seed", 42));
+        if (rate <= 0) {
+            throw new IllegalArgumentException("--rate must be greater than zero");
+        }
+
+        loadProducts(random);
+        customerPopularity = new ZipfSampler(settings.getInt("customers", 20_000), settings.getDouble("zipf", 1.0));
+
+        System.out.printf("Target %s, %.1f requests/s for %ds (after %ds warm-up)%n",
+            baseUrl, rate, duration.toSeconds(), warmup.toSeconds());
+        if (!readBaseUrl.equals(baseUrl)) {
+            System.out.println("Reads from " + readBaseUrl);
+        }
+        System.out.println("Mix: " + mix);
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+        progress.scheduleAtFixedRate(() -> printProgress(startNanos, measureFromNanos, maxInFlight - inFlight.availablePermits()),
+            10, 10, TimeUnit.SECONDS);
+
+        // Poisson arrivals: exponentially distributed gaps with mean 1/rate
+        double meanGapNanos = 1e9 / rate;
+        long scheduled = startNanos;
+        while (true) {
+            scheduled += (long) (-Math.log(1.0 - random.nextDouble()) * meanGapNanos);
+            if (scheduled >= endNanos) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Operation operation = mix.next(random);
+            boolean measured = scheduled >= measureFromNanos;
+            if (!inFlight.tryAcquire()) {
+                if (measured) {
+                    stats.get(operation).recordDropped();
+                }
+                continue;
+            }
+            long scheduledNanos = scheduled;
+            SplittableRandom taskRandom = random.split();
+            executor.execute(() -> {
+                try {
+                    execute(operation, scheduledNanos, measured, taskRandom);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        // Let the outstanding requests finish
+        executor.shutdown();
+        executor.awaitTermination(timeout.toSeconds() + 5, TimeUnit.SECONDS);
+        progress.shutdownNow();
+
+        report(duration.toNanos() / 1e9);
+    }
+
+    // Product ids from the database, with a popularity rank for each (shuffled, so the
+    // best sellers are spread over the id range like in the seeded orders)
+    private void loadProducts(SplittableRandom random) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(
+                settings.jdbcUrl(), settings.dbUser(), settings.dbPassword());
+             Statement statement = connection.createStatement();
+             // Products with stock buckets keep their stock in the buckets, not in stock_quantity
+             ResultSet rs = statement.executeQuery(
+                 "SELECT id FROM products WHERE stock_quantity > 0 OR bucket_count > 0 ORDER BY id")) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("No products in stock, run the seeder first");
+        }
+        productIds = ids.stream().mapToLong(Long::longValue).toArray();
+        productByRank = new int[productIds.length];
+        for (int i = 0; i < productByRank.length; i++) {
+            productByRank[i] = i;
+        }
+        for (int i = productByRank.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = productByRank[i];
+            productByRank[i] = productByRank[j];
+            productByRank[j] = swap;
+        }
+        productPopularity = new ZipfSampler(productIds.length, settings.getDouble("zipf", 1.0));
+        System.out.printf("Loaded %,d products in stock%n", productIds.length);
+    }
+
+    private void execute(Operation operation, long scheduledNanos, boolean measured, SplittableRandom random) {
+        // Nothing to cancel yet: place an order instead, so the mix stays close to the target
+        Long orderToCancel = null;
+        if (operation == Operation.CANCEL) {
+            orderToCancel = recentOrders.poll();
+            if (orderToCancel == null) {
+                operation = Operation.CHECKOUT;
+            }
+        }
+
+        HttpRequest request = switch (operation) {
+            case CHECKOUT -> post("/api/orders", checkoutBody(random));
+            case CANCEL -> put("/api/orders/" + orderToCancel + "/cancel");
+            case SEARCH -> get(baseUrl, "/api/products/search?limit=20&name=" +
+                URLEncoder.encode(Catalog.searchTerm(random), StandardCharsets.UTF_8));
+            case PRODUCT_LOOKUP -> get(readBaseUrl, "/api/products/" + popularProduct(random));
+            case DASHBOARD -> dashboardRequest(random);
+            case PRODUCT_LIST -> get(readBaseUrl, "/api/products");
+            case TODAYS_ORDERS -> get(readBaseUrl, "/api/orders/today");
+        };
+
+        EndpointStats endpoint = stats.get(operation);
+        long sentNanos = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long doneNanos = System.nanoTime();
+            if (measured) {
+                endpoint.record(response.statusCode(), scheduledNanos, sentNanos, doneNanos);
+            }
+            afterResponse(operation, request, response);
+        } catch (IOException e) {
+            if (measured) {
+                endpoint.recordFailure(scheduledNanos, System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void afterResponse(Operation operation, HttpRequest request, HttpResponse<byte[]> response) {
+        if (operation == Operation.CHECKOUT && response.statusCode() == 201) {
+            Long orderId = readId(response.body());
+            if (orderId != null) {
+                // Keep the newest orders; a cashier voids a sale right after making it
+                while (!recentOrders.offer(orderId)) {
+                    recentOrders.poll();
+                }
+            }
+        }
+        if (operation == Operation.DASHBOARD) {
+            response.headers().firstValue("ETag")
+                .ifPresent(etag -> etags.put(request.uri().getPath(), etag));
+        }
+    }
+
+    private String checkoutBody(SplittableRandom random) {
+        int customer = customerPopularity.sample(random);
+        int items = 1;
+        while (items < maxItems && random.nextDouble() < 0.5) {
+            items++;
+        }
+        StringBuilder body = new StringBuilder();
+        body.append("{\"customerName\":\"Customer ").append(customer)
+            .append("\",\"customerEmail\":\"customer").append(customer).append("@example.com\",\"orderItems\":[");
+        long[] chosen = new long[items];
+        int count = 0;
+        for (int i = 0; i < items; i++) {
+            long productId = popularProduct(random);
+            boolean duplicate = false;
+            for (int j = 0; j < count; j++) {
+                duplicate |= chosen[j] == productId;
+            }
+            if (duplicate) {
+                continue;
+            }
+            chosen[count++] = productId;
+            if (count > 1) {
+                body.append(',');
+            }
+            body.append("{\"productId\":").append(productId)
+                .append(",\"quantity\":").append(1 + (random.nextDouble() < 0.2 ? 1 : 0)).append('}');
+        }
+        return body.append("]}").toString();
+    }
+
+    private long popularProduct(SplittableRandom random) {
+        return productIds[productByRank[productPopularity.sample(random)]];
+    }
+
+    private HttpRequest dashboardRequest(SplittableRandom random) {
+        String path = DASHBOARD_PATHS[random.nextInt(DASHBOARD_PATHS.length)];
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(readBaseUrl + path)).timeout(timeout).GET();
+        String etag = etags.get(path);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        return builder.build();
+    }
+
+    private HttpRequest get(String base, String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).timeout(timeout).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+
+    private HttpRequest put(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(timeout)
+            .PUT(HttpRequest.BodyPublishers.noBody())
+            .build();
+    }
+
+    // The "id" field of the top-level object, read with the streaming parser so the
+    // rest of the (possibly large) order body is never parsed
+    private Long readId(byte[] body) {
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("id".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    return parser.getLongValue();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Not JSON, or cut off before the id
+        }
+        return null;
+    }
+
+    private void printProgress(long startNanos, long measureFromNanos, int inFlight) {
+        long now = System.nanoTime();
+        long completed = stats.values().stream().mapToLong(EndpointStats::completed).sum();
+        System.out.printf("[%3ds] %s completed=%d in-flight=%d%n",
+            (now - startNanos) / 1_000_000_000L, now < measureFromNanos ? "warm-up" : "measuring",
+            completed, inFlight);
+    }
+
+    private void report(double seconds) throws IOException {
+        System.out.println();
+        System.out.println("Response times measured from the scheduled arrival time");
+        System.out.println(EndpointStats.header());
+        StringBuilder csv = new StringBuilder(EndpointStats.csvHeader()).append('\n');
+        long total = 0;
+        for (EndpointStats endpoint : stats.values()) {
+            if (endpoint.completed() == 0) {
+                continue;
+            }
+            System.out.println(endpoint.summaryLine(seconds));
+            csv.append(endpoint.csvLine(seconds)).append('\n');
+            total += endpoint.completed();
+        }
+        System.out.printf("Total: %d requests, %.1f requests/s%n", total, total / seconds);
+
+        Path directory = Path.of(settings.getString("output", "loadtest-results"),
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve("summary.csv"), csv.toString());
+        for (EndpointStats endpoint : stats.values()) {
+            if (endpoint.completed() > 0) {
+                endpoint.writeHistograms(directory);
+            }
+        }
+        System.out.println("Histograms and summary written to " + directory.toAbsolutePath());
+    }
+}
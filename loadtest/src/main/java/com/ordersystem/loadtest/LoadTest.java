@@ -0,0 +1,41 @@
+package com.ordersystem.loadtest;
+
+// Entry point of the load test tool
+//   java -jar target/order-system-loadtest-0.0.1-SNAPSHOT.jar seed [--products=... --orders=...]
+//   java -jar target/order-system-loadtest-0.0.1-SNAPSHOT.jar run  [--rate=... --duration=...]
+//   java -jar target/order-system-loadtest-0.0.1-SNAPSHOT.jar serialization [--paths=...]
+//   java -jar target/order-system-loadtest-0.0.1-SNAPSHOT.jar contention [--product-id=... --buckets=...]
+//   java -jar target/order-system-loadtest-0.0.1-SNAPSHOT.jar search [--concurrency=... --duration=...]
+// See DataSeeder, LoadDriver, SerializationBenchmark, ContentionBenchmark and SearchBenchmark for all settings,
+// and README.md for a walkthrough.
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            printUsage();
+            System.exit(1);
+        }
+
+        Settings settings = new Settings(args);
+        switch (args[0]) {
+            case "seed" -> new DataSeeder(settings).seed();
+            case "run" -> new LoadDriver(settings).run();
+            case "serialization" -> new SerializationBenchmark(settings).run();
+            case "contention" -> new ContentionBenchmark(settings).run();
+            case "search" -> new SearchBenchmark(settings).run();
+            default -> {
+                printUsage();
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: LoadTest seed|run|serialization|contention|search [--name=value ...]");
+        System.out.println("  seed  fill the database with products, orders and order items");
+        System.out.println("  run   send an open-model POS workload to the backend and report latencies");
+        System.out.println("  serialization  compare JSON, CBOR and Smile responses (size, encode/decode time)");
+        System.out.println("  contention  concurrent checkouts of one product, with and without stock buckets");
+        System.out.println("  search  search-as-you-type latency by number of typed characters");
+    }
+}
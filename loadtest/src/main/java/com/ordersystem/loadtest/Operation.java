@@ -0,0 +1,12 @@
+package com.ordersystem.loadtest;
+
+// The kinds of requests a POS installation sends, each reported separately
+public enum Operation {
+    CHECKOUT,        // POST /api/orders with a Zipf-popular basket
+    CANCEL,          // PUT /api/orders/{id}/cancel for an order placed during the run
+    SEARCH,          // GET /api/products/search?name=... (cashier looking up an item)
+    PRODUCT_LOOKUP,  // GET /api/products/{id} (barcode scan)
+    DASHBOARD,       // GET of the statistics / low stock endpoints with If-None-Match (back office screen)
+    PRODUCT_LIST,    // GET /api/products (terminal loading the whole catalogue)
+    TODAYS_ORDERS    // GET /api/orders/today (shift overview)
+}
@@ -0,0 +1,169 @@
+package com.ordersystem.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Search-as-you-type latency on a large catalogue
+// Every till picks a word of a product name and types it one character at a time, sending
+// GET /api/products/search after each keystroke, like the POS search box. The latencies are
+// reported by how many characters were typed: the first one or two keystrokes have no trigram
+// and use the backend's word prefix map, longer ones the trigram postings.
+//
+// Seed a large catalogue first (seed --products=1000000 --orders=0) and restart the backend
+// so its search index covers it; the product count is printed at the start.
+//
+// Closed model like ContentionBenchmark: each till types the next character as soon as the
+// last search is answered.
+//
+// Settings:
+//   --base-url=http://localhost:8080
+//   --concurrency=8 --duration=30s --warmup=10s
+//   --limit=20              results per search
+//   --timeout=10s
+//   --output=loadtest-results   a timestamped folder with search.csv is created
+//   --random-seed=42
+public class SearchBenchmark {
+
+    // Typed characters are reported as 1, 2, 3 and "4+"
+    private static final int LENGTH_CLASSES = 4;
+
+    private final Settings settings;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final HttpClient client;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public SearchBenchmark(Settings settings) {
+        this.settings = settings;
+        this.baseUrl = settings.getString("base-url", "http://localhost:8080");
+        this.timeout = settings.getDuration("timeout", Duration.ofSeconds(10));
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    public void run() throws Exception {
+        int concurrency = settings.getInt("concurrency", 8);
+        Duration duration = settings.getDuration("duration", Duration.ofSeconds(30));
+        Duration warmup = settings.getDuration("warmup", Duration.ofSeconds(10));
+        int limit = settings.getInt("limit", 20);
+        SplittableRandom random = new SplittableRandom(settings.getLong("random-seed", 42));
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("--concurrency must be at least 1");
+        }
+
+        System.out.printf("Target %s, %d products, %d tills typing for %ds (after %ds warm-up)%n",
+            baseUrl, productCount(), concurrency, duration.toSeconds(), warmup.toSeconds());
+
+        EndpointStats[] stats = new EndpointStats[LENGTH_CLASSES];
+        for (int i = 0; i < LENGTH_CLASSES; i++) {
+            stats[i] = new EndpointStats(Operation.SEARCH);
+        }
+        long startNanos = System.nanoTime();
+        long measureFromNanos = startNanos + warmup.toNanos();
+        long endNanos = measureFromNanos + duration.toNanos();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int till = 0; till < concurrency; till++) {
+            SplittableRandom tillRandom = random.split();
+            executor.execute(() -> {
+                while (true) {
+                    String word = Catalog.nameWord(tillRandom);
+                    for (int typed = 1; typed <= word.length(); typed++) {
+                        long sentNanos = System.nanoTime();
+                        if (sentNanos >= endNanos) {
+                            return;
+                        }
+                        EndpointStats lengthStats = sentNanos >= measureFromNanos
+                            ? stats[Math.min(typed, LENGTH_CLASSES) - 1]
+                            : null;
+                        if (!search(word.substring(0, typed), limit, sentNanos, lengthStats)) {
+                            return;
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(warmup.toSeconds() + duration.toSeconds() + timeout.toSeconds() + 5, TimeUnit.SECONDS);
+
+        double seconds = duration.toNanos() / 1e9;
+        print(stats, seconds);
+        Path directory = Path.of(settings.getString("output", "loadtest-results"),
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-search");
+        Files.createDirectories(directory);
+        writeCsv(stats, seconds, directory.resolve("search.csv"));
+        System.out.println("Results written to " + directory);
+    }
+
+    // One search, recorded in stats unless that is null (warm-up); false when interrupted
+    private boolean search(String query, int limit, long sentNanos, EndpointStats stats) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/search?limit=" + limit +
+                "&name=" + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+            .timeout(timeout).GET().build();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (stats != null) {
+                stats.record(response.statusCode(), sentNanos, sentNanos, System.nanoTime());
+            }
+        } catch (IOException e) {
+            if (stats != null) {
+                stats.recordFailure(sentNanos, System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    private int productCount() throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/api/products/statistics")).timeout(timeout).GET().build(),
+            HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Product statistics returned " + response.statusCode());
+        }
+        JsonNode statistics = mapper.readTree(response.body());
+        return statistics.get("totalProducts").asInt();
+    }
+
+    private static String lengthLabel(int lengthClass) {
+        return lengthClass == LENGTH_CLASSES - 1 ? LENGTH_CLASSES + "+" : String.valueOf(lengthClass + 1);
+    }
+
+    private void print(EndpointStats[] stats, double seconds) {
+        System.out.println();
+        System.out.printf("%-6s %s%n", "typed", EndpointStats.header());
+        for (int i = 0; i < stats.length; i++) {
+            System.out.printf("%-6s %s%n", lengthLabel(i), stats[i].summaryLine(seconds));
+        }
+    }
+
+    private void writeCsv(EndpointStats[] stats, double seconds, Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            out.println("typed," + EndpointStats.csvHeader());
+            for (int i = 0; i < stats.length; i++) {
+                out.println(lengthLabel(i) + "," + stats[i].csvLine(seconds));
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.ordersystem.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Compares JSON with the binary formats the backend can send (CBOR, Smile) on real responses
+// For every path and format it measures:
+//   - payload size, plain and gzipped (what a terminal downloads with Accept-Encoding: gzip)
+//   - HTTP time: request until the whole body is received (server encoding + transfer)
+//   - decode time: parsing the body on the client (Jackson tree, like a generic client would)
+//   - encode time: writing the same data again in that format (the server side cost)
+// Times are medians over --iterations runs after --warmup-iterations unmeasured runs.
+//
+// Settings:
+//   --base-url=http://localhost:8080
+//   --paths=/api/products,/api/orders/customer/history?email=customer1@example.com&size=100
+//                          comma separated GET paths (the responses should be large lists)
+//   --iterations=50 --warmup-iterations=20
+//   --output=loadtest-results   a timestamped folder with serialization.csv is created
+public class SerializationBenchmark {
+
+    private static final String DEFAULT_PATHS =
+        "/api/products,/api/orders/customer/history?email=customer1@example.com&size=100";
+
+    private final Settings settings;
+    private final HttpClient client;
+
+    public SerializationBenchmark(Settings settings) {
+        this.settings = settings;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    }
+
+    // The formats to compare, with the mapper that reads and writes them
+    private enum Format {
+        JSON("application/json", new ObjectMapper()),
+        CBOR("application/cbor", new ObjectMapper(new CBORFactory())),
+        SMILE("application/x-jackson-smile", new ObjectMapper(new SmileFactory()));
+
+        private final String mediaType;
+        private final ObjectMapper mapper;
+
+        Format(String mediaType, ObjectMapper mapper) {
+            this.mediaType = mediaType;
+            this.mapper = mapper;
+        }
+    }
+
+    public void run() throws Exception {
+        String baseUrl = settings.getString("base-url", "http://localhost:8080");
+        String[] paths = settings.getString("paths", DEFAULT_PATHS).split(",");
+        int iterations = settings.getInt("iterations", 50);
+        int warmupIterations = settings.getInt("warmup-iterations", 20);
+        if (iterations < 1 || warmupIterations < 0) {
+            throw new IllegalArgumentException("--iterations must be at least 1, --warmup-iterations at least 0");
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String path : paths) {
+            for (Format format : Format.values()) {
+                results.add(measure(baseUrl + path.trim(), path.trim(), format, iterations, warmupIterations));
+            }
+        }
+
+        print(results);
+        Path directory = Path.of(settings.getString("output", "loadtest-results"),
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + "-serialization");
+        Files.createDirectories(directory);
+        writeCsv(results, directory.resolve("serialization.csv"));
+        System.out.println("Results written to " + directory);
+    }
+
+    private Result measure(String url, String path, Format format, int iterations, int warmupIterations)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(Duration.ofSeconds(30))
+            .header("Accept", format.mediaType)
+            .GET()
+            .build();
+
+        byte[] body = null;
+        long[] httpNanos = new long[iterations];
+        for (int i = 0; i < warmupIterations + iterations; i++) {
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long elapsed = System.nanoTime() - start;
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException(url + " returned " + response.statusCode());
+            }
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (!contentType.startsWith(format.mediaType)) {
+                throw new IllegalStateException(url + " answered " + contentType + " instead of " + format.mediaType);
+            }
+            body = response.body();
+            if (i >= warmupIterations) {
+                httpNanos[i - warmupIterations] = elapsed;
+            }
+        }
+
+        // Decode and re-encode the last body, same warm-up/measure split
+        long[] decodeNanos = new long[iterations];
+        long[] encodeNanos = new long[iterations];
+        JsonNode tree = null;
+        for (int i = 0; i < warmupIterations + iterations; i++) {
+            long start = System.nanoTime();
+            tree = format.mapper.readTree(body);
+            long decoded = System.nanoTime();
+            format.mapper.writeValueAsBytes(tree);
+            long encoded = System.nanoTime();
+            if (i >= warmupIterations) {
+                decodeNanos[i - warmupIterations] = decoded - start;
+                encodeNanos[i - warmupIterations] = encoded - decoded;
+            }
+        }
+        if (tree == null || tree.isMissingNode()) {
+            throw new IllegalStateException(url + " returned an empty body");
+        }
+
+        Result result = new Result();
+        result.path = path;
+        result.format = format;
+        result.bytes = body.length;
+        result.gzipBytes = gzip(body).length;
+        result.httpMillis = median(httpNanos) / 1e6;
+        result.decodeMicros = median(decodeNanos) / 1e3;
+        result.encodeMicros = median(encodeNanos) / 1e3;
+        return result;
+    }
+
+    private void print(List<Result> results) {
+        System.out.printf("%-45s %-6s %11s %11s %7s %9s %11s %11s%n",
+            "path", "format", "bytes", "gzip bytes", "vs json", "http ms", "decode us", "encode us");
+        long jsonBytes = 0;
+        for (Result result : results) {
+            if (result.format == Format.JSON) {
+                jsonBytes = result.bytes;
+            }
+            String path = result.path.length() > 45 ? result.path.substring(0, 42) + "..." : result.path;
+            System.out.printf("%-45s %-6s %,11d %,11d %6.0f%% %9.2f %,11.0f %,11.0f%n",
+                path, result.format.name().toLowerCase(), result.bytes, result.gzipBytes,
+                100.0 * result.bytes / jsonBytes, result.httpMillis, result.decodeMicros, result.encodeMicros);
+        }
+    }
+
+    private void writeCsv(List<Result> results, Path file) throws IOException {
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            out.println("path,format,bytes,gzip_bytes,http_ms,decode_us,encode_us");
+            for (Result result : results) {
+                out.printf("\"%s\",%s,%d,%d,%.3f,%.1f,%.1f%n", result.path.replace("\"", "\"\""),
+                    result.format.name().toLowerCase(), result.bytes, result.gzipBytes,
+                    result.httpMillis, result.decodeMicros, result.encodeMicros);
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static double median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2.0;
+    }
+
+    private static class Result {
+        String path;
+        Format format;
+        long bytes;
+        long gzipBytes;
+        double httpMillis;
+        double decodeMicros;
+        double encodeMicros;
+    }
+}
@@ -0,0 +1,70 @@
+package com.ordersystem.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+
+// Relative weights of the operations, e.g. --mix=checkout:45,cancel:5,search:20,product_lookup:20,dashboard:10
+// Weights don't need to add up to 100.
+public class WorkloadMix {
+
+    public static final String DEFAULT = "checkout:45,cancel:5,search:20,product_lookup:20,dashboard:10";
+
+    private final Operation[] operations;
+    private final double[] cumulative;
+
+    public WorkloadMix(String spec) {
+        Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry '" + part + "', expected operation:weight");
+            }
+            Operation operation = Operation.valueOf(pair[0].trim().toUpperCase().replace('-', '_'));
+            double weight = Double.parseDouble(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + operation);
+            }
+            if (weight > 0) {
+                weights.put(operation, weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The workload mix is empty");
+        }
+
+        operations = weights.keySet().toArray(new Operation[0]);
+        cumulative = new double[operations.length];
+        double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+        double sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]) / total;
+            cumulative[i] = sum;
+        }
+    }
+
+    public Operation next(RandomGenerator random) {
+        double r = random.nextDouble();
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        double previous = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(operations[i].name().toLowerCase()).append(' ')
+                .append(Math.round((cumulative[i] - previous) * 100)).append('%');
+            previous = cumulative[i];
+        }
+        return text.toString();
+    }
+}
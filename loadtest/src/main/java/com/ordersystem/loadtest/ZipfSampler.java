@@ -0,0 +1,39 @@
+package com.ordersystem.loadtest;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Draws ranks 0..n-1 with Zipf-distributed popularity: rank k is picked with a probability
+// proportional to 1 / (k+1)^exponent. With exponent ~1 a few products make most of the sales
+// and there is a long tail of items that hardly sell, like a real shop.
+// The cumulative distribution is precomputed once, each sample is a binary search.
+public class ZipfSampler {
+
+    private final double[] cumulative;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Zipf sampler needs at least one element");
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    public int sample(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // binarySearch returns -(insertion point) - 1 when the value isn't in the array
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
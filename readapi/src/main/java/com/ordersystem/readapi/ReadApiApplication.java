@@ -0,0 +1,16 @@
+package com.ordersystem.readapi;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+// Read-only API for dashboards and terminals, next to the backend (see README.md)
+// Serves the heavy read endpoints (product lists, today's orders, statistics) on WebFlux and
+// R2DBC: a request waiting for the database holds neither a thread nor a connection, so read
+// spikes here can't use up the backend's Tomcat threads and JDBC connections that checkout needs.
+@SpringBootApplication
+public class ReadApiApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReadApiApplication.class, args);
+    }
+}
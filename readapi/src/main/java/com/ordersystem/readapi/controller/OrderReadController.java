@@ -0,0 +1,32 @@
+package com.ordersystem.readapi.controller;
+
+import com.ordersystem.readapi.model.Order;
+import com.ordersystem.readapi.repository.OrderReadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Order reads with the same paths and JSON as the backend's OrderController
+@RestController
+@RequestMapping("/api/orders")
+@CrossOrigin(origins = "http://localhost:4200")
+public class OrderReadController {
+
+    @Autowired
+    private OrderReadRepository orderReadRepository;
+
+    // GET endpoint: http://localhost:8081/api/orders/today
+    // Today's orders with their items, newest first (streamed like the product list)
+    @GetMapping(value = "/today", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Order> getTodaysOrders() {
+        return orderReadRepository.findTodaysOrders();
+    }
+
+    // GET endpoint: http://localhost:8081/api/orders/statistics
+    @GetMapping("/statistics")
+    public Mono<OrderReadRepository.OrderStatistics> getOrderStatistics() {
+        return orderReadRepository.getStatistics();
+    }
+}
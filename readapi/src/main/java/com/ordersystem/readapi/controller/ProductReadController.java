@@ -0,0 +1,48 @@
+package com.ordersystem.readapi.controller;
+
+import com.ordersystem.readapi.model.Product;
+import com.ordersystem.readapi.repository.ProductReadRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Product reads with the same paths and JSON as the backend's ProductController
+// Lists are streamed: as a JSON array (application/json), or one product per line
+// (Accept: application/x-ndjson) so a terminal can show the first products while the rest load.
+@RestController
+@RequestMapping("/api/products")
+@CrossOrigin(origins = "http://localhost:4200")
+public class ProductReadController {
+
+    @Autowired
+    private ProductReadRepository productReadRepository;
+
+    // GET endpoint: http://localhost:8081/api/products
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Product> getAllProducts() {
+        return productReadRepository.findAll();
+    }
+
+    // GET endpoint: http://localhost:8081/api/products/{id}
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Product>> getProductById(@PathVariable Long id) {
+        return productReadRepository.findById(id)
+            .map(ResponseEntity::ok)
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // GET endpoint: http://localhost:8081/api/products/low-stock
+    @GetMapping(value = "/low-stock", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Product> getLowStockProducts() {
+        return productReadRepository.findLowStock();
+    }
+
+    // GET endpoint: http://localhost:8081/api/products/statistics
+    @GetMapping("/statistics")
+    public Mono<ProductReadRepository.ProductStatistics> getProductStatistics() {
+        return productReadRepository.getStatistics();
+    }
+}
@@ -0,0 +1,52 @@
+package com.ordersystem.readapi.model;
+
+import java.math.BigDecimal;
+
+// A row of order_items with its product, with the same JSON fields as the backend's OrderItem
+public class OrderItem {
+
+    private Long id;
+    private Product product;
+    private Integer quantity;
+    private BigDecimal unitPrice;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getUnitPrice() {
+        return unitPrice;
+    }
+
+    public void setUnitPrice(BigDecimal unitPrice) {
+        this.unitPrice = unitPrice;
+    }
+
+    // Unit price times quantity
+    public BigDecimal getTotalPrice() {
+        if (unitPrice == null || quantity == null) {
+            return BigDecimal.ZERO;
+        }
+        return unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+}
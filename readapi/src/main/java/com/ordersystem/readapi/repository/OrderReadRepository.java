@@ -0,0 +1,158 @@
+package com.ordersystem.readapi.repository;
+
+import com.ordersystem.readapi.model.Order;
+import com.ordersystem.readapi.model.OrderItem;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Order queries over R2DBC
+@Repository
+public class OrderReadRepository {
+
+    private final DatabaseClient databaseClient;
+    private final int fetchSize;
+
+    public OrderReadRepository(DatabaseClient databaseClient, @Value("${app.read.fetch-size:500}") int fetchSize) {
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    // Today's orders with their items and products, newest first
+    // One query joins everything (one row per item); the rows of an order are next to each
+    // other, so each order is put together and sent as soon as its last row has arrived
+    public Flux<Order> findTodaysOrders() {
+        return databaseClient.sql("SELECT o.id AS order_id, o.store_id AS order_store_id, o.order_date, " +
+                                  "o.customer_name, o.customer_email, o.total_amount, o.status, " +
+                                  "o.version AS order_version, oi.id AS item_id, oi.quantity, oi.unit_price, " +
+                                  "p.id AS product_id, p.name, p.description, p.price, " +
+                                  ProductReadRepository.STOCK_QUANTITY + " AS stock_quantity, " +
+                                  "p.min_stock_level, p.store_id, p.version " +
+                                  "FROM orders o " +
+                                  "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+                                  "LEFT JOIN products p ON p.id = oi.product_id " +
+                                  "WHERE o.order_date >= CURRENT_DATE AND o.order_date < CURRENT_DATE + 1 " +
+                                  "ORDER BY o.order_date DESC, o.id DESC, oi.id")
+            .filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+            .map(row -> new OrderRow(toOrder(row), toItem(row)))
+            .all()
+            .bufferUntilChanged(orderRow -> orderRow.order().getId())
+            .map(this::assemble);
+    }
+
+    // Counts per status and the revenue of completed orders, in one query
+    public Mono<OrderStatistics> getStatistics() {
+        return databaseClient.sql("SELECT COUNT(*) AS total, " +
+                                  "COUNT(*) FILTER (WHERE status = 'PENDING') AS pending, " +
+                                  "COUNT(*) FILTER (WHERE status = 'COMPLETED') AS completed, " +
+                                  "COUNT(*) FILTER (WHERE status = 'CANCELLED') AS cancelled, " +
+                                  "COALESCE(SUM(total_amount) FILTER (WHERE status = 'COMPLETED'), 0) AS revenue " +
+                                  "FROM orders")
+            .map(row -> {
+                OrderStatistics stats = new OrderStatistics();
+                stats.setTotalOrders(row.get("total", Long.class));
+                stats.setPendingOrders(row.get("pending", Long.class));
+                stats.setCompletedOrders(row.get("completed", Long.class));
+                stats.setCancelledOrders(row.get("cancelled", Long.class));
+                stats.setTotalRevenue(row.get("revenue", BigDecimal.class));
+                return stats;
+            })
+            .one();
+    }
+
+    private Order toOrder(Readable row) {
+        Order order = new Order();
+        order.setId(row.get("order_id", Long.class));
+        order.setStoreId(row.get("order_store_id", String.class));
+        order.setOrderDate(row.get("order_date", LocalDateTime.class));
+        order.setCustomerName(row.get("customer_name", String.class));
+        order.setCustomerEmail(row.get("customer_email", String.class));
+        order.setTotalAmount(row.get("total_amount", BigDecimal.class));
+        order.setStatus(row.get("status", String.class));
+        order.setVersion(row.get("order_version", Long.class));
+        return order;
+    }
+
+    // null for an order without items
+    private OrderItem toItem(Readable row) {
+        Long itemId = row.get("item_id", Long.class);
+        if (itemId == null) {
+            return null;
+        }
+        OrderItem item = new OrderItem();
+        item.setId(itemId);
+        item.setQuantity(row.get("quantity", Integer.class));
+        item.setUnitPrice(row.get("unit_price", BigDecimal.class));
+        item.setProduct(ProductReadRepository.toProduct(row, "product_id"));
+        return item;
+    }
+
+    // The rows of one order: its order columns (the same in every row) and all its items
+    private Order assemble(List<OrderRow> rows) {
+        Order order = rows.get(0).order();
+        for (OrderRow row : rows) {
+            if (row.item() != null) {
+                order.getOrderItems().add(row.item());
+            }
+        }
+        return order;
+    }
+
+    private record OrderRow(Order order, OrderItem item) {}
+
+    // Inner class for order statistics (same JSON as the backend's)
+    public static class OrderStatistics {
+        private Long totalOrders;
+        private Long pendingOrders;
+        private Long completedOrders;
+        private Long cancelledOrders;
+        private BigDecimal totalRevenue;
+
+        public Long getTotalOrders() {
+            return totalOrders;
+        }
+
+        public void setTotalOrders(Long totalOrders) {
+            this.totalOrders = totalOrders;
+        }
+
+        public Long getPendingOrders() {
+            return pendingOrders;
+        }
+
+        public void setPendingOrders(Long pendingOrders) {
+            this.pendingOrders = pendingOrders;
+        }
+
+        public Long getCompletedOrders() {
+            return completedOrders;
+        }
+
+        public void setCompletedOrders(Long completedOrders) {
+            this.completedOrders = completedOrders;
+        }
+
+        public Long getCancelledOrders() {
+            return cancelledOrders;
+        }
+
+        public void setCancelledOrders(Long cancelledOrders) {
+            this.cancelledOrders = cancelledOrders;
+        }
+
+        public BigDecimal getTotalRevenue() {
+            return totalRevenue;
+        }
+
+        public void setTotalRevenue(BigDecimal totalRevenue) {
+            this.totalRevenue = totalRevenue;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ordersystem.readapi.repository;
+
+import com.ordersystem.readapi.model.Product;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+// Product queries over R2DBC
+// Lists are read with a fetch size: the database sends fetch-size rows at a time and the next
+// batch is only asked for when the client has taken the rows before (backpressure), so a
+// product list is never held in memory as a whole.
+@Repository
+public class ProductReadRepository {
+
+    // A product's stock: its row plus its stock buckets, if the backend split it into buckets
+    // (the backend's StockBucket.TOTAL_STOCK_SQL)
+    static final String STOCK_QUANTITY = "(p.stock_quantity + CASE WHEN p.bucket_count > 0 " +
+        "THEN (SELECT COALESCE(SUM(b.quantity), 0) FROM product_stock_buckets b WHERE b.product_id = p.id) " +
+        "ELSE 0 END)";
+
+    static final String COLUMNS = "p.id, p.name, p.description, p.price, " + STOCK_QUANTITY + " AS stock_quantity, " +
+                                  "p.min_stock_level, p.store_id, p.version";
+
+    private final DatabaseClient databaseClient;
+    private final int fetchSize;
+
+    public ProductReadRepository(DatabaseClient databaseClient, @Value("${app.read.fetch-size:500}") int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("app.read.fetch-size must be at least 1");
+        }
+        this.databaseClient = databaseClient;
+        this.fetchSize = fetchSize;
+    }
+
+    public Flux<Product> findAll() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM products p ORDER BY p.id")
+            .filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+            .map(row -> toProduct(row, "id"))
+            .all();
+    }
+
+    public Mono<Product> findById(Long id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM products p WHERE p.id = :id")
+            .bind("id", id)
+            .map(row -> toProduct(row, "id"))
+            .one();
+    }
+
+    // Products below their minimum stock level (same rule as the backend's low stock list)
+    public Flux<Product> findLowStock() {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM products p " +
+                                  "WHERE " + STOCK_QUANTITY + " < p.min_stock_level ORDER BY p.id")
+            .filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+            .map(row -> toProduct(row, "id"))
+            .all();
+    }
+
+    // Total, low stock and out of stock counted by the database in one query
+    public Mono<ProductStatistics> getStatistics() {
+        return databaseClient.sql("SELECT COUNT(*) AS total, " +
+                                  "COUNT(*) FILTER (WHERE " + STOCK_QUANTITY + " < p.min_stock_level) AS low_stock, " +
+                                  "COUNT(*) FILTER (WHERE " + STOCK_QUANTITY + " = 0) AS out_of_stock " +
+                                  "FROM products p")
+            .map(row -> {
+                ProductStatistics stats = new ProductStatistics();
+                stats.setTotalProducts(row.get("total", Long.class));
+                stats.setLowStockCount(row.get("low_stock", Long.class));
+                stats.setOutOfStockCount(row.get("out_of_stock", Long.class));
+                return stats;
+            })
+            .one();
+    }
+
+    // The product columns of a row (COLUMNS), idColumn is the label of p.id in the query
+    static Product toProduct(Readable row, String idColumn) {
+        Product product = new Product();
+        product.setId(row.get(idColumn, Long.class));
+        product.setName(row.get("name", String.class));
+        product.setDescription(row.get("description", String.class));
+        product.setPrice(row.get("price", BigDecimal.class));
+        product.setStockQuantity(row.get("stock_quantity", Integer.class));
+        product.setMinStockLevel(row.get("min_stock_level", Integer.class));
+        product.setStoreId(row.get("store_id", String.class));
+        product.setVersion(row.get("version", Long.class));
+        return product;
+    }
+
+    // Inner class for product statistics (same JSON as the backend's)
+    public static class ProductStatistics {
+        private long totalProducts;
+        private long lowStockCount;
+        private long outOfStockCount;
+
+        public long getTotalProducts() {
+            return totalProducts;
+        }
+
+        public void setTotalProducts(long totalProducts) {
+            this.totalProducts = totalProducts;
+        }
+
+        public long getLowStockCount() {
+            return lowStockCount;
+        }
+
+        public void setLowStockCount(long lowStockCount) {
+            this.lowStockCount = lowStockCount;
+        }
+
+        public long getOutOfStockCount() {
+            return outOfStockCount;
+        }
+
+        public void setOutOfStockCount(long outOfStockCount) {
+            this.outOfStockCount = outOfStockCount;
+        }
+    }
+}